@@ -0,0 +1,778 @@
+package excel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The Class AsyncExcelReader. Reads workbooks in the background with an
+ * {@link ExcelReader}, for ingesting many files at once: every read returns a
+ * {@link CompletableFuture} completed with the rows, or with the error that
+ * stopped the read instead of a partial map. A failing file never affects
+ * the others.
+ * <p>
+ * Each file is read on a task of its own, on a virtual thread when the JVM
+ * has them (Java 21 and later) or on a daemon thread otherwise, unless an
+ * executor is given. At most {@link Builder#maxConcurrency(int)} files are
+ * read at the same time, and a file only starts while the files being read
+ * are together smaller than {@link Builder#maxInFlightBytes(long)}; a file
+ * larger than that budget is read alone. Files wait in the order they were
+ * asked for. When a directory is delivered in order, a file counts against
+ * the budget until its result is passed to the consumer, so the results
+ * held back behind a slow file are bounded too.
+ *
+ * @author Sourav
+ */
+public final class AsyncExcelReader implements Closeable {
+
+	/** The Constant LOG. */
+	private static final Logger LOG = Logger.getLogger(AsyncExcelReader.class);
+
+	/** The default budget of the files being read. */
+	public static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 256L << 20;
+
+	/** The reader. */
+	private final ExcelReader reader;
+
+	/** The executor running the reads. */
+	private final ExecutorService executor;
+
+	/** Whether the executor was created here and is shut down on close. */
+	private final boolean ownExecutor;
+
+	/** The maximum number of files read at the same time. */
+	private final int maxConcurrency;
+
+	/** The budget of the files being read. */
+	private final long maxInFlightBytes;
+
+	/** The reads waiting for their turn. */
+	private final Deque<Read> pending = new ArrayDeque<Read>();
+
+	/** The number of files being read. */
+	private int running;
+
+	/** The size of the files being read or held back for delivery. */
+	private long inFlightBytes;
+
+	/** Set once closed. */
+	private boolean closed;
+
+	/**
+	 * Instantiates a new async excel reader.
+	 *
+	 * @param builder
+	 *            the builder
+	 */
+	private AsyncExcelReader(Builder builder) {
+		this.reader = null == builder.reader ? ExcelParser.getDefaultReader()
+				: builder.reader;
+		this.ownExecutor = null == builder.executor;
+		this.executor = ownExecutor ? newDefaultExecutor() : builder.executor;
+		this.maxConcurrency = builder.maxConcurrency;
+		this.maxInFlightBytes = builder.maxInFlightBytes;
+	}
+
+	/**
+	 * Creates a builder: the default reader of {@link ExcelParser}, one file
+	 * per processor and {@link #DEFAULT_MAX_IN_FLIGHT_BYTES}.
+	 *
+	 * @return the builder
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Read the sheet of a file in the background.
+	 *
+	 * @param excelPath
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @return the rows by row number, as {@link ExcelReader#read(Path, int, int)}
+	 *         returns them; completed exceptionally if the read fails
+	 */
+	public CompletableFuture<Map<Integer, List<ExcelDTO>>> readAsync(
+			Path excelPath, int lastCellNum, int sheetNumber) {
+		CompletableFuture<Map<Integer, List<ExcelDTO>>> future = new CompletableFuture<Map<Integer, List<ExcelDTO>>>();
+		submit(excelPath, lastCellNum, sheetNumber, false, future);
+		return future;
+	}
+
+	/**
+	 * Read the sheet of every file of a directory matching a glob, e.g.
+	 * "*.{xls,xlsx}". Files are read in the order of their paths.
+	 *
+	 * @param directory
+	 *            the directory
+	 * @param glob
+	 *            the glob the file names must match
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @return the result of every file, in the order of their paths;
+	 *         completed exceptionally only if the directory cannot be listed
+	 */
+	public CompletableFuture<List<FileResult>> readDirectory(Path directory,
+			String glob, int lastCellNum, int sheetNumber) {
+		final List<FileResult> results = new ArrayList<FileResult>();
+		return readDirectory(directory, glob, lastCellNum, sheetNumber, true,
+				new Consumer<FileResult>() {
+					public void accept(FileResult result) {
+						results.add(result);
+					}
+				}).thenApply(new Function<Void, List<FileResult>>() {
+			public List<FileResult> apply(Void done) {
+				return results;
+			}
+		});
+	}
+
+	/**
+	 * Read the sheet of every file of a directory matching a glob, passing
+	 * the result of every file to a consumer as soon as it can be delivered.
+	 * The consumer is called by one thread at a time.
+	 *
+	 * @param directory
+	 *            the directory
+	 * @param glob
+	 *            the glob the file names must match
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param inOrder
+	 *            true to deliver the results in the order of the paths,
+	 *            holding back those finished before an earlier file; false to
+	 *            deliver them as the files finish
+	 * @param consumer
+	 *            the consumer of the results
+	 * @return completed once every result is delivered; exceptionally if the
+	 *         directory cannot be listed or the consumer threw
+	 */
+	public CompletableFuture<Void> readDirectory(Path directory, String glob,
+			int lastCellNum, int sheetNumber, boolean inOrder,
+			Consumer<FileResult> consumer) {
+		CompletableFuture<Void> done = new CompletableFuture<Void>();
+		List<Path> files = new ArrayList<Path>();
+		try {
+			DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+					glob);
+			try {
+				for (Path file : stream) {
+					if (Files.isRegularFile(file)) {
+						files.add(file);
+					}
+				}
+			} finally {
+				stream.close();
+			}
+		} catch (IOException ex) {
+			done.completeExceptionally(ex);
+			return done;
+		}
+		Collections.sort(files);
+		LOG.info("Reading " + files.size() + " files of " + directory);
+
+		final Delivery delivery = new Delivery(files.size(), inOrder,
+				consumer, done);
+		for (int i = 0; i < files.size(); i++) {
+			final int index = i;
+			final Path file = files.get(i);
+			CompletableFuture<Map<Integer, List<ExcelDTO>>> future = new CompletableFuture<Map<Integer, List<ExcelDTO>>>();
+			final Read read = submit(file, lastCellNum, sheetNumber, inOrder,
+					future);
+			future.whenComplete(new BiConsumer<Map<Integer, List<ExcelDTO>>, Throwable>() {
+				public void accept(Map<Integer, List<ExcelDTO>> rows,
+						Throwable failure) {
+					delivery.deliver(new FileResult(index, file, rows, failure),
+							read);
+				}
+			});
+		}
+		return done;
+	}
+
+	/**
+	 * Queues the read of a file and starts it if the limits allow.
+	 *
+	 * @param excelPath
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param sheetNumber
+	 *            the sheet number
+	 * @param heldUntilDelivered
+	 *            whether the file counts against the budget until
+	 *            {@link #delivered(Read)} rather than until its read ends
+	 * @param future
+	 *            the future of the rows
+	 * @return the read, null if it failed before being queued
+	 */
+	private Read submit(Path excelPath, int lastCellNum, int sheetNumber,
+			boolean heldUntilDelivered,
+			CompletableFuture<Map<Integer, List<ExcelDTO>>> future) {
+		long bytes;
+		try {
+			bytes = Files.size(excelPath);
+		} catch (IOException ex) {
+			future.completeExceptionally(ex);
+			return null;
+		}
+		Read read = new Read(excelPath, Math.min(bytes, maxInFlightBytes),
+				lastCellNum, sheetNumber, heldUntilDelivered, future);
+		synchronized (this) {
+			if (closed) {
+				future.completeExceptionally(new IllegalStateException(
+						"Reader is closed"));
+				return null;
+			}
+			pending.add(read);
+		}
+		startReads();
+		return read;
+	}
+
+	/**
+	 * Gets the number of files being read.
+	 *
+	 * @return the running count
+	 */
+	public synchronized int getRunningCount() {
+		return running;
+	}
+
+	/**
+	 * Gets the number of files waiting to be read.
+	 *
+	 * @return the pending count
+	 */
+	public synchronized int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * Gets the size of the files being read, and of the files whose results
+	 * are held back for an in order delivery.
+	 *
+	 * @return the bytes
+	 */
+	public synchronized long getInFlightBytes() {
+		return inFlightBytes;
+	}
+
+	/**
+	 * Closes the reader: the files waiting to be read fail, the files being
+	 * read finish. The executor is shut down unless it was given to the
+	 * builder.
+	 */
+	public void close() {
+		List<Read> dropped;
+		synchronized (this) {
+			closed = true;
+			dropped = new ArrayList<Read>(pending);
+			pending.clear();
+		}
+		for (Read read : dropped) {
+			read.future.completeExceptionally(new IllegalStateException(
+					"Reader is closed"));
+		}
+		if (ownExecutor) {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Starts the waiting reads, as many as the limits allow.
+	 */
+	private void startReads() {
+		List<Read> started = new ArrayList<Read>();
+		synchronized (this) {
+			while (!pending.isEmpty() && running < maxConcurrency) {
+				Read read = pending.peek();
+				if (running > 0
+						&& inFlightBytes + read.bytes > maxInFlightBytes) {
+					break;
+				}
+				pending.poll();
+				running++;
+				inFlightBytes += read.bytes;
+				started.add(read);
+			}
+		}
+		for (Read read : started) {
+			try {
+				executor.execute(read);
+			} catch (RejectedExecutionException ex) {
+				read.future.completeExceptionally(ex);
+				finished(read);
+			}
+		}
+	}
+
+	/**
+	 * Frees the place of a finished read and starts the next ones.
+	 *
+	 * @param read
+	 *            the read
+	 */
+	private void finished(Read read) {
+		synchronized (this) {
+			running--;
+			read.finished = true;
+			if (!read.heldUntilDelivered || read.delivered) {
+				inFlightBytes -= read.bytes;
+			}
+		}
+		startReads();
+	}
+
+	/**
+	 * Frees the bytes of a read held until its result was passed to the
+	 * consumer, and starts the next reads.
+	 *
+	 * @param read
+	 *            the read
+	 */
+	private void delivered(Read read) {
+		synchronized (this) {
+			read.delivered = true;
+			if (!read.finished) {
+				// released when the read ends, if it ever started
+				return;
+			}
+			inFlightBytes -= read.bytes;
+		}
+		startReads();
+	}
+
+	/**
+	 * Creates the executor used when none is given: a new virtual thread per
+	 * read if the JVM has virtual threads, daemon threads otherwise.
+	 *
+	 * @return the executor
+	 */
+	private static ExecutorService newDefaultExecutor() {
+		try {
+			Method method = Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (NoSuchMethodException ex) {
+			// before Java 21
+		} catch (Exception ex) {
+			LOG.warn("Virtual threads not available:::" + ex);
+		}
+		final AtomicInteger threadCount = new AtomicInteger();
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "excel-async-"
+						+ threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * The read of one file.
+	 */
+	private final class Read implements Runnable {
+
+		/** The file. */
+		private final Path path;
+
+		/** The bytes counted against the budget. */
+		private final long bytes;
+
+		/** The last cell number. */
+		private final int lastCellNum;
+
+		/** The sheet number. */
+		private final int sheetNumber;
+
+		/** The future of the rows. */
+		private final CompletableFuture<Map<Integer, List<ExcelDTO>>> future;
+
+		/** Whether the bytes are held until the result is delivered. */
+		private final boolean heldUntilDelivered;
+
+		/** Set once the read ended, guarded by the reader. */
+		private boolean finished;
+
+		/** Set once the result was delivered, guarded by the reader. */
+		private boolean delivered;
+
+		/**
+		 * Instantiates a new read.
+		 *
+		 * @param path
+		 *            the file
+		 * @param bytes
+		 *            the bytes counted against the budget
+		 * @param lastCellNum
+		 *            the last cell number
+		 * @param sheetNumber
+		 *            the sheet number
+		 * @param heldUntilDelivered
+		 *            whether the bytes are held until the result is delivered
+		 * @param future
+		 *            the future of the rows
+		 */
+		Read(Path path, long bytes, int lastCellNum, int sheetNumber,
+				boolean heldUntilDelivered,
+				CompletableFuture<Map<Integer, List<ExcelDTO>>> future) {
+			this.path = path;
+			this.bytes = bytes;
+			this.lastCellNum = lastCellNum;
+			this.sheetNumber = sheetNumber;
+			this.heldUntilDelivered = heldUntilDelivered;
+			this.future = future;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run() {
+			try {
+				future.complete(reader.readMap(ExcelSource.of(path),
+						lastCellNum, sheetNumber, null,
+						new HashMap<Integer, List<ExcelDTO>>()));
+			} catch (Exception ex) {
+				LOG.warn("Error reading " + path + ":::" + ex);
+				future.completeExceptionally(ex);
+			} catch (Error error) {
+				future.completeExceptionally(error);
+				throw error;
+			} finally {
+				finished(this);
+			}
+		}
+	}
+
+	/**
+	 * Passes the results of a directory to its consumer, in order or as they
+	 * come, one at a time. In order, the bytes of a read are freed once its
+	 * result is passed on.
+	 */
+	private final class Delivery {
+
+		/** The results held back until the earlier ones are delivered. */
+		private final FileResult[] waiting;
+
+		/** The reads of the results held back. */
+		private final Read[] waitingReads;
+
+		/** Whether the results are delivered in order. */
+		private final boolean inOrder;
+
+		/** The consumer. */
+		private final Consumer<FileResult> consumer;
+
+		/** Completed once all results are delivered. */
+		private final CompletableFuture<Void> done;
+
+		/** The number of results delivered. */
+		private int delivered;
+
+		/** The first error of the consumer. */
+		private Throwable consumerFailure;
+
+		/**
+		 * Instantiates a new delivery.
+		 *
+		 * @param count
+		 *            the number of results
+		 * @param inOrder
+		 *            whether the results are delivered in order
+		 * @param consumer
+		 *            the consumer
+		 * @param done
+		 *            completed once all results are delivered
+		 */
+		Delivery(int count, boolean inOrder, Consumer<FileResult> consumer,
+				CompletableFuture<Void> done) {
+			this.waiting = new FileResult[count];
+			this.waitingReads = new Read[count];
+			this.inOrder = inOrder;
+			this.consumer = consumer;
+			this.done = done;
+			if (count == 0) {
+				done.complete(null);
+			}
+		}
+
+		/**
+		 * Delivers a result, and in order the results it held back.
+		 *
+		 * @param result
+		 *            the result
+		 * @param read
+		 *            the read of the result, null if it was not queued
+		 */
+		void deliver(FileResult result, Read read) {
+			List<Read> passedOn = new ArrayList<Read>();
+			boolean allDelivered;
+			synchronized (this) {
+				if (!inOrder) {
+					accept(result);
+				} else {
+					waiting[result.getIndex()] = result;
+					waitingReads[result.getIndex()] = read;
+					while (delivered < waiting.length
+							&& null != waiting[delivered]) {
+						FileResult next = waiting[delivered];
+						Read nextRead = waitingReads[delivered];
+						waiting[delivered] = null;
+						waitingReads[delivered] = null;
+						accept(next);
+						if (null != nextRead) {
+							passedOn.add(nextRead);
+						}
+					}
+				}
+				allDelivered = delivered == waiting.length;
+			}
+			for (Read passed : passedOn) {
+				delivered(passed);
+			}
+			if (allDelivered) {
+				if (null == consumerFailure) {
+					done.complete(null);
+				} else {
+					done.completeExceptionally(consumerFailure);
+				}
+			}
+		}
+
+		/**
+		 * Passes a result to the consumer.
+		 *
+		 * @param result
+		 *            the result
+		 */
+		private void accept(FileResult result) {
+			delivered++;
+			try {
+				consumer.accept(result);
+			} catch (RuntimeException ex) {
+				LOG.warn("Error in consumer of " + result.getPath() + ":::"
+						+ ex);
+				if (null == consumerFailure) {
+					consumerFailure = ex;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The Class FileResult. The outcome of reading one file of a directory:
+	 * its rows, or the error that stopped the read.
+	 */
+	public static final class FileResult {
+
+		/** The index of the file in the order of the paths. */
+		private final int index;
+
+		/** The file. */
+		private final Path path;
+
+		/** The rows, null if the read failed. */
+		private final Map<Integer, List<ExcelDTO>> rows;
+
+		/** The failure, null if the read succeeded. */
+		private final Throwable failure;
+
+		/**
+		 * Instantiates a new file result.
+		 *
+		 * @param index
+		 *            the index of the file
+		 * @param path
+		 *            the file
+		 * @param rows
+		 *            the rows
+		 * @param failure
+		 *            the failure
+		 */
+		FileResult(int index, Path path, Map<Integer, List<ExcelDTO>> rows,
+				Throwable failure) {
+			this.index = index;
+			this.path = path;
+			this.rows = rows;
+			this.failure = failure;
+		}
+
+		/**
+		 * Gets the index of the file in the order of the paths.
+		 *
+		 * @return the index
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * Gets the file.
+		 *
+		 * @return the path
+		 */
+		public Path getPath() {
+			return path;
+		}
+
+		/**
+		 * Gets the rows.
+		 *
+		 * @return the rows by row number, null if the read failed
+		 */
+		public Map<Integer, List<ExcelDTO>> getRows() {
+			return rows;
+		}
+
+		/**
+		 * Gets the error that stopped the read.
+		 *
+		 * @return the failure, null if the read succeeded
+		 */
+		public Throwable getFailure() {
+			return failure;
+		}
+
+		/**
+		 * Checks if the file was read.
+		 *
+		 * @return true, if the read succeeded
+		 */
+		public boolean isSuccess() {
+			return null == failure;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		public String toString() {
+			return "FileResult [" + path + ", "
+					+ (isSuccess() ? rows.size() + " rows" : "failed: " + failure)
+					+ "]";
+		}
+	}
+
+	/**
+	 * The Class Builder. Collects the configuration of an
+	 * {@link AsyncExcelReader}.
+	 */
+	public static class Builder {
+
+		/** The reader. */
+		private ExcelReader reader;
+
+		/** The executor. */
+		private ExecutorService executor;
+
+		/** The maximum number of files read at the same time. */
+		private int maxConcurrency = Runtime.getRuntime().availableProcessors();
+
+		/** The budget of the files being read. */
+		private long maxInFlightBytes = DEFAULT_MAX_IN_FLIGHT_BYTES;
+
+		/**
+		 * Instantiates a new builder.
+		 */
+		private Builder() {
+		}
+
+		/**
+		 * Sets the reader reading the files.
+		 *
+		 * @param reader
+		 *            the reader, null for the default reader of
+		 *            {@link ExcelParser}
+		 * @return the builder
+		 */
+		public Builder reader(ExcelReader reader) {
+			this.reader = reader;
+			return this;
+		}
+
+		/**
+		 * Sets the executor running the reads, one task per file. It is not
+		 * shut down by {@link AsyncExcelReader#close()}.
+		 *
+		 * @param executor
+		 *            the executor, null for virtual threads where available
+		 * @return the builder
+		 */
+		public Builder executor(ExecutorService executor) {
+			this.executor = executor;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum number of files read at the same time.
+		 *
+		 * @param maxConcurrency
+		 *            the maximum, at least 1
+		 * @return the builder
+		 */
+		public Builder maxConcurrency(int maxConcurrency) {
+			if (maxConcurrency < 1) {
+				throw new IllegalArgumentException(
+						"maxConcurrency must be positive");
+			}
+			this.maxConcurrency = maxConcurrency;
+			return this;
+		}
+
+		/**
+		 * Sets the budget of the size of the files being read at the same
+		 * time. A file does not start while it would exceed the budget,
+		 * unless no other file is being read.
+		 *
+		 * @param maxInFlightBytes
+		 *            the budget in bytes, at least 1
+		 * @return the builder
+		 */
+		public Builder maxInFlightBytes(long maxInFlightBytes) {
+			if (maxInFlightBytes < 1) {
+				throw new IllegalArgumentException(
+						"maxInFlightBytes must be positive");
+			}
+			this.maxInFlightBytes = maxInFlightBytes;
+			return this;
+		}
+
+		/**
+		 * Builds the reader.
+		 *
+		 * @return the async excel reader
+		 */
+		public AsyncExcelReader build() {
+			return new AsyncExcelReader(this);
+		}
+	}
+}
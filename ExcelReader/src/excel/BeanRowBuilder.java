@@ -0,0 +1,243 @@
+package excel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The Class BeanRowBuilder. Fills instances of a row class straight from the
+ * cell values of the parser. The first row is the header; at its end every
+ * {@link ExcelColumn} property is bound to the first column of the same
+ * header, ignoring case, so the rows only look up an array. An instance is
+ * created at the first value of a bound column, rows without any are skipped.
+ *
+ * @param <T>
+ *            the row class
+ * @author Sourav
+ */
+class BeanRowBuilder<T> implements CellHandler {
+
+	/** The row class. */
+	private final BeanType<T> beanType;
+
+	/** Takes the finished instances. */
+	private final Consumer<? super T> consumer;
+
+	/** The headers, indexed by column. */
+	private final List<String> headers = new ArrayList<String>();
+
+	/** The bound properties, indexed by column, null where unbound. */
+	private BeanType.Property[] columns = new BeanType.Property[0];
+
+	/** Set while the header row is being read. */
+	private boolean bIsFirstRow = true;
+
+	/** The row number of the current row. */
+	private int rowNumber;
+
+	/** The instance of the current row, null until it has a value. */
+	private T bean;
+
+	/**
+	 * Instantiates a new bean row builder.
+	 *
+	 * @param beanType
+	 *            the row class
+	 * @param consumer
+	 *            takes the instance of every row
+	 */
+	BeanRowBuilder(BeanType<T> beanType, Consumer<? super T> consumer) {
+		this.beanType = beanType;
+		this.consumer = consumer;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#startRow(int)
+	 */
+	public void startRow(int rowNumber) {
+		this.rowNumber = rowNumber;
+		bean = null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#stringCell(int, java.lang.String)
+	 */
+	public void stringCell(int column, String value) {
+		if (bIsFirstRow) {
+			setHeader(column, value);
+		} else if (null != value && value.length() > 0) {
+			BeanType.Property property = getProperty(column);
+			if (null != property) {
+				try {
+					property.setText(getBean(), value);
+				} catch (IllegalArgumentException ex) {
+					throw failed(column, ex);
+				}
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#numericCell(int, double, excel.CellFormat)
+	 */
+	public void numericCell(int column, double value, CellFormat format) {
+		if (bIsFirstRow) {
+			setHeader(column, format.format(value));
+		} else {
+			BeanType.Property property = getProperty(column);
+			if (null != property) {
+				try {
+					property.setNumber(getBean(), value, format);
+				} catch (IllegalArgumentException ex) {
+					throw failed(column, ex);
+				}
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#booleanCell(int, boolean)
+	 */
+	public void booleanCell(int column, boolean value) {
+		if (bIsFirstRow) {
+			setHeader(column, value ? "TRUE" : "FALSE");
+		} else {
+			BeanType.Property property = getProperty(column);
+			if (null != property) {
+				try {
+					property.setBoolean(getBean(), value);
+				} catch (IllegalArgumentException ex) {
+					throw failed(column, ex);
+				}
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#errorCell(int, java.lang.String)
+	 */
+	public void errorCell(int column, String value) {
+		if (bIsFirstRow) {
+			setHeader(column, value);
+		} else {
+			BeanType.Property property = getProperty(column);
+			if (null != property) {
+				property.setError(getBean(), value);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#blankCell(int)
+	 */
+	public void blankCell(int column) {
+		if (bIsFirstRow) {
+			setHeader(column, "");
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#endRow(int)
+	 */
+	public void endRow(int rowNumber) {
+		if (bIsFirstRow) {
+			bIsFirstRow = false;
+			bind();
+		} else if (null != bean) {
+			consumer.accept(bean);
+			bean = null;
+		}
+	}
+
+	/**
+	 * Sets the header of a column.
+	 *
+	 * @param column
+	 *            the column
+	 * @param value
+	 *            the header
+	 */
+	private void setHeader(int column, String value) {
+		while (headers.size() <= column) {
+			headers.add("");
+		}
+		headers.set(column, null == value ? "" : value.trim());
+	}
+
+	/**
+	 * Binds every property to the first column of its header.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the sheet lacks the column of a required property
+	 */
+	private void bind() {
+		columns = new BeanType.Property[headers.size()];
+		for (BeanType.Property property : beanType.getProperties()) {
+			int column = -1;
+			for (int i = 0; i < headers.size() && column < 0; i++) {
+				if (property.getHeader().equalsIgnoreCase(headers.get(i))) {
+					column = i;
+				}
+			}
+			if (column >= 0) {
+				columns[column] = property;
+			} else if (column < 0 && property.isRequired()) {
+				throw new IllegalArgumentException("The sheet has no column "
+						+ property.getHeader() + " required by "
+						+ beanType.getType().getName());
+			}
+		}
+	}
+
+	/**
+	 * Gets the property bound to a column.
+	 *
+	 * @param column
+	 *            the column
+	 * @return the property, null if none
+	 */
+	private BeanType.Property getProperty(int column) {
+		return column < columns.length ? columns[column] : null;
+	}
+
+	/**
+	 * Gets the instance of the current row, creating it at its first value.
+	 *
+	 * @return the instance
+	 */
+	private T getBean() {
+		if (null == bean) {
+			bean = beanType.newInstance();
+		}
+		return bean;
+	}
+
+	/**
+	 * Adds the position of the cell to a conversion error.
+	 *
+	 * @param column
+	 *            the column
+	 * @param ex
+	 *            the conversion error
+	 * @return the exception
+	 */
+	private IllegalArgumentException failed(int column,
+			IllegalArgumentException ex) {
+		return new IllegalArgumentException("Row " + (rowNumber + 1)
+				+ ", column " + (column + 1) + ": " + ex.getMessage(), ex);
+	}
+}
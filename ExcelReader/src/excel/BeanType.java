@@ -0,0 +1,729 @@
+package excel;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.NumberToTextConverter;
+
+/**
+ * The Class BeanType. What {@link BeanRowBuilder} needs to know about a row
+ * class, found once per class: how to create an instance and the properties
+ * annotated with {@link ExcelColumn}, with their setters bound as lambdas by
+ * {@link LambdaMetafactory} where the class allows it, as method handles
+ * otherwise, so no reflection is left for the rows.
+ *
+ * @param <T>
+ *            the row class
+ * @author Sourav
+ */
+final class BeanType<T> {
+
+	/** The bean type of every class. */
+	private static final ClassValue<BeanType<?>> TYPES = new ClassValue<BeanType<?>>() {
+		protected BeanType<?> computeValue(Class<?> type) {
+			return create(type);
+		}
+	};
+
+	/** The class. */
+	private final Class<T> type;
+
+	/** Creates the instances. */
+	private final Supplier<T> constructor;
+
+	/** The annotated properties. */
+	private final List<Property> properties;
+
+	/**
+	 * Instantiates a new bean type.
+	 *
+	 * @param type
+	 *            the class
+	 * @param constructor
+	 *            creates the instances
+	 * @param properties
+	 *            the annotated properties
+	 */
+	private BeanType(Class<T> type, Supplier<T> constructor,
+			List<Property> properties) {
+		this.type = type;
+		this.constructor = constructor;
+		this.properties = Collections.unmodifiableList(properties);
+	}
+
+	/**
+	 * Gets the bean type of a class.
+	 *
+	 * @param type
+	 *            the class
+	 * @return the bean type
+	 * @throws IllegalArgumentException
+	 *             if the class has no annotated property, no constructor
+	 *             without parameters, a property of an unsupported type or
+	 *             two properties bound to the same column
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> BeanType<T> of(Class<T> type) {
+		return (BeanType<T>) TYPES.get(type);
+	}
+
+	/**
+	 * Gets the class.
+	 *
+	 * @return the class
+	 */
+	Class<T> getType() {
+		return type;
+	}
+
+	/**
+	 * Gets the annotated properties.
+	 *
+	 * @return the properties
+	 */
+	List<Property> getProperties() {
+		return properties;
+	}
+
+	/**
+	 * Creates an instance.
+	 *
+	 * @return the instance
+	 */
+	T newInstance() {
+		return constructor.get();
+	}
+
+	/**
+	 * Finds the constructor and the annotated properties of a class and of
+	 * its superclasses.
+	 *
+	 * @param type
+	 *            the class
+	 * @return the bean type
+	 */
+	private static <T> BeanType<T> create(Class<T> type) {
+		List<Property> properties = new ArrayList<Property>();
+		for (Class<?> declaring = type; null != declaring
+				&& Object.class != declaring; declaring = declaring
+				.getSuperclass()) {
+			for (Field field : declaring.getDeclaredFields()) {
+				ExcelColumn column = field.getAnnotation(ExcelColumn.class);
+				if (null != column) {
+					properties.add(new Property(type, column, field.getName(),
+							field.getType(), setter(type, field)));
+				}
+			}
+			for (Method method : declaring.getDeclaredMethods()) {
+				ExcelColumn column = method.getAnnotation(ExcelColumn.class);
+				if (null != column) {
+					if (method.getParameterTypes().length != 1
+							|| Modifier.isStatic(method.getModifiers())) {
+						throw new IllegalArgumentException("@ExcelColumn method "
+								+ method + " is not a setter");
+					}
+					properties.add(new Property(type, column,
+							propertyName(method.getName()), method
+									.getParameterTypes()[0], setter(type,
+									method)));
+				}
+			}
+		}
+		if (properties.isEmpty()) {
+			throw new IllegalArgumentException("No @ExcelColumn in "
+					+ type.getName());
+		}
+		for (int i = 1; i < properties.size(); i++) {
+			Property property = properties.get(i);
+			for (int j = 0; j < i; j++) {
+				Property other = properties.get(j);
+				if (other.getHeader().equalsIgnoreCase(property.getHeader())) {
+					throw new IllegalArgumentException("Properties "
+							+ other.getName() + " and " + property.getName()
+							+ " of " + type.getName()
+							+ " are both bound to column "
+							+ property.getHeader());
+				}
+			}
+		}
+		return new BeanType<T>(type, constructor(type), properties);
+	}
+
+	/**
+	 * Gets the name of the property of a setter.
+	 *
+	 * @param methodName
+	 *            the name of the setter
+	 * @return setAmount gives amount
+	 */
+	private static String propertyName(String methodName) {
+		if (methodName.length() > 3 && methodName.startsWith("set")) {
+			return Character.toLowerCase(methodName.charAt(3))
+					+ methodName.substring(4);
+		}
+		return methodName;
+	}
+
+	/**
+	 * Binds the setter of a field: its public setter if there is one, the
+	 * field itself otherwise.
+	 *
+	 * @param type
+	 *            the row class
+	 * @param field
+	 *            the field
+	 * @return the setter
+	 */
+	private static BiConsumer<Object, Object> setter(Class<?> type, Field field) {
+		String name = field.getName();
+		try {
+			Method method = type.getMethod("set"
+					+ Character.toUpperCase(name.charAt(0)) + name.substring(1),
+					field.getType());
+			if (!Modifier.isStatic(method.getModifiers())) {
+				return setter(type, method);
+			}
+		} catch (NoSuchMethodException ex) {
+			// no setter, the field is set
+		}
+		if (Modifier.isStatic(field.getModifiers())
+				|| Modifier.isFinal(field.getModifiers())) {
+			throw new IllegalArgumentException("@ExcelColumn field " + field
+					+ " cannot be set");
+		}
+		try {
+			field.setAccessible(true);
+			return invoker(MethodHandles.lookup().unreflectSetter(field));
+		} catch (IllegalAccessException ex) {
+			throw new IllegalArgumentException("Cannot set " + field, ex);
+		}
+	}
+
+	/**
+	 * Binds a setter method: as a lambda when the class and the method are
+	 * public and visible from here, as a method handle otherwise.
+	 *
+	 * @param type
+	 *            the row class
+	 * @param method
+	 *            the setter
+	 * @return the setter
+	 */
+	@SuppressWarnings("unchecked")
+	private static BiConsumer<Object, Object> setter(Class<?> type,
+			Method method) {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		if (isLinkable(type) && Modifier.isPublic(method.getModifiers())) {
+			try {
+				MethodHandle handle = lookup.unreflect(method);
+				CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+						MethodType.methodType(BiConsumer.class), MethodType
+								.methodType(void.class, Object.class,
+										Object.class), handle, MethodType
+								.methodType(void.class, type,
+										wrap(method.getParameterTypes()[0])));
+				return (BiConsumer<Object, Object>) site.getTarget().invoke();
+			} catch (Throwable ex) {
+				// bound as a method handle below
+			}
+		}
+		try {
+			method.setAccessible(true);
+			return invoker(lookup.unreflect(method));
+		} catch (IllegalAccessException ex) {
+			throw new IllegalArgumentException("Cannot call " + method, ex);
+		}
+	}
+
+	/**
+	 * Binds the constructor without parameters.
+	 *
+	 * @param type
+	 *            the row class
+	 * @return the constructor
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> Supplier<T> constructor(Class<T> type) {
+		if (type.isInterface() || Modifier.isAbstract(type.getModifiers())
+				|| (null != type.getEnclosingClass() && !Modifier.isStatic(type
+						.getModifiers()))) {
+			throw new IllegalArgumentException(type.getName()
+					+ " cannot be instantiated");
+		}
+		Constructor<T> constructor;
+		try {
+			constructor = type.getDeclaredConstructor();
+		} catch (NoSuchMethodException ex) {
+			throw new IllegalArgumentException(type.getName()
+					+ " has no constructor without parameters", ex);
+		}
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		if (isLinkable(type) && Modifier.isPublic(constructor.getModifiers())) {
+			try {
+				CallSite site = LambdaMetafactory.metafactory(lookup, "get",
+						MethodType.methodType(Supplier.class), MethodType
+								.methodType(Object.class), lookup
+								.unreflectConstructor(constructor), MethodType
+								.methodType(type));
+				return (Supplier<T>) site.getTarget().invoke();
+			} catch (Throwable ex) {
+				// bound as a method handle below
+			}
+		}
+		try {
+			constructor.setAccessible(true);
+			final MethodHandle handle = lookup.unreflectConstructor(
+					constructor).asType(MethodType.methodType(Object.class));
+			return new Supplier<T>() {
+				public T get() {
+					try {
+						return (T) handle.invokeExact();
+					} catch (RuntimeException ex) {
+						throw ex;
+					} catch (Error ex) {
+						throw ex;
+					} catch (Throwable ex) {
+						throw new IllegalStateException(ex);
+					}
+				}
+			};
+		} catch (IllegalAccessException ex) {
+			throw new IllegalArgumentException("Cannot create "
+					+ type.getName(), ex);
+		}
+	}
+
+	/**
+	 * Checks if lambdas may call into a class: it is public and is the class
+	 * this library sees under its name, so the generated lambda class can
+	 * link to it.
+	 *
+	 * @param type
+	 *            the class
+	 * @return true, if lambdas can be bound
+	 */
+	private static boolean isLinkable(Class<?> type) {
+		if (!Modifier.isPublic(type.getModifiers())) {
+			return false;
+		}
+		try {
+			return Class.forName(type.getName(), false,
+					BeanType.class.getClassLoader()) == type;
+		} catch (ClassNotFoundException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Wraps a setter method handle taking a bean and a value.
+	 *
+	 * @param handle
+	 *            the method handle
+	 * @return the setter
+	 */
+	private static BiConsumer<Object, Object> invoker(MethodHandle handle) {
+		final MethodHandle setter = handle.asType(MethodType.methodType(
+				void.class, Object.class, Object.class));
+		return new BiConsumer<Object, Object>() {
+			public void accept(Object bean, Object value) {
+				try {
+					setter.invokeExact(bean, value);
+				} catch (RuntimeException ex) {
+					throw ex;
+				} catch (Error ex) {
+					throw ex;
+				} catch (Throwable ex) {
+					throw new IllegalStateException(ex);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Gets the wrapper of a primitive type.
+	 *
+	 * @param type
+	 *            the type
+	 * @return the wrapper, or the type itself if not primitive
+	 */
+	private static Class<?> wrap(Class<?> type) {
+		return type.isPrimitive() ? MethodType.methodType(type).wrap()
+				.returnType() : type;
+	}
+
+	/**
+	 * The kinds of values a property can take.
+	 */
+	enum Kind {
+
+		/** The string. */
+		STRING,
+
+		/** The int. */
+		INT,
+
+		/** The long. */
+		LONG,
+
+		/** The short. */
+		SHORT,
+
+		/** The byte. */
+		BYTE,
+
+		/** The double. */
+		DOUBLE,
+
+		/** The float. */
+		FLOAT,
+
+		/** The boolean. */
+		BOOLEAN,
+
+		/** The big decimal. */
+		BIG_DECIMAL,
+
+		/** The date. */
+		DATE,
+
+		/** The local date. */
+		LOCAL_DATE,
+
+		/** The local date time. */
+		LOCAL_DATE_TIME;
+
+		/**
+		 * Gets the kind of a type.
+		 *
+		 * @param type
+		 *            the type
+		 * @return the kind, null if unsupported
+		 */
+		static Kind of(Class<?> type) {
+			Class<?> wrapped = wrap(type);
+			if (String.class == wrapped) {
+				return STRING;
+			} else if (Integer.class == wrapped) {
+				return INT;
+			} else if (Long.class == wrapped) {
+				return LONG;
+			} else if (Short.class == wrapped) {
+				return SHORT;
+			} else if (Byte.class == wrapped) {
+				return BYTE;
+			} else if (Double.class == wrapped) {
+				return DOUBLE;
+			} else if (Float.class == wrapped) {
+				return FLOAT;
+			} else if (Boolean.class == wrapped) {
+				return BOOLEAN;
+			} else if (BigDecimal.class == wrapped) {
+				return BIG_DECIMAL;
+			} else if (Date.class == wrapped) {
+				return DATE;
+			} else if (LocalDate.class == wrapped) {
+				return LOCAL_DATE;
+			} else if (LocalDateTime.class == wrapped) {
+				return LOCAL_DATE_TIME;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * A property bound to a column: converts the cell values to its type and
+	 * sets them.
+	 */
+	static final class Property {
+
+		/** The name. */
+		private final String name;
+
+		/** The header of its column. */
+		private final String header;
+
+		/** Whether the sheet must have the column. */
+		private final boolean required;
+
+		/** The kind of its values. */
+		private final Kind kind;
+
+		/** The setter. */
+		private final BiConsumer<Object, Object> setter;
+
+		/**
+		 * Instantiates a new property.
+		 *
+		 * @param type
+		 *            the row class
+		 * @param column
+		 *            the annotation
+		 * @param name
+		 *            the name of the property
+		 * @param valueType
+		 *            the type of its values
+		 * @param setter
+		 *            the setter
+		 */
+		Property(Class<?> type, ExcelColumn column, String name,
+				Class<?> valueType, BiConsumer<Object, Object> setter) {
+			this.name = name;
+			this.header = column.value().length() > 0 ? column.value() : name;
+			this.required = column.required();
+			this.kind = Kind.of(valueType);
+			this.setter = setter;
+			if (null == kind) {
+				throw new IllegalArgumentException("Unsupported type "
+						+ valueType.getName() + " of " + type.getName() + "."
+						+ name);
+			}
+		}
+
+		/**
+		 * Gets the name.
+		 *
+		 * @return the name of the field or property
+		 */
+		String getName() {
+			return name;
+		}
+
+		/**
+		 * Gets the header of its column.
+		 *
+		 * @return the header
+		 */
+		String getHeader() {
+			return header;
+		}
+
+		/**
+		 * Checks if the sheet must have the column.
+		 *
+		 * @return true, if required
+		 */
+		boolean isRequired() {
+			return required;
+		}
+
+		/**
+		 * Sets the value of a numeric cell.
+		 *
+		 * @param bean
+		 *            the bean
+		 * @param value
+		 *            the value
+		 * @param format
+		 *            the format of the cell
+		 */
+		void setNumber(Object bean, double value, CellFormat format) {
+			Object converted;
+			switch (kind) {
+			case STRING:
+				converted = format.format(value);
+				break;
+			case INT:
+				converted = (int) toLong(value, Integer.MIN_VALUE,
+						Integer.MAX_VALUE);
+				break;
+			case LONG:
+				converted = toLong(value, Long.MIN_VALUE, Long.MAX_VALUE);
+				break;
+			case SHORT:
+				converted = (short) toLong(value, Short.MIN_VALUE,
+						Short.MAX_VALUE);
+				break;
+			case BYTE:
+				converted = (byte) toLong(value, Byte.MIN_VALUE,
+						Byte.MAX_VALUE);
+				break;
+			case DOUBLE:
+				converted = value;
+				break;
+			case FLOAT:
+				converted = (float) value;
+				break;
+			case BOOLEAN:
+				converted = value != 0;
+				break;
+			case BIG_DECIMAL:
+				converted = new BigDecimal(NumberToTextConverter.toText(value));
+				break;
+			default:
+				if (!DateUtil.isValidExcelDate(value)) {
+					throw cannotConvert(value);
+				}
+				Date date = DateUtil.getJavaDate(value);
+				if (kind == Kind.DATE) {
+					converted = date;
+				} else {
+					LocalDateTime dateTime = LocalDateTime.ofInstant(
+							date.toInstant(), ZoneId.systemDefault());
+					converted = kind == Kind.LOCAL_DATE ? dateTime
+							.toLocalDate() : dateTime;
+				}
+			}
+			setter.accept(bean, converted);
+		}
+
+		/**
+		 * Sets the value of a text cell, parsing it for other types than
+		 * String: numbers as by their valueOf methods, booleans as true or
+		 * false ignoring case, local dates and times in ISO format.
+		 *
+		 * @param bean
+		 *            the bean
+		 * @param value
+		 *            the text, not empty
+		 */
+		void setText(Object bean, String value) {
+			Object converted;
+			try {
+				String text = value.trim();
+				switch (kind) {
+				case STRING:
+					converted = value;
+					break;
+				case INT:
+					converted = Integer.valueOf(text);
+					break;
+				case LONG:
+					converted = Long.valueOf(text);
+					break;
+				case SHORT:
+					converted = Short.valueOf(text);
+					break;
+				case BYTE:
+					converted = Byte.valueOf(text);
+					break;
+				case DOUBLE:
+					converted = Double.valueOf(text);
+					break;
+				case FLOAT:
+					converted = Float.valueOf(text);
+					break;
+				case BOOLEAN:
+					if (!"true".equalsIgnoreCase(text)
+							&& !"false".equalsIgnoreCase(text)) {
+						throw cannotConvert(value);
+					}
+					converted = Boolean.valueOf(text);
+					break;
+				case BIG_DECIMAL:
+					converted = new BigDecimal(text);
+					break;
+				case LOCAL_DATE:
+					converted = LocalDate.parse(text);
+					break;
+				case LOCAL_DATE_TIME:
+					converted = LocalDateTime.parse(text);
+					break;
+				default:
+					throw cannotConvert(value);
+				}
+			} catch (NumberFormatException ex) {
+				throw cannotConvert(value, ex);
+			} catch (DateTimeParseException ex) {
+				throw cannotConvert(value, ex);
+			}
+			setter.accept(bean, converted);
+		}
+
+		/**
+		 * Sets the value of a boolean cell.
+		 *
+		 * @param bean
+		 *            the bean
+		 * @param value
+		 *            the value
+		 */
+		void setBoolean(Object bean, boolean value) {
+			if (kind == Kind.BOOLEAN) {
+				setter.accept(bean, value);
+			} else if (kind == Kind.STRING) {
+				setter.accept(bean, value ? "TRUE" : "FALSE");
+			} else {
+				throw cannotConvert(value);
+			}
+		}
+
+		/**
+		 * Sets the value of an error cell; only String properties take it.
+		 *
+		 * @param bean
+		 *            the bean
+		 * @param value
+		 *            the error text
+		 */
+		void setError(Object bean, String value) {
+			if (kind == Kind.STRING) {
+				setter.accept(bean, value);
+			}
+		}
+
+		/**
+		 * Converts a number to a whole number in a range.
+		 *
+		 * @param value
+		 *            the number
+		 * @param min
+		 *            the smallest value
+		 * @param max
+		 *            the largest value
+		 * @return the whole number
+		 */
+		private long toLong(double value, long min, long max) {
+			long whole = (long) value;
+			if (whole != value || whole < min || whole > max) {
+				throw cannotConvert(value);
+			}
+			return whole;
+		}
+
+		/**
+		 * Creates the error of a value the property cannot take.
+		 *
+		 * @param value
+		 *            the value
+		 * @return the exception
+		 */
+		private IllegalArgumentException cannotConvert(Object value) {
+			return cannotConvert(value, null);
+		}
+
+		/**
+		 * Creates the error of a text the property cannot parse.
+		 *
+		 * @param value
+		 *            the value
+		 * @param cause
+		 *            the parse error, may be null
+		 * @return the exception
+		 */
+		private IllegalArgumentException cannotConvert(Object value,
+				RuntimeException cause) {
+			return new IllegalArgumentException("Cannot convert \"" + value
+					+ "\" to " + kind.name().toLowerCase() + " for column "
+					+ header, cause);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package excel;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The Class ByteBufferInputStream. Reads the remaining bytes of a buffer
+ * without copying them first. The position of the given buffer is not changed.
+ *
+ * @author Sourav
+ */
+class ByteBufferInputStream extends InputStream {
+
+	/** The buffer. */
+	private final ByteBuffer buffer;
+
+	/**
+	 * Instantiates a new byte buffer input stream.
+	 *
+	 * @param buffer
+	 *            the buffer
+	 */
+	ByteBufferInputStream(ByteBuffer buffer) {
+		this.buffer = buffer.duplicate();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.InputStream#read()
+	 */
+	public int read() {
+		return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.InputStream#read(byte[], int, int)
+	 */
+	public int read(byte[] bytes, int offset, int length) {
+		if (length == 0) {
+			return 0;
+		}
+		if (!buffer.hasRemaining()) {
+			return -1;
+		}
+		int count = Math.min(length, buffer.remaining());
+		buffer.get(bytes, offset, count);
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.InputStream#skip(long)
+	 */
+	public long skip(long count) {
+		int skipped = (int) Math.max(0, Math.min(count, buffer.remaining()));
+		buffer.position(buffer.position() + skipped);
+		return skipped;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.InputStream#available()
+	 */
+	public int available() {
+		return buffer.remaining();
+	}
+}
@@ -0,0 +1,838 @@
+package excel;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.xml.sax.SAXException;
+
+import excel.SheetHandler.xssfDataType;
+
+/**
+ * The Class ByteSheetTokenizer. Reads the xml of an xlsx sheet straight from
+ * its inflated bytes, without a SAX parser, and hands the rows and raw cells
+ * to the hooks of a {@link SheetHandler}. Element and attribute names are
+ * compared as bytes, cell references, types and style indexes are decoded in
+ * place, and the value text of a cell is decoded into one buffer reused for
+ * all cells, so reading a cell allocates nothing.
+ * <p>
+ * Only what a worksheet needs is supported: UTF-8, the predefined and
+ * numeric character references, CDATA sections, comments and processing
+ * instructions. Element names are matched as written, prefix included, like
+ * {@link SheetHandler} does. Rows and cells without a reference follow the
+ * previous one.
+ *
+ * @author Sourav
+ */
+class ByteSheetTokenizer {
+
+	/** The Constant BUFFER_SIZE. */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/** The Constant END. */
+	private static final int END = -1;
+
+	private static final byte[] ROW = bytes("row");
+	private static final byte[] CELL = bytes("c");
+	private static final byte[] VALUE = bytes("v");
+	private static final byte[] INLINE_STRING = bytes("is");
+	private static final byte[] REFERENCE = bytes("r");
+	private static final byte[] TYPE = bytes("t");
+	private static final byte[] STYLE = bytes("s");
+	private static final byte[] BOOLEAN_TYPE = bytes("b");
+	private static final byte[] ERROR_TYPE = bytes("e");
+	private static final byte[] INLINE_STRING_TYPE = bytes("inlineStr");
+	private static final byte[] SST_TYPE = bytes("s");
+	private static final byte[] STRING_TYPE = bytes("str");
+	private static final byte[] CDATA = bytes("CDATA[");
+
+	/** The sheet handler receiving the rows and cells. */
+	private final SheetHandler handler;
+
+	/** The last cell num. */
+	private final int lastCellNum;
+
+	/** The input buffer. */
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	/** The input. */
+	private InputStream input;
+
+	/** The position in the buffer. */
+	private int position;
+
+	/** The end of the data in the buffer. */
+	private int limit;
+
+	/** The name of the current element. */
+	private byte[] name = new byte[32];
+
+	/** The length of the name. */
+	private int nameLength;
+
+	/** The name of the current attribute. */
+	private byte[] attributeName = new byte[32];
+
+	/** The length of the attribute name. */
+	private int attributeNameLength;
+
+	/** The value of the current attribute. */
+	private byte[] attributeValue = new byte[64];
+
+	/** The length of the attribute value. */
+	private int attributeValueLength;
+
+	/** The value text of the current cell. */
+	private final StringBuilder value = new StringBuilder();
+
+	/** Set while inside a value element. */
+	private boolean vExists;
+
+	/** Set when the current cell has a value element. */
+	private boolean cellHasValue;
+
+	/** The type of the current cell. */
+	private xssfDataType dataType;
+
+	/** The style of the current cell, -1 if none. */
+	private int styleIndex;
+
+	/** The column of the current cell. */
+	private int currentColumn = -1;
+
+	/** The number of the current row (Starts from 1). */
+	private int rownum;
+
+	/**
+	 * Instantiates a new byte sheet tokenizer.
+	 *
+	 * @param handler
+	 *            the sheet handler receiving the rows and cells
+	 */
+	ByteSheetTokenizer(SheetHandler handler) {
+		this.handler = handler;
+		this.lastCellNum = handler.getLastCellNum();
+	}
+
+	/**
+	 * Reads the sheet.
+	 *
+	 * @param sheetData
+	 *            the content of the sheet xml, not closed
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             if the xml is malformed, or thrown by the handler
+	 */
+	void parse(InputStream sheetData) throws IOException, SAXException {
+		this.input = sheetData;
+		handler.startDocument();
+		skipByteOrderMark();
+
+		int b;
+		while ((b = read()) != END) {
+			if (b != '<') {
+				if (vExists) {
+					appendText(b);
+				}
+			} else {
+				b = read();
+				if (b == '/') {
+					endTag();
+				} else if (b == '?') {
+					skipPast('?', '>');
+				} else if (b == '!') {
+					markup();
+				} else {
+					startTag(b);
+				}
+			}
+		}
+		handler.endDocument();
+	}
+
+	/**
+	 * Reads a start tag, the first byte of the name read.
+	 *
+	 * @param first
+	 *            the first byte of the name
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	private void startTag(int first) throws IOException, SAXException {
+		int b = readName(first);
+		if (is(VALUE) || is(INLINE_STRING)) {
+			vExists = true;
+			cellHasValue = true;
+			b = skipAttributes(b);
+			if (b == '/') {
+				vExists = false;
+			}
+		} else if (is(ROW)) {
+			b = rowAttributes(b);
+			handler.startRow(rownum - 1);
+			if (b == '/') {
+				handler.endRow(rownum - 1);
+			}
+		} else if (is(CELL)) {
+			value.setLength(0);
+			cellHasValue = false;
+			b = cellAttributes(b);
+			if (b == '/') {
+				endCell();
+			}
+		} else {
+			skipAttributes(b);
+		}
+	}
+
+	/**
+	 * Reads an end tag, the slash read.
+	 *
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	private void endTag() throws IOException, SAXException {
+		int b = readName(read());
+		while (b != '>') {
+			if (b == END) {
+				throw new SAXException("Unexpected end of sheet in end tag");
+			}
+			b = read();
+		}
+		if (is(VALUE) || is(INLINE_STRING)) {
+			vExists = false;
+		} else if (is(CELL)) {
+			endCell();
+		} else if (is(ROW)) {
+			handler.endRow(rownum - 1);
+		}
+	}
+
+	/**
+	 * Ends the current cell: its value is complete.
+	 *
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	private void endCell() throws SAXException {
+		if (currentColumn >= lastCellNum) {
+			return;
+		}
+		handler.cell(currentColumn, dataType, styleIndex,
+				cellHasValue ? value : null);
+	}
+
+	/**
+	 * Reads the attributes of a row.
+	 *
+	 * @param b
+	 *            the byte after the name
+	 * @return the '/' of an empty element or '&gt;'
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	private int rowAttributes(int b) throws IOException, SAXException {
+		boolean referenced = false;
+		while ((b = readAttribute(b)) == 0) {
+			if (attributeIs(REFERENCE)) {
+				rownum = parseInt(0, attributeValueLength);
+				referenced = true;
+			}
+			b = read();
+		}
+		if (!referenced) {
+			rownum++;
+		}
+		currentColumn = -1;
+		return b;
+	}
+
+	/**
+	 * Reads the attributes of a cell and sets up its column, type and style.
+	 *
+	 * @param b
+	 *            the byte after the name
+	 * @return the '/' of an empty element or '&gt;'
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	private int cellAttributes(int b) throws IOException, SAXException {
+		boolean referenced = false;
+		boolean typed = false;
+		boolean styled = false;
+		int style = 0;
+		dataType = xssfDataType.NUMBER;
+		styleIndex = -1;
+
+		while ((b = readAttribute(b)) == 0) {
+			if (attributeIs(REFERENCE)) {
+				currentColumn = columnIndex();
+				referenced = true;
+			} else if (attributeIs(TYPE)) {
+				typed = true;
+				if (valueIs(BOOLEAN_TYPE)) {
+					dataType = xssfDataType.BOOL;
+				} else if (valueIs(ERROR_TYPE)) {
+					dataType = xssfDataType.ERROR;
+				} else if (valueIs(INLINE_STRING_TYPE)) {
+					dataType = xssfDataType.INLINESTR;
+				} else if (valueIs(SST_TYPE)) {
+					dataType = xssfDataType.SSTINDEX;
+				} else if (valueIs(STRING_TYPE)) {
+					dataType = xssfDataType.FORMULA;
+				}
+			} else if (attributeIs(STYLE)) {
+				styled = true;
+				style = parseInt(0, attributeValueLength);
+			}
+			b = read();
+		}
+
+		if (!referenced) {
+			currentColumn++;
+		}
+		if (!typed && !styled) {
+			dataType = xssfDataType.NO_STYLE;
+		} else if (dataType == xssfDataType.NUMBER && styled) {
+			styleIndex = style;
+		}
+		return b;
+	}
+
+	/**
+	 * Reads the next attribute, if any.
+	 *
+	 * @param b
+	 *            the byte after the name or the previous attribute
+	 * @return 0 if an attribute was read, else the '/' of an empty element or
+	 *         '&gt;'
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	private int readAttribute(int b) throws IOException, SAXException {
+		b = skipWhitespace(b);
+		if (b == '>') {
+			return b;
+		}
+		if (b == '/') {
+			if (read() != '>') {
+				throw new SAXException("Expected '>' after '/'");
+			}
+			return '/';
+		}
+		if (b == END) {
+			throw new SAXException("Unexpected end of sheet in tag");
+		}
+
+		attributeNameLength = 0;
+		while (b != '=' && !isWhitespace(b)) {
+			if (b == '>' || b == '/' || b == END) {
+				throw new SAXException("Attribute without value");
+			}
+			if (attributeNameLength == attributeName.length) {
+				attributeName = grow(attributeName);
+			}
+			attributeName[attributeNameLength++] = (byte) b;
+			b = read();
+		}
+		b = skipWhitespace(b);
+		if (b != '=') {
+			throw new SAXException("Expected '=' in attribute");
+		}
+		int quote = skipWhitespace(read());
+		if (quote != '"' && quote != '\'') {
+			throw new SAXException("Expected quoted attribute value");
+		}
+
+		attributeValueLength = 0;
+		while ((b = read()) != quote) {
+			if (b == END) {
+				throw new SAXException("Unexpected end of sheet in attribute");
+			}
+			if (attributeValueLength == attributeValue.length) {
+				attributeValue = grow(attributeValue);
+			}
+			attributeValue[attributeValueLength++] = (byte) b;
+		}
+		return 0;
+	}
+
+	/**
+	 * Skips the attributes of an element.
+	 *
+	 * @param b
+	 *            the byte after the name
+	 * @return the '/' of an empty element or '&gt;'
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	private int skipAttributes(int b) throws IOException, SAXException {
+		while ((b = readAttribute(b)) == 0) {
+			b = read();
+		}
+		return b;
+	}
+
+	/**
+	 * Reads a comment, CDATA section or document type declaration, the
+	 * "&lt;!" read.
+	 *
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	private void markup() throws IOException, SAXException {
+		int b = read();
+		if (b == '-') {
+			if (read() != '-') {
+				throw new SAXException("Malformed comment");
+			}
+			// skip to "-->"
+			int dashes = 0;
+			while ((b = read()) != END) {
+				if (b == '>' && dashes >= 2) {
+					return;
+				}
+				dashes = b == '-' ? dashes + 1 : 0;
+			}
+			throw new SAXException("Unexpected end of sheet in comment");
+		} else if (b == '[') {
+			for (int i = 0; i < CDATA.length; i++) {
+				if (read() != CDATA[i]) {
+					throw new SAXException("Malformed CDATA section");
+				}
+			}
+			// copy up to "]]>"
+			int brackets = 0;
+			while ((b = read()) != END) {
+				if (b == '>' && brackets >= 2) {
+					if (vExists) {
+						value.setLength(value.length() - 2);
+					}
+					return;
+				}
+				brackets = b == ']' ? brackets + 1 : 0;
+				if (vExists) {
+					appendCharacter(b);
+				}
+			}
+			throw new SAXException("Unexpected end of sheet in CDATA");
+		} else {
+			skipPast('>', '>');
+		}
+	}
+
+	/**
+	 * Appends a byte of value text, resolving character references and line
+	 * ends as an xml parser does.
+	 *
+	 * @param b
+	 *            the byte
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	private void appendText(int b) throws IOException, SAXException {
+		if (b == '&') {
+			appendReference();
+		} else {
+			appendCharacter(b);
+		}
+	}
+
+	/**
+	 * Appends a byte of value text, decoding UTF-8 and line ends.
+	 *
+	 * @param b
+	 *            the byte
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	private void appendCharacter(int b) throws IOException, SAXException {
+		if (b < 0x80) {
+			if (b == '\r') {
+				if (peek() == '\n') {
+					return;
+				}
+				b = '\n';
+			}
+			value.append((char) b);
+			return;
+		}
+
+		int codePoint;
+		int continuation;
+		if ((b & 0xE0) == 0xC0) {
+			codePoint = b & 0x1F;
+			continuation = 1;
+		} else if ((b & 0xF0) == 0xE0) {
+			codePoint = b & 0x0F;
+			continuation = 2;
+		} else if ((b & 0xF8) == 0xF0) {
+			codePoint = b & 0x07;
+			continuation = 3;
+		} else {
+			throw new SAXException("Invalid UTF-8 byte " + b);
+		}
+		for (int i = 0; i < continuation; i++) {
+			int next = read();
+			if ((next & 0xC0) != 0x80) {
+				throw new SAXException("Invalid UTF-8 sequence");
+			}
+			codePoint = (codePoint << 6) | (next & 0x3F);
+		}
+		value.appendCodePoint(codePoint);
+	}
+
+	/**
+	 * Appends a character or entity reference, the '&amp;' read.
+	 *
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	private void appendReference() throws IOException, SAXException {
+		nameLength = 0;
+		int b;
+		while ((b = read()) != ';') {
+			if (b == END || nameLength == 16) {
+				throw new SAXException("Malformed reference");
+			}
+			name[nameLength++] = (byte) b;
+		}
+
+		if (nameLength > 1 && name[0] == '#') {
+			int codePoint = 0;
+			boolean hex = name[1] == 'x';
+			for (int i = hex ? 2 : 1; i < nameLength; i++) {
+				int digit = Character.digit(name[i], hex ? 16 : 10);
+				if (digit < 0) {
+					throw new SAXException("Malformed character reference");
+				}
+				codePoint = codePoint * (hex ? 16 : 10) + digit;
+			}
+			value.appendCodePoint(codePoint);
+		} else if (is("lt")) {
+			value.append('<');
+		} else if (is("gt")) {
+			value.append('>');
+		} else if (is("amp")) {
+			value.append('&');
+		} else if (is("quot")) {
+			value.append('"');
+		} else if (is("apos")) {
+			value.append('\'');
+		} else {
+			throw new SAXException("Undeclared entity "
+					+ new String(name, 0, nameLength, "US-ASCII"));
+		}
+	}
+
+	/**
+	 * Reads an element name.
+	 *
+	 * @param b
+	 *            the first byte of the name
+	 * @return the byte after the name
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private int readName(int b) throws IOException {
+		nameLength = 0;
+		while (b != END && b != '>' && b != '/' && !isWhitespace(b)) {
+			if (nameLength == name.length) {
+				name = grow(name);
+			}
+			name[nameLength++] = (byte) b;
+			b = read();
+		}
+		return b;
+	}
+
+	/**
+	 * Decodes the column of a cell reference such as "AB12".
+	 *
+	 * @return the column index (Starts from 0)
+	 */
+	private int columnIndex() {
+		int column = -1;
+		for (int i = 0; i < attributeValueLength; i++) {
+			int c = attributeValue[i];
+			if (c >= '0' && c <= '9') {
+				break;
+			}
+			column = (column + 1) * 26 + c - 'A';
+		}
+		return column;
+	}
+
+	/**
+	 * Parses a non negative int from the attribute value.
+	 *
+	 * @param start
+	 *            the start
+	 * @param end
+	 *            the end
+	 * @return the int
+	 * @throws SAXException
+	 *             if the value is no number
+	 */
+	private int parseInt(int start, int end) throws SAXException {
+		if (start == end || end - start > 9) {
+			throw new SAXException("Invalid number '"
+					+ new String(attributeValue, 0, attributeValueLength)
+					+ "'");
+		}
+		int result = 0;
+		for (int i = start; i < end; i++) {
+			int digit = attributeValue[i] - '0';
+			if (digit < 0 || digit > 9) {
+				throw new SAXException("Invalid number '"
+						+ new String(attributeValue, 0, attributeValueLength)
+						+ "'");
+			}
+			result = result * 10 + digit;
+		}
+		return result;
+	}
+
+	/**
+	 * Checks if the element name is the given one.
+	 *
+	 * @param expected
+	 *            the expected name
+	 * @return true, if equal
+	 */
+	private boolean is(byte[] expected) {
+		return equal(name, nameLength, expected);
+	}
+
+	/**
+	 * Checks if the reference name is the given one.
+	 *
+	 * @param expected
+	 *            the expected name, ASCII
+	 * @return true, if equal
+	 */
+	private boolean is(String expected) {
+		if (nameLength != expected.length()) {
+			return false;
+		}
+		for (int i = 0; i < nameLength; i++) {
+			if (name[i] != expected.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if the attribute name is the given one.
+	 *
+	 * @param expected
+	 *            the expected name
+	 * @return true, if equal
+	 */
+	private boolean attributeIs(byte[] expected) {
+		return equal(attributeName, attributeNameLength, expected);
+	}
+
+	/**
+	 * Checks if the attribute value is the given one.
+	 *
+	 * @param expected
+	 *            the expected value
+	 * @return true, if equal
+	 */
+	private boolean valueIs(byte[] expected) {
+		return equal(attributeValue, attributeValueLength, expected);
+	}
+
+	/**
+	 * Compares bytes.
+	 *
+	 * @param actual
+	 *            the actual bytes
+	 * @param length
+	 *            the number of actual bytes
+	 * @param expected
+	 *            the expected bytes
+	 * @return true, if equal
+	 */
+	private static boolean equal(byte[] actual, int length, byte[] expected) {
+		if (length != expected.length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (actual[i] != expected[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Skips whitespace.
+	 *
+	 * @param b
+	 *            the current byte
+	 * @return the first byte which is no whitespace
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private int skipWhitespace(int b) throws IOException {
+		while (isWhitespace(b)) {
+			b = read();
+		}
+		return b;
+	}
+
+	/**
+	 * Skips past the given end, such as the "?&gt;" ending a processing
+	 * instruction; both bytes may be the same to skip past a single byte.
+	 *
+	 * @param first
+	 *            the first byte of the end
+	 * @param last
+	 *            the last byte of the end
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             at the end of the sheet
+	 */
+	private void skipPast(int first, int last) throws IOException,
+			SAXException {
+		int previous = END;
+		int b;
+		while ((b = read()) != END) {
+			if (b == last && (first == last || previous == first)) {
+				return;
+			}
+			previous = b;
+		}
+		throw new SAXException("Unexpected end of sheet");
+	}
+
+	/**
+	 * Skips a UTF-8 byte order mark; rejects UTF-16.
+	 *
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             if the sheet is not UTF-8
+	 */
+	private void skipByteOrderMark() throws IOException, SAXException {
+		int b = peek();
+		if (b == 0xEF) {
+			read();
+			read();
+			read();
+		} else if (b == 0xFE || b == 0xFF) {
+			throw new SAXException("Only UTF-8 sheets can be read byte wise");
+		}
+	}
+
+	/**
+	 * Checks if a byte is xml whitespace.
+	 *
+	 * @param b
+	 *            the byte
+	 * @return true, if whitespace
+	 */
+	private static boolean isWhitespace(int b) {
+		return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+	}
+
+	/**
+	 * Reads the next byte.
+	 *
+	 * @return the byte, or END
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private int read() throws IOException {
+		if (position == limit && !fill()) {
+			return END;
+		}
+		return buffer[position++] & 0xFF;
+	}
+
+	/**
+	 * Gives the next byte without reading it.
+	 *
+	 * @return the byte, or END
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private int peek() throws IOException {
+		if (position == limit && !fill()) {
+			return END;
+		}
+		return buffer[position] & 0xFF;
+	}
+
+	/**
+	 * Fills the buffer.
+	 *
+	 * @return false at the end of the input
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private boolean fill() throws IOException {
+		int count;
+		do {
+			count = input.read(buffer, 0, buffer.length);
+		} while (count == 0);
+		if (count < 0) {
+			return false;
+		}
+		position = 0;
+		limit = count;
+		return true;
+	}
+
+	/**
+	 * Doubles an array.
+	 *
+	 * @param array
+	 *            the array
+	 * @return the larger copy
+	 */
+	private static byte[] grow(byte[] array) {
+		byte[] grown = new byte[array.length * 2];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	/**
+	 * Gets the ASCII bytes of a name.
+	 *
+	 * @param name
+	 *            the name
+	 * @return the bytes
+	 */
+	private static byte[] bytes(String name) {
+		byte[] bytes = new byte[name.length()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) name.charAt(i);
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,88 @@
+package excel;
+
+/**
+ * The Interface CellFormat. Turns the raw value of a numeric cell into the
+ * text stored in {@link ExcelDTO}.
+ * 
+ * @author Sourav
+ */
+interface CellFormat {
+
+	/**
+	 * Checks if the format is a date format.
+	 * 
+	 * @return true, if numeric values with this format are dates
+	 */
+	boolean isDate();
+
+	/**
+	 * Format.
+	 * 
+	 * @param value
+	 *            the raw numeric value
+	 * @return the formatted text
+	 */
+	String format(double value);
+
+	/**
+	 * Gets a format that stays valid after the call it was passed to, for
+	 * formatting the value later. Shared formats return themselves; formats
+	 * only valid during the call return the text of the current cell.
+	 * 
+	 * @return the format
+	 */
+	CellFormat retain();
+
+	/**
+	 * Format holding the text of one cell.
+	 */
+	final class Text implements CellFormat {
+
+		/** The text. */
+		private final String text;
+
+		/** The date flag. */
+		private final boolean date;
+
+		/**
+		 * Instantiates a new text format.
+		 * 
+		 * @param text
+		 *            the text
+		 * @param date
+		 *            whether the value is a date
+		 */
+		Text(String text, boolean date) {
+			this.text = text;
+			this.date = date;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellFormat#isDate()
+		 */
+		public boolean isDate() {
+			return date;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellFormat#format(double)
+		 */
+		public String format(double ignored) {
+			return text;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellFormat#retain()
+		 */
+		public CellFormat retain() {
+			return this;
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package excel;
+
+/**
+ * The Interface CellHandler. Receives the typed cell values of a sheet while
+ * it is being parsed, before they are turned into any result structure.
+ * 
+ * @author Sourav
+ */
+interface CellHandler {
+
+	/**
+	 * Start of a row.
+	 * 
+	 * @param rowNumber
+	 *            the row number (Starts from 0)
+	 */
+	void startRow(int rowNumber);
+
+	/**
+	 * A text cell.
+	 * 
+	 * @param column
+	 *            the column index (Starts from 0)
+	 * @param value
+	 *            the text
+	 */
+	void stringCell(int column, String value);
+
+	/**
+	 * A numeric or date cell.
+	 * 
+	 * @param column
+	 *            the column index (Starts from 0)
+	 * @param value
+	 *            the raw numeric value, dates are excel serial dates
+	 * @param format
+	 *            the format of the cell, only valid during this call
+	 */
+	void numericCell(int column, double value, CellFormat format);
+
+	/**
+	 * A boolean cell.
+	 * 
+	 * @param column
+	 *            the column index (Starts from 0)
+	 * @param value
+	 *            the value
+	 */
+	void booleanCell(int column, boolean value);
+
+	/**
+	 * An error cell.
+	 * 
+	 * @param column
+	 *            the column index (Starts from 0)
+	 * @param value
+	 *            the error text, e.g. #DIV/0!
+	 */
+	void errorCell(int column, String value);
+
+	/**
+	 * A cell that is present in the sheet but has no value.
+	 * 
+	 * @param column
+	 *            the column index (Starts from 0)
+	 */
+	void blankCell(int column);
+
+	/**
+	 * End of a row.
+	 * 
+	 * @param rowNumber
+	 *            the row number (Starts from 0)
+	 */
+	void endRow(int rowNumber);
+
+}
@@ -0,0 +1,262 @@
+package excel;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The Class CellPredicate. A condition on the typed value of one cell, used
+ * with {@link ReadOptions.Builder#where(String, CellPredicate)} to keep only
+ * the rows whose cells match. The parser tests a row as soon as the cells the
+ * conditions are on have been read; the rest of a rejected row is skipped
+ * without being converted.
+ * <p>
+ * Each kind of cell is tested by its own method, which rejects the cell
+ * unless overridden: text and error cells by {@link #testText(String)},
+ * numeric and date cells by {@link #testNumber(double, boolean)} (dates as
+ * excel serial dates, e.g. from
+ * {@link org.apache.poi.ss.usermodel.DateUtil#getExcelDate(java.util.Date)}),
+ * boolean cells by {@link #testBoolean(boolean)} and cells which are missing
+ * or have no value by {@link #testBlank()}. Predicates must be stateless, as
+ * they may be shared by several reads at the same time.
+ *
+ * @author Sourav
+ */
+public abstract class CellPredicate {
+
+	/**
+	 * Tests a text cell, or an error cell with its error text, e.g. #DIV/0!.
+	 *
+	 * @param value
+	 *            the text
+	 * @return true, if the cell matches
+	 */
+	protected boolean testText(String value) {
+		return false;
+	}
+
+	/**
+	 * Tests a numeric or date cell.
+	 *
+	 * @param value
+	 *            the value, an excel serial date for dates
+	 * @param date
+	 *            whether the cell is formatted as a date
+	 * @return true, if the cell matches
+	 */
+	protected boolean testNumber(double value, boolean date) {
+		return false;
+	}
+
+	/**
+	 * Tests a boolean cell. By default as the text TRUE or FALSE.
+	 *
+	 * @param value
+	 *            the value
+	 * @return true, if the cell matches
+	 */
+	protected boolean testBoolean(boolean value) {
+		return testText(value ? "TRUE" : "FALSE");
+	}
+
+	/**
+	 * Tests a cell that is missing from the row or has no value.
+	 *
+	 * @return true, if the cell matches
+	 */
+	protected boolean testBlank() {
+		return false;
+	}
+
+	/**
+	 * Text cells equal to the value.
+	 *
+	 * @param value
+	 *            the value
+	 * @return the cell predicate
+	 */
+	public static CellPredicate equalTo(String value) {
+		return in(value);
+	}
+
+	/**
+	 * Cells which are not text cells equal to the value, including numbers
+	 * and blank cells.
+	 *
+	 * @param value
+	 *            the value
+	 * @return the cell predicate
+	 */
+	public static CellPredicate notEqualTo(String value) {
+		return not(equalTo(value));
+	}
+
+	/**
+	 * Text cells equal to one of the values.
+	 *
+	 * @param values
+	 *            the values
+	 * @return the cell predicate
+	 */
+	public static CellPredicate in(String... values) {
+		final Set<String> set = new HashSet<String>(Arrays.asList(values));
+		return new CellPredicate() {
+			protected boolean testText(String value) {
+				return set.contains(value);
+			}
+		};
+	}
+
+	/**
+	 * Numeric or date cells greater than the bound.
+	 *
+	 * @param bound
+	 *            the bound
+	 * @return the cell predicate
+	 */
+	public static CellPredicate greaterThan(final double bound) {
+		return new CellPredicate() {
+			protected boolean testNumber(double value, boolean date) {
+				return value > bound;
+			}
+		};
+	}
+
+	/**
+	 * Numeric or date cells less than the bound.
+	 *
+	 * @param bound
+	 *            the bound
+	 * @return the cell predicate
+	 */
+	public static CellPredicate lessThan(final double bound) {
+		return new CellPredicate() {
+			protected boolean testNumber(double value, boolean date) {
+				return value < bound;
+			}
+		};
+	}
+
+	/**
+	 * Numeric or date cells between the bounds, both included.
+	 *
+	 * @param lowest
+	 *            the lowest value
+	 * @param highest
+	 *            the highest value
+	 * @return the cell predicate
+	 */
+	public static CellPredicate between(final double lowest,
+			final double highest) {
+		return new CellPredicate() {
+			protected boolean testNumber(double value, boolean date) {
+				return value >= lowest && value <= highest;
+			}
+		};
+	}
+
+	/**
+	 * Cells which are missing, have no value or hold an empty text.
+	 *
+	 * @return the cell predicate
+	 */
+	public static CellPredicate isBlank() {
+		return new CellPredicate() {
+			protected boolean testText(String value) {
+				return value.length() == 0;
+			}
+
+			protected boolean testBoolean(boolean value) {
+				return false;
+			}
+
+			protected boolean testBlank() {
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Cells holding a value.
+	 *
+	 * @return the cell predicate
+	 */
+	public static CellPredicate isNotBlank() {
+		return not(isBlank());
+	}
+
+	/**
+	 * Cells not matching the predicate.
+	 *
+	 * @param predicate
+	 *            the predicate
+	 * @return the cell predicate
+	 */
+	public static CellPredicate not(final CellPredicate predicate) {
+		return new CellPredicate() {
+			protected boolean testText(String value) {
+				return !predicate.testText(value);
+			}
+
+			protected boolean testNumber(double value, boolean date) {
+				return !predicate.testNumber(value, date);
+			}
+
+			protected boolean testBoolean(boolean value) {
+				return !predicate.testBoolean(value);
+			}
+
+			protected boolean testBlank() {
+				return !predicate.testBlank();
+			}
+		};
+	}
+
+	/**
+	 * Cells matching any of the predicates.
+	 *
+	 * @param predicates
+	 *            the predicates
+	 * @return the cell predicate
+	 */
+	public static CellPredicate anyOf(CellPredicate... predicates) {
+		final CellPredicate[] copy = predicates.clone();
+		return new CellPredicate() {
+			protected boolean testText(String value) {
+				for (CellPredicate predicate : copy) {
+					if (predicate.testText(value)) {
+						return true;
+					}
+				}
+				return false;
+			}
+
+			protected boolean testNumber(double value, boolean date) {
+				for (CellPredicate predicate : copy) {
+					if (predicate.testNumber(value, date)) {
+						return true;
+					}
+				}
+				return false;
+			}
+
+			protected boolean testBoolean(boolean value) {
+				for (CellPredicate predicate : copy) {
+					if (predicate.testBoolean(value)) {
+						return true;
+					}
+				}
+				return false;
+			}
+
+			protected boolean testBlank() {
+				for (CellPredicate predicate : copy) {
+					if (predicate.testBlank()) {
+						return true;
+					}
+				}
+				return false;
+			}
+		};
+	}
+}
@@ -0,0 +1,346 @@
+package excel;
+
+import java.util.BitSet;
+import java.util.Date;
+
+import org.apache.poi.ss.util.NumberToTextConverter;
+
+/**
+ * The Class ColumnarSheet. A sheet stored column by column: numeric columns
+ * as <code>double[]</code>, date columns as <code>long[]</code> epoch millis,
+ * boolean columns as <code>long[]</code> of 0 and 1, and text columns as
+ * dictionary codes into a per column string dictionary. Every column has a
+ * bitmap of its null (blank or missing) cells. The header row is not part of
+ * the data, it only gives the column names.
+ *
+ * @author Sourav
+ */
+public class ColumnarSheet {
+
+	/**
+	 * The Enum ColumnType.
+	 */
+	public enum ColumnType {
+
+		/** Only null cells. */
+		EMPTY,
+
+		/** Numeric cells, see {@link Column#getDoubles()}. */
+		NUMBER,
+
+		/** Date cells, see {@link Column#getLongs()}. */
+		DATE,
+
+		/** Boolean cells, see {@link Column#getLongs()}. */
+		BOOLEAN,
+
+		/** Text cells, see {@link Column#getCodes()}. */
+		STRING
+	}
+
+	/** The column names. */
+	private final String[] columnNames;
+
+	/** The columns. */
+	private final Column[] columns;
+
+	/** The row numbers in the sheet. */
+	private final int[] rowNumbers;
+
+	/** The row count. */
+	private final int rowCount;
+
+	/**
+	 * Instantiates a new columnar sheet.
+	 *
+	 * @param columns
+	 *            the columns
+	 * @param rowNumbers
+	 *            the row numbers in the sheet
+	 * @param rowCount
+	 *            the row count
+	 */
+	ColumnarSheet(Column[] columns, int[] rowNumbers, int rowCount) {
+		this.columns = columns;
+		this.rowNumbers = rowNumbers;
+		this.rowCount = rowCount;
+		this.columnNames = new String[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			columnNames[i] = columns[i].getName();
+		}
+	}
+
+	/**
+	 * Gets the row count, without the header row.
+	 *
+	 * @return the row count
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Gets the column count.
+	 *
+	 * @return the column count
+	 */
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	/**
+	 * Gets the column name.
+	 *
+	 * @param column
+	 *            the column index (Starts from 0)
+	 * @return the column name
+	 */
+	public String getColumnName(int column) {
+		return columnNames[column];
+	}
+
+	/**
+	 * Gets the index of the column with the given name, ignoring case.
+	 *
+	 * @param columnName
+	 *            the column name
+	 * @return the column index, or -1 if there is no such column
+	 */
+	public int getColumnIndex(String columnName) {
+		for (int i = 0; i < columnNames.length; i++) {
+			if (columnNames[i].equalsIgnoreCase(columnName)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the column.
+	 *
+	 * @param column
+	 *            the column index (Starts from 0)
+	 * @return the column
+	 */
+	public Column getColumn(int column) {
+		return columns[column];
+	}
+
+	/**
+	 * Gets the column.
+	 *
+	 * @param columnName
+	 *            the column name
+	 * @return the column, or null if there is no such column
+	 */
+	public Column getColumn(String columnName) {
+		int column = getColumnIndex(columnName);
+		return column < 0 ? null : columns[column];
+	}
+
+	/**
+	 * Gets the number of the row in the sheet, the same number used as key by
+	 * {@link ExcelParser#read(java.io.File, int, int)}.
+	 *
+	 * @param row
+	 *            the row index (Starts from 0)
+	 * @return the row number
+	 */
+	public int getRowNumber(int row) {
+		return rowNumbers[row];
+	}
+
+	/**
+	 * The Class Column.
+	 */
+	public static final class Column {
+
+		/** The name. */
+		private final String name;
+
+		/** The type. */
+		private final ColumnType type;
+
+		/** The numeric values. */
+		private final double[] doubles;
+
+		/** The date and boolean values. */
+		private final long[] longs;
+
+		/** The dictionary codes of the text values. */
+		private final int[] codes;
+
+		/** The dictionary. */
+		private final String[] dictionary;
+
+		/** The null cells. */
+		private final BitSet nulls;
+
+		/**
+		 * Instantiates a new column.
+		 *
+		 * @param name
+		 *            the name
+		 * @param type
+		 *            the type
+		 * @param doubles
+		 *            the numeric values
+		 * @param longs
+		 *            the date and boolean values
+		 * @param codes
+		 *            the dictionary codes
+		 * @param dictionary
+		 *            the dictionary
+		 * @param nulls
+		 *            the null cells
+		 */
+		Column(String name, ColumnType type, double[] doubles, long[] longs,
+				int[] codes, String[] dictionary, BitSet nulls) {
+			this.name = name;
+			this.type = type;
+			this.doubles = doubles;
+			this.longs = longs;
+			this.codes = codes;
+			this.dictionary = dictionary;
+			this.nulls = nulls;
+		}
+
+		/**
+		 * Gets the name.
+		 *
+		 * @return the name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Gets the type.
+		 *
+		 * @return the type
+		 */
+		public ColumnType getType() {
+			return type;
+		}
+
+		/**
+		 * Checks if the cell is null.
+		 *
+		 * @param row
+		 *            the row index (Starts from 0)
+		 * @return true, if the cell is blank or missing
+		 */
+		public boolean isNull(int row) {
+			return nulls.get(row);
+		}
+
+		/**
+		 * Gets the null cells. Must not be modified.
+		 *
+		 * @return the null bitmap
+		 */
+		public BitSet getNulls() {
+			return nulls;
+		}
+
+		/**
+		 * Gets the value of a {@link ColumnType#NUMBER} cell.
+		 *
+		 * @param row
+		 *            the row index (Starts from 0)
+		 * @return the value
+		 */
+		public double getDouble(int row) {
+			return doubles[row];
+		}
+
+		/**
+		 * Gets the value of a {@link ColumnType#DATE} cell as epoch millis or
+		 * of a {@link ColumnType#BOOLEAN} cell as 0 or 1.
+		 *
+		 * @param row
+		 *            the row index (Starts from 0)
+		 * @return the value
+		 */
+		public long getLong(int row) {
+			return longs[row];
+		}
+
+		/**
+		 * Gets the value of a {@link ColumnType#BOOLEAN} cell.
+		 *
+		 * @param row
+		 *            the row index (Starts from 0)
+		 * @return the value
+		 */
+		public boolean getBoolean(int row) {
+			return longs[row] != 0;
+		}
+
+		/**
+		 * Gets the value of a cell as text. Numbers are given in excel's
+		 * general format and dates as yyyy-MM-dd.
+		 *
+		 * @param row
+		 *            the row index (Starts from 0)
+		 * @return the text, or null if the cell is null
+		 */
+		public String getString(int row) {
+			if (nulls.get(row)) {
+				return null;
+			}
+			switch (type) {
+			case STRING:
+				return dictionary[codes[row]];
+			case NUMBER:
+				return NumberToTextConverter.toText(doubles[row]);
+			case DATE:
+				return ParserResources.dateFormat().format(new Date(longs[row]));
+			case BOOLEAN:
+				return longs[row] != 0 ? "TRUE" : "FALSE";
+			default:
+				return null;
+			}
+		}
+
+		/**
+		 * Gets the numeric values, indexed by row. Must not be modified.
+		 *
+		 * @return the values, null unless the type is
+		 *         {@link ColumnType#NUMBER}
+		 */
+		public double[] getDoubles() {
+			return doubles;
+		}
+
+		/**
+		 * Gets the date or boolean values, indexed by row. Must not be
+		 * modified.
+		 *
+		 * @return the values, null unless the type is {@link ColumnType#DATE}
+		 *         or {@link ColumnType#BOOLEAN}
+		 */
+		public long[] getLongs() {
+			return longs;
+		}
+
+		/**
+		 * Gets the dictionary codes, indexed by row. Must not be modified.
+		 *
+		 * @return the codes, null unless the type is {@link ColumnType#STRING}
+		 */
+		public int[] getCodes() {
+			return codes;
+		}
+
+		/**
+		 * Gets the dictionary. Must not be modified.
+		 *
+		 * @return the distinct values of the column, null unless the type is
+		 *         {@link ColumnType#STRING}
+		 */
+		public String[] getDictionary() {
+			return dictionary;
+		}
+	}
+}
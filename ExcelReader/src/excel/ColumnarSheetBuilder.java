@@ -0,0 +1,442 @@
+package excel;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.NumberToTextConverter;
+
+import excel.ColumnarSheet.ColumnType;
+
+/**
+ * The Class ColumnarSheetBuilder. Fills a {@link ColumnarSheet} straight from
+ * the cell values of the parser. A column takes the type of its first value;
+ * when a later value has another type the column is turned into a text column.
+ * Error cells are stored as null.
+ *
+ * @author Sourav
+ */
+class ColumnarSheetBuilder implements CellHandler {
+
+	/** The Constant INITIAL_CAPACITY. */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** The columns, indexed by column. */
+	private final List<ColumnBuilder> columns = new ArrayList<ColumnBuilder>();
+
+	/** The row numbers in the sheet. */
+	private int[] rowNumbers = new int[INITIAL_CAPACITY];
+
+	/** The number of finished rows, also the index of the current row. */
+	private int rowCount;
+
+	/** Set while the header row is being read. */
+	private boolean bIsFirstRow = true;
+
+	/** Set when the current row has a value. */
+	private boolean rowHasValue;
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#startRow(int)
+	 */
+	public void startRow(int rowNumber) {
+		rowHasValue = false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#stringCell(int, java.lang.String)
+	 */
+	public void stringCell(int column, String value) {
+		if (bIsFirstRow) {
+			getColumn(column).name = null == value ? "" : value;
+		} else if (null != value && value.length() > 0) {
+			getColumn(column).setString(rowCount, value);
+			rowHasValue = true;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#numericCell(int, double, excel.CellFormat)
+	 */
+	public void numericCell(int column, double value, CellFormat format) {
+		if (bIsFirstRow) {
+			getColumn(column).name = format.format(value);
+		} else if (format.isDate()) {
+			getColumn(column).setDate(rowCount,
+					DateUtil.getJavaDate(value).getTime());
+			rowHasValue = true;
+		} else {
+			getColumn(column).setNumber(rowCount, value);
+			rowHasValue = true;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#booleanCell(int, boolean)
+	 */
+	public void booleanCell(int column, boolean value) {
+		if (bIsFirstRow) {
+			getColumn(column).name = value ? "TRUE" : "FALSE";
+		} else {
+			getColumn(column).setBoolean(rowCount, value);
+			rowHasValue = true;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#errorCell(int, java.lang.String)
+	 */
+	public void errorCell(int column, String value) {
+		if (bIsFirstRow) {
+			getColumn(column).name = value;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#blankCell(int)
+	 */
+	public void blankCell(int column) {
+		if (bIsFirstRow) {
+			getColumn(column);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#endRow(int)
+	 */
+	public void endRow(int rowNumber) {
+		if (bIsFirstRow) {
+			bIsFirstRow = false;
+			return;
+		}
+		if (!rowHasValue) {
+			// skip the row, its index is reused by the next row
+			return;
+		}
+		if (rowCount == rowNumbers.length) {
+			int[] grown = new int[rowCount * 2];
+			System.arraycopy(rowNumbers, 0, grown, 0, rowCount);
+			rowNumbers = grown;
+		}
+		rowNumbers[rowCount++] = rowNumber;
+	}
+
+	/**
+	 * Builds the columnar sheet.
+	 *
+	 * @return the columnar sheet
+	 */
+	ColumnarSheet build() {
+		ColumnarSheet.Column[] built = new ColumnarSheet.Column[columns.size()];
+		for (int i = 0; i < built.length; i++) {
+			built[i] = columns.get(i).build(rowCount);
+		}
+		int[] trimmedRowNumbers = new int[rowCount];
+		System.arraycopy(rowNumbers, 0, trimmedRowNumbers, 0, rowCount);
+		return new ColumnarSheet(built, trimmedRowNumbers, rowCount);
+	}
+
+	/**
+	 * Gets the column, adding columns up to it if needed.
+	 *
+	 * @param column
+	 *            the column index
+	 * @return the column builder
+	 */
+	private ColumnBuilder getColumn(int column) {
+		while (columns.size() <= column) {
+			columns.add(new ColumnBuilder());
+		}
+		return columns.get(column);
+	}
+
+	/**
+	 * Builder of a single column. Only the values of finished rows count, a
+	 * value set for a row that is skipped is overwritten by the next row.
+	 */
+	private static class ColumnBuilder {
+
+		/** The name. */
+		private String name = "";
+
+		/** The type. */
+		private ColumnType type = ColumnType.EMPTY;
+
+		/** The numeric values. */
+		private double[] doubles;
+
+		/** The date and boolean values. */
+		private long[] longs;
+
+		/** The dictionary codes. */
+		private int[] codes;
+
+		/** The dictionary. */
+		private List<String> dictionary;
+
+		/** The dictionary index. */
+		private Map<String, Integer> dictionaryIndex;
+
+		/** The rows with a value. */
+		private final BitSet present = new BitSet();
+
+		/** The highest row index with a value plus one. */
+		private int size;
+
+		/**
+		 * Sets a numeric value.
+		 *
+		 * @param row
+		 *            the row index
+		 * @param value
+		 *            the value
+		 */
+		void setNumber(int row, double value) {
+			if (ensureType(ColumnType.NUMBER, row)) {
+				doubles[row] = value;
+			} else {
+				setCode(row, NumberToTextConverter.toText(value));
+			}
+			markPresent(row);
+		}
+
+		/**
+		 * Sets a date value.
+		 *
+		 * @param row
+		 *            the row index
+		 * @param epochMillis
+		 *            the date as epoch millis
+		 */
+		void setDate(int row, long epochMillis) {
+			if (ensureType(ColumnType.DATE, row)) {
+				longs[row] = epochMillis;
+			} else {
+				setCode(row, toText(ColumnType.DATE, epochMillis));
+			}
+			markPresent(row);
+		}
+
+		/**
+		 * Sets a boolean value.
+		 *
+		 * @param row
+		 *            the row index
+		 * @param value
+		 *            the value
+		 */
+		void setBoolean(int row, boolean value) {
+			if (ensureType(ColumnType.BOOLEAN, row)) {
+				longs[row] = value ? 1 : 0;
+			} else {
+				setCode(row, value ? "TRUE" : "FALSE");
+			}
+			markPresent(row);
+		}
+
+		/**
+		 * Sets a text value.
+		 *
+		 * @param row
+		 *            the row index
+		 * @param value
+		 *            the value
+		 */
+		void setString(int row, String value) {
+			ensureType(ColumnType.STRING, row);
+			setCode(row, value);
+			markPresent(row);
+		}
+
+		/**
+		 * Makes sure the column can hold the row and has the type, turning it
+		 * into a text column when the types differ.
+		 *
+		 * @param wanted
+		 *            the type of the value
+		 * @param row
+		 *            the row index
+		 * @return true, if the column has the wanted type
+		 */
+		private boolean ensureType(ColumnType wanted, int row) {
+			if (type == ColumnType.EMPTY) {
+				type = wanted;
+				int capacity = Math.max(INITIAL_CAPACITY, row + 1);
+				if (wanted == ColumnType.NUMBER) {
+					doubles = new double[capacity];
+				} else if (wanted == ColumnType.STRING) {
+					codes = new int[capacity];
+					dictionary = new ArrayList<String>();
+					dictionaryIndex = new HashMap<String, Integer>();
+				} else {
+					longs = new long[capacity];
+				}
+			} else if (type != wanted && type != ColumnType.STRING) {
+				convertToString();
+			}
+			grow(row);
+			return type == wanted;
+		}
+
+		/**
+		 * Turns the values stored so far into text values.
+		 */
+		private void convertToString() {
+			int capacity = type == ColumnType.NUMBER ? doubles.length
+					: longs.length;
+			int[] newCodes = new int[capacity];
+			ColumnType oldType = type;
+			double[] oldDoubles = doubles;
+			long[] oldLongs = longs;
+
+			type = ColumnType.STRING;
+			codes = newCodes;
+			dictionary = new ArrayList<String>();
+			dictionaryIndex = new HashMap<String, Integer>();
+			doubles = null;
+			longs = null;
+
+			for (int row = present.nextSetBit(0); row >= 0; row = present
+					.nextSetBit(row + 1)) {
+				if (oldType == ColumnType.NUMBER) {
+					setCode(row, NumberToTextConverter.toText(oldDoubles[row]));
+				} else {
+					setCode(row, toText(oldType, oldLongs[row]));
+				}
+			}
+		}
+
+		/**
+		 * Grows the value array so it holds the row.
+		 *
+		 * @param row
+		 *            the row index
+		 */
+		private void grow(int row) {
+			int capacity;
+			if (type == ColumnType.NUMBER) {
+				capacity = doubles.length;
+			} else if (type == ColumnType.STRING) {
+				capacity = codes.length;
+			} else {
+				capacity = longs.length;
+			}
+			if (row < capacity) {
+				return;
+			}
+			int newCapacity = Math.max(capacity * 2, row + 1);
+			if (type == ColumnType.NUMBER) {
+				double[] grown = new double[newCapacity];
+				System.arraycopy(doubles, 0, grown, 0, capacity);
+				doubles = grown;
+			} else if (type == ColumnType.STRING) {
+				int[] grown = new int[newCapacity];
+				System.arraycopy(codes, 0, grown, 0, capacity);
+				codes = grown;
+			} else {
+				long[] grown = new long[newCapacity];
+				System.arraycopy(longs, 0, grown, 0, capacity);
+				longs = grown;
+			}
+		}
+
+		/**
+		 * Sets the dictionary code of a text value.
+		 *
+		 * @param row
+		 *            the row index
+		 * @param value
+		 *            the value
+		 */
+		private void setCode(int row, String value) {
+			Integer code = dictionaryIndex.get(value);
+			if (null == code) {
+				code = Integer.valueOf(dictionary.size());
+				dictionary.add(value);
+				dictionaryIndex.put(value, code);
+			}
+			codes[row] = code.intValue();
+		}
+
+		/**
+		 * Marks the row as having a value.
+		 *
+		 * @param row
+		 *            the row index
+		 */
+		private void markPresent(int row) {
+			present.set(row);
+			if (row >= size) {
+				size = row + 1;
+			}
+		}
+
+		/**
+		 * Builds the column.
+		 *
+		 * @param rowCount
+		 *            the number of finished rows
+		 * @return the column
+		 */
+		ColumnarSheet.Column build(int rowCount) {
+			BitSet nulls = present.get(0, rowCount);
+			nulls.flip(0, rowCount);
+
+			double[] builtDoubles = null;
+			long[] builtLongs = null;
+			int[] builtCodes = null;
+			String[] builtDictionary = null;
+			if (type == ColumnType.NUMBER) {
+				builtDoubles = new double[rowCount];
+				System.arraycopy(doubles, 0, builtDoubles, 0,
+						Math.min(rowCount, size));
+			} else if (type == ColumnType.STRING) {
+				builtCodes = new int[rowCount];
+				System.arraycopy(codes, 0, builtCodes, 0,
+						Math.min(rowCount, size));
+				builtDictionary = dictionary.toArray(new String[dictionary
+						.size()]);
+			} else if (type != ColumnType.EMPTY) {
+				builtLongs = new long[rowCount];
+				System.arraycopy(longs, 0, builtLongs, 0,
+						Math.min(rowCount, size));
+			}
+			return new ColumnarSheet.Column(name, type, builtDoubles,
+					builtLongs, builtCodes, builtDictionary, nulls);
+		}
+
+		/**
+		 * Text of a date or boolean value.
+		 *
+		 * @param valueType
+		 *            the type of the value
+		 * @param value
+		 *            the value
+		 * @return the text
+		 */
+		private static String toText(ColumnType valueType, long value) {
+			if (valueType == ColumnType.BOOLEAN) {
+				return value != 0 ? "TRUE" : "FALSE";
+			}
+			return ParserResources.dateFormat().format(new Date(value));
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package excel;
+
+/**
+ * The Class CountingCellHandler. Counts the rows and cells of a sheet on their
+ * way to another {@link CellHandler}, for the {@link ParseMetrics} of a read.
+ * Only used when the reader has a {@link ParseListener}.
+ *
+ * @author Sourav
+ */
+class CountingCellHandler implements CellHandler {
+
+	/** The cell handler. */
+	private final CellHandler cellHandler;
+
+	/** The rows passed on. */
+	private long rowCount;
+
+	/** The cells holding a value passed on. */
+	private long cellCount;
+
+	/** The width of the current row. */
+	private int rowWidth;
+
+	/** The width of the widest row. */
+	private int maxRowWidth;
+
+	/**
+	 * Instantiates a new counting cell handler.
+	 *
+	 * @param cellHandler
+	 *            the cell handler
+	 */
+	CountingCellHandler(CellHandler cellHandler) {
+		this.cellHandler = cellHandler;
+	}
+
+	/**
+	 * Gets the number of rows passed on.
+	 *
+	 * @return the row count
+	 */
+	long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Gets the number of cells holding a value passed on.
+	 *
+	 * @return the cell count
+	 */
+	long getCellCount() {
+		return cellCount;
+	}
+
+	/**
+	 * Gets the width of the widest row.
+	 *
+	 * @return the index of the last cell holding a value of the widest row,
+	 *         plus one
+	 */
+	int getMaxRowWidth() {
+		return maxRowWidth;
+	}
+
+	/**
+	 * Counts a cell holding a value.
+	 *
+	 * @param column
+	 *            the column index
+	 */
+	private void count(int column) {
+		cellCount++;
+		if (column >= rowWidth) {
+			rowWidth = column + 1;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.CellHandler#startRow(int)
+	 */
+	public void startRow(int rowNumber) {
+		rowWidth = 0;
+		cellHandler.startRow(rowNumber);
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.CellHandler#stringCell(int, java.lang.String)
+	 */
+	public void stringCell(int column, String value) {
+		count(column);
+		cellHandler.stringCell(column, value);
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.CellHandler#numericCell(int, double, excel.CellFormat)
+	 */
+	public void numericCell(int column, double value, CellFormat format) {
+		count(column);
+		cellHandler.numericCell(column, value, format);
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.CellHandler#booleanCell(int, boolean)
+	 */
+	public void booleanCell(int column, boolean value) {
+		count(column);
+		cellHandler.booleanCell(column, value);
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.CellHandler#errorCell(int, java.lang.String)
+	 */
+	public void errorCell(int column, String value) {
+		count(column);
+		cellHandler.errorCell(column, value);
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.CellHandler#blankCell(int)
+	 */
+	public void blankCell(int column) {
+		cellHandler.blankCell(column);
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.CellHandler#endRow(int)
+	 */
+	public void endRow(int rowNumber) {
+		rowCount++;
+		maxRowWidth = Math.max(maxRowWidth, rowWidth);
+		cellHandler.endRow(rowNumber);
+	}
+}
@@ -0,0 +1,43 @@
+package excel;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The Annotation ExcelColumn. Binds a field or a setter of a row class to the
+ * column with the given header, for
+ * {@link ExcelReader#read(java.io.File, int, int, Class)}. Headers are matched
+ * ignoring case, the first matching column wins. A column takes one property:
+ * a class binding two properties to the same header is rejected.
+ * <p>
+ * Supported types are String, the primitive numbers and booleans and their
+ * wrappers, BigDecimal, java.util.Date, LocalDate and LocalDateTime. Numbers,
+ * dates and booleans are converted from the cell values themselves, text
+ * cells are parsed; a String gets the value formatted as in the rows of
+ * {@link ExcelReader#read(java.io.File, int, int)}.
+ *
+ * @author Sourav
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.FIELD, ElementType.METHOD })
+public @interface ExcelColumn {
+
+	/**
+	 * The header of the column.
+	 *
+	 * @return the header, the name of the field or property if empty
+	 */
+	String value() default "";
+
+	/**
+	 * Whether the sheet must have the column.
+	 *
+	 * @return true, if reading a sheet without the column fails
+	 */
+	boolean required() default false;
+
+}
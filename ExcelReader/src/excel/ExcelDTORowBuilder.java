@@ -0,0 +1,323 @@
+package excel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Class ExcelDTORowBuilder. Turns the cells of every row into a list of
+ * {@link ExcelDTO} and passes the finished row to a {@link RowHandler}. The
+ * first row is the header row; its values become the column names of the
+ * following rows.
+ * <p>
+ * When rows are completed (xlsx sheets), a schema is built from the header
+ * row once: header names equal ignoring case form one group, and every
+ * column is mapped to the group of its name. While a row is read each cell
+ * marks its group as present, so at the end of the row the header columns
+ * missing from it are appended as empty columns in a single pass over the
+ * header, and rows without any value are dropped.
+ * <p>
+ * With a {@link ValueInterner} the values below the header are deduplicated
+ * before they are kept, so repeated values share one instance.
+ *
+ * @author Sourav
+ */
+class ExcelDTORowBuilder implements CellHandler {
+
+	/** The Constant HEADER. */
+	private static final String HEADER = "HEADER";
+
+	/** The Constant EMPTY_STRING. */
+	private static final String EMPTY_STRING = "";
+
+	/** The row handler. */
+	private final RowHandler rowHandler;
+
+	/** The header list, indexed by column. */
+	private final List<String> headerList = new ArrayList<String>();
+
+	/** The columns of the current row. */
+	private List<ExcelDTO> listExcelDTO;
+
+	/** Set while the header row is being read. */
+	private boolean bIsFirstRow = true;
+
+	/** Whether missing header columns are added and empty rows dropped. */
+	private final boolean completeRows;
+
+	/** The columns of the header row, in the order they were read. */
+	private final List<Integer> headerColumns = new ArrayList<Integer>();
+
+	/** The group of the name of every column below the header, -1 if none. */
+	private int[] columnGroups;
+
+	/** The group of the columns right of the header, -1 if none. */
+	private int unnamedGroup;
+
+	/** The first header column of every group, by group. */
+	private int[] groupHeaderColumns;
+
+	/** The row in which every group was last seen, by group. */
+	private int[] groupSeenInRow;
+
+	/** Counts the rows, to tell the marks of the current row apart. */
+	private int rowStamp;
+
+	/** Set once the current row has a non empty value. */
+	private boolean rowHasValue;
+
+	/** Deduplicates the values, null to keep them as they are. */
+	private final ValueInterner valueInterner;
+
+	/**
+	 * Instantiates a new excel dto row builder.
+	 *
+	 * @param rowHandler
+	 *            the row handler receiving every finished row
+	 */
+	ExcelDTORowBuilder(RowHandler rowHandler) {
+		this(rowHandler, false);
+	}
+
+	/**
+	 * Instantiates a new excel dto row builder.
+	 *
+	 * @param rowHandler
+	 *            the row handler receiving every finished row
+	 * @param completeRows
+	 *            whether every row below the header gets the header columns
+	 *            it is missing, and rows without any value are dropped
+	 */
+	ExcelDTORowBuilder(RowHandler rowHandler, boolean completeRows) {
+		this(rowHandler, completeRows, null);
+	}
+
+	/**
+	 * Instantiates a new excel dto row builder.
+	 *
+	 * @param rowHandler
+	 *            the row handler receiving every finished row
+	 * @param completeRows
+	 *            whether every row below the header gets the header columns
+	 *            it is missing, and rows without any value are dropped
+	 * @param valueInterner
+	 *            deduplicates the values below the header, null to keep them
+	 *            as they are
+	 */
+	ExcelDTORowBuilder(RowHandler rowHandler, boolean completeRows,
+			ValueInterner valueInterner) {
+		this.rowHandler = rowHandler;
+		this.completeRows = completeRows;
+		this.valueInterner = valueInterner;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#startRow(int)
+	 */
+	public void startRow(int rowNumber) {
+		listExcelDTO = new ArrayList<ExcelDTO>(Math.max(10,
+				headerColumns.size()));
+		rowStamp++;
+		rowHasValue = false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#stringCell(int, java.lang.String)
+	 */
+	public void stringCell(int column, String value) {
+		addColumn(column, value);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#numericCell(int, double, excel.CellFormat)
+	 */
+	public void numericCell(int column, double value, CellFormat format) {
+		addColumn(column, format.format(value));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#booleanCell(int, boolean)
+	 */
+	public void booleanCell(int column, boolean value) {
+		addColumn(column, value ? "TRUE" : "FALSE");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#errorCell(int, java.lang.String)
+	 */
+	public void errorCell(int column, String value) {
+		addColumn(column, value);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#blankCell(int)
+	 */
+	public void blankCell(int column) {
+		addColumn(column, EMPTY_STRING);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#endRow(int)
+	 */
+	public void endRow(int rowNumber) {
+		if (!completeRows) {
+			bIsFirstRow = false;
+			rowHandler.handleRow(rowNumber, listExcelDTO);
+		} else if (bIsFirstRow) {
+			bIsFirstRow = false;
+			buildSchema();
+			rowHandler.handleRow(rowNumber, listExcelDTO);
+		} else {
+			addMissingColumns();
+			// skip the row if all columns of the row is empty
+			if (rowHasValue) {
+				rowHandler.handleRow(rowNumber, listExcelDTO);
+			}
+		}
+	}
+
+	/**
+	 * Adds the column to the current row.
+	 *
+	 * @param column
+	 *            the column index
+	 * @param value
+	 *            the column value
+	 */
+	private void addColumn(int column, String value) {
+		if (null == value) {
+			value = EMPTY_STRING;
+		} else if (null != valueInterner && !bIsFirstRow
+				&& value.length() > 0) {
+			value = valueInterner.intern(column, value);
+		}
+		ExcelDTO objExcelDTO = new ExcelDTO();
+		objExcelDTO.setColumnValue(value);
+
+		if (bIsFirstRow) {
+			objExcelDTO.setColumnName(HEADER);
+			while (headerList.size() <= column) {
+				headerList.add(EMPTY_STRING);
+			}
+			headerList.set(column, objExcelDTO.getColumnValue());
+			headerColumns.add(column);
+		} else if (column < headerList.size()) {
+			objExcelDTO.setColumnName(headerList.get(column));
+			if (completeRows) {
+				markGroup(columnGroups[column]);
+			}
+		} else {
+			objExcelDTO.setColumnName(EMPTY_STRING);
+			if (completeRows) {
+				markGroup(unnamedGroup);
+			}
+		}
+		if (objExcelDTO.getColumnValue().length() > 0) {
+			rowHasValue = true;
+		}
+		listExcelDTO.add(objExcelDTO);
+	}
+
+	/**
+	 * Builds the schema from the header row: groups the header names equal
+	 * ignoring case and maps every column to the group of its name.
+	 */
+	private void buildSchema() {
+		Map<String, Integer> groups = new HashMap<String, Integer>();
+		List<Integer> firstColumns = new ArrayList<Integer>();
+		for (Integer column : headerColumns) {
+			String key = groupKey(headerList.get(column));
+			if (!groups.containsKey(key)) {
+				groups.put(key, firstColumns.size());
+				firstColumns.add(column);
+			}
+		}
+
+		groupHeaderColumns = new int[firstColumns.size()];
+		for (int i = 0; i < groupHeaderColumns.length; i++) {
+			groupHeaderColumns[i] = firstColumns.get(i);
+		}
+		groupSeenInRow = new int[groupHeaderColumns.length];
+
+		columnGroups = new int[headerList.size()];
+		for (int column = 0; column < columnGroups.length; column++) {
+			columnGroups[column] = groupOf(groups, headerList.get(column));
+		}
+		unnamedGroup = groupOf(groups, EMPTY_STRING);
+	}
+
+	/**
+	 * Marks a group as present in the current row.
+	 *
+	 * @param group
+	 *            the group, -1 if none
+	 */
+	private void markGroup(int group) {
+		if (group >= 0) {
+			groupSeenInRow[group] = rowStamp;
+		}
+	}
+
+	/**
+	 * Appends an empty column for every header group missing from the
+	 * current row, in header order.
+	 */
+	private void addMissingColumns() {
+		for (int group = 0; group < groupHeaderColumns.length; group++) {
+			if (groupSeenInRow[group] != rowStamp) {
+				ExcelDTO newExcelDTO = new ExcelDTO();
+				newExcelDTO.setColumnName(headerList
+						.get(groupHeaderColumns[group]));
+				newExcelDTO.setColumnValue(EMPTY_STRING);
+				listExcelDTO.add(newExcelDTO);
+			}
+		}
+	}
+
+	/**
+	 * Gets the group of a column name.
+	 *
+	 * @param groups
+	 *            the groups by key
+	 * @param name
+	 *            the column name
+	 * @return the group, -1 if no header column has the name
+	 */
+	private static int groupOf(Map<String, Integer> groups, String name) {
+		Integer group = groups.get(groupKey(name));
+		return null == group ? -1 : group.intValue();
+	}
+
+	/**
+	 * Gets the key of a column name: names have the same key exactly when
+	 * they are equal ignoring case, as by
+	 * {@link String#equalsIgnoreCase(String)}.
+	 *
+	 * @param name
+	 *            the column name
+	 * @return the key
+	 */
+	private static String groupKey(String name) {
+		char[] chars = name.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+		}
+		return new String(chars);
+	}
+
+}
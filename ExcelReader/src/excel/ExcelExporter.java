@@ -0,0 +1,780 @@
+package excel;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.xml.sax.SAXException;
+
+/**
+ * The Class ExcelExporter. Converts sheets to CSV or JSON Lines, writing the
+ * rows as the sheet is parsed instead of reading it into a map first, so a
+ * sheet of any size is converted in constant memory. The output is UTF-8,
+ * buffered in large chunks and optionally gzip compressed.
+ * <p>
+ * The first row of a sheet is its header: the first line of a CSV file, the
+ * keys of the objects of a JSON Lines file. The rows below it are written
+ * with the columns of the header, the values as in the rows of
+ * {@link ExcelReader#read(File, int, int)}; rows without any value are
+ * skipped.
+ * <p>
+ * The main method converts from the command line; run it without arguments
+ * for its usage.
+ *
+ * @author Sourav
+ */
+public final class ExcelExporter {
+
+	/** The Constant LOG. */
+	private static final Logger LOG = Logger.getLogger(ExcelExporter.class);
+
+	/** The size of the output buffers. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** The default number of columns of the command line. */
+	private static final int DEFAULT_COLUMNS = 256;
+
+	/**
+	 * The output formats.
+	 */
+	public enum Format {
+
+		/** Comma separated values, with a header line. */
+		CSV(".csv"),
+
+		/** A JSON object per line, keyed by the header. */
+		JSONL(".jsonl");
+
+		/** The file extension. */
+		private final String extension;
+
+		/**
+		 * Instantiates a new format.
+		 *
+		 * @param extension
+		 *            the file extension
+		 */
+		private Format(String extension) {
+			this.extension = extension;
+		}
+
+		/**
+		 * Gets the file extension.
+		 *
+		 * @return the extension, with its dot
+		 */
+		public String getExtension() {
+			return extension;
+		}
+	}
+
+	/**
+	 * The quoting of CSV fields.
+	 */
+	public enum Quoting {
+
+		/** Quotes the fields holding the delimiter, the quote or a line break. */
+		MINIMAL,
+
+		/** Quotes every field. */
+		ALL,
+
+		/** Never quotes, for values known to be plain. */
+		NONE
+	}
+
+	/** The reader. */
+	private final ExcelReader reader;
+
+	/** The format. */
+	private final Format format;
+
+	/** The CSV delimiter. */
+	private final char delimiter;
+
+	/** The CSV quote. */
+	private final char quote;
+
+	/** The CSV quoting. */
+	private final Quoting quoting;
+
+	/** The line separator. */
+	private final String lineSeparator;
+
+	/** Whether the output is gzip compressed. */
+	private final boolean gzip;
+
+	/**
+	 * Instantiates a new excel exporter.
+	 *
+	 * @param builder
+	 *            the builder
+	 */
+	private ExcelExporter(Builder builder) {
+		this.reader = null == builder.reader ? ExcelParser.getDefaultReader()
+				: builder.reader;
+		this.format = builder.format;
+		this.delimiter = builder.delimiter;
+		this.quote = builder.quote;
+		this.quoting = builder.quoting;
+		this.lineSeparator = builder.lineSeparator;
+		this.gzip = builder.gzip;
+	}
+
+	/**
+	 * Creates a builder.
+	 *
+	 * @return the builder
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Gets the format.
+	 *
+	 * @return the format
+	 */
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * Gets the CSV delimiter.
+	 *
+	 * @return the delimiter
+	 */
+	public char getDelimiter() {
+		return delimiter;
+	}
+
+	/**
+	 * Gets the CSV quote.
+	 *
+	 * @return the quote
+	 */
+	public char getQuote() {
+		return quote;
+	}
+
+	/**
+	 * Gets the CSV quoting.
+	 *
+	 * @return the quoting
+	 */
+	public Quoting getQuoting() {
+		return quoting;
+	}
+
+	/**
+	 * Gets the line separator.
+	 *
+	 * @return the line separator
+	 */
+	public String getLineSeparator() {
+		return lineSeparator;
+	}
+
+	/**
+	 * Checks if the output is gzip compressed.
+	 *
+	 * @return true, if gzip
+	 */
+	public boolean isGzip() {
+		return gzip;
+	}
+
+	/**
+	 * Export the sheet to a file.
+	 *
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param outputFile
+	 *            the output file, replaced if it exists; it is written to a
+	 *            temp file beside it and only replaced once the export is
+	 *            done, so a failed export leaves no partial file
+	 * @return the number of rows written below the header
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public long export(File excelFile, int lastCellNum, int sheetNumber,
+			File outputFile) throws IOException, SAXException,
+			OpenXML4JException {
+		File tempFile = createTempFile(outputFile);
+		boolean done = false;
+		try {
+			OutputStream out = new FileOutputStream(tempFile);
+			long rowCount;
+			try {
+				rowCount = export(excelFile, lastCellNum, sheetNumber, out);
+			} finally {
+				out.close();
+			}
+			replace(tempFile, outputFile);
+			done = true;
+			return rowCount;
+		} finally {
+			if (!done) {
+				deleteTempFile(tempFile);
+			}
+		}
+	}
+
+	/**
+	 * Export the sheet to a stream. The stream is flushed, not closed.
+	 *
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param out
+	 *            the output stream
+	 * @return the number of rows written below the header
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public long export(File excelFile, int lastCellNum, int sheetNumber,
+			OutputStream out) throws IOException, SAXException,
+			OpenXML4JException {
+
+		LOG.info("Beginning method [export]...");
+
+		final Writer writer = open(new FilterOutputStream(out) {
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+			}
+
+			public void close() throws IOException {
+				flush();
+			}
+		});
+		ExportRowWriter rowWriter = new ExportRowWriter(this,
+				new Supplier<Writer>() {
+					public Writer get() {
+						return writer;
+					}
+				});
+		try {
+			reader.read(ExcelSource.of(excelFile.toPath()), lastCellNum,
+					sheetNumber, rowWriter);
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		} finally {
+			writer.close();
+		}
+
+		LOG.info("Completed method [export].");
+		return rowWriter.getRowCount();
+	}
+
+	/**
+	 * Export every sheet of the workbook to a file of its own in a directory,
+	 * named after the workbook and the sheet number: sheets 1 and 2 of
+	 * book.xlsx become book-1.csv and book-2.csv, with ".gz" added when
+	 * compressed. The workbook is parsed once and a single output file is
+	 * open at any time. The sheets are written to temp files in the
+	 * directory, which replace the output files once the whole workbook is
+	 * exported; a failed export leaves no partial file.
+	 *
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param outputDirectory
+	 *            the output directory, created if missing
+	 * @return the output file of every sheet, by sheet number in workbook
+	 *         order
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public Map<Integer, File> exportAll(File excelFile, int lastCellNum,
+			final File outputDirectory) throws IOException, SAXException,
+			OpenXML4JException {
+
+		LOG.info("Beginning method [exportAll]...");
+
+		if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+			throw new IOException("Cannot create directory " + outputDirectory);
+		}
+		String name = excelFile.getName();
+		int dot = name.lastIndexOf('.');
+		final String baseName = dot > 0 ? name.substring(0, dot) : name;
+		final Map<Integer, File> files = new LinkedHashMap<Integer, File>();
+		final Map<Integer, ExportRowWriter> rowWriters = new LinkedHashMap<Integer, ExportRowWriter>();
+		final Map<Integer, File> tempFiles = new LinkedHashMap<Integer, File>();
+		// the writer of the sheet being written, closed when the next opens
+		final Writer[] current = new Writer[1];
+		boolean done = false;
+		try {
+			reader.readAll(ExcelSource.of(excelFile.toPath()), lastCellNum,
+					new IntFunction<CellHandler>() {
+						public CellHandler apply(final int sheetNumber) {
+							final File file = new File(outputDirectory,
+									baseName + "-" + sheetNumber
+											+ format.getExtension()
+											+ (gzip ? ".gz" : ""));
+							files.put(sheetNumber, file);
+							ExportRowWriter rowWriter = new ExportRowWriter(
+									ExcelExporter.this, new Supplier<Writer>() {
+										public Writer get() {
+											try {
+												if (null != current[0]) {
+													current[0].close();
+													current[0] = null;
+												}
+												File tempFile = createTempFile(file);
+												tempFiles.put(sheetNumber,
+														tempFile);
+												current[0] = open(new FileOutputStream(
+														tempFile));
+												return current[0];
+											} catch (IOException ex) {
+												throw new UncheckedIOException(
+														ex);
+											}
+										}
+									});
+							rowWriters.put(sheetNumber, rowWriter);
+							return rowWriter;
+						}
+					});
+			// sheets without any row still get their empty file
+			for (ExportRowWriter rowWriter : rowWriters.values()) {
+				rowWriter.getWriter();
+			}
+			if (null != current[0]) {
+				current[0].close();
+				current[0] = null;
+			}
+			for (Map.Entry<Integer, File> entry : tempFiles.entrySet()) {
+				replace(entry.getValue(), files.get(entry.getKey()));
+			}
+			done = true;
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		} finally {
+			try {
+				if (null != current[0]) {
+					current[0].close();
+				}
+			} finally {
+				if (!done) {
+					for (File tempFile : tempFiles.values()) {
+						deleteTempFile(tempFile);
+					}
+				}
+			}
+		}
+
+		LOG.info("Completed method [exportAll].");
+		return files;
+	}
+
+	/**
+	 * Creates the temp file an output file is written to, in the directory of
+	 * the output file so that it can be renamed to it.
+	 *
+	 * @param outputFile
+	 *            the output file
+	 * @return the empty temp file
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static File createTempFile(File outputFile) throws IOException {
+		return File.createTempFile("." + outputFile.getName() + ".", ".tmp",
+				outputFile.getAbsoluteFile().getParentFile());
+	}
+
+	/**
+	 * Replaces an output file by the finished temp file.
+	 *
+	 * @param tempFile
+	 *            the temp file
+	 * @param outputFile
+	 *            the output file
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static void replace(File tempFile, File outputFile)
+			throws IOException {
+		try {
+			Files.move(tempFile.toPath(), outputFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException ex) {
+			Files.move(tempFile.toPath(), outputFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Deletes the temp file of a failed export.
+	 *
+	 * @param tempFile
+	 *            the temp file
+	 */
+	private static void deleteTempFile(File tempFile) {
+		if (!tempFile.delete() && tempFile.exists()) {
+			LOG.warn("Cannot delete temp file " + tempFile);
+		}
+	}
+
+	/**
+	 * Opens the writer of an output stream: buffered, UTF-8 and compressed if
+	 * configured. Closing the writer closes the stream.
+	 *
+	 * @param out
+	 *            the output stream
+	 * @return the writer
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private Writer open(OutputStream out) throws IOException {
+		try {
+			if (gzip) {
+				out = new GZIPOutputStream(out, BUFFER_SIZE);
+			}
+			return new BufferedWriter(new OutputStreamWriter(out,
+					StandardCharsets.UTF_8), BUFFER_SIZE);
+		} catch (IOException ex) {
+			out.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Converts a workbook from the command line:
+	 *
+	 * <pre>
+	 * java excel.ExcelExporter [options] input.xlsx output.csv
+	 * java excel.ExcelExporter --all [options] input.xlsx outputDirectory
+	 * </pre>
+	 *
+	 * The output "-" is the standard output. Run without arguments for the
+	 * options.
+	 *
+	 * @param args
+	 *            the arguments
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public static void main(String[] args) throws IOException, SAXException,
+			OpenXML4JException {
+
+		Builder builder = builder();
+		Format format = null;
+		Boolean gzip = null;
+		boolean all = false;
+		int sheetNumber = 1;
+		int columns = DEFAULT_COLUMNS;
+		String input = null;
+		String output = null;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if ("--all".equals(arg)) {
+					all = true;
+				} else if ("--gzip".equals(arg)) {
+					gzip = Boolean.TRUE;
+				} else if ("--format".equals(arg)) {
+					format = Format.valueOf(value(args, ++i).toUpperCase());
+				} else if ("--sheet".equals(arg)) {
+					sheetNumber = Integer.parseInt(value(args, ++i));
+				} else if ("--columns".equals(arg)) {
+					columns = Integer.parseInt(value(args, ++i));
+				} else if ("--delimiter".equals(arg)) {
+					builder.delimiter(character(value(args, ++i)));
+				} else if ("--quote".equals(arg)) {
+					builder.quote(character(value(args, ++i)));
+				} else if ("--quoting".equals(arg)) {
+					builder.quoting(Quoting.valueOf(value(args, ++i)
+							.toUpperCase()));
+				} else if ("--crlf".equals(arg)) {
+					builder.lineSeparator("\r\n");
+				} else if (arg.startsWith("--")) {
+					throw new IllegalArgumentException("Unknown option " + arg);
+				} else if (null == input) {
+					input = arg;
+				} else if (null == output) {
+					output = arg;
+				} else {
+					throw new IllegalArgumentException("Too many arguments");
+				}
+			}
+			if (null == output) {
+				throw new IllegalArgumentException(
+						"Input and output are required");
+			}
+			if (!new File(input).isFile()) {
+				throw new IllegalArgumentException("Input file not found: "
+						+ input);
+			}
+		} catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			System.err.println("Usage: java excel.ExcelExporter [options] input output");
+			System.err.println("  output           the file, - for the standard output, or the");
+			System.err.println("                   directory of the files of every sheet with --all");
+			System.err.println("  --all            export every sheet");
+			System.err.println("  --sheet N        the sheet number, from 1 (default 1)");
+			System.err.println("  --columns N      the number of columns read (default "
+					+ DEFAULT_COLUMNS + ")");
+			System.err.println("  --format F       csv or jsonl (default from the output name, else csv)");
+			System.err.println("  --gzip           compress (default if the output name ends with .gz)");
+			System.err.println("  --delimiter C    the CSV delimiter, tab for a tab (default ,)");
+			System.err.println("  --quote C        the CSV quote (default \")");
+			System.err.println("  --quoting Q      minimal, all or none (default minimal)");
+			System.err.println("  --crlf           end lines with CR LF");
+			System.exit(2);
+			return;
+		}
+
+		String lowerOutput = output.toLowerCase();
+		if (null == gzip) {
+			gzip = lowerOutput.endsWith(".gz");
+		}
+		if (null == format) {
+			format = lowerOutput.endsWith(".jsonl")
+					|| lowerOutput.endsWith(".jsonl.gz")
+					|| lowerOutput.endsWith(".json")
+					|| lowerOutput.endsWith(".json.gz") ? Format.JSONL
+					: Format.CSV;
+		}
+		ExcelExporter exporter = builder.format(format).gzip(gzip).build();
+		File excelFile = new File(input);
+		long start = System.nanoTime();
+		if (all) {
+			Map<Integer, File> files = exporter.exportAll(excelFile, columns,
+					new File(output));
+			System.err.println("Exported " + files.size() + " sheets to "
+					+ output + " in " + (System.nanoTime() - start) / 1000000
+					+ " ms");
+		} else if ("-".equals(output)) {
+			exporter.export(excelFile, columns, sheetNumber, System.out);
+		} else {
+			long rows = exporter.export(excelFile, columns, sheetNumber,
+					new File(output));
+			System.err.println("Exported " + rows + " rows to " + output
+					+ " in " + (System.nanoTime() - start) / 1000000 + " ms");
+		}
+	}
+
+	/**
+	 * Gets the value of an option.
+	 *
+	 * @param args
+	 *            the arguments
+	 * @param index
+	 *            the index of the value
+	 * @return the value
+	 */
+	private static String value(String[] args, int index) {
+		if (index >= args.length) {
+			throw new IllegalArgumentException("Missing value of "
+					+ args[index - 1]);
+		}
+		return args[index];
+	}
+
+	/**
+	 * Gets the character of an option value.
+	 *
+	 * @param value
+	 *            the value, a single character or "tab"
+	 * @return the character
+	 */
+	private static char character(String value) {
+		if ("tab".equalsIgnoreCase(value) || "\\t".equals(value)) {
+			return '\t';
+		}
+		if (value.length() != 1) {
+			throw new IllegalArgumentException("Not a single character: "
+					+ value);
+		}
+		return value.charAt(0);
+	}
+
+	/**
+	 * The Class Builder. Collects the configuration of an
+	 * {@link ExcelExporter}.
+	 */
+	public static class Builder {
+
+		/** The reader. */
+		private ExcelReader reader;
+
+		/** The format. */
+		private Format format = Format.CSV;
+
+		/** The CSV delimiter. */
+		private char delimiter = ',';
+
+		/** The CSV quote. */
+		private char quote = '"';
+
+		/** The CSV quoting. */
+		private Quoting quoting = Quoting.MINIMAL;
+
+		/** The line separator. */
+		private String lineSeparator = "\n";
+
+		/** Whether the output is gzip compressed. */
+		private boolean gzip;
+
+		/**
+		 * Instantiates a new builder.
+		 */
+		private Builder() {
+		}
+
+		/**
+		 * Sets the reader parsing the workbooks.
+		 *
+		 * @param reader
+		 *            the reader, null for the default reader of
+		 *            {@link ExcelParser}
+		 * @return the builder
+		 */
+		public Builder reader(ExcelReader reader) {
+			this.reader = reader;
+			return this;
+		}
+
+		/**
+		 * Sets the output format, CSV by default.
+		 *
+		 * @param format
+		 *            the format
+		 * @return the builder
+		 */
+		public Builder format(Format format) {
+			if (null == format) {
+				throw new IllegalArgumentException("Format must not be null");
+			}
+			this.format = format;
+			return this;
+		}
+
+		/**
+		 * Sets the CSV delimiter, a comma by default.
+		 *
+		 * @param delimiter
+		 *            the delimiter
+		 * @return the builder
+		 */
+		public Builder delimiter(char delimiter) {
+			if (delimiter == '\n' || delimiter == '\r') {
+				throw new IllegalArgumentException(
+						"Delimiter must not be a line break");
+			}
+			this.delimiter = delimiter;
+			return this;
+		}
+
+		/**
+		 * Sets the CSV quote, a double quote by default.
+		 *
+		 * @param quote
+		 *            the quote
+		 * @return the builder
+		 */
+		public Builder quote(char quote) {
+			this.quote = quote;
+			return this;
+		}
+
+		/**
+		 * Sets the CSV quoting, minimal by default.
+		 *
+		 * @param quoting
+		 *            the quoting
+		 * @return the builder
+		 */
+		public Builder quoting(Quoting quoting) {
+			if (null == quoting) {
+				throw new IllegalArgumentException("Quoting must not be null");
+			}
+			this.quoting = quoting;
+			return this;
+		}
+
+		/**
+		 * Sets the line separator, a line feed by default.
+		 *
+		 * @param lineSeparator
+		 *            the line separator
+		 * @return the builder
+		 */
+		public Builder lineSeparator(String lineSeparator) {
+			if (null == lineSeparator || lineSeparator.length() == 0) {
+				throw new IllegalArgumentException(
+						"Line separator must not be empty");
+			}
+			this.lineSeparator = lineSeparator;
+			return this;
+		}
+
+		/**
+		 * Sets whether the output is gzip compressed.
+		 *
+		 * @param gzip
+		 *            true, to compress
+		 * @return the builder
+		 */
+		public Builder gzip(boolean gzip) {
+			this.gzip = gzip;
+			return this;
+		}
+
+		/**
+		 * Builds the exporter.
+		 *
+		 * @return the excel exporter
+		 */
+		public ExcelExporter build() {
+			if (delimiter == quote) {
+				throw new IllegalArgumentException(
+						"Delimiter and quote must differ");
+			}
+			return new ExcelExporter(this);
+		}
+	}
+}
@@ -1,59 +1,32 @@
 package excel;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.text.DateFormat;
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
 
-import org.apache.log4j.Logger;
 import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
-import org.apache.poi.openxml4j.opc.OPCPackage;
-import org.apache.poi.ss.usermodel.BuiltinFormats;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.DataFormatter;
-import org.apache.poi.ss.usermodel.DateUtil;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.usermodel.WorkbookFactory;
-import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
-import org.apache.poi.xssf.eventusermodel.XSSFReader;
-import org.apache.poi.xssf.model.StylesTable;
-import org.apache.poi.xssf.usermodel.XSSFCellStyle;
-import org.apache.poi.xssf.usermodel.XSSFRichTextString;
-import org.xml.sax.Attributes;
-import org.xml.sax.ContentHandler;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
-import org.xml.sax.helpers.DefaultHandler;
-import org.xml.sax.helpers.XMLReaderFactory;
 
 /**
- * The Class ExcelParser.
+ * The Class ExcelParser. Reads with a default {@link ExcelReader}, shared by
+ * all callers. The setters replace the default reader as a whole, so every
+ * read sees one consistent configuration; callers needing settings of their
+ * own should build an {@link ExcelReader} instead.
  * 
  * @author Sourav
  */
 public class ExcelParser {
 
-	/** The Constant LOG. */
-	private static final Logger LOG = Logger.getLogger(ExcelParser.class);
-
-	/** The map. */
-	private static Map<Integer, List<ExcelDTO>> map;
-
-	/** The Constant EMPTY_STRING. */
-	private static final String EMPTY_STRING = "";
+	/** The reader used by the static methods. */
+	private static volatile ExcelReader defaultReader = ExcelReader.builder()
+			.build();
 
 	/**
 	 * Read.
@@ -75,638 +48,759 @@ public class ExcelParser {
 	public static Map<Integer, List<ExcelDTO>> read(File excelFile,
 			int lastCellNum, int sheetNumber) throws IOException, SAXException,
 			OpenXML4JException {
-
-		LOG.info("Beginning method [read]...");
-
-		FileInputStream inputStream = null;
-		Workbook workBook = null;
-		ArrayList<String> headerList;
-		ArrayList<ExcelDTO> listExcelDTO;
-		DateFormat df = new SimpleDateFormat("yyyy-MM-dd");
-		map = new HashMap<Integer, List<ExcelDTO>>();
-
-		if (excelFile.getName().endsWith("xlsx")) {
-			map = readXLSX(excelFile, lastCellNum, sheetNumber);
-			return map;
-		}
-
-		try {
-			inputStream = new FileInputStream(excelFile);
-			workBook = WorkbookFactory.create(inputStream);
-			Sheet sheet = workBook.getSheetAt(sheetNumber - 1);
-			removeEmptyRowsFromExcelSheet(sheet);
-
-			// Loop over column and lines
-			headerList = new ArrayList<String>();
-
-			for (int rowIndex = 0; rowIndex < sheet.getPhysicalNumberOfRows(); rowIndex++) {
-				listExcelDTO = new ArrayList<ExcelDTO>();
-				Row row = sheet.getRow(rowIndex);
-
-				for (int columnIndex = 0; columnIndex < lastCellNum; columnIndex++) {
-					ExcelDTO objExcelDTO = new ExcelDTO();
-					Cell cell = row.getCell(columnIndex);
-
-					if (null == cell) {
-						objExcelDTO.setColumnValue("");
-					} else {
-						if (cell.getCellType() == Cell.CELL_TYPE_BLANK) {
-							objExcelDTO.setColumnValue("");
-						} else if (cell.getCellType() == Cell.CELL_TYPE_STRING) {
-							objExcelDTO.setColumnValue(cell
-									.getStringCellValue());
-						} else if (cell.getCellType() == Cell.CELL_TYPE_NUMERIC) {
-							if (DateUtil.isCellDateFormatted(cell)) {
-								String celldata = df.format(cell
-										.getDateCellValue());
-								objExcelDTO.setColumnValue(celldata);
-							} else {
-								DecimalFormat decimalformat = new DecimalFormat(
-										"0.000");
-								String data = decimalformat.format(cell
-										.getNumericCellValue());
-								objExcelDTO.setColumnValue(data);
-							}
-						} else if (cell.getCellType() == Cell.CELL_TYPE_FORMULA) {
-
-							switch (cell.getCachedFormulaResultType()) {
-							case Cell.CELL_TYPE_BLANK:
-								objExcelDTO.setColumnValue("");
-								break;
-							case Cell.CELL_TYPE_NUMERIC:
-								if (DateUtil.isCellDateFormatted(cell)) {
-									String celldata = df.format(cell
-											.getDateCellValue());
-									objExcelDTO.setColumnValue(celldata);
-								} else {
-									DecimalFormat decimalformat = new DecimalFormat(
-											"0.000");
-									String data = decimalformat.format(cell
-											.getNumericCellValue());
-									objExcelDTO.setColumnValue(data);
-								}
-								break;
-
-							case Cell.CELL_TYPE_STRING:
-								objExcelDTO.setColumnValue(cell
-										.getStringCellValue());
-								break;
-							}
-						}
-
-					}
-
-					if (rowIndex == 0) {
-						// headers
-						objExcelDTO.setColumnName("HEADER");
-						headerList.add(cell.getStringCellValue());
-					} else {
-						objExcelDTO.setColumnName(headerList.get(columnIndex));
-					}
-
-					listExcelDTO.add(objExcelDTO);
-
-				}
-
-				map.put(rowIndex, listExcelDTO);
-
-			}
-			LOG.info("Completed method [read].");
-
-		} catch (Exception ex) {
-			LOG.error("Error in method [read]:::" + ex);
-		} finally {
-			if (null != inputStream) {
-				inputStream.close();
-			}
-		}
-
-		return map;
+		return defaultReader.read(excelFile, lastCellNum, sheetNumber);
 	}
 
 	/**
-	 * Read xlsx.
+	 * Read a file given by its path.
 	 * 
-	 * @param excelFile
+	 * @param excelPath
 	 *            the excel file
 	 * @param lastCellNum
-	 *            the last cell number
+	 *            the last cell number(signifies number of columns to read from the excel)
 	 * @param sheetNumber
-	 *            the sheet number
+	 *            the sheet number(Starts from 1)
 	 * @return the map
 	 * @throws IOException
 	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
 	 * @throws OpenXML4JException
 	 *             the OpenXML4J exception
+	 */
+	public static Map<Integer, List<ExcelDTO>> read(Path excelPath,
+			int lastCellNum, int sheetNumber) throws IOException, SAXException,
+			OpenXML4JException {
+		return defaultReader.read(excelPath, lastCellNum, sheetNumber);
+	}
+
+	/**
+	 * Read a workbook held in memory, from the position to the limit of the
+	 * buffer. The buffer is read in place (heap, direct or memory mapped) and
+	 * its position is left unchanged. xlsx and xls are told apart by the
+	 * content.
+	 * 
+	 * @param excelData
+	 *            the content of the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @return the map
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
 	 * @throws SAXException
 	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
 	 */
-	private static Map<Integer, List<ExcelDTO>> readXLSX(File excelFile,
-			int lastCellNum, int sheetNumber) throws IOException,
-			OpenXML4JException, SAXException {
-
-		LOG.info("Beginning method [readXLSX]...");
-		try {
-			FileInputStream inputStream = null;
-			OPCPackage opcPackage = null;
-			inputStream = new FileInputStream(excelFile);
-			opcPackage = OPCPackage.open(inputStream);
-
-			XSSFReader r = new XSSFReader(opcPackage);
-			StylesTable styles = r.getStylesTable();
-			ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(
-					opcPackage);
-			map = new HashMap<Integer, List<ExcelDTO>>();
-			ContentHandler sheetContentsHandler = new SheetHandler(
-					sharedStrings, lastCellNum, styles, map);
-
-			XMLReader parser = XMLReaderFactory.createXMLReader();
-
-			parser.setContentHandler(sheetContentsHandler);
-			InputStream sheet2 = r.getSheet(findSheetId(sheetNumber));
-			InputSource sheetSource = new InputSource(sheet2);
-			parser.parse(sheetSource);
-			sheet2.close();
-			map = completeMap(map);
-
-			LOG.info("Completed [readXLSX].");
-
-		} catch (Exception ex) {
-			LOG.error("Error in method [readXLSX]:::" + ex);
-		}
-
-		return map;
-
+	public static Map<Integer, List<ExcelDTO>> read(ByteBuffer excelData,
+			int lastCellNum, int sheetNumber) throws IOException, SAXException,
+			OpenXML4JException {
+		return defaultReader.read(excelData, lastCellNum, sheetNumber);
 	}
 
 	/**
-	 * Find sheet id.
+	 * Read a workbook held in a byte array, without copying it.
 	 * 
+	 * @param excelData
+	 *            the content of the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
 	 * @param sheetNumber
-	 *            the sheet number
-	 * @return the string
+	 *            the sheet number(Starts from 1)
+	 * @return the map
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
 	 */
-	private static String findSheetId(int sheetNumber) {
-		String relId = "rId";
-		return (relId + sheetNumber);
+	public static Map<Integer, List<ExcelDTO>> read(byte[] excelData,
+			int lastCellNum, int sheetNumber) throws IOException, SAXException,
+			OpenXML4JException {
+		return defaultReader.read(excelData, lastCellNum, sheetNumber);
 	}
 
 	/**
-	 * Complete map.
+	 * Read a workbook from a channel, up to its end. A file channel is memory
+	 * mapped from its current position, any other channel is read into memory
+	 * once. The channel is not closed.
 	 * 
-	 * @param map
-	 *            the map
+	 * @param excelChannel
+	 *            the channel giving the content of the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
 	 * @return the map
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
 	 */
-	private static Map<Integer, List<ExcelDTO>> completeMap(
-			Map<Integer, List<ExcelDTO>> map) {
-
-		Map<Integer, List<ExcelDTO>> newExcelMap = new HashMap<Integer, List<ExcelDTO>>();
-		Set<Integer> keySet = map.keySet();
-		ArrayList<Integer> list = new ArrayList<Integer>(keySet);
-		Collections.sort(list); //
-
-		Iterator<Integer> itExcelRow = list.iterator();
-		Integer headerKey = itExcelRow.next();
-		List<ExcelDTO> excelHeaderRow = map.get(headerKey);
-		List<ExcelDTO> excelRow = null;
-
-		// set the header
-		newExcelMap.put(headerKey, excelHeaderRow);
-
-		while (itExcelRow.hasNext()) {
-
-			Integer keyVal = itExcelRow.next();
-			excelRow = map.get(keyVal);
-
-			// get excel row value
-			for (ExcelDTO excelHeaderColumnValue : excelHeaderRow) {
-				if (!isColumnValuePresent(excelRow, excelHeaderColumnValue)) {
-					ExcelDTO newExcelDTO = new ExcelDTO();
-					newExcelDTO.setColumnName(excelHeaderColumnValue
-							.getColumnValue());
-					newExcelDTO.setColumnValue("");
-					excelRow.add(newExcelDTO);
-				}
-			}
-
-			// skip the row insert if all columns of the row is empty
-			if (!isEmptyRow(excelRow)) {
-				newExcelMap.put(keyVal, excelRow);
-			}
-		}
-		return newExcelMap;
+	public static Map<Integer, List<ExcelDTO>> read(
+			ReadableByteChannel excelChannel, int lastCellNum, int sheetNumber)
+			throws IOException, SAXException, OpenXML4JException {
+		return defaultReader.read(excelChannel, lastCellNum, sheetNumber);
 	}
 
 	/**
-	 * Checks if the column value is present.
+	 * Read the sheet row by row. Every row is handed to the row handler as
+	 * soon as it has been parsed and is not retained by the parser, so the
+	 * memory needed does not grow with the number of rows in the sheet.
 	 * 
-	 * @param excelRow
-	 *            the excel row
-	 * @param excelHeaderColumnValue
-	 *            the excel header column value
-	 * @return true, if the column value is present
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param rowHandler
+	 *            the row handler
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
 	 */
-	private static boolean isColumnValuePresent(List<ExcelDTO> excelRow,
-			ExcelDTO excelHeaderColumnValue) {
-
-		for (ExcelDTO dto : excelRow) {
-			if (null != excelHeaderColumnValue
-					&& excelHeaderColumnValue.getColumnValue()
-							.equalsIgnoreCase(dto.getColumnName())) {
-				return true;
-			}
-		}
-		return false;
+	public static void read(File excelFile, int lastCellNum, int sheetNumber,
+			RowHandler rowHandler) throws IOException, SAXException,
+			OpenXML4JException {
+		defaultReader.read(excelFile, lastCellNum, sheetNumber, rowHandler);
+	}
 
+	/**
+	 * Read the sheet of a file given by its path row by row.
+	 * 
+	 * @param excelPath
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param rowHandler
+	 *            the row handler
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #read(File, int, int, RowHandler)
+	 */
+	public static void read(Path excelPath, int lastCellNum, int sheetNumber,
+			RowHandler rowHandler) throws IOException, SAXException,
+			OpenXML4JException {
+		defaultReader.read(excelPath, lastCellNum, sheetNumber, rowHandler);
 	}
 
 	/**
-	 * Checks if the row is empty.
+	 * Read the sheet of a workbook held in memory row by row.
 	 * 
-	 * @param excelRow
-	 *            the excel row
-	 * @return true, if the row is empty
+	 * @param excelData
+	 *            the content of the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param rowHandler
+	 *            the row handler
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #read(ByteBuffer, int, int)
 	 */
-	private static boolean isEmptyRow(List<ExcelDTO> excelRow) {
-		boolean isEmptyRow = true;
-		for (ExcelDTO excelColumn : excelRow) {
-			if (!isEmptyColumn(excelColumn)) {
-				isEmptyRow = false;
-				break;
-			}
-		}
-		return isEmptyRow;
+	public static void read(ByteBuffer excelData, int lastCellNum,
+			int sheetNumber, RowHandler rowHandler) throws IOException,
+			SAXException, OpenXML4JException {
+		defaultReader.read(excelData, lastCellNum, sheetNumber, rowHandler);
 	}
 
 	/**
-	 * Checks if the column is empty.
+	 * Read the sheet of a workbook held in a byte array row by row.
 	 * 
-	 * @param excelColumn
-	 *            the excel column
-	 * @return true, if the column is empty
+	 * @param excelData
+	 *            the content of the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param rowHandler
+	 *            the row handler
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
 	 */
-	private static boolean isEmptyColumn(ExcelDTO excelColumn) {
-		return (null == excelColumn.getColumnValue() || EMPTY_STRING
-				.equalsIgnoreCase(excelColumn.getColumnValue()));
+	public static void read(byte[] excelData, int lastCellNum,
+			int sheetNumber, RowHandler rowHandler) throws IOException,
+			SAXException, OpenXML4JException {
+		defaultReader.read(excelData, lastCellNum, sheetNumber, rowHandler);
 	}
 
 	/**
-	 * Removes the empty rows from the excel sheet.
+	 * Read the sheet of a workbook given by a channel row by row.
 	 * 
-	 * @param sheet
-	 *            the sheet
+	 * @param excelChannel
+	 *            the channel giving the content of the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param rowHandler
+	 *            the row handler
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #read(ReadableByteChannel, int, int)
 	 */
-	private static void removeEmptyRowsFromExcelSheet(Sheet sheet) {
-		boolean stop = false;
-		boolean nonBlankRowFound;
-		Row lastRow = null;
-		Cell cell = null;
+	public static void read(ReadableByteChannel excelChannel,
+			int lastCellNum, int sheetNumber, RowHandler rowHandler)
+			throws IOException, SAXException, OpenXML4JException {
+		defaultReader.read(excelChannel, lastCellNum, sheetNumber, rowHandler);
+	}
 
-		while (!stop) {
-			nonBlankRowFound = false;
-			lastRow = sheet.getRow(sheet.getLastRowNum());
-			for (int cellIndex = lastRow.getFirstCellNum(); cellIndex <= lastRow
-					.getLastCellNum(); cellIndex++) {
-				cell = lastRow.getCell(cellIndex);
-				if (cell != null
-						&& lastRow.getCell(cellIndex).getCellType() != Cell.CELL_TYPE_BLANK) {
-					nonBlankRowFound = true;
-				}
-			}
-			if (nonBlankRowFound) {
-				stop = true;
-			} else {
-				sheet.removeRow(lastRow);
-			}
-		}
+	/**
+	 * Read part of the sheet: the columns and rows given by the options. Only
+	 * the wanted cells are converted, and the sheet is no longer read once
+	 * the last wanted row is done, so a preview of the first rows of a large
+	 * sheet returns quickly.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param options
+	 *            the columns and rows to read
+	 * @return the map
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public static Map<Integer, List<ExcelDTO>> read(File excelFile,
+			int lastCellNum, int sheetNumber, ReadOptions options)
+			throws IOException, SAXException, OpenXML4JException {
+		return defaultReader.read(excelFile, lastCellNum, sheetNumber,
+				options);
 	}
-}
 
-class SheetHandler extends DefaultHandler {
-	enum xssfDataType {
-		BOOL, ERROR, FORMULA, INLINESTR, SSTINDEX, NUMBER, NO_STYLE
+	/**
+	 * Read part of the sheet of a file given by its path.
+	 * 
+	 * @param excelPath
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param options
+	 *            the columns and rows to read
+	 * @return the map
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #read(File, int, int, ReadOptions)
+	 */
+	public static Map<Integer, List<ExcelDTO>> read(Path excelPath,
+			int lastCellNum, int sheetNumber, ReadOptions options)
+			throws IOException, SAXException, OpenXML4JException {
+		return defaultReader.read(excelPath, lastCellNum, sheetNumber,
+				options);
 	}
 
-	private static final Logger LOG = Logger.getLogger(SheetHandler.class);
+	/**
+	 * Read part of the sheet row by row.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param options
+	 *            the columns and rows to read
+	 * @param rowHandler
+	 *            the row handler
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #read(File, int, int, ReadOptions)
+	 */
+	public static void read(File excelFile, int lastCellNum, int sheetNumber,
+			ReadOptions options, RowHandler rowHandler) throws IOException,
+			SAXException, OpenXML4JException {
+		defaultReader.read(excelFile, lastCellNum, sheetNumber, options,
+				rowHandler);
+	}
 
-	private List<ExcelDTO> listExcelDTO = new ArrayList<ExcelDTO>();
-	private StringBuffer value = new StringBuffer();
-	private StylesTable stylesTable;
+	/**
+	 * Read part of the sheet of a file given by its path row by row.
+	 * 
+	 * @param excelPath
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param options
+	 *            the columns and rows to read
+	 * @param rowHandler
+	 *            the row handler
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #read(File, int, int, ReadOptions)
+	 */
+	public static void read(Path excelPath, int lastCellNum, int sheetNumber,
+			ReadOptions options, RowHandler rowHandler) throws IOException,
+			SAXException, OpenXML4JException {
+		defaultReader.read(excelPath, lastCellNum, sheetNumber, options,
+				rowHandler);
+	}
 
-	/** * Table with unique strings */
-	private ReadOnlySharedStringsTable sharedStringsTable;
+	/**
+	 * Read the sheet row by row with the raw values of the cells.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param rowHandler
+	 *            the raw row handler
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see ExcelReader#readRaw(File, int, int, RawRowHandler)
+	 */
+	public static void readRaw(File excelFile, int lastCellNum,
+			int sheetNumber, RawRowHandler rowHandler) throws IOException,
+			SAXException, OpenXML4JException {
+		defaultReader.readRaw(excelFile, lastCellNum, sheetNumber, rowHandler);
+	}
 
-	private List<String> headerList = new ArrayList<String>();
+	/**
+	 * Read the sheet into a map kept within the heap budget of a row store,
+	 * spilling the rows beyond it to a temp file.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param store
+	 *            the row store
+	 * @return the rows, by row number; to be closed
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see ExcelReader#read(File, int, int, RowStore)
+	 */
+	public static SpillingRowMap read(File excelFile, int lastCellNum,
+			int sheetNumber, RowStore store) throws IOException,
+			SAXException, OpenXML4JException {
+		return defaultReader.read(excelFile, lastCellNum, sheetNumber, store);
+	}
 
-	/** * Number of columns to read starting with leftmost */
-	private final int minColumnCount = 5;
+	/**
+	 * Open a cursor pulling the rows of the sheet as they are parsed.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @return the cursor, to be closed unless all its rows are taken
+	 * @see ExcelReader#openCursor(File, int, int)
+	 */
+	public static RowCursor openCursor(File excelFile, int lastCellNum,
+			int sheetNumber) {
+		return defaultReader.openCursor(excelFile, lastCellNum, sheetNumber);
+	}
 
-	// Set when V start element is seen
-	private boolean vExists;
+	/**
+	 * Stream the rows of the sheet, parsed lazily as the stream is consumed.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @return the rows, the header row first
+	 * @see ExcelReader#stream(File, int, int)
+	 */
+	public static Stream<ExcelRow> stream(File excelFile, int lastCellNum,
+			int sheetNumber) {
+		return defaultReader.stream(excelFile, lastCellNum, sheetNumber);
+	}
 
-	// Set when cell start element is seen
-	// used when cell close element is seen.
-	private xssfDataType nextDataType;
+	/**
+	 * Stream the rows of the given sheets, parsed lazily as the stream is
+	 * consumed; a parallel stream splits the work by sheet and by chunks of
+	 * rows.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumbers
+	 *            the sheet numbers(Starts from 1)
+	 * @return the rows, by sheet number in ascending order
+	 * @see ExcelReader#stream(File, int, Set)
+	 */
+	public static Stream<ExcelRow> stream(File excelFile, int lastCellNum,
+			Set<Integer> sheetNumbers) {
+		return defaultReader.stream(excelFile, lastCellNum, sheetNumbers);
+	}
 
-	// Used to format numeric cell values
-	private int formatIndex;
-	private String formatString;
-	private final DataFormatter formatter = new DataFormatter();
+	/**
+	 * Read the sheet into a columnar sheet. Numbers, dates and booleans are
+	 * kept as primitives, text is dictionary encoded per column and the
+	 * column names are stored once, so a large sheet needs a fraction of the
+	 * heap of the {@link ExcelDTO} map. Rows without any value are skipped.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @return the columnar sheet
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public static ColumnarSheet readColumnar(File excelFile, int lastCellNum,
+			int sheetNumber) throws IOException, SAXException,
+			OpenXML4JException {
+		return defaultReader.readColumnar(excelFile, lastCellNum, sheetNumber);
+	}
 
-	private int currentColumn = -1;
+	/**
+	 * Read the sheet of a workbook held in memory into a columnar sheet.
+	 * 
+	 * @param excelData
+	 *            the content of the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @return the columnar sheet
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #readColumnar(File, int, int)
+	 */
+	public static ColumnarSheet readColumnar(ByteBuffer excelData,
+			int lastCellNum, int sheetNumber) throws IOException,
+			SAXException, OpenXML4JException {
+		return defaultReader.readColumnar(excelData, lastCellNum, sheetNumber);
+	}
 
-	// The last column
-	private int lastColumnNumber = -1;
-	private boolean bIsFirstRow;
-	private int rownum = -1;
-	private int lastCellNum;
+	/**
+	 * Read the sheet into instances of a row class bound by its
+	 * {@link ExcelColumn} annotations.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param type
+	 *            the row class, with a constructor without parameters
+	 * @return the instances, in the order of the rows
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see ExcelReader#read(File, int, int, Class)
+	 */
+	public static <T> List<T> read(File excelFile, int lastCellNum,
+			int sheetNumber, Class<T> type) throws IOException, SAXException,
+			OpenXML4JException {
+		return defaultReader.read(excelFile, lastCellNum, sheetNumber, type);
+	}
 
-	private ExcelDTO objExcelDTO = null;
+	/**
+	 * Read the sheet once and save it as a {@link SheetSnapshot} file. Open
+	 * it with {@link SheetSnapshot#open(File)} to read the same rows as
+	 * {@link #read(File, int, int)} from the memory mapped file, without
+	 * parsing the workbook again.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param snapshotFile
+	 *            the snapshot file, replaced if it exists
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public static void writeSnapshot(File excelFile, int lastCellNum,
+			int sheetNumber, File snapshotFile) throws IOException,
+			SAXException, OpenXML4JException {
+		defaultReader.writeSnapshot(excelFile, lastCellNum, sheetNumber,
+				snapshotFile);
+	}
 
-	private Map<Integer, List<ExcelDTO>> map = null;
+	/**
+	 * Read all sheets of the workbook. The workbook is opened once and its
+	 * styles and shared strings are read once for all sheets; the sheets of
+	 * an xlsx workbook are parsed in parallel, one per available processor.
+	 * xls sheets are read in a single pass over the workbook.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @return the rows of every sheet, by sheet number in workbook order
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public static Map<Integer, Map<Integer, List<ExcelDTO>>> readAll(
+			File excelFile, int lastCellNum) throws IOException, SAXException,
+			OpenXML4JException {
+		return defaultReader.readAll(excelFile, lastCellNum);
+	}
 
-	private static String inlineStr = "inlineStr";
-	private static String cellValue = "v";
-	private static String row = "row";
-	private static String rowIndexOne = "1";
-	private static String cell = "c";
-	private static String xmlRow = "r";
-	private static String cellTypeInXML = "t";
-	private static String cellStyle = "s";
-	private static String booleanType = "b";
-	private static String errorType = "e";
-	private static String stringType = "str";
-	private static String xmlDateFormat = "m/d/yy";
-	private static String excelDateFormat = "yyyy-MM-dd";
-	private static String sstIndex = "s";
+	/**
+	 * Read all sheets of the workbook, parsing the sheets on the given
+	 * executor. The executor is not shut down.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param executor
+	 *            the executor parsing the sheets
+	 * @return the rows of every sheet, by sheet number in workbook order
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #readAll(File, int)
+	 */
+	public static Map<Integer, Map<Integer, List<ExcelDTO>>> readAll(
+			File excelFile, int lastCellNum, ExecutorService executor)
+			throws IOException, SAXException, OpenXML4JException {
+		return defaultReader.readAll(excelFile, lastCellNum, executor);
+	}
 
 	/**
-	 * Instantiates a new sheet handler.
+	 * Read all sheets of a new version of a workbook. When the default
+	 * reader has an {@link IncrementalCache}, only the sheets that changed
+	 * since the last version read under the same key are parsed.
 	 * 
-	 * @param sst
-	 *            the sst
+	 * @param workbookKey
+	 *            the key of the workbook, e.g. the id of an upload
+	 * @param excelFile
+	 *            the excel file
 	 * @param lastCellNum
-	 *            the last cell num
-	 * @param stylesTable
-	 *            the styles table
-	 * @param map
-	 *            the map
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @return the rows of every sheet, by sheet number in workbook order
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see ExcelReader#readAll(String, File, int)
 	 */
-	@SuppressWarnings({ "rawtypes", "unchecked" })
-	public SheetHandler(ReadOnlySharedStringsTable sst, int lastCellNum,
-			StylesTable stylesTable, Map map) {
-		sharedStringsTable = sst;
-		this.lastCellNum = lastCellNum;
-		this.stylesTable = stylesTable;
-		this.map = map;
+	public static Map<Integer, Map<Integer, List<ExcelDTO>>> readAll(
+			String workbookKey, File excelFile, int lastCellNum)
+			throws IOException, SAXException, OpenXML4JException {
+		return defaultReader.readAll(workbookKey, excelFile, lastCellNum);
+	}
 
+	/**
+	 * Read the given sheets of the workbook, opening it once.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumbers
+	 *            the sheet numbers(Starts from 1)
+	 * @return the rows of every sheet, by sheet number in ascending order
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #readAll(File, int)
+	 */
+	public static Map<Integer, Map<Integer, List<ExcelDTO>>> readSheets(
+			File excelFile, int lastCellNum, Set<Integer> sheetNumbers)
+			throws IOException, SAXException, OpenXML4JException {
+		return defaultReader.readSheets(excelFile, lastCellNum, sheetNumbers);
 	}
 
 	/**
-	 * Column name to index.
+	 * Read the given sheets of the workbook, parsing the sheets on the given
+	 * executor. The executor is not shut down.
 	 * 
-	 * @param name
-	 *            the name
-	 * @return the int
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumbers
+	 *            the sheet numbers(Starts from 1)
+	 * @param executor
+	 *            the executor parsing the sheets
+	 * @return the rows of every sheet, by sheet number in ascending order
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #readAll(File, int)
 	 */
-	private int columnNameToIndex(String name) {
-		int column = -1;
-		for (int i = 0; i < name.length(); ++i) {
-			int c = name.charAt(i);
-			column = (column + 1) * 26 + c - 'A';
-		}
-		return column;
+	public static Map<Integer, Map<Integer, List<ExcelDTO>>> readSheets(
+			File excelFile, int lastCellNum, Set<Integer> sheetNumbers,
+			ExecutorService executor) throws IOException, SAXException,
+			OpenXML4JException {
+		return defaultReader.readSheets(excelFile, lastCellNum, sheetNumbers,
+				executor);
 	}
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * Gets the reader used by the static methods.
 	 * 
-	 * @see org.xml.sax.helpers.DefaultHandler#startElement(java.lang.String,
-	 * java.lang.String, java.lang.String, org.xml.sax.Attributes)
+	 * @return the default reader
 	 */
-	public void startElement(String uri, String localName, String name,
-			Attributes attributes) throws SAXException {
-		if (inlineStr.equals(name) || cellValue.equals(name)) {
-			vExists = true;
-		}
-		// row => row
-		else if (row.equals(name)) {
-			String r = attributes.getValue(xmlRow);
-			rownum = Integer.parseInt(r);
-			if (rowIndexOne.equals(r)) {
-				// indicates first row
-				bIsFirstRow = true;
-			} else {
-				bIsFirstRow = false;
-			}
-			listExcelDTO = new ArrayList<ExcelDTO>();
-		} else if (cell.equals(name)) {
-			// Get the cell reference
-			// Clear contents cache
-			value.setLength(0);
-
-			objExcelDTO = new ExcelDTO();
-
-			String r = attributes.getValue(xmlRow);
-			int firstDigit = -1;
-			for (int c = 0; c < r.length(); ++c) {
-				if (Character.isDigit(r.charAt(c))) {
-					firstDigit = c;
-					break;
-				}
-			}
-
-			currentColumn = columnNameToIndex(r.substring(0, firstDigit));
-
-			// Set up defaults.
-			this.nextDataType = xssfDataType.NUMBER;
-			this.formatIndex = -1;
-			this.formatString = null;
-			String cellType = attributes.getValue(cellTypeInXML);
-			String cellStyleStr = attributes.getValue(cellStyle);
-
-			if (cellType == null && cellStyleStr == null) {
-				nextDataType = xssfDataType.NO_STYLE;
-			}
-
-			if (booleanType.equals(cellType)) {
-				nextDataType = xssfDataType.BOOL;
-			} else if (errorType.equals(cellType)) {
-				nextDataType = xssfDataType.ERROR;
-			} else if (inlineStr.equals(cellType)) {
-				nextDataType = xssfDataType.INLINESTR;
-			} else if (sstIndex.equals(cellType)) {
-				nextDataType = xssfDataType.SSTINDEX;
-			} else if (stringType.equals(cellType)) {
-				nextDataType = xssfDataType.FORMULA;
-			} else if (cellStyleStr != null) {
-				// It's a number, but almost certainly one
-				// with a special style or format
-				int styleIndex = Integer.parseInt(cellStyleStr);
-				XSSFCellStyle style = stylesTable.getStyleAt(styleIndex);
-				this.formatIndex = style.getDataFormat();
-				this.formatString = style.getDataFormatString();
-
-				if (this.formatString == null) {
-					this.formatString = BuiltinFormats
-							.getBuiltinFormat(this.formatIndex);
-				}
-			}
-		}
+	public static ExcelReader getDefaultReader() {
+		return defaultReader;
+	}
 
-		if (cell.equals(name) || cellValue.equals(name)) {
-			if (currentColumn >= lastCellNum) {
-				// stop processing
-				return;
-			}
+	/**
+	 * Sets the reader used by the static methods. Reads already running go
+	 * on with the previous reader.
+	 * 
+	 * @param reader
+	 *            the default reader
+	 */
+	public static synchronized void setDefaultReader(ExcelReader reader) {
+		if (null == reader) {
+			throw new IllegalArgumentException("Reader must not be null");
 		}
+		defaultReader = reader;
 	}
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * Gets the store used for the shared strings of xlsx workbooks.
 	 * 
-	 * @see org.xml.sax.helpers.DefaultHandler#endElement(java.lang.String,
-	 * java.lang.String, java.lang.String)
+	 * @return the shared strings store
+	 * @see ExcelReader#getSharedStringsStore()
 	 */
-	public void endElement(String uri, String localName, String name)
-			throws SAXException {
-
-		String thisStr = null;
-		if (cell.equals(name) || cellValue.equals(name)) {
-
-			if (currentColumn >= lastCellNum) {
-				// stop processing
-				return;
-			}
-		}
-		if (cell.equals(name)) {
-			if (null == value || "".equals(value.toString())) {
-				objExcelDTO.setColumnValue("");
-			}
-
-			if (!bIsFirstRow) {
-				objExcelDTO.setColumnName(headerList.get(currentColumn));
-			}
-			listExcelDTO.add(objExcelDTO);
-		}
+	public static SharedStringsStore getSharedStringsStore() {
+		return defaultReader.getSharedStringsStore();
+	}
 
-		// v => contents of a cell
-		else if (cellValue.equals(name)) {
-			// Process the value contents as required.
-			// Do now, as characters() may be called more than once
-			switch (nextDataType) {
-
-			case BOOL:
-				char first = value.charAt(0);
-				thisStr = first == '0' ? "FALSE" : "TRUE";
-				objExcelDTO.setColumnValue(thisStr);
-				break;
-
-			case ERROR:
-				thisStr = value.toString();
-				objExcelDTO.setColumnValue(thisStr);
-				break;
-
-			case FORMULA:
-				// A formula could result in a string value,
-				// so always add double-quote characters.
-				thisStr = value.toString();
-				objExcelDTO.setColumnValue(thisStr);
-				break;
-
-			case INLINESTR:
-				XSSFRichTextString rtsi = new XSSFRichTextString(
-						value.toString());
-				thisStr = rtsi.toString();
-				objExcelDTO.setColumnValue(thisStr);
-				break;
-
-			case NO_STYLE:
-				XSSFRichTextString its = new XSSFRichTextString(
-						value.toString());
-				thisStr = its.toString();
-				objExcelDTO.setColumnValue(thisStr);
-				break;
-
-			case SSTINDEX:
-				String sstlndex = value.toString();
-				try {
-					int idx = Integer.parseInt(sstlndex);
-					XSSFRichTextString rtss = new XSSFRichTextString(
-							sharedStringsTable.getEntryAt(idx));
-					thisStr = rtss.toString();
-					objExcelDTO.setColumnValue(thisStr);
-				} catch (NumberFormatException ex) {
-					LOG.error("Failed to parse SST index '" + sstIndex + "': "
-							+ ex.toString());
-				}
-
-				break;
-
-			case NUMBER:
-				String n = value.toString();
-				if (this.formatString != null) {
-					if (xmlDateFormat.equals(this.formatString)) {
-						this.formatString = excelDateFormat;
-					}
-					thisStr = formatter.formatRawCellContents(
-							Double.parseDouble(n), this.formatIndex,
-							this.formatString);
-					objExcelDTO.setColumnValue(thisStr);
-				} else {
-					thisStr = n;
-					objExcelDTO.setColumnValue("");
-				}
-				break;
-
-			default:
-				thisStr = "Unexpected type: " + nextDataType;
-				break;
-			}
-
-			if (bIsFirstRow) {
-				objExcelDTO.setColumnName("HEADER");
-				headerList.add(thisStr);
-			}
-
-			if (lastColumnNumber == -1) {
-				lastColumnNumber = 0;
-			}
-
-			if (null == thisStr || "".equals(thisStr)) {
-				objExcelDTO.setColumnValue("");
-			}
-
-			// Update column
-			if (currentColumn > -1) {
-				lastColumnNumber = currentColumn;
-			}
-			vExists = false;
-		} else if (row.equals(name)) {
-			if (minColumnCount > 0) {
-				// Columns are 0 based
-				if (lastColumnNumber == -1) {
-					lastColumnNumber = 0;
-				}
-			}
-
-			// We're onto a new row
-			lastColumnNumber = -1;
-			map.put(rownum - 1, listExcelDTO);
-		}
+	/**
+	 * Sets the store used for the shared strings of xlsx workbooks. By
+	 * default all shared strings are kept on the heap; with
+	 * {@link SharedStringsStore#spilling(int, int)} text heavy workbooks are
+	 * read in bounded memory.
+	 * 
+	 * @param store
+	 *            the shared strings store
+	 * @see ExcelReader.Builder#sharedStringsStore(SharedStringsStore)
+	 */
+	public static synchronized void setSharedStringsStore(
+			SharedStringsStore store) {
+		defaultReader = defaultReader.toBuilder().sharedStringsStore(store)
+				.build();
 	}
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * Gets the executor of pipelined xlsx reading.
 	 * 
-	 * @see org.xml.sax.helpers.DefaultHandler#characters(char[], int, int)
+	 * @return the executor converting the cells, null if pipelined reading is
+	 *         off
+	 * @see ExcelReader#getPipelineExecutor()
 	 */
-	public void characters(char[] ch, int start, int length)
-			throws SAXException {
+	public static ExecutorService getPipelineExecutor() {
+		return defaultReader.getPipelineExecutor();
+	}
 
-		if (vExists) {
-			value.append(ch, start, length);
-		}
+	/**
+	 * Turns pipelined xlsx reading on or off. When on, a sheet read by
+	 * {@link #read(File, int, int, RowHandler)}, the other read methods or
+	 * readColumnar is inflated and tokenized on a thread of its own, its cells
+	 * are converted (shared strings, number formats) on the workers of the
+	 * executor, and the rows are assembled in order on the calling thread.
+	 * This spreads a single large sheet over several cores. readAll and
+	 * readSheets already read every sheet on a worker of its own and are not
+	 * pipelined.
+	 * 
+	 * @param executor
+	 *            the executor converting the cells, shared by all reads and
+	 *            not shut down by the parser; null to turn pipelined reading
+	 *            off
+	 * @see ExcelReader.Builder#pipelineExecutor(ExecutorService)
+	 */
+	public static synchronized void setPipelineExecutor(ExecutorService executor) {
+		defaultReader = defaultReader.toBuilder().pipelineExecutor(executor)
+				.build();
 	}
 }
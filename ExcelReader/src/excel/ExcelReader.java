@@ -0,0 +1,2389 @@
+package excel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.log4j.Logger;
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.xml.sax.SAXException;
+
+import excel.ParseMetrics.Phase;
+
+/**
+ * The Class ExcelReader. Reads excel workbooks with a configuration of its
+ * own. A reader is immutable and may be used by any number of threads at the
+ * same time: every read keeps its rows to itself, and the SAX parsers and
+ * formatters it needs are reused per thread instead of being created for
+ * every read. Readers are created with {@link #builder()}; the static methods
+ * of {@link ExcelParser} use a default reader.
+ * 
+ * @author Sourav
+ */
+public class ExcelReader {
+
+	/** The Constant LOG. */
+	private static final Logger LOG = Logger.getLogger(ExcelReader.class);
+
+	/** Where the shared strings of xlsx workbooks are kept. */
+	private final SharedStringsStore sharedStringsStore;
+
+	/** The executor converting cells of pipelined xlsx reads, null if off. */
+	private final ExecutorService pipelineExecutor;
+
+	/** Whether xlsx sheets are read by the byte level tokenizer. */
+	private final boolean byteTokenizer;
+
+	/** Receives the metrics of every read, null if none are collected. */
+	private final ParseListener parseListener;
+
+	/** Keeps the results of map returning reads, null if none are kept. */
+	private final ParseCache parseCache;
+
+	/** Remembers the sheets of multi sheet reads, null if none are kept. */
+	private final IncrementalCache incrementalCache;
+
+	/** Deduplicates the values of the rows read, null if none are. */
+	private final ValueDictionary valueDictionary;
+
+	/**
+	 * Instantiates a new excel reader.
+	 * 
+	 * @param builder
+	 *            the builder
+	 */
+	private ExcelReader(Builder builder) {
+		this.sharedStringsStore = builder.sharedStringsStore;
+		this.pipelineExecutor = builder.pipelineExecutor;
+		this.byteTokenizer = builder.byteTokenizer;
+		this.parseListener = builder.parseListener;
+		this.parseCache = builder.parseCache;
+		this.incrementalCache = builder.incrementalCache;
+		this.valueDictionary = builder.valueDictionary;
+	}
+
+	/**
+	 * Creates a builder with the default configuration: shared strings on the
+	 * heap, no pipelining.
+	 * 
+	 * @return the builder
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Creates a builder starting from the configuration of this reader.
+	 * 
+	 * @return the builder
+	 */
+	public Builder toBuilder() {
+		Builder builder = new Builder();
+		builder.sharedStringsStore = sharedStringsStore;
+		builder.pipelineExecutor = pipelineExecutor;
+		builder.byteTokenizer = byteTokenizer;
+		builder.parseListener = parseListener;
+		builder.parseCache = parseCache;
+		builder.incrementalCache = incrementalCache;
+		builder.valueDictionary = valueDictionary;
+		return builder;
+	}
+
+	/**
+	 * Gets the store used for the shared strings of xlsx workbooks.
+	 * 
+	 * @return the shared strings store
+	 */
+	public SharedStringsStore getSharedStringsStore() {
+		return sharedStringsStore;
+	}
+
+	/**
+	 * Gets the executor of pipelined xlsx reading.
+	 * 
+	 * @return the executor converting the cells, null if pipelined reading is
+	 *         off
+	 */
+	public ExecutorService getPipelineExecutor() {
+		return pipelineExecutor;
+	}
+
+	/**
+	 * Checks if xlsx sheets are read by the byte level tokenizer.
+	 * 
+	 * @return true, if the byte level tokenizer is used
+	 */
+	public boolean isByteTokenizer() {
+		return byteTokenizer;
+	}
+
+	/**
+	 * Gets the listener receiving the metrics of every read.
+	 * 
+	 * @return the parse listener, null if no metrics are collected
+	 */
+	public ParseListener getParseListener() {
+		return parseListener;
+	}
+
+	/**
+	 * Gets the cache of the results of map returning reads.
+	 * 
+	 * @return the parse cache, null if results are not kept
+	 */
+	public ParseCache getParseCache() {
+		return parseCache;
+	}
+
+	/**
+	 * Gets the cache remembering the sheets of multi sheet reads.
+	 * 
+	 * @return the incremental cache, null if sheets are not remembered
+	 */
+	public IncrementalCache getIncrementalCache() {
+		return incrementalCache;
+	}
+
+	/**
+	 * Gets the dictionary deduplicating the values of the rows read.
+	 * 
+	 * @return the value dictionary, null if values are kept as they are
+	 */
+	public ValueDictionary getValueDictionary() {
+		return valueDictionary;
+	}
+
+	/**
+	 * Read.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @return the map
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public Map<Integer, List<ExcelDTO>> read(File excelFile,
+			int lastCellNum, int sheetNumber) throws IOException, SAXException,
+			OpenXML4JException {
+		return readMap(ExcelSource.of(excelFile.toPath()), lastCellNum,
+				sheetNumber, null);
+	}
+
+	/**
+	 * Read a file given by its path.
+	 * 
+	 * @param excelPath
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @return the map
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public Map<Integer, List<ExcelDTO>> read(Path excelPath,
+			int lastCellNum, int sheetNumber) throws IOException, SAXException,
+			OpenXML4JException {
+		return readMap(ExcelSource.of(excelPath), lastCellNum, sheetNumber,
+				null);
+	}
+
+	/**
+	 * Read a workbook held in memory, from the position to the limit of the
+	 * buffer. The buffer is read in place (heap, direct or memory mapped) and
+	 * its position is left unchanged. xlsx and xls are told apart by the
+	 * content.
+	 * 
+	 * @param excelData
+	 *            the content of the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @return the map
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public Map<Integer, List<ExcelDTO>> read(ByteBuffer excelData,
+			int lastCellNum, int sheetNumber) throws IOException, SAXException,
+			OpenXML4JException {
+		return readMap(ExcelSource.of(excelData), lastCellNum, sheetNumber,
+				null);
+	}
+
+	/**
+	 * Read a workbook held in a byte array, without copying it.
+	 * 
+	 * @param excelData
+	 *            the content of the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @return the map
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public Map<Integer, List<ExcelDTO>> read(byte[] excelData,
+			int lastCellNum, int sheetNumber) throws IOException, SAXException,
+			OpenXML4JException {
+		return read(ByteBuffer.wrap(excelData), lastCellNum, sheetNumber);
+	}
+
+	/**
+	 * Read a workbook from a channel, up to its end. A file channel is memory
+	 * mapped from its current position, any other channel is read into memory
+	 * once. The channel is not closed.
+	 * 
+	 * @param excelChannel
+	 *            the channel giving the content of the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @return the map
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public Map<Integer, List<ExcelDTO>> read(
+			ReadableByteChannel excelChannel, int lastCellNum, int sheetNumber)
+			throws IOException, SAXException, OpenXML4JException {
+		return readMap(ExcelSource.of(excelChannel), lastCellNum, sheetNumber,
+				null);
+	}
+
+	/**
+	 * Read the sheet row by row. Every row is handed to the row handler as
+	 * soon as it has been parsed and is not retained by the parser, so the
+	 * memory needed does not grow with the number of rows in the sheet.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param rowHandler
+	 *            the row handler
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public void read(File excelFile, int lastCellNum, int sheetNumber,
+			RowHandler rowHandler) throws IOException, SAXException,
+			OpenXML4JException {
+		read(ExcelSource.of(excelFile.toPath()), lastCellNum, sheetNumber,
+				null, rowHandler);
+	}
+
+	/**
+	 * Read the sheet of a file given by its path row by row.
+	 * 
+	 * @param excelPath
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param rowHandler
+	 *            the row handler
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #read(File, int, int, RowHandler)
+	 */
+	public void read(Path excelPath, int lastCellNum, int sheetNumber,
+			RowHandler rowHandler) throws IOException, SAXException,
+			OpenXML4JException {
+		read(ExcelSource.of(excelPath), lastCellNum, sheetNumber, null,
+				rowHandler);
+	}
+
+	/**
+	 * Read the sheet of a workbook held in memory row by row.
+	 * 
+	 * @param excelData
+	 *            the content of the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param rowHandler
+	 *            the row handler
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #read(ByteBuffer, int, int)
+	 */
+	public void read(ByteBuffer excelData, int lastCellNum,
+			int sheetNumber, RowHandler rowHandler) throws IOException,
+			SAXException, OpenXML4JException {
+		read(ExcelSource.of(excelData), lastCellNum, sheetNumber, null,
+				rowHandler);
+	}
+
+	/**
+	 * Read the sheet of a workbook held in a byte array row by row.
+	 * 
+	 * @param excelData
+	 *            the content of the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param rowHandler
+	 *            the row handler
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public void read(byte[] excelData, int lastCellNum,
+			int sheetNumber, RowHandler rowHandler) throws IOException,
+			SAXException, OpenXML4JException {
+		read(ByteBuffer.wrap(excelData), lastCellNum, sheetNumber, rowHandler);
+	}
+
+	/**
+	 * Read the sheet of a workbook given by a channel row by row.
+	 * 
+	 * @param excelChannel
+	 *            the channel giving the content of the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param rowHandler
+	 *            the row handler
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #read(ReadableByteChannel, int, int)
+	 */
+	public void read(ReadableByteChannel excelChannel,
+			int lastCellNum, int sheetNumber, RowHandler rowHandler)
+			throws IOException, SAXException, OpenXML4JException {
+		read(ExcelSource.of(excelChannel), lastCellNum, sheetNumber, null,
+				rowHandler);
+	}
+
+	/**
+	 * Read part of the sheet: the columns and rows given by the options. Only
+	 * the wanted cells are converted, and the sheet is no longer read once
+	 * the last wanted row is done, so a preview of the first rows of a large
+	 * sheet returns quickly.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param options
+	 *            the columns and rows to read
+	 * @return the map
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public Map<Integer, List<ExcelDTO>> read(File excelFile,
+			int lastCellNum, int sheetNumber, ReadOptions options)
+			throws IOException, SAXException, OpenXML4JException {
+		return readMap(ExcelSource.of(excelFile.toPath()), lastCellNum,
+				sheetNumber, options);
+	}
+
+	/**
+	 * Read part of the sheet of a file given by its path.
+	 * 
+	 * @param excelPath
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param options
+	 *            the columns and rows to read
+	 * @return the map
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #read(File, int, int, ReadOptions)
+	 */
+	public Map<Integer, List<ExcelDTO>> read(Path excelPath,
+			int lastCellNum, int sheetNumber, ReadOptions options)
+			throws IOException, SAXException, OpenXML4JException {
+		return readMap(ExcelSource.of(excelPath), lastCellNum, sheetNumber,
+				options);
+	}
+
+	/**
+	 * Read part of the sheet row by row.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param options
+	 *            the columns and rows to read
+	 * @param rowHandler
+	 *            the row handler
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #read(File, int, int, ReadOptions)
+	 */
+	public void read(File excelFile, int lastCellNum, int sheetNumber,
+			ReadOptions options, RowHandler rowHandler) throws IOException,
+			SAXException, OpenXML4JException {
+		read(ExcelSource.of(excelFile.toPath()), lastCellNum, sheetNumber,
+				options, rowHandler);
+	}
+
+	/**
+	 * Read part of the sheet of a file given by its path row by row.
+	 * 
+	 * @param excelPath
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param options
+	 *            the columns and rows to read
+	 * @param rowHandler
+	 *            the row handler
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #read(File, int, int, ReadOptions)
+	 */
+	public void read(Path excelPath, int lastCellNum, int sheetNumber,
+			ReadOptions options, RowHandler rowHandler) throws IOException,
+			SAXException, OpenXML4JException {
+		read(ExcelSource.of(excelPath), lastCellNum, sheetNumber, options,
+				rowHandler);
+	}
+
+	/**
+	 * Read the sheet row by row with the raw values of the cells: numbers as
+	 * doubles, dates as epoch days or millis, booleans, error codes and
+	 * strings. No cell is turned into text unless
+	 * {@link RawRow#format(int)} is called for it, and numbers without a
+	 * number format are given as they are instead of as empty text. Every row
+	 * is passed, the header row and empty rows included.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param rowHandler
+	 *            the raw row handler
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public void readRaw(File excelFile, int lastCellNum, int sheetNumber,
+			RawRowHandler rowHandler) throws IOException, SAXException,
+			OpenXML4JException {
+		read(ExcelSource.of(excelFile.toPath()), lastCellNum, sheetNumber,
+				new RawRowBuilder(rowHandler));
+	}
+
+	/**
+	 * Open a cursor pulling the rows of the sheet as they are parsed. The
+	 * header row comes first. The cursor must be closed unless all its rows
+	 * are taken; closing it stops the parse and closes the workbook.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @return the cursor, already parsing the sheet
+	 * @see RowCursor
+	 */
+	public RowCursor openCursor(File excelFile, int lastCellNum,
+			int sheetNumber) {
+		return new RowCursor(this, ExcelSource.of(excelFile.toPath()),
+				lastCellNum, sheetNumber);
+	}
+
+	/**
+	 * Stream the rows of the sheet, parsed lazily as the stream is consumed.
+	 * Close the stream, e.g. with try-with-resources, when it is not consumed
+	 * to the end.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @return the rows, the header row first
+	 * @see #stream(File, int, Set)
+	 */
+	public Stream<ExcelRow> stream(File excelFile, int lastCellNum,
+			int sheetNumber) {
+		return stream(excelFile, lastCellNum, Collections
+				.singleton(sheetNumber));
+	}
+
+	/**
+	 * Stream the rows of the given sheets, parsed lazily as the stream is
+	 * consumed: the rows of every sheet, its header row first, by sheet
+	 * number in ascending order. A parallel stream reads several sheets at
+	 * the same time and processes the rows of a sheet in chunks on the
+	 * fork-join pool while the sheet is parsed. Errors are thrown by the
+	 * terminal operation, as {@link java.io.UncheckedIOException} for I/O
+	 * and parse errors. Close the stream when it is not consumed to the end;
+	 * closing it stops the parses and closes the workbook.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumbers
+	 *            the sheet numbers(Starts from 1)
+	 * @return the rows
+	 * @see RowSpliterator
+	 */
+	public Stream<ExcelRow> stream(File excelFile, int lastCellNum,
+			Set<Integer> sheetNumbers) {
+		int[] sheets = new int[sheetNumbers.size()];
+		int i = 0;
+		for (Integer sheetNumber : new TreeSet<Integer>(sheetNumbers)) {
+			sheets[i++] = sheetNumber;
+		}
+		final RowSpliterator spliterator = new RowSpliterator(this,
+				excelFile.toPath(), lastCellNum, sheets);
+		return StreamSupport.stream(spliterator, false).onClose(
+				new Runnable() {
+					public void run() {
+						spliterator.close();
+					}
+				});
+	}
+
+	/**
+	 * Read the sheet into a columnar sheet. Numbers, dates and booleans are
+	 * kept as primitives, text is dictionary encoded per column and the
+	 * column names are stored once, so a large sheet needs a fraction of the
+	 * heap of the {@link ExcelDTO} map. Rows without any value are skipped.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @return the columnar sheet
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public ColumnarSheet readColumnar(File excelFile, int lastCellNum,
+			int sheetNumber) throws IOException, SAXException,
+			OpenXML4JException {
+		return readColumnar(ExcelSource.of(excelFile.toPath()), lastCellNum,
+				sheetNumber);
+	}
+
+	/**
+	 * Read the sheet of a workbook held in memory into a columnar sheet.
+	 * 
+	 * @param excelData
+	 *            the content of the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @return the columnar sheet
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #readColumnar(File, int, int)
+	 */
+	public ColumnarSheet readColumnar(ByteBuffer excelData,
+			int lastCellNum, int sheetNumber) throws IOException,
+			SAXException, OpenXML4JException {
+		return readColumnar(ExcelSource.of(excelData), lastCellNum,
+				sheetNumber);
+	}
+
+	/**
+	 * Read the sheet into instances of a row class, whose fields or setters
+	 * are bound to the columns by their {@link ExcelColumn} headers. The class
+	 * is looked at once, its setters are bound as lambdas, and numbers, dates
+	 * and booleans are converted from the cell values themselves, without
+	 * {@link ExcelDTO}s or formatted strings in between. Rows without a value
+	 * in a bound column are skipped.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param type
+	 *            the row class, with a constructor without parameters
+	 * @return the instances, in the order of the rows
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @throws IllegalArgumentException
+	 *             if the class cannot be bound, the sheet lacks a required
+	 *             column or a cell cannot be converted
+	 */
+	public <T> List<T> read(File excelFile, int lastCellNum,
+			int sheetNumber, Class<T> type) throws IOException, SAXException,
+			OpenXML4JException {
+		return read(ExcelSource.of(excelFile.toPath()), lastCellNum,
+				sheetNumber, type);
+	}
+
+	/**
+	 * Read the sheet into a map kept within the heap budget of a
+	 * {@link RowStore}: the same rows as {@link #read(File, int, int)}, with
+	 * the rows beyond the budget written to a temp file and read back when
+	 * asked for. The map must be closed to delete the temp file.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param store
+	 *            the row store
+	 * @return the rows, by row number
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public SpillingRowMap read(File excelFile, int lastCellNum,
+			int sheetNumber, RowStore store) throws IOException,
+			SAXException, OpenXML4JException {
+
+		LOG.info("Beginning method [read]...");
+
+		final SpillingRowMap rows = store.newMap();
+		boolean completed = false;
+		try {
+			read(ExcelSource.of(excelFile.toPath()), lastCellNum, sheetNumber,
+					null, new RowHandler() {
+						public void handleRow(int rowNumber, List<ExcelDTO> row) {
+							rows.add(rowNumber, row);
+						}
+					});
+			rows.finish();
+			completed = true;
+		} finally {
+			if (!completed) {
+				rows.close();
+			}
+		}
+
+		LOG.info("Completed method [read].");
+		return rows;
+	}
+
+	/**
+	 * Read the sheet once and save it as a {@link SheetSnapshot} file, which
+	 * can then be opened with {@link SheetSnapshot#open(File)} to read the
+	 * same rows as {@link #read(File, int, int)} without parsing the
+	 * workbook again.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumber
+	 *            the sheet number(Starts from 1)
+	 * @param snapshotFile
+	 *            the snapshot file, replaced if it exists
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public void writeSnapshot(File excelFile, int lastCellNum,
+			int sheetNumber, File snapshotFile) throws IOException,
+			SAXException, OpenXML4JException {
+		writeSnapshot(ExcelSource.of(excelFile.toPath()), lastCellNum,
+				sheetNumber, snapshotFile);
+	}
+
+	/**
+	 * Read all sheets of the workbook. The workbook is opened once and its
+	 * styles and shared strings are read once for all sheets; the sheets of
+	 * an xlsx workbook are parsed in parallel, one per available processor.
+	 * xls sheets are read in a single pass over the workbook.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @return the rows of every sheet, by sheet number in workbook order
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	public Map<Integer, Map<Integer, List<ExcelDTO>>> readAll(
+			File excelFile, int lastCellNum) throws IOException, SAXException,
+			OpenXML4JException {
+		return readSheets(ExcelSource.of(excelFile.toPath()),
+				workbookKey(excelFile), lastCellNum, null, null);
+	}
+
+	/**
+	 * Read all sheets of the workbook, parsing the sheets on the given
+	 * executor. The executor is not shut down.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param executor
+	 *            the executor parsing the sheets
+	 * @return the rows of every sheet, by sheet number in workbook order
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #readAll(File, int)
+	 */
+	public Map<Integer, Map<Integer, List<ExcelDTO>>> readAll(
+			File excelFile, int lastCellNum, ExecutorService executor)
+			throws IOException, SAXException, OpenXML4JException {
+		return readSheets(ExcelSource.of(excelFile.toPath()),
+				workbookKey(excelFile), lastCellNum, null, executor);
+	}
+
+	/**
+	 * Read all sheets of a new version of a workbook. With an
+	 * {@link IncrementalCache} only the sheets that changed since the last
+	 * version read under the same key are parsed, whatever the file is
+	 * called; the other sheets are those of the last version.
+	 * 
+	 * @param workbookKey
+	 *            the key of the workbook, e.g. the id of an upload
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @return the rows of every sheet, by sheet number in workbook order
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #readAll(File, int)
+	 */
+	public Map<Integer, Map<Integer, List<ExcelDTO>>> readAll(
+			String workbookKey, File excelFile, int lastCellNum)
+			throws IOException, SAXException, OpenXML4JException {
+		if (null == workbookKey) {
+			throw new IllegalArgumentException("Workbook key must not be null");
+		}
+		return readSheets(ExcelSource.of(excelFile.toPath()), workbookKey,
+				lastCellNum, null, null);
+	}
+
+	/**
+	 * Read the given sheets of the workbook, opening it once.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumbers
+	 *            the sheet numbers(Starts from 1)
+	 * @return the rows of every sheet, by sheet number in ascending order
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #readAll(File, int)
+	 */
+	public Map<Integer, Map<Integer, List<ExcelDTO>>> readSheets(
+			File excelFile, int lastCellNum, Set<Integer> sheetNumbers)
+			throws IOException, SAXException, OpenXML4JException {
+		return readSheets(ExcelSource.of(excelFile.toPath()),
+				workbookKey(excelFile), lastCellNum, sheetNumbers, null);
+	}
+
+	/**
+	 * Read the given sheets of the workbook, parsing the sheets on the given
+	 * executor. The executor is not shut down.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number(signifies number of columns to read from the excel)
+	 * @param sheetNumbers
+	 *            the sheet numbers(Starts from 1)
+	 * @param executor
+	 *            the executor parsing the sheets
+	 * @return the rows of every sheet, by sheet number in ascending order
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #readAll(File, int)
+	 */
+	public Map<Integer, Map<Integer, List<ExcelDTO>>> readSheets(
+			File excelFile, int lastCellNum, Set<Integer> sheetNumbers,
+			ExecutorService executor) throws IOException, SAXException,
+			OpenXML4JException {
+		return readSheets(ExcelSource.of(excelFile.toPath()),
+				workbookKey(excelFile), lastCellNum, sheetNumbers, executor);
+	}
+
+	/**
+	 * Read the sheet into the legacy map, logging and swallowing any error.
+	 * Results of successful reads are kept in the parse cache, if any.
+	 * 
+	 * @param source
+	 *            the excel source
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param sheetNumber
+	 *            the sheet number
+	 * @param options
+	 *            the read options, null to read the whole sheet
+	 * @return the map, with the rows read before an error
+	 */
+	private Map<Integer, List<ExcelDTO>> readMap(ExcelSource source,
+			int lastCellNum, int sheetNumber, ReadOptions options) {
+
+		LOG.info("Beginning method [read]...");
+
+		Map<Integer, List<ExcelDTO>> map = new HashMap<Integer, List<ExcelDTO>>();
+
+		try {
+			map = readMap(source, lastCellNum, sheetNumber, options, map);
+			LOG.info("Completed method [read].");
+
+		} catch (Exception ex) {
+			LOG.error("Error in method [read]:::" + ex);
+		}
+
+		return map;
+	}
+
+	/**
+	 * Read the sheet into a map, throwing any error. The rows are looked up in
+	 * the parse cache first, if any, and kept in it after a successful read.
+	 * 
+	 * @param source
+	 *            the excel source
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param sheetNumber
+	 *            the sheet number
+	 * @param options
+	 *            the read options, null to read the whole sheet
+	 * @param map
+	 *            the map the rows are put into while the sheet is parsed
+	 * @return the map, or a copy of the cached rows
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	Map<Integer, List<ExcelDTO>> readMap(ExcelSource source, int lastCellNum,
+			int sheetNumber, ReadOptions options,
+			Map<Integer, List<ExcelDTO>> map) throws IOException,
+			SAXException, OpenXML4JException {
+
+		ParseCache.Key key = null;
+		if (null != parseCache) {
+			try {
+				key = parseCache.key(source, lastCellNum, sheetNumber, options);
+				Map<Integer, List<ExcelDTO>> cached = parseCache.get(key);
+				if (null != cached) {
+					LOG.info("Found the rows of " + source + " in the cache.");
+					return cached;
+				}
+			} catch (IOException ex) {
+				LOG.warn("Error in method [read], not cached:::" + ex);
+			}
+		}
+
+		read(source, lastCellNum, sheetNumber, options, mapRowHandler(map));
+		if (null != key) {
+			parseCache.put(key, map);
+		}
+		return map;
+	}
+
+	/**
+	 * Read the sheet row by row.
+	 * 
+	 * @param source
+	 *            the excel source
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param sheetNumber
+	 *            the sheet number
+	 * @param options
+	 *            the read options, null to read the whole sheet
+	 * @param rowHandler
+	 *            the row handler
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	void read(ExcelSource source, int lastCellNum,
+			int sheetNumber, ReadOptions options, RowHandler rowHandler)
+			throws IOException, SAXException, OpenXML4JException {
+
+		ParseMetrics metrics = startMetrics(source);
+		long start = System.nanoTime();
+		try {
+			if (source.isXLSX()) {
+				readXLSX(source, lastCellNum, sheetNumber, options,
+						rowBuilder(rowHandler, true, sheetNumber, metrics),
+						metrics);
+			} else {
+				readXLS(source, lastCellNum, sheetNumber, options,
+						rowBuilder(rowHandler, false, sheetNumber, metrics),
+						metrics);
+			}
+		} catch (Exception ex) {
+			parseFailed(metrics, start, ex);
+			throw ex;
+		}
+		parseCompleted(metrics, start);
+	}
+
+	/**
+	 * Read the sheet into a columnar sheet.
+	 * 
+	 * @param source
+	 *            the excel source
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param sheetNumber
+	 *            the sheet number
+	 * @return the columnar sheet
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	private ColumnarSheet readColumnar(ExcelSource source,
+			int lastCellNum, int sheetNumber) throws IOException,
+			SAXException, OpenXML4JException {
+
+		ParseMetrics metrics = startMetrics(source);
+		long start = System.nanoTime();
+		ColumnarSheet sheet;
+		try {
+			ColumnarSheetBuilder builder = new ColumnarSheetBuilder();
+			if (source.isXLSX()) {
+				readXLSX(source, lastCellNum, sheetNumber, null, builder,
+						metrics);
+			} else {
+				readXLS(source, lastCellNum, sheetNumber, null, builder,
+						metrics);
+			}
+			long built = System.nanoTime();
+			sheet = builder.build();
+			ParseMetrics.endPhase(metrics, Phase.BUILD, built);
+		} catch (Exception ex) {
+			parseFailed(metrics, start, ex);
+			throw ex;
+		}
+		parseCompleted(metrics, start);
+		return sheet;
+	}
+
+	/**
+	 * Read the sheet into instances of a row class.
+	 * 
+	 * @param source
+	 *            the excel source
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param sheetNumber
+	 *            the sheet number
+	 * @param type
+	 *            the row class
+	 * @return the instances
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	private <T> List<T> read(ExcelSource source, int lastCellNum,
+			int sheetNumber, Class<T> type) throws IOException, SAXException,
+			OpenXML4JException {
+
+		final List<T> beans = new ArrayList<T>();
+		read(source, lastCellNum, sheetNumber, new BeanRowBuilder<T>(
+				BeanType.of(type), new Consumer<T>() {
+					public void accept(T bean) {
+						beans.add(bean);
+					}
+				}));
+		return beans;
+	}
+
+	/**
+	 * Read the sheet into a snapshot file.
+	 * 
+	 * @param source
+	 *            the excel source
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param sheetNumber
+	 *            the sheet number
+	 * @param snapshotFile
+	 *            the snapshot file
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	private void writeSnapshot(ExcelSource source, int lastCellNum,
+			int sheetNumber, File snapshotFile) throws IOException,
+			SAXException, OpenXML4JException {
+
+		LOG.info("Beginning method [writeSnapshot]...");
+
+		ParseMetrics metrics = startMetrics(source);
+		long start = System.nanoTime();
+		try {
+			SheetSnapshotWriter writer = new SheetSnapshotWriter(
+					source.isXLSX());
+			if (source.isXLSX()) {
+				readXLSX(source, lastCellNum, sheetNumber, null, writer,
+						metrics);
+			} else {
+				readXLS(source, lastCellNum, sheetNumber, null, writer,
+						metrics);
+			}
+			long built = System.nanoTime();
+			writer.write(snapshotFile);
+			ParseMetrics.endPhase(metrics, Phase.BUILD, built);
+		} catch (Exception ex) {
+			parseFailed(metrics, start, ex);
+			throw ex;
+		}
+		parseCompleted(metrics, start);
+
+		LOG.info("Completed method [writeSnapshot].");
+	}
+
+	/**
+	 * Read several sheets.
+	 * 
+	 * @param source
+	 *            the excel source
+	 * @param workbookKey
+	 *            the key of the workbook in the incremental cache
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param sheetNumbers
+	 *            the sheet numbers, null for all sheets
+	 * @param executor
+	 *            the executor parsing xlsx sheets, null for a pool of one
+	 *            thread per processor
+	 * @return the rows of every sheet, by sheet number
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	private Map<Integer, Map<Integer, List<ExcelDTO>>> readSheets(
+			ExcelSource source, String workbookKey, int lastCellNum,
+			Set<Integer> sheetNumbers, ExecutorService executor)
+			throws IOException, SAXException, OpenXML4JException {
+
+		LOG.info("Beginning method [readSheets]...");
+
+		ParseMetrics metrics = startMetrics(source);
+		long start = System.nanoTime();
+		Map<Integer, Map<Integer, List<ExcelDTO>>> sheets;
+		try {
+			if (source.isXLSX()) {
+				sheets = readSheetsXLSX(source, workbookKey, lastCellNum,
+						sheetNumbers, executor, metrics);
+			} else {
+				sheets = readSheetsXLS(source, lastCellNum, sheetNumbers,
+						metrics);
+			}
+		} catch (Exception ex) {
+			parseFailed(metrics, start, ex);
+			throw ex;
+		}
+		parseCompleted(metrics, start);
+
+		LOG.info("Completed method [readSheets].");
+		return sheets;
+	}
+
+	/**
+	 * Read every sheet of the workbook, one after the other, each into the
+	 * cell handler created for it. The cells are handed over as they are
+	 * parsed: an xls workbook is read in a single pass, the styles and shared
+	 * strings of an xlsx workbook are read once for all sheets.
+	 * 
+	 * @param source
+	 *            the excel source
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param cellHandlers
+	 *            creates the cell handler of a sheet, given its sheet number
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	void readAll(ExcelSource source, int lastCellNum,
+			final IntFunction<? extends CellHandler> cellHandlers)
+			throws IOException, SAXException, OpenXML4JException {
+
+		LOG.info("Beginning method [readAll]...");
+
+		final ParseMetrics metrics = startMetrics(source);
+		long start = System.nanoTime();
+		try {
+			if (source.isXLSX()) {
+				long phase = System.nanoTime();
+				XLSXPackage xlsxPackage = source.openXLSX();
+				try {
+					phase = ParseMetrics.endPhase(metrics, Phase.OPEN, phase);
+					StyleFormats styles = xlsxPackage.readStyleFormats();
+					phase = ParseMetrics.endPhase(metrics, Phase.STYLES, phase);
+					SharedStrings sharedStrings = readSharedStrings(
+							xlsxPackage, metrics, phase);
+					try {
+						for (String relId : xlsxPackage.readSheetIds()) {
+							int sheetNumber = findSheetNumber(relId);
+							if (sheetNumber < 0) {
+								LOG.warn("Skipping sheet with relationship id "
+										+ relId);
+							} else {
+								parseSheet(xlsxPackage, sheetNumber,
+										lastCellNum, styles, sharedStrings,
+										null, cellHandlers.apply(sheetNumber),
+										metrics);
+							}
+						}
+					} finally {
+						sharedStrings.close();
+					}
+				} finally {
+					xlsxPackage.close();
+				}
+			} else {
+				final List<CountingCellHandler> counters = new ArrayList<CountingCellHandler>();
+				XLSWorkbookListener workbookListener = new XLSWorkbookListener(
+						lastCellNum, null) {
+					CellHandler createCellHandler(int sheetNumber) {
+						CellHandler cellHandler = cellHandlers.apply(sheetNumber);
+						if (null != metrics) {
+							CountingCellHandler counter = new CountingCellHandler(
+									cellHandler);
+							counters.add(counter);
+							return counter;
+						}
+						return cellHandler;
+					}
+				};
+				try {
+					processXLS(source, workbookListener, metrics);
+				} finally {
+					for (CountingCellHandler counter : counters) {
+						metrics.addSheet(counter);
+					}
+				}
+			}
+		} catch (Exception ex) {
+			parseFailed(metrics, start, ex);
+			throw ex;
+		}
+		parseCompleted(metrics, start);
+
+		LOG.info("Completed method [readAll].");
+	}
+
+	/**
+	 * Read the sheet into a cell handler, adding metrics.
+	 * 
+	 * @param source
+	 *            the excel source
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param sheetNumber
+	 *            the sheet number
+	 * @param cellHandler
+	 *            the cell handler
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	void read(ExcelSource source, int lastCellNum, int sheetNumber,
+			CellHandler cellHandler) throws IOException, SAXException,
+			OpenXML4JException {
+
+		ParseMetrics metrics = startMetrics(source);
+		long start = System.nanoTime();
+		try {
+			if (source.isXLSX()) {
+				readXLSX(source, lastCellNum, sheetNumber, null, cellHandler,
+						metrics);
+			} else {
+				readXLS(source, lastCellNum, sheetNumber, null, cellHandler,
+						metrics);
+			}
+		} catch (Exception ex) {
+			parseFailed(metrics, start, ex);
+			throw ex;
+		}
+		parseCompleted(metrics, start);
+	}
+
+	/**
+	 * Read several xls sheets in one pass over the workbook.
+	 * 
+	 * @param source
+	 *            the excel source
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param sheetNumbers
+	 *            the sheet numbers, null for all sheets
+	 * @param metrics
+	 *            the metrics of the read, null if not collected
+	 * @return the rows of every sheet, by sheet number
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private Map<Integer, Map<Integer, List<ExcelDTO>>> readSheetsXLS(
+			ExcelSource source, int lastCellNum, Set<Integer> sheetNumbers,
+			final ParseMetrics metrics) throws IOException {
+
+		final Map<Integer, Map<Integer, List<ExcelDTO>>> sheets = new LinkedHashMap<Integer, Map<Integer, List<ExcelDTO>>>();
+		final List<CountingCellHandler> counters = new ArrayList<CountingCellHandler>();
+		XLSWorkbookListener workbookListener = new XLSWorkbookListener(
+				lastCellNum, sheetNumbers) {
+			CellHandler createCellHandler(int sheetNumber) {
+				Map<Integer, List<ExcelDTO>> sheet = new HashMap<Integer, List<ExcelDTO>>();
+				sheets.put(sheetNumber, sheet);
+				CellHandler cellHandler = rowBuilder(mapRowHandler(sheet),
+						false, sheetNumber, metrics);
+				if (null != metrics) {
+					CountingCellHandler counter = new CountingCellHandler(
+							cellHandler);
+					counters.add(counter);
+					return counter;
+				}
+				return cellHandler;
+			}
+		};
+		try {
+			processXLS(source, workbookListener, metrics);
+		} finally {
+			for (CountingCellHandler counter : counters) {
+				metrics.addSheet(counter);
+			}
+		}
+
+		if (null != sheetNumbers) {
+			for (Integer sheetNumber : new TreeSet<Integer>(sheetNumbers)) {
+				XLSSheetHandler sheetHandler = workbookListener
+						.getSheetHandlers().get(sheetNumber);
+				if (null == sheetHandler || !sheetHandler.isSheetFound()) {
+					throw new IllegalArgumentException("Sheet number ("
+							+ sheetNumber + ") is out of range");
+				}
+			}
+		}
+		return sheets;
+	}
+
+	/**
+	 * Read several xlsx sheets, each on a worker of the executor. The styles
+	 * and shared strings are read once and shared by the workers. With an
+	 * incremental cache, the sheets unchanged since the last version of the
+	 * workbook are taken from it, and when no sheet is parsed neither are the
+	 * styles nor the shared strings.
+	 * 
+	 * @param source
+	 *            the excel source
+	 * @param workbookKey
+	 *            the key of the workbook in the incremental cache
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param sheetNumbers
+	 *            the sheet numbers, null for all sheets
+	 * @param executor
+	 *            the executor, null for a pool of one thread per processor
+	 * @param metrics
+	 *            the metrics of the read, null if not collected
+	 * @return the rows of every sheet, by sheet number
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	private Map<Integer, Map<Integer, List<ExcelDTO>>> readSheetsXLSX(
+			ExcelSource source, String workbookKey, int lastCellNum,
+			Set<Integer> sheetNumbers, ExecutorService executor,
+			ParseMetrics metrics) throws IOException, SAXException,
+			OpenXML4JException {
+
+		long start = System.nanoTime();
+		XLSXPackage xlsxPackage = source.openXLSX();
+		try {
+			start = ParseMetrics.endPhase(metrics, Phase.OPEN, start);
+			List<Integer> numbers = new ArrayList<Integer>();
+			if (null == sheetNumbers) {
+				for (String relId : xlsxPackage.readSheetIds()) {
+					int sheetNumber = findSheetNumber(relId);
+					if (sheetNumber < 0) {
+						LOG.warn("Skipping sheet with relationship id " + relId);
+					} else {
+						numbers.add(sheetNumber);
+					}
+				}
+			} else {
+				numbers.addAll(new TreeSet<Integer>(sheetNumbers));
+			}
+
+			IncrementalCache.Version last = null;
+			IncrementalCache.Version version = null;
+			Map<Integer, String> fingerprints = new HashMap<Integer, String>();
+			Map<Integer, IncrementalCache.Sheet> unchanged = new HashMap<Integer, IncrementalCache.Sheet>();
+			if (null != incrementalCache && null != workbookKey) {
+				last = incrementalCache.get(workbookKey);
+				version = new IncrementalCache.Version(lastCellNum,
+						xlsxPackage.getFormatsFingerprint(),
+						xlsxPackage.getSharedStringsFingerprint());
+				for (Integer sheetNumber : numbers) {
+					String fingerprint = xlsxPackage
+							.getSheetFingerprint(findSheetId(sheetNumber));
+					fingerprints.put(sheetNumber, fingerprint);
+					IncrementalCache.Sheet sheet = version.findUnchanged(last,
+							sheetNumber, fingerprint);
+					if (null != sheet) {
+						unchanged.put(sheetNumber, sheet);
+					}
+				}
+			}
+			List<Integer> parsed = new ArrayList<Integer>(numbers);
+			parsed.removeAll(unchanged.keySet());
+
+			Map<Integer, Map<Integer, List<ExcelDTO>>> parsedSheets = new HashMap<Integer, Map<Integer, List<ExcelDTO>>>();
+			Map<Integer, BitSet> usedStrings = new HashMap<Integer, BitSet>();
+			if (!parsed.isEmpty()
+					|| (!unchanged.isEmpty() && !version.hasSharedStringsOf(last))) {
+				StyleFormats styles = xlsxPackage.readStyleFormats();
+				start = ParseMetrics.endPhase(metrics, Phase.STYLES, start);
+				SharedStrings sharedStrings = readSharedStrings(xlsxPackage,
+						metrics, start);
+				try {
+					if (null != version) {
+						long[] stringHashes = version.hasSharedStringsOf(last) ? last
+								.getStringHashes() : null;
+						version.setStringHashes(null != stringHashes ? stringHashes
+								: IncrementalCache.hashStrings(sharedStrings));
+						for (Integer sheetNumber : numbers) {
+							IncrementalCache.Sheet sheet = unchanged
+									.get(sheetNumber);
+							if (null != sheet && !version.hasStringsOf(last, sheet)) {
+								unchanged.remove(sheetNumber);
+								parsed.add(sheetNumber);
+							}
+						}
+					}
+					if (!parsed.isEmpty()) {
+						ExecutorService pool = executor;
+						if (null == pool) {
+							pool = Executors.newFixedThreadPool(Math.max(1,
+									Math.min(parsed.size(), Runtime
+											.getRuntime().availableProcessors())));
+						}
+						try {
+							SheetWorkers workers = new SheetWorkers();
+							List<Future<Map<Integer, List<ExcelDTO>>>> futures = new ArrayList<Future<Map<Integer, List<ExcelDTO>>>>();
+							for (Integer sheetNumber : parsed) {
+								SharedStrings sheetStrings = sharedStrings;
+								if (null != version) {
+									BitSet used = new BitSet();
+									usedStrings.put(sheetNumber, used);
+									sheetStrings = IncrementalCache.recording(
+											sharedStrings, used);
+								}
+								futures.add(pool.submit(sheetReader(
+										xlsxPackage, sheetNumber, lastCellNum,
+										styles, sheetStrings, metrics, workers)));
+							}
+							parsedSheets = collectSheets(parsed, futures,
+									workers);
+						} finally {
+							if (null == executor) {
+								pool.shutdown();
+							}
+						}
+					}
+				} finally {
+					sharedStrings.close();
+				}
+			} else if (null != version) {
+				version.setStringHashes(null == last ? null : last
+						.getStringHashes());
+			}
+
+			Map<Integer, Map<Integer, List<ExcelDTO>>> sheets = new LinkedHashMap<Integer, Map<Integer, List<ExcelDTO>>>();
+			for (Integer sheetNumber : numbers) {
+				IncrementalCache.Sheet sheet = unchanged.get(sheetNumber);
+				if (null != sheet) {
+					sheets.put(sheetNumber, sheet.copyRows());
+					version.addSheet(sheetNumber, sheet);
+				} else {
+					Map<Integer, List<ExcelDTO>> rows = parsedSheets
+							.get(sheetNumber);
+					sheets.put(sheetNumber, rows);
+					if (null != version) {
+						version.addSheet(sheetNumber, new IncrementalCache.Sheet(
+								fingerprints.get(sheetNumber), usedStrings
+										.get(sheetNumber), ParseCache.copy(rows)));
+					}
+				}
+			}
+			if (null != version) {
+				incrementalCache.put(workbookKey, version, parsed.size(),
+						unchanged.size());
+				LOG.info("Parsed " + parsed.size() + " and reused "
+						+ unchanged.size() + " sheets of " + workbookKey);
+			}
+			return sheets;
+		} finally {
+			xlsxPackage.close();
+		}
+	}
+
+	/**
+	 * Task reading one xlsx sheet into a map.
+	 * 
+	 * @param xlsxPackage
+	 *            the xlsx package
+	 * @param sheetNumber
+	 *            the sheet number
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param styles
+	 *            the style formats
+	 * @param sharedStrings
+	 *            the shared strings
+	 * @param metrics
+	 *            the metrics of the read, null if not collected
+	 * @param workers
+	 *            tracks the tasks of the read
+	 * @return the task, ending once the workers are stopped
+	 */
+	private Callable<Map<Integer, List<ExcelDTO>>> sheetReader(
+			final XLSXPackage xlsxPackage, final int sheetNumber,
+			final int lastCellNum, final StyleFormats styles,
+			final SharedStrings sharedStrings, final ParseMetrics metrics,
+			final SheetWorkers workers) {
+		return new Callable<Map<Integer, List<ExcelDTO>>>() {
+			public Map<Integer, List<ExcelDTO>> call() throws Exception {
+				if (!workers.start()) {
+					return null;
+				}
+				try {
+					Map<Integer, List<ExcelDTO>> sheet = new HashMap<Integer, List<ExcelDTO>>();
+					final RowHandler rowHandler = mapRowHandler(sheet);
+					parseSheet(xlsxPackage, sheetNumber, lastCellNum, styles,
+							sharedStrings, null, rowBuilder(new RowHandler() {
+								public void handleRow(int rowNumber,
+										List<ExcelDTO> row) {
+									if (workers.isStopped()) {
+										throw new CancellationException(
+												"Read of sheet " + sheetNumber
+														+ " cancelled");
+									}
+									rowHandler.handleRow(rowNumber, row);
+								}
+							}, true, sheetNumber, metrics), metrics);
+					return sheet;
+				} finally {
+					workers.end();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Waits for the sheets parsed by the workers. All workers are waited for
+	 * before the first failure is thrown, so none of them is still reading
+	 * once the package is closed. When interrupted the sheets are cancelled,
+	 * and the workers already reading are waited for before
+	 * {@link InterruptedIOException} is thrown.
+	 * 
+	 * @param numbers
+	 *            the sheet numbers
+	 * @param futures
+	 *            the result of every sheet, in the same order
+	 * @param workers
+	 *            tracks the tasks of the sheets
+	 * @return the rows of every sheet, by sheet number
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	private static Map<Integer, Map<Integer, List<ExcelDTO>>> collectSheets(
+			List<Integer> numbers,
+			List<Future<Map<Integer, List<ExcelDTO>>>> futures,
+			SheetWorkers workers) throws IOException, SAXException,
+			OpenXML4JException {
+
+		Map<Integer, Map<Integer, List<ExcelDTO>>> sheets = new LinkedHashMap<Integer, Map<Integer, List<ExcelDTO>>>();
+		Throwable failure = null;
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				sheets.put(numbers.get(i), futures.get(i).get());
+			} catch (ExecutionException ex) {
+				if (null == failure) {
+					failure = ex.getCause();
+				}
+			} catch (InterruptedException ex) {
+				for (Future<Map<Integer, List<ExcelDTO>>> future : futures) {
+					future.cancel(true);
+				}
+				// a cancelled future no longer tells when its task ends
+				workers.stopAndAwait();
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while reading sheet "
+						+ numbers.get(i));
+			}
+		}
+
+		if (failure instanceof IOException) {
+			throw (IOException) failure;
+		} else if (failure instanceof SAXException) {
+			throw (SAXException) failure;
+		} else if (failure instanceof OpenXML4JException) {
+			throw (OpenXML4JException) failure;
+		} else if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (null != failure) {
+			throw new IllegalStateException(failure);
+		}
+		return sheets;
+	}
+
+	/**
+	 * Read xls. The workbook is read record by record through the HSSF event
+	 * API from a file backed POI file system, so neither the file nor the
+	 * workbook is loaded into memory.
+	 * 
+	 * @param source
+	 *            the excel source
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param sheetNumber
+	 *            the sheet number
+	 * @param options
+	 *            the read options, null to read the whole sheet
+	 * @param cellHandler
+	 *            the cell handler
+	 * @param metrics
+	 *            the metrics of the read, null if not collected
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static void readXLS(ExcelSource source, int lastCellNum,
+			int sheetNumber, ReadOptions options, CellHandler cellHandler,
+			ParseMetrics metrics) throws IOException {
+
+		LOG.info("Beginning method [readXLS]...");
+
+		CountingCellHandler counter = null;
+		if (null != metrics) {
+			counter = new CountingCellHandler(cellHandler);
+			cellHandler = counter;
+		}
+		XLSSheetHandler sheetHandler = new XLSSheetHandler(sheetNumber,
+				lastCellNum, cellHandler, options);
+		try {
+			processXLS(source, sheetHandler, metrics);
+		} finally {
+			if (null != counter && sheetHandler.isSheetFound()) {
+				metrics.addSheet(counter);
+			}
+		}
+
+		if (!sheetHandler.isSheetFound()) {
+			throw new IllegalArgumentException("Sheet number (" + sheetNumber
+					+ ") is out of range");
+		}
+		LOG.info("Completed method [readXLS].");
+	}
+
+	/**
+	 * Passes the records of an xls workbook to a listener.
+	 * 
+	 * @param source
+	 *            the excel source
+	 * @param listener
+	 *            the listener
+	 * @param metrics
+	 *            the metrics of the read, null if not collected
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static void processXLS(ExcelSource source,
+			AbortableHSSFListener listener, ParseMetrics metrics)
+			throws IOException {
+
+		long start = System.nanoTime();
+		NPOIFSFileSystem fileSystem = source.openXLS();
+		RecordCounter counter = null;
+		try {
+			start = ParseMetrics.endPhase(metrics, Phase.OPEN, start);
+			HSSFRequest request = new HSSFRequest();
+			if (null == metrics) {
+				request.addListenerForAllRecords(listener);
+			} else {
+				counter = new RecordCounter(listener);
+				request.addListenerForAllRecords(counter);
+			}
+			new HSSFEventFactory().abortableProcessWorkbookEvents(request,
+					fileSystem.getRoot());
+
+		} catch (HSSFUserException ex) {
+			IOException ioException = new IOException(ex.getMessage());
+			ioException.initCause(ex);
+			throw ioException;
+		} finally {
+			ParseMetrics.endPhase(metrics, Phase.SHEET, start);
+			if (null != counter) {
+				metrics.addBytesRead(counter.bytes);
+				metrics.setSharedStringCount(counter.sharedStringCount);
+			}
+			source.closeXLS(fileSystem);
+		}
+	}
+
+	/**
+	 * Read xlsx. Only the parts needed are read from the package: the number
+	 * formats of the styles, the shared strings and the sheet itself.
+	 * 
+	 * @param source
+	 *            the excel source
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param sheetNumber
+	 *            the sheet number
+	 * @param options
+	 *            the read options, null to read the whole sheet
+	 * @param cellHandler
+	 *            the cell handler
+	 * @param metrics
+	 *            the metrics of the read, null if not collected
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	private void readXLSX(ExcelSource source, int lastCellNum,
+			int sheetNumber, ReadOptions options, CellHandler cellHandler,
+			ParseMetrics metrics) throws IOException, OpenXML4JException,
+			SAXException {
+
+		LOG.info("Beginning method [readXLSX]...");
+		long start = System.nanoTime();
+		XLSXPackage xlsxPackage = source.openXLSX();
+		try {
+			start = ParseMetrics.endPhase(metrics, Phase.OPEN, start);
+			StyleFormats styles = xlsxPackage.readStyleFormats();
+			start = ParseMetrics.endPhase(metrics, Phase.STYLES, start);
+			SharedStrings sharedStrings = readSharedStrings(xlsxPackage,
+					metrics, start);
+			try {
+				if (null == pipelineExecutor) {
+					parseSheet(xlsxPackage, sheetNumber, lastCellNum, styles,
+							sharedStrings, options, cellHandler, metrics);
+				} else {
+					CountingCellHandler counter = null;
+					if (null != metrics) {
+						counter = new CountingCellHandler(cellHandler);
+						cellHandler = counter;
+					}
+					start = System.nanoTime();
+					InputStream sheet2 = ParseMetrics.count(metrics,
+							xlsxPackage.getSheet(findSheetId(sheetNumber)));
+					try {
+						new PipelinedSheetReader(sharedStrings, styles,
+								lastCellNum, pipelineExecutor, byteTokenizer,
+								options).read(sheet2, cellHandler);
+					} finally {
+						sheet2.close();
+						endSheet(metrics, counter, start);
+					}
+				}
+			} finally {
+				sharedStrings.close();
+			}
+		} finally {
+			xlsxPackage.close();
+		}
+
+		LOG.info("Completed [readXLSX].");
+	}
+
+	/**
+	 * Parses one sheet of an xlsx package. Several sheets of the same package
+	 * may be parsed at the same time.
+	 * 
+	 * @param xlsxPackage
+	 *            the xlsx package
+	 * @param sheetNumber
+	 *            the sheet number
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param styles
+	 *            the style formats
+	 * @param sharedStrings
+	 *            the shared strings
+	 * @param options
+	 *            the read options, null to read the whole sheet
+	 * @param cellHandler
+	 *            the cell handler
+	 * @param metrics
+	 *            the metrics of the read, null if not collected
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	private void parseSheet(XLSXPackage xlsxPackage, int sheetNumber,
+			int lastCellNum, StyleFormats styles, SharedStrings sharedStrings,
+			ReadOptions options, CellHandler cellHandler, ParseMetrics metrics)
+			throws IOException, OpenXML4JException, SAXException {
+
+		long start = System.nanoTime();
+		CountingCellHandler counter = null;
+		if (null != metrics) {
+			counter = new CountingCellHandler(cellHandler);
+			cellHandler = counter;
+		}
+		SheetHandler sheetContentsHandler = new SheetHandler(sharedStrings,
+				lastCellNum, styles, cellHandler, options);
+
+		InputStream sheet2;
+		synchronized (xlsxPackage) {
+			sheet2 = ParseMetrics.count(metrics,
+					xlsxPackage.getSheet(findSheetId(sheetNumber)));
+		}
+		try {
+			sheetContentsHandler.parse(sheet2, byteTokenizer);
+		} finally {
+			sheet2.close();
+			endSheet(metrics, counter, start);
+		}
+	}
+
+	/**
+	 * Reads the shared strings of an xlsx package, adding the time it takes
+	 * to the metrics.
+	 * 
+	 * @param xlsxPackage
+	 *            the xlsx package
+	 * @param metrics
+	 *            the metrics of the read, null if not collected
+	 * @param start
+	 *            the start of the phase
+	 * @return the shared strings, to be closed by the caller
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	private SharedStrings readSharedStrings(XLSXPackage xlsxPackage,
+			ParseMetrics metrics, long start) throws IOException,
+			OpenXML4JException, SAXException {
+
+		SharedStrings sharedStrings = xlsxPackage.readSharedStrings(
+				sharedStringsStore, metrics);
+		ParseMetrics.endPhase(metrics, Phase.SHARED_STRINGS, start);
+		if (null != metrics) {
+			metrics.setSharedStringCount(sharedStrings.getCount());
+		}
+		return sharedStrings;
+	}
+
+	/**
+	 * Adds the time and the counts of a sheet read to the metrics.
+	 * 
+	 * @param metrics
+	 *            the metrics of the read, null if not collected
+	 * @param counter
+	 *            the counter of the sheet, null if not collected
+	 * @param start
+	 *            the start of the sheet
+	 */
+	private static void endSheet(ParseMetrics metrics,
+			CountingCellHandler counter, long start) {
+		ParseMetrics.endPhase(metrics, Phase.SHEET, start);
+		if (null != counter) {
+			metrics.addSheet(counter);
+		}
+	}
+
+	/**
+	 * Starts the metrics of a read.
+	 * 
+	 * @param source
+	 *            the excel source
+	 * @return the metrics, null if the reader has no parse listener
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private ParseMetrics startMetrics(ExcelSource source) throws IOException {
+		if (null == parseListener) {
+			return null;
+		}
+		ParseMetrics metrics = new ParseMetrics(source.toString());
+		metrics.setFormat(source.isXLSX() ? "xlsx" : "xls");
+		return metrics;
+	}
+
+	/**
+	 * Passes the metrics of a completed read to the parse listener.
+	 * 
+	 * @param metrics
+	 *            the metrics, null if not collected
+	 * @param start
+	 *            the start of the read
+	 */
+	private void parseCompleted(ParseMetrics metrics, long start) {
+		if (null != metrics) {
+			metrics.setTotalNanos(System.nanoTime() - start);
+			try {
+				parseListener.parseCompleted(metrics);
+			} catch (RuntimeException ex) {
+				LOG.warn("Error in parse listener:::" + ex);
+			}
+		}
+	}
+
+	/**
+	 * Passes the metrics of a failed read to the parse listener.
+	 * 
+	 * @param metrics
+	 *            the metrics, null if not collected
+	 * @param start
+	 *            the start of the read
+	 * @param failure
+	 *            the failure
+	 */
+	private void parseFailed(ParseMetrics metrics, long start,
+			Exception failure) {
+		if (null != metrics) {
+			metrics.setTotalNanos(System.nanoTime() - start);
+			try {
+				parseListener.parseFailed(metrics, failure);
+			} catch (RuntimeException ex) {
+				LOG.warn("Error in parse listener:::" + ex);
+			}
+		}
+	}
+
+	/**
+	 * Creates the builder of the rows of a sheet, deduplicating their values
+	 * if the reader has a {@link ValueDictionary}.
+	 * 
+	 * @param rowHandler
+	 *            the row handler receiving every finished row
+	 * @param completeRows
+	 *            whether missing header columns are added and empty rows
+	 *            dropped (xlsx)
+	 * @param sheetNumber
+	 *            the sheet number
+	 * @param metrics
+	 *            the metrics of the read, null if not collected
+	 * @return the row builder
+	 */
+	private ExcelDTORowBuilder rowBuilder(RowHandler rowHandler,
+			boolean completeRows, int sheetNumber, ParseMetrics metrics) {
+		if (null == valueDictionary) {
+			return new ExcelDTORowBuilder(rowHandler, completeRows);
+		}
+		ValueInterner valueInterner = valueDictionary.newInterner();
+		if (null != metrics) {
+			metrics.addValueInterner(sheetNumber, valueInterner);
+		}
+		return new ExcelDTORowBuilder(rowHandler, completeRows,
+				valueInterner);
+	}
+
+	/**
+	 * Row handler putting the rows into a map.
+	 * 
+	 * @param sheet
+	 *            the map
+	 * @return the row handler
+	 */
+	private static RowHandler mapRowHandler(
+			final Map<Integer, List<ExcelDTO>> sheet) {
+		return new RowHandler() {
+			public void handleRow(int rowNumber, List<ExcelDTO> row) {
+				sheet.put(rowNumber, row);
+			}
+		};
+	}
+
+	/**
+	 * Gets the key of a file in the incremental cache.
+	 * 
+	 * @param excelFile
+	 *            the excel file
+	 * @return its absolute path
+	 */
+	private static String workbookKey(File excelFile) {
+		return excelFile.toPath().toAbsolutePath().normalize().toString();
+	}
+
+	/**
+	 * Find sheet number, the counterpart of {@link #findSheetId(int)}.
+	 * 
+	 * @param relId
+	 *            the relationship id of the sheet
+	 * @return the sheet number, or -1 if the id is not of the form rIdN
+	 */
+	private static int findSheetNumber(String relId) {
+		String prefix = "rId";
+		if (!relId.startsWith(prefix)) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(relId.substring(prefix.length()));
+		} catch (NumberFormatException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Find sheet id.
+	 * 
+	 * @param sheetNumber
+	 *            the sheet number
+	 * @return the string
+	 */
+	private static String findSheetId(int sheetNumber) {
+		String relId = "rId";
+		return (relId + sheetNumber);
+	}
+
+	/**
+	 * Tracks the tasks reading the sheets of a workbook, so that a read can
+	 * wait for the tasks still reading the package before it closes it.
+	 */
+	private static class SheetWorkers {
+
+		/** The number of tasks reading. */
+		private int running;
+
+		/** Set once no more task may start. */
+		private volatile boolean stopped;
+
+		/**
+		 * Called by a task before it reads.
+		 * 
+		 * @return true, if the task may read; false once stopped
+		 */
+		synchronized boolean start() {
+			if (stopped) {
+				return false;
+			}
+			running++;
+			return true;
+		}
+
+		/**
+		 * Checks if the read was given up, so the tasks reading should end.
+		 * 
+		 * @return true, if stopped
+		 */
+		boolean isStopped() {
+			return stopped;
+		}
+
+		/**
+		 * Called by a task that started once it is done.
+		 */
+		synchronized void end() {
+			running--;
+			notifyAll();
+		}
+
+		/**
+		 * Keeps the tasks not started from reading, ends the others at their
+		 * next row and waits for them, keeping the interrupt status of the
+		 * thread.
+		 */
+		synchronized void stopAndAwait() {
+			stopped = true;
+			boolean interrupted = false;
+			while (running > 0) {
+				try {
+					wait();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Counts the bytes of the records of an xls workbook on their way to a
+	 * listener, and picks up the number of shared strings.
+	 */
+	private static class RecordCounter extends AbortableHSSFListener {
+
+		/** The listener. */
+		private final AbortableHSSFListener listener;
+
+		/** The bytes of the records, with their headers. */
+		private long bytes;
+
+		/** The number of shared strings. */
+		private int sharedStringCount;
+
+		/**
+		 * Instantiates a new record counter.
+		 * 
+		 * @param listener
+		 *            the listener
+		 */
+		RecordCounter(AbortableHSSFListener listener) {
+			this.listener = listener;
+		}
+
+		/* (non-Javadoc)
+		 * @see org.apache.poi.hssf.eventusermodel.AbortableHSSFListener#abortableProcessRecord(org.apache.poi.hssf.record.Record)
+		 */
+		public short abortableProcessRecord(Record record)
+				throws HSSFUserException {
+			bytes += record.getRecordSize();
+			if (record instanceof SSTRecord) {
+				sharedStringCount = ((SSTRecord) record).getNumUniqueStrings();
+			}
+			return listener.abortableProcessRecord(record);
+		}
+	}
+
+	/**
+	 * The Class Builder. Collects the configuration of an {@link ExcelReader}.
+	 * A builder is not thread safe, the readers it builds are.
+	 */
+	public static class Builder {
+
+		/** The shared strings store. */
+		private SharedStringsStore sharedStringsStore = SharedStringsStore
+				.heap();
+
+		/** The pipeline executor. */
+		private ExecutorService pipelineExecutor;
+
+		/** The byte tokenizer flag. */
+		private boolean byteTokenizer;
+
+		/** The parse listener. */
+		private ParseListener parseListener;
+
+		/** The parse cache. */
+		private ParseCache parseCache;
+
+		/** The incremental cache. */
+		private IncrementalCache incrementalCache;
+
+		/** The value dictionary. */
+		private ValueDictionary valueDictionary;
+
+		/**
+		 * Instantiates a new builder.
+		 */
+		private Builder() {
+		}
+
+		/**
+		 * Sets the store used for the shared strings of xlsx workbooks. By
+		 * default all shared strings are kept on the heap; with
+		 * {@link SharedStringsStore#spilling(int, int)} text heavy workbooks
+		 * are read in bounded memory.
+		 * 
+		 * @param store
+		 *            the shared strings store
+		 * @return the builder
+		 */
+		public Builder sharedStringsStore(SharedStringsStore store) {
+			if (null == store) {
+				throw new IllegalArgumentException("Store must not be null");
+			}
+			this.sharedStringsStore = store;
+			return this;
+		}
+
+		/**
+		 * Turns pipelined xlsx reading on or off. When on, a single sheet is
+		 * inflated and tokenized on a thread of its own, its cells are
+		 * converted (shared strings, number formats) on the workers of the
+		 * executor, and the rows are assembled in order on the calling
+		 * thread. readAll and readSheets already read every sheet on a worker
+		 * of its own and are not pipelined.
+		 * 
+		 * @param executor
+		 *            the executor converting the cells, shared by all reads
+		 *            and not shut down by the reader; null to turn pipelined
+		 *            reading off
+		 * @return the builder
+		 */
+		public Builder pipelineExecutor(ExecutorService executor) {
+			this.pipelineExecutor = executor;
+			return this;
+		}
+
+		/**
+		 * Reads xlsx sheets with a tokenizer working on the inflated bytes
+		 * instead of a SAX parser. Cell references, types, styles and numbers
+		 * are decoded without creating strings, which reads numeric sheets
+		 * several times faster. The tokenizer only understands UTF-8 sheets,
+		 * which is what Excel writes. Off by default.
+		 * 
+		 * @param enabled
+		 *            whether to use the byte level tokenizer
+		 * @return the builder
+		 */
+		public Builder byteTokenizer(boolean enabled) {
+			this.byteTokenizer = enabled;
+			return this;
+		}
+
+		/**
+		 * Sets the listener receiving the {@link ParseMetrics} of every read:
+		 * the time of its phases, the bytes, rows and cells parsed, and its
+		 * failure if it failed. Metrics are only collected when a listener
+		 * is set; {@link ParserStats} adds them up and publishes them over
+		 * JMX.
+		 * 
+		 * @param listener
+		 *            the parse listener, null to collect no metrics
+		 * @return the builder
+		 */
+		public Builder parseListener(ParseListener listener) {
+			this.parseListener = listener;
+			return this;
+		}
+
+		/**
+		 * Sets the cache keeping the results of the read methods returning a
+		 * map, so reading the same workbook, sheet and options again returns
+		 * a copy of the rows without parsing. Row handler, columnar and
+		 * multi sheet reads are not cached. Readers may share a cache.
+		 * 
+		 * @param cache
+		 *            the parse cache, null to keep no results
+		 * @return the builder
+		 */
+		public Builder parseCache(ParseCache cache) {
+			this.parseCache = cache;
+			return this;
+		}
+
+		/**
+		 * Sets the cache remembering the xlsx workbooks read by readAll and
+		 * readSheets, so reading a new version of a workbook only parses the
+		 * sheets whose zip entries, or the shared strings and styles they
+		 * depend on, changed. Readers may share a cache.
+		 * 
+		 * @param cache
+		 *            the incremental cache, null to parse every sheet
+		 * @return the builder
+		 */
+		public Builder incrementalCache(IncrementalCache cache) {
+			this.incrementalCache = cache;
+			return this;
+		}
+
+		/**
+		 * Sets the dictionary deduplicating the cell values kept in the rows
+		 * of the {@link ExcelDTO} returning reads, so the repeated values of
+		 * low cardinality columns share one instance per sheet parse. The
+		 * number of distinct values of every column is passed to the
+		 * {@link ParseListener} in {@link ParseMetrics#getColumnCardinalities()}.
+		 * Off by default.
+		 * 
+		 * @param dictionary
+		 *            the value dictionary, null to keep values as they are
+		 * @return the builder
+		 */
+		public Builder valueDictionary(ValueDictionary dictionary) {
+			this.valueDictionary = dictionary;
+			return this;
+		}
+
+		/**
+		 * Builds the reader.
+		 * 
+		 * @return the excel reader
+		 */
+		public ExcelReader build() {
+			return new ExcelReader(this);
+		}
+	}
+}
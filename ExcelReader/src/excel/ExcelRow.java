@@ -0,0 +1,91 @@
+package excel;
+
+import java.util.List;
+
+/**
+ * The Class ExcelRow. A row of a sheet as given by a {@link RowCursor} or a
+ * stream of {@link ExcelReader#stream(java.io.File, int, int)}: the columns
+ * of the row, as passed to a {@link RowHandler}, with the sheet and the row
+ * number they come from.
+ *
+ * @author Sourav
+ */
+public final class ExcelRow {
+
+	/** The sheet number. */
+	private final int sheetNumber;
+
+	/** The row number. */
+	private final int rowNumber;
+
+	/** Whether this is the header row. */
+	private final boolean header;
+
+	/** The columns. */
+	private final List<ExcelDTO> columns;
+
+	/**
+	 * Instantiates a new excel row.
+	 *
+	 * @param sheetNumber
+	 *            the sheet number
+	 * @param rowNumber
+	 *            the row number
+	 * @param header
+	 *            whether this is the header row
+	 * @param columns
+	 *            the columns
+	 */
+	ExcelRow(int sheetNumber, int rowNumber, boolean header,
+			List<ExcelDTO> columns) {
+		this.sheetNumber = sheetNumber;
+		this.rowNumber = rowNumber;
+		this.header = header;
+		this.columns = columns;
+	}
+
+	/**
+	 * Gets the sheet number.
+	 *
+	 * @return the sheet number (Starts from 1)
+	 */
+	public int getSheetNumber() {
+		return sheetNumber;
+	}
+
+	/**
+	 * Gets the row number.
+	 *
+	 * @return the row number (Starts from 0)
+	 */
+	public int getRowNumber() {
+		return rowNumber;
+	}
+
+	/**
+	 * Checks if this is the header row, the first row of its sheet, whose
+	 * column names are set to "HEADER".
+	 *
+	 * @return true, if header
+	 */
+	public boolean isHeader() {
+		return header;
+	}
+
+	/**
+	 * Gets the columns.
+	 *
+	 * @return the columns of the row
+	 */
+	public List<ExcelDTO> getColumns() {
+		return columns;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "ExcelRow [sheetNumber=" + sheetNumber + ", rowNumber="
+				+ rowNumber + ", columns=" + columns + "]";
+	}
+}
@@ -0,0 +1,367 @@
+package excel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+
+/**
+ * The Class ExcelSource. Where a workbook is read from, and how to open it
+ * with as little copying as the kind of input allows:
+ * <ul>
+ * <li>a file is read through its zip directory (xlsx) or as a file backed POI
+ * file system (xls);</li>
+ * <li>a byte buffer or byte array is read in place, xlsx entries are inflated
+ * straight from it;</li>
+ * <li>a file channel is memory mapped, other channels are read into a buffer
+ * once.</li>
+ * </ul>
+ * Files are recognised by their extension like before, other inputs by their
+ * first bytes.
+ *
+ * @author Sourav
+ */
+abstract class ExcelSource {
+
+	/** The Constant READ_CHUNK_SIZE. */
+	private static final int READ_CHUNK_SIZE = 64 * 1024;
+
+	/**
+	 * Checks if the workbook is an xlsx workbook.
+	 *
+	 * @return true, if xlsx; false if xls
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	abstract boolean isXLSX() throws IOException;
+
+	/**
+	 * Opens the xlsx package.
+	 *
+	 * @return the package, to be closed by the caller
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	abstract XLSXPackage openXLSX() throws IOException, OpenXML4JException;
+
+	/**
+	 * Opens the xls file system.
+	 *
+	 * @return the file system, to be released with
+	 *         {@link #closeXLS(NPOIFSFileSystem)}
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	abstract NPOIFSFileSystem openXLS() throws IOException;
+
+	/**
+	 * Releases the xls file system.
+	 *
+	 * @param fileSystem
+	 *            the file system
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	void closeXLS(NPOIFSFileSystem fileSystem) throws IOException {
+		fileSystem.close();
+	}
+
+	/**
+	 * Gets what identifies the workbook for the {@link ParseCache}: the same
+	 * identity means the same content.
+	 *
+	 * @param hashContent
+	 *            whether a file is identified by a hash of its content rather
+	 *            than by its path, size and modification time
+	 * @return the identity
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	abstract String identity(boolean hashContent) throws IOException;
+
+	/**
+	 * Hashes the remaining bytes of a buffer.
+	 *
+	 * @param buffer
+	 *            the buffer, not changed
+	 * @return the SHA-256 hash, hex encoded
+	 */
+	static String hash(ByteBuffer buffer) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			// every Java platform supports SHA-256
+			throw new IllegalStateException(ex);
+		}
+		digest.update(buffer.duplicate());
+		StringBuilder hex = new StringBuilder("sha256:");
+		for (byte b : digest.digest()) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(
+					Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Source for a file.
+	 *
+	 * @param path
+	 *            the path
+	 * @return the excel source
+	 */
+	static ExcelSource of(Path path) {
+		return new PathSource(path);
+	}
+
+	/**
+	 * Source for the remaining bytes of a buffer.
+	 *
+	 * @param buffer
+	 *            the buffer
+	 * @return the excel source
+	 */
+	static ExcelSource of(ByteBuffer buffer) {
+		return new BufferSource(buffer);
+	}
+
+	/**
+	 * Source for the bytes of a channel, read up to its end.
+	 *
+	 * @param channel
+	 *            the channel
+	 * @return the excel source
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	static ExcelSource of(ReadableByteChannel channel) throws IOException {
+		if (channel instanceof FileChannel) {
+			FileChannel fileChannel = (FileChannel) channel;
+			long position = fileChannel.position();
+			ByteBuffer mapped = fileChannel.map(FileChannel.MapMode.READ_ONLY,
+					position, fileChannel.size() - position);
+			return new FileChannelSource(fileChannel, mapped);
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(READ_CHUNK_SIZE);
+		while (channel.read(buffer) >= 0) {
+			if (!buffer.hasRemaining()) {
+				ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+				buffer.flip();
+				grown.put(buffer);
+				buffer = grown;
+			}
+		}
+		buffer.flip();
+		return new BufferSource(buffer);
+	}
+
+	/**
+	 * A file.
+	 */
+	private static class PathSource extends ExcelSource {
+
+		/** The path. */
+		private final Path path;
+
+		/**
+		 * Instantiates a new path source.
+		 *
+		 * @param path
+		 *            the path
+		 */
+		PathSource(Path path) {
+			this.path = path;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.ExcelSource#isXLSX()
+		 */
+		boolean isXLSX() {
+			return path.getFileName().toString().endsWith("xlsx");
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.ExcelSource#openXLSX()
+		 */
+		XLSXPackage openXLSX() throws IOException, OpenXML4JException {
+			OPCPackage opcPackage = OPCPackage.open(path.toString(),
+					PackageAccess.READ);
+			try {
+				return new XLSXPackage.OPC(opcPackage);
+			} catch (IOException ex) {
+				opcPackage.revert();
+				throw ex;
+			} catch (OpenXML4JException ex) {
+				opcPackage.revert();
+				throw ex;
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.ExcelSource#openXLS()
+		 */
+		NPOIFSFileSystem openXLS() throws IOException {
+			return new NPOIFSFileSystem(path.toFile());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.ExcelSource#identity(boolean)
+		 */
+		String identity(boolean hashContent) throws IOException {
+			if (hashContent) {
+				FileChannel channel = FileChannel.open(path,
+						StandardOpenOption.READ);
+				try {
+					return hash(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+							channel.size()));
+				} finally {
+					channel.close();
+				}
+			}
+			BasicFileAttributes attributes = Files.readAttributes(path,
+					BasicFileAttributes.class);
+			return path.toAbsolutePath().normalize() + "|" + attributes.size()
+					+ "|" + attributes.lastModifiedTime().toMillis();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#toString()
+		 */
+		public String toString() {
+			return path.toString();
+		}
+	}
+
+	/**
+	 * Bytes in a buffer.
+	 */
+	private static class BufferSource extends ExcelSource {
+
+		/** The buffer. */
+		private final ByteBuffer buffer;
+
+		/**
+		 * Instantiates a new buffer source.
+		 *
+		 * @param buffer
+		 *            the buffer
+		 */
+		BufferSource(ByteBuffer buffer) {
+			this.buffer = buffer.slice();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.ExcelSource#isXLSX()
+		 */
+		boolean isXLSX() {
+			return buffer.remaining() >= 4
+					&& buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+							.getInt(0) == ZipBuffer.LOCAL_SIGNATURE;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.ExcelSource#openXLSX()
+		 */
+		XLSXPackage openXLSX() throws IOException, OpenXML4JException {
+			return new XLSXPackage.Buffer(new ZipBuffer(buffer));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.ExcelSource#openXLS()
+		 */
+		NPOIFSFileSystem openXLS() throws IOException {
+			// POI keeps its own copy of the blocks of a stream
+			return new NPOIFSFileSystem(new ByteBufferInputStream(buffer));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.ExcelSource#identity(boolean)
+		 */
+		String identity(boolean hashContent) {
+			return hash(buffer);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#toString()
+		 */
+		public String toString() {
+			return "buffer of " + buffer.remaining() + " bytes";
+		}
+	}
+
+	/**
+	 * A file channel, memory mapped for xlsx and read in place for xls.
+	 */
+	private static class FileChannelSource extends BufferSource {
+
+		/** The channel. */
+		private final FileChannel channel;
+
+		/**
+		 * Instantiates a new file channel source.
+		 *
+		 * @param channel
+		 *            the channel
+		 * @param mapped
+		 *            the mapped content of the channel
+		 */
+		FileChannelSource(FileChannel channel, ByteBuffer mapped) {
+			super(mapped);
+			this.channel = channel;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.ExcelSource.BufferSource#openXLS()
+		 */
+		NPOIFSFileSystem openXLS() throws IOException {
+			return new NPOIFSFileSystem(channel);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.ExcelSource#closeXLS(org.apache.poi.poifs.filesystem.
+		 * NPOIFSFileSystem)
+		 */
+		void closeXLS(NPOIFSFileSystem fileSystem) {
+			// closing the file system would close the caller's channel
+		}
+	}
+}
@@ -0,0 +1,342 @@
+package excel;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import excel.ExcelExporter.Format;
+import excel.ExcelExporter.Quoting;
+
+/**
+ * The Class ExportRowWriter. Writes the rows of a sheet straight from the
+ * cell values of the parser, as CSV or JSON Lines. The first row is the
+ * header: a CSV file starts with it, and it gives the keys of the JSON
+ * objects, the first column of a name winning. The header ends at its last
+ * named column. Every row below has the columns of the header, empty where
+ * it has no cell, and cells right of the header are dropped. Rows without
+ * any value are skipped; in JSON Lines, so are rows without a value under
+ * any key. Values are the strings of {@link ExcelDTO#getColumnValue()}.
+ * <p>
+ * The writer is opened at the first row, so the sheets of a workbook can be
+ * written one after the other. Write errors are thrown as
+ * {@link UncheckedIOException}.
+ *
+ * @author Sourav
+ */
+class ExportRowWriter implements CellHandler {
+
+	/** The exporter giving the format. */
+	private final ExcelExporter exporter;
+
+	/** Opens the writer. */
+	private final Supplier<Writer> output;
+
+	/** The writer, null until the first row. */
+	private Writer writer;
+
+	/** The header names, indexed by column. */
+	private final List<String> headers = new ArrayList<String>();
+
+	/** The JSON keys of the columns, null where a column is not written. */
+	private String[] keys;
+
+	/** The values of the current row, indexed by column. */
+	private String[] values;
+
+	/** Set while the header row is being read. */
+	private boolean bIsFirstRow = true;
+
+	/** Set when the current row has a value. */
+	private boolean rowHasValue;
+
+	/** The number of rows written below the header. */
+	private long rowCount;
+
+	/**
+	 * Instantiates a new export row writer.
+	 *
+	 * @param exporter
+	 *            the exporter giving the format
+	 * @param output
+	 *            opens the writer at the first row
+	 */
+	ExportRowWriter(ExcelExporter exporter, Supplier<Writer> output) {
+		this.exporter = exporter;
+		this.output = output;
+	}
+
+	/**
+	 * Gets the number of rows written below the header.
+	 *
+	 * @return the row count
+	 */
+	long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Gets the writer, opening it if no row was written.
+	 *
+	 * @return the writer
+	 */
+	Writer getWriter() {
+		if (null == writer) {
+			writer = output.get();
+		}
+		return writer;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#startRow(int)
+	 */
+	public void startRow(int rowNumber) {
+		getWriter();
+		rowHasValue = false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#stringCell(int, java.lang.String)
+	 */
+	public void stringCell(int column, String value) {
+		setValue(column, value);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#numericCell(int, double, excel.CellFormat)
+	 */
+	public void numericCell(int column, double value, CellFormat format) {
+		setValue(column, format.format(value));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#booleanCell(int, boolean)
+	 */
+	public void booleanCell(int column, boolean value) {
+		setValue(column, value ? "TRUE" : "FALSE");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#errorCell(int, java.lang.String)
+	 */
+	public void errorCell(int column, String value) {
+		setValue(column, value);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#blankCell(int)
+	 */
+	public void blankCell(int column) {
+		setValue(column, "");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#endRow(int)
+	 */
+	public void endRow(int rowNumber) {
+		try {
+			if (bIsFirstRow) {
+				bIsFirstRow = false;
+				while (!headers.isEmpty()
+						&& headers.get(headers.size() - 1).length() == 0) {
+					headers.remove(headers.size() - 1);
+				}
+				values = new String[headers.size()];
+				if (exporter.getFormat() == Format.CSV) {
+					writeCsv(headers.toArray(values));
+				} else {
+					keys = new String[headers.size()];
+					Set<String> seen = new HashSet<String>();
+					for (int i = 0; i < keys.length; i++) {
+						String name = headers.get(i);
+						if (name.length() > 0 && seen.add(name)) {
+							keys[i] = name;
+						}
+					}
+				}
+				Arrays.fill(values, null);
+			} else if (rowHasValue) {
+				if (exporter.getFormat() == Format.CSV) {
+					writeCsv(values);
+				} else {
+					writeJson(values);
+				}
+				rowCount++;
+				Arrays.fill(values, null);
+			} else if (null != values) {
+				Arrays.fill(values, null);
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * Sets the value of a cell of the current row.
+	 *
+	 * @param column
+	 *            the column
+	 * @param value
+	 *            the value
+	 */
+	private void setValue(int column, String value) {
+		if (null == value) {
+			value = "";
+		}
+		if (bIsFirstRow) {
+			while (headers.size() <= column) {
+				headers.add("");
+			}
+			headers.set(column, value);
+		} else if (column < values.length) {
+			values[column] = value;
+			if (value.length() > 0 && (null == keys || null != keys[column])) {
+				rowHasValue = true;
+			}
+		}
+	}
+
+	/**
+	 * Writes a CSV line.
+	 *
+	 * @param fields
+	 *            the fields, null for empty ones
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void writeCsv(String[] fields) throws IOException {
+		char delimiter = exporter.getDelimiter();
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0) {
+				writer.write(delimiter);
+			}
+			writeField(null == fields[i] ? "" : fields[i], delimiter);
+		}
+		writer.write(exporter.getLineSeparator());
+	}
+
+	/**
+	 * Writes a CSV field, quoted as configured: with minimal quoting only
+	 * fields holding the delimiter, the quote or a line break are quoted.
+	 * Quotes within a quoted field are doubled.
+	 *
+	 * @param field
+	 *            the field
+	 * @param delimiter
+	 *            the delimiter
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void writeField(String field, char delimiter) throws IOException {
+		Quoting quoting = exporter.getQuoting();
+		char quote = exporter.getQuote();
+		boolean quoted = quoting == Quoting.ALL;
+		if (quoting == Quoting.MINIMAL) {
+			for (int i = 0; i < field.length() && !quoted; i++) {
+				char c = field.charAt(i);
+				quoted = c == delimiter || c == quote || c == '\n' || c == '\r';
+			}
+		}
+		if (!quoted) {
+			writer.write(field);
+			return;
+		}
+		writer.write(quote);
+		int start = 0;
+		for (int i = 0; i < field.length(); i++) {
+			if (field.charAt(i) == quote) {
+				writer.write(field, start, i + 1 - start);
+				start = i;
+			}
+		}
+		writer.write(field, start, field.length() - start);
+		writer.write(quote);
+	}
+
+	/**
+	 * Writes a JSON object on a line.
+	 *
+	 * @param fields
+	 *            the values, null for empty ones
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void writeJson(String[] fields) throws IOException {
+		writer.write('{');
+		boolean first = true;
+		for (int i = 0; i < keys.length; i++) {
+			if (null != keys[i]) {
+				if (!first) {
+					writer.write(',');
+				}
+				first = false;
+				writeString(keys[i]);
+				writer.write(':');
+				writeString(null == fields[i] ? "" : fields[i]);
+			}
+		}
+		writer.write('}');
+		writer.write(exporter.getLineSeparator());
+	}
+
+	/**
+	 * Writes a JSON string, escaping quotes, backslashes and control
+	 * characters.
+	 *
+	 * @param value
+	 *            the string
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void writeString(String value) throws IOException {
+		writer.write('"');
+		int start = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\' || c < 0x20) {
+				writer.write(value, start, i - start);
+				start = i + 1;
+				switch (c) {
+				case '"':
+					writer.write("\\\"");
+					break;
+				case '\\':
+					writer.write("\\\\");
+					break;
+				case '\n':
+					writer.write("\\n");
+					break;
+				case '\r':
+					writer.write("\\r");
+					break;
+				case '\t':
+					writer.write("\\t");
+					break;
+				default:
+					writer.write(String.format("\\u%04x", (int) c));
+				}
+			}
+		}
+		writer.write(value, start, value.length() - start);
+		writer.write('"');
+	}
+}
@@ -0,0 +1,84 @@
+package excel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import org.xml.sax.SAXException;
+
+/**
+ * The Class HeapSharedStrings. Shared strings table kept in a list on the
+ * heap, read from the sharedStrings.xml part of the workbook.
+ * 
+ * @author Sourav
+ */
+class HeapSharedStrings extends SharedStringsHandler implements SharedStrings {
+
+	/** The strings. */
+	private final ArrayList<String> strings = new ArrayList<String>();
+
+	/**
+	 * Reads the shared strings table.
+	 * 
+	 * @param sharedStringsData
+	 *            the content of sharedStrings.xml, or null if the workbook
+	 *            has no shared strings; it is closed when done
+	 * @return the shared strings
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	static HeapSharedStrings read(InputStream sharedStringsData)
+			throws IOException, SAXException {
+
+		HeapSharedStrings sharedStrings = new HeapSharedStrings();
+		sharedStrings.parse(sharedStringsData);
+		return sharedStrings;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see excel.SharedStrings#getCount()
+	 */
+	public int getCount() {
+		return strings.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see excel.SharedStrings#getEntryAt(int)
+	 */
+	public String getEntryAt(int index) {
+		return strings.get(index);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see excel.SharedStrings#close()
+	 */
+	public void close() {
+		// nothing to release
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see excel.SharedStringsHandler#expectStrings(int)
+	 */
+	void expectStrings(int count) {
+		strings.ensureCapacity(count);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see excel.SharedStringsHandler#addString(java.lang.String)
+	 */
+	void addString(String string) {
+		strings.add(string);
+	}
+}
@@ -0,0 +1,399 @@
+package excel;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Class IncrementalCache. Remembers the last version of every xlsx
+ * workbook read in full by the readAll and readSheets methods of an
+ * {@link ExcelReader}, set with
+ * {@link ExcelReader.Builder#incrementalCache(IncrementalCache)}, so a new
+ * version of the workbook only parses the sheets that changed.
+ * <p>
+ * A version holds the fingerprint (part name, CRC-32 and size of the zip
+ * entry) of the styles, of the shared strings and of every sheet, together
+ * with the parsed rows of the sheets and the shared strings each of them
+ * used. A sheet of the new version is taken from the last one when
+ * <ul>
+ * <li>its own entry and the styles are unchanged and lastCellNum is the same,
+ * and</li>
+ * <li>the shared strings are unchanged, or every shared string the sheet used
+ * is still the same string at the same index.</li>
+ * </ul>
+ * So after editing one tab of a large workbook only that tab is parsed again,
+ * even though Excel rewrites the shared strings on every save.
+ * <p>
+ * Workbooks are known by a key: the absolute path of the file, or the key
+ * given to {@link ExcelReader#readAll(String, File, int)} when new versions
+ * arrive under other names. The least recently read workbooks are forgotten
+ * beyond the maximum number of workbooks; the rows of all remembered sheets
+ * stay on the heap. xls workbooks are always read in full. Every read gets
+ * rows of its own, which it may change freely. The cache is thread safe.
+ *
+ * @author Sourav
+ */
+public final class IncrementalCache {
+
+	/** The default maximum number of workbooks. */
+	public static final int DEFAULT_MAX_WORKBOOKS = 16;
+
+	/** The last version of every workbook, least recently read first. */
+	private final Map<String, Version> versions;
+
+	/** The sheets parsed. */
+	private long parsedSheetCount;
+
+	/** The sheets taken from the last version. */
+	private long reusedSheetCount;
+
+	/**
+	 * Instantiates a new incremental cache remembering up to
+	 * {@link #DEFAULT_MAX_WORKBOOKS} workbooks.
+	 */
+	public IncrementalCache() {
+		this(DEFAULT_MAX_WORKBOOKS);
+	}
+
+	/**
+	 * Instantiates a new incremental cache.
+	 *
+	 * @param maxWorkbooks
+	 *            the maximum number of workbooks remembered
+	 */
+	public IncrementalCache(final int maxWorkbooks) {
+		if (maxWorkbooks < 1) {
+			throw new IllegalArgumentException("maxWorkbooks must be positive");
+		}
+		this.versions = new LinkedHashMap<String, Version>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, Version> eldest) {
+				return size() > maxWorkbooks;
+			}
+		};
+	}
+
+	/**
+	 * Gets the last version of a workbook.
+	 *
+	 * @param workbookKey
+	 *            the workbook key
+	 * @return the version, null if none is remembered
+	 */
+	synchronized Version get(String workbookKey) {
+		return versions.get(workbookKey);
+	}
+
+	/**
+	 * Remembers the new version of a workbook.
+	 *
+	 * @param workbookKey
+	 *            the workbook key
+	 * @param version
+	 *            the version
+	 * @param parsed
+	 *            the sheets parsed for it
+	 * @param reused
+	 *            the sheets taken from the last version
+	 */
+	synchronized void put(String workbookKey, Version version, int parsed,
+			int reused) {
+		versions.put(workbookKey, version);
+		parsedSheetCount += parsed;
+		reusedSheetCount += reused;
+	}
+
+	/**
+	 * Forgets a workbook, so its next read parses every sheet.
+	 *
+	 * @param workbookKey
+	 *            the workbook key
+	 */
+	public synchronized void forget(String workbookKey) {
+		versions.remove(workbookKey);
+	}
+
+	/**
+	 * Forgets all workbooks.
+	 */
+	public synchronized void clear() {
+		versions.clear();
+	}
+
+	/**
+	 * Gets the number of workbooks remembered.
+	 *
+	 * @return the workbook count
+	 */
+	public synchronized int getWorkbookCount() {
+		return versions.size();
+	}
+
+	/**
+	 * Gets the number of sheets parsed by incremental reads.
+	 *
+	 * @return the parsed sheet count
+	 */
+	public synchronized long getParsedSheetCount() {
+		return parsedSheetCount;
+	}
+
+	/**
+	 * Gets the number of sheets taken from the last version of a workbook
+	 * instead of being parsed.
+	 *
+	 * @return the reused sheet count
+	 */
+	public synchronized long getReusedSheetCount() {
+		return reusedSheetCount;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public synchronized String toString() {
+		return "IncrementalCache [" + versions.size() + " workbooks, "
+				+ parsedSheetCount + " sheets parsed, " + reusedSheetCount
+				+ " sheets reused]";
+	}
+
+	/**
+	 * Hashes every string of a shared strings table.
+	 *
+	 * @param sharedStrings
+	 *            the shared strings
+	 * @return the hashes, by index
+	 */
+	static long[] hashStrings(SharedStrings sharedStrings) {
+		long[] hashes = new long[sharedStrings.getCount()];
+		for (int i = 0; i < hashes.length; i++) {
+			hashes[i] = hash(sharedStrings.getEntryAt(i));
+		}
+		return hashes;
+	}
+
+	/**
+	 * Hashes a string, FNV-1a over its chars.
+	 *
+	 * @param value
+	 *            the string, may be null
+	 * @return the hash
+	 */
+	private static long hash(String value) {
+		if (null == value) {
+			return 0;
+		}
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Wraps shared strings to note the index of every string looked up.
+	 *
+	 * @param sharedStrings
+	 *            the shared strings
+	 * @param used
+	 *            where the indexes are set
+	 * @return the shared strings noting their use; closing it does not close
+	 *         the wrapped ones
+	 */
+	static SharedStrings recording(final SharedStrings sharedStrings,
+			final BitSet used) {
+		return new SharedStrings() {
+			public int getCount() {
+				return sharedStrings.getCount();
+			}
+
+			public String getEntryAt(int index) {
+				if (index >= 0) {
+					used.set(index);
+				}
+				return sharedStrings.getEntryAt(index);
+			}
+
+			public void close() throws IOException {
+				// the wrapped strings are closed by their reader
+			}
+		};
+	}
+
+	/**
+	 * One version of a workbook.
+	 */
+	static final class Version {
+
+		/** The last cell number of the read. */
+		private final int lastCellNum;
+
+		/** The fingerprint of the number formats, null if unknown. */
+		private final String styles;
+
+		/** The fingerprint of the shared strings, null if unknown. */
+		private final String sharedStrings;
+
+		/** The hashes of the shared strings, null until known. */
+		private long[] stringHashes;
+
+		/** The sheets, by sheet number. */
+		private final Map<Integer, Sheet> sheets = new HashMap<Integer, Sheet>();
+
+		/**
+		 * Instantiates a new version.
+		 *
+		 * @param lastCellNum
+		 *            the last cell number of the read
+		 * @param styles
+		 *            the fingerprint of the number formats: the styles and
+		 *            the date system
+		 * @param sharedStrings
+		 *            the fingerprint of the shared strings
+		 */
+		Version(int lastCellNum, String styles, String sharedStrings) {
+			this.lastCellNum = lastCellNum;
+			this.styles = styles;
+			this.sharedStrings = sharedStrings;
+		}
+
+		/**
+		 * Checks if the shared strings are those of the last version.
+		 *
+		 * @param last
+		 *            the last version, may be null
+		 * @return true, if both have the same known fingerprint
+		 */
+		boolean hasSharedStringsOf(Version last) {
+			return null != last && null != sharedStrings
+					&& sharedStrings.equals(last.sharedStrings);
+		}
+
+		/**
+		 * Checks if a sheet can be taken from the last version without looking
+		 * at the shared strings: the same lastCellNum, styles and sheet entry.
+		 *
+		 * @param last
+		 *            the last version, may be null
+		 * @param sheetNumber
+		 *            the sheet number
+		 * @param fingerprint
+		 *            the fingerprint of the sheet in this version
+		 * @return the sheet of the last version, null if it changed
+		 */
+		Sheet findUnchanged(Version last, int sheetNumber, String fingerprint) {
+			if (null == last || last.lastCellNum != lastCellNum
+					|| null == styles || !styles.equals(last.styles)
+					|| null == fingerprint) {
+				return null;
+			}
+			Sheet sheet = last.sheets.get(sheetNumber);
+			return null != sheet && fingerprint.equals(sheet.fingerprint) ? sheet
+					: null;
+		}
+
+		/**
+		 * Checks if every shared string a sheet of the last version used is
+		 * the same in this version.
+		 *
+		 * @param last
+		 *            the last version
+		 * @param sheet
+		 *            the sheet of the last version
+		 * @return true, if the sheet reads the same strings
+		 */
+		boolean hasStringsOf(Version last, Sheet sheet) {
+			if (hasSharedStringsOf(last)) {
+				return true;
+			}
+			if (null == last.stringHashes || null == stringHashes) {
+				return false;
+			}
+			for (int i = sheet.strings.nextSetBit(0); i >= 0; i = sheet.strings
+					.nextSetBit(i + 1)) {
+				if (i >= last.stringHashes.length || i >= stringHashes.length
+						|| last.stringHashes[i] != stringHashes[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Sets the hashes of the shared strings.
+		 *
+		 * @param stringHashes
+		 *            the hashes, by index
+		 */
+		void setStringHashes(long[] stringHashes) {
+			this.stringHashes = stringHashes;
+		}
+
+		/**
+		 * Gets the hashes of the shared strings.
+		 *
+		 * @return the hashes, null if unknown
+		 */
+		long[] getStringHashes() {
+			return stringHashes;
+		}
+
+		/**
+		 * Adds a sheet.
+		 *
+		 * @param sheetNumber
+		 *            the sheet number
+		 * @param sheet
+		 *            the sheet
+		 */
+		void addSheet(int sheetNumber, Sheet sheet) {
+			sheets.put(sheetNumber, sheet);
+		}
+	}
+
+	/**
+	 * One sheet of a version.
+	 */
+	static final class Sheet {
+
+		/** The fingerprint of the sheet entry. */
+		private final String fingerprint;
+
+		/** The indexes of the shared strings the sheet used. */
+		private final BitSet strings;
+
+		/** The rows, never handed out. */
+		private final Map<Integer, List<ExcelDTO>> rows;
+
+		/**
+		 * Instantiates a new sheet.
+		 *
+		 * @param fingerprint
+		 *            the fingerprint of the sheet entry
+		 * @param strings
+		 *            the indexes of the shared strings the sheet used
+		 * @param rows
+		 *            the rows, kept as they are
+		 */
+		Sheet(String fingerprint, BitSet strings,
+				Map<Integer, List<ExcelDTO>> rows) {
+			this.fingerprint = fingerprint;
+			this.strings = strings;
+			this.rows = rows;
+		}
+
+		/**
+		 * Gets a copy of the rows.
+		 *
+		 * @return the rows
+		 */
+		Map<Integer, List<ExcelDTO>> copyRows() {
+			return ParseCache.copy(rows);
+		}
+	}
+}
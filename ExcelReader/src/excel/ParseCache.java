@@ -0,0 +1,814 @@
+package excel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The Class ParseCache. Keeps the results of the map returning read methods of
+ * an {@link ExcelReader}, set with
+ * {@link ExcelReader.Builder#parseCache(ParseCache)}, so reading the same
+ * workbook again does not parse it again. A result is found by the identity of
+ * the workbook together with lastCellNum, the sheet number and the
+ * {@link ReadOptions} of the read:
+ * <ul>
+ * <li>a file by its absolute path, size and modification time, or by a hash
+ * of its content with {@link Builder#hashContent(boolean)};</li>
+ * <li>a buffer, byte array or channel by a hash of its content.</li>
+ * </ul>
+ * Options with conditions only match when they hold the same predicates.
+ * <p>
+ * Results are kept in memory up to a budget of estimated heap bytes, the least
+ * recently used going first. With a disk tier they are written to files in a
+ * directory instead of being dropped, up to a budget of disk bytes, and read
+ * back when asked for again. Every read gets a copy of its own, which it may
+ * change freely. The cache is thread safe; two reads of the same workbook
+ * missing at the same time both parse it.
+ *
+ * @author Sourav
+ */
+public final class ParseCache implements ParseCacheMBean {
+
+	/** The Constant LOG. */
+	private static final Logger LOG = Logger.getLogger(ParseCache.class);
+
+	/** The object name of {@link #register()}. */
+	public static final String DEFAULT_OBJECT_NAME = "excel:type=ParseCache";
+
+	/** The encoding of the texts of the disk tier. */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** The heap budget. */
+	private final long maxHeapBytes;
+
+	/** Whether files are found by a hash of their content. */
+	private final boolean hashContent;
+
+	/** The directory of the disk tier, null if there is none. */
+	private final File diskDirectory;
+
+	/** The disk budget. */
+	private final long maxDiskBytes;
+
+	/** The results in memory, least recently used first. */
+	private final LinkedHashMap<Key, Entry> memory = new LinkedHashMap<Key, Entry>(
+			16, 0.75f, true);
+
+	/** The results on disk, least recently written first. */
+	private final LinkedHashMap<Key, Entry> disk = new LinkedHashMap<Key, Entry>();
+
+	/** The heap used by the results in memory. */
+	private long heapBytes;
+
+	/** The size of the files of the disk tier. */
+	private long diskBytes;
+
+	/** The hit count. */
+	private long hitCount;
+
+	/** The disk hit count. */
+	private long diskHitCount;
+
+	/** The miss count. */
+	private long missCount;
+
+	/** The eviction count. */
+	private long evictionCount;
+
+	/** The disk eviction count. */
+	private long diskEvictionCount;
+
+	/**
+	 * Instantiates a new parse cache.
+	 *
+	 * @param builder
+	 *            the builder
+	 */
+	private ParseCache(Builder builder) {
+		this.maxHeapBytes = builder.maxHeapBytes;
+		this.hashContent = builder.hashContent;
+		this.diskDirectory = builder.diskDirectory;
+		this.maxDiskBytes = builder.maxDiskBytes;
+	}
+
+	/**
+	 * Creates a builder for a cache of 64 MB of heap, without a disk tier.
+	 *
+	 * @return the builder
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Registers the cache with the platform MBean server under
+	 * {@link #DEFAULT_OBJECT_NAME}.
+	 *
+	 * @return the object name
+	 * @throws JMException
+	 *             if the name is taken or the MBean cannot be registered
+	 */
+	public ObjectName register() throws JMException {
+		return register(DEFAULT_OBJECT_NAME);
+	}
+
+	/**
+	 * Registers the cache with the platform MBean server.
+	 *
+	 * @param objectName
+	 *            the object name
+	 * @return the object name
+	 * @throws JMException
+	 *             if the name is taken or the MBean cannot be registered
+	 */
+	public ObjectName register(String objectName) throws JMException {
+		ObjectName name = new ObjectName(objectName);
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+		return name;
+	}
+
+	/**
+	 * Gets the key of a read.
+	 *
+	 * @param source
+	 *            the excel source
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param sheetNumber
+	 *            the sheet number
+	 * @param options
+	 *            the read options, null to read the whole sheet
+	 * @return the key
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	Key key(ExcelSource source, int lastCellNum, int sheetNumber,
+			ReadOptions options) throws IOException {
+		return new Key(source.identity(hashContent), lastCellNum,
+				sheetNumber, null == options ? ReadOptions.all() : options);
+	}
+
+	/**
+	 * Gets a copy of the result of a read.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the rows, null if the cache does not hold them
+	 */
+	Map<Integer, List<ExcelDTO>> get(Key key) {
+		Entry entry;
+		synchronized (this) {
+			entry = memory.get(key);
+			if (null != entry) {
+				hitCount++;
+				return copy(entry.rows);
+			}
+			// taken off the disk tier, so no eviction deletes the file while
+			// it is read
+			entry = disk.remove(key);
+			if (null == entry) {
+				missCount++;
+				return null;
+			}
+			diskBytes -= entry.file.length();
+		}
+
+		Map<Integer, List<ExcelDTO>> rows;
+		try {
+			rows = readFile(entry.file);
+		} catch (IOException ex) {
+			LOG.warn("Error reading cache file " + entry.file + ":::" + ex);
+			synchronized (this) {
+				missCount++;
+			}
+			return null;
+		} finally {
+			delete(entry.file);
+		}
+		synchronized (this) {
+			diskHitCount++;
+		}
+		put(key, rows, entry.size);
+		return copy(rows);
+	}
+
+	/**
+	 * Keeps a copy of the result of a read.
+	 *
+	 * @param key
+	 *            the key
+	 * @param rows
+	 *            the rows
+	 */
+	void put(Key key, Map<Integer, List<ExcelDTO>> rows) {
+		put(key, copy(rows), estimateSize(rows));
+	}
+
+	/**
+	 * Keeps the result of a read in memory, moving the least recently used
+	 * results to the disk tier while over the heap budget.
+	 *
+	 * @param key
+	 *            the key
+	 * @param rows
+	 *            the rows, owned by the cache
+	 * @param size
+	 *            the estimated heap size of the rows
+	 */
+	private void put(Key key, Map<Integer, List<ExcelDTO>> rows, long size) {
+		List<Map.Entry<Key, Entry>> evicted = new ArrayList<Map.Entry<Key, Entry>>();
+		Entry entry = new Entry(rows, size);
+		synchronized (this) {
+			Entry previous = memory.put(key, entry);
+			if (null != previous) {
+				heapBytes -= previous.size;
+			}
+			heapBytes += size;
+			Iterator<Map.Entry<Key, Entry>> iterator = memory.entrySet()
+					.iterator();
+			while (heapBytes > maxHeapBytes && iterator.hasNext()) {
+				Map.Entry<Key, Entry> eldest = iterator.next();
+				iterator.remove();
+				heapBytes -= eldest.getValue().size;
+				evictionCount++;
+				evicted.add(eldest);
+			}
+		}
+		if (null != diskDirectory) {
+			for (Map.Entry<Key, Entry> eldest : evicted) {
+				spill(eldest.getKey(), eldest.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Writes a result evicted from memory to the disk tier, dropping the
+	 * oldest files while over the disk budget.
+	 *
+	 * @param key
+	 *            the key
+	 * @param entry
+	 *            the result
+	 */
+	private void spill(Key key, Entry entry) {
+		File file;
+		try {
+			file = writeFile(entry.rows);
+		} catch (IOException ex) {
+			LOG.warn("Error writing cache file:::" + ex);
+			return;
+		}
+
+		List<File> dropped = new ArrayList<File>();
+		synchronized (this) {
+			Entry previous = disk.put(key, new Entry(file, entry.size));
+			if (null != previous) {
+				diskBytes -= previous.file.length();
+				dropped.add(previous.file);
+			}
+			diskBytes += file.length();
+			Iterator<Entry> iterator = disk.values().iterator();
+			while (diskBytes > maxDiskBytes && iterator.hasNext()) {
+				Entry eldest = iterator.next();
+				iterator.remove();
+				diskBytes -= eldest.file.length();
+				diskEvictionCount++;
+				dropped.add(eldest.file);
+			}
+		}
+		for (File droppedFile : dropped) {
+			delete(droppedFile);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParseCacheMBean#clear()
+	 */
+	public void clear() {
+		List<File> dropped = new ArrayList<File>();
+		synchronized (this) {
+			for (Entry entry : disk.values()) {
+				dropped.add(entry.file);
+			}
+			memory.clear();
+			disk.clear();
+			heapBytes = 0;
+			diskBytes = 0;
+		}
+		for (File file : dropped) {
+			delete(file);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParseCacheMBean#getHitCount()
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParseCacheMBean#getDiskHitCount()
+	 */
+	public synchronized long getDiskHitCount() {
+		return diskHitCount;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParseCacheMBean#getMissCount()
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParseCacheMBean#getHitRatio()
+	 */
+	public synchronized double getHitRatio() {
+		long reads = hitCount + diskHitCount + missCount;
+		return reads == 0 ? 0 : (hitCount + diskHitCount) / (double) reads;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParseCacheMBean#getEvictionCount()
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParseCacheMBean#getDiskEvictionCount()
+	 */
+	public synchronized long getDiskEvictionCount() {
+		return diskEvictionCount;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParseCacheMBean#getEntryCount()
+	 */
+	public synchronized int getEntryCount() {
+		return memory.size();
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParseCacheMBean#getHeapBytes()
+	 */
+	public synchronized long getHeapBytes() {
+		return heapBytes;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParseCacheMBean#getMaxHeapBytes()
+	 */
+	public long getMaxHeapBytes() {
+		return maxHeapBytes;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParseCacheMBean#getDiskEntryCount()
+	 */
+	public synchronized int getDiskEntryCount() {
+		return disk.size();
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParseCacheMBean#getDiskBytes()
+	 */
+	public synchronized long getDiskBytes() {
+		return diskBytes;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public synchronized String toString() {
+		return "ParseCache[" + memory.size() + " entries, " + heapBytes + "/"
+				+ maxHeapBytes + " heap bytes, " + disk.size()
+				+ " disk entries, " + diskBytes + " disk bytes, " + hitCount
+				+ " hits, " + diskHitCount + " disk hits, " + missCount
+				+ " misses, " + evictionCount + " evictions]";
+	}
+
+	/**
+	 * Copies rows, so the copy may be changed without changing the rows.
+	 *
+	 * @param rows
+	 *            the rows
+	 * @return the copy
+	 */
+	static Map<Integer, List<ExcelDTO>> copy(
+			Map<Integer, List<ExcelDTO>> rows) {
+		Map<Integer, List<ExcelDTO>> copy = new HashMap<Integer, List<ExcelDTO>>(
+				rows.size() * 4 / 3 + 1);
+		for (Map.Entry<Integer, List<ExcelDTO>> row : rows.entrySet()) {
+			List<ExcelDTO> cells = new ArrayList<ExcelDTO>(row.getValue()
+					.size());
+			for (ExcelDTO cell : row.getValue()) {
+				ExcelDTO cellCopy = new ExcelDTO();
+				cellCopy.setColumnName(cell.getColumnName());
+				cellCopy.setColumnValue(cell.getColumnValue());
+				cells.add(cellCopy);
+			}
+			copy.put(row.getKey(), cells);
+		}
+		return copy;
+	}
+
+	/**
+	 * Estimates the heap used by rows: the map, the lists, the cells and
+	 * their values. Column names are counted once, as the rows of a sheet
+	 * share them.
+	 *
+	 * @param rows
+	 *            the rows
+	 * @return the estimated bytes
+	 */
+	static long estimateSize(Map<Integer, List<ExcelDTO>> rows) {
+		long size = 64;
+		boolean namesCounted = false;
+		for (List<ExcelDTO> row : rows.values()) {
+			size += estimateRowSize(row);
+			if (!namesCounted && !row.isEmpty()
+					&& !"HEADER".equals(row.get(0).getColumnName())) {
+				for (ExcelDTO cell : row) {
+					size += estimateSize(cell.getColumnName());
+				}
+				namesCounted = true;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Estimates the heap used by a row in a map: its map entry, list, cells
+	 * and values. The column names are not counted, as the rows of a sheet
+	 * share them.
+	 *
+	 * @param row
+	 *            the row
+	 * @return the estimated bytes
+	 */
+	static long estimateRowSize(List<ExcelDTO> row) {
+		// hash map node, Integer key, array list and its array
+		long size = 120 + 8L * row.size();
+		for (ExcelDTO cell : row) {
+			size += 24 + estimateSize(cell.getColumnValue());
+		}
+		return size;
+	}
+
+	/**
+	 * Estimates the heap used by a string.
+	 *
+	 * @param value
+	 *            the string, may be null
+	 * @return the estimated bytes
+	 */
+	private static long estimateSize(String value) {
+		return null == value ? 0 : 40 + 2L * value.length();
+	}
+
+	/**
+	 * Writes rows to a new file of the disk tier.
+	 *
+	 * @param rows
+	 *            the rows
+	 * @return the file
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private File writeFile(Map<Integer, List<ExcelDTO>> rows)
+			throws IOException {
+		File file = File.createTempFile("parse-cache-", ".bin", diskDirectory);
+		boolean written = false;
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), 1 << 16));
+		try {
+			out.writeInt(rows.size());
+			for (Map.Entry<Integer, List<ExcelDTO>> row : rows.entrySet()) {
+				out.writeInt(row.getKey());
+				out.writeInt(row.getValue().size());
+				for (ExcelDTO cell : row.getValue()) {
+					writeString(out, cell.getColumnName());
+					writeString(out, cell.getColumnValue());
+				}
+			}
+			written = true;
+		} finally {
+			out.close();
+			if (!written) {
+				delete(file);
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Reads rows from a file of the disk tier. A column name equal to the
+	 * name of the same column in the row before is shared with it, like the
+	 * rows of a parsed sheet share them.
+	 *
+	 * @param file
+	 *            the file
+	 * @return the rows
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static Map<Integer, List<ExcelDTO>> readFile(File file)
+			throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file), 1 << 16));
+		try {
+			int rowCount = in.readInt();
+			Map<Integer, List<ExcelDTO>> rows = new HashMap<Integer, List<ExcelDTO>>(
+					rowCount * 4 / 3 + 1);
+			List<ExcelDTO> previous = new ArrayList<ExcelDTO>();
+			for (int i = 0; i < rowCount; i++) {
+				int rowNumber = in.readInt();
+				int cellCount = in.readInt();
+				List<ExcelDTO> cells = new ArrayList<ExcelDTO>(cellCount);
+				for (int column = 0; column < cellCount; column++) {
+					String name = readString(in);
+					if (column < previous.size() && null != name
+							&& name.equals(previous.get(column).getColumnName())) {
+						name = previous.get(column).getColumnName();
+					}
+					ExcelDTO cell = new ExcelDTO();
+					cell.setColumnName(name);
+					cell.setColumnValue(readString(in));
+					cells.add(cell);
+				}
+				rows.put(rowNumber, cells);
+				previous = cells;
+			}
+			return rows;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes a string of any length, or null.
+	 *
+	 * @param out
+	 *            the output
+	 * @param value
+	 *            the string, may be null
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static void writeString(DataOutputStream out, String value)
+			throws IOException {
+		if (null == value) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = value.getBytes(UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString(DataOutputStream, String)}.
+	 *
+	 * @param in
+	 *            the input
+	 * @return the string, may be null
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	/**
+	 * Deletes a file of the disk tier.
+	 *
+	 * @param file
+	 *            the file
+	 */
+	private static void delete(File file) {
+		if (!file.delete() && file.exists()) {
+			LOG.warn("Cannot delete cache file " + file);
+		}
+	}
+
+	/**
+	 * The key of a read: the workbook, lastCellNum, the sheet number and the
+	 * read options.
+	 */
+	static final class Key {
+
+		/** The identity of the workbook. */
+		private final String identity;
+
+		/** The last cell number. */
+		private final int lastCellNum;
+
+		/** The sheet number. */
+		private final int sheetNumber;
+
+		/** The read options. */
+		private final ReadOptions options;
+
+		/**
+		 * Instantiates a new key.
+		 *
+		 * @param identity
+		 *            the identity of the workbook
+		 * @param lastCellNum
+		 *            the last cell number
+		 * @param sheetNumber
+		 *            the sheet number
+		 * @param options
+		 *            the read options
+		 */
+		Key(String identity, int lastCellNum, int sheetNumber,
+				ReadOptions options) {
+			this.identity = identity;
+			this.lastCellNum = lastCellNum;
+			this.sheetNumber = sheetNumber;
+			this.options = options;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#hashCode()
+		 */
+		public int hashCode() {
+			return ((identity.hashCode() * 31 + lastCellNum) * 31 + sheetNumber)
+					* 31 + options.hashCode();
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return identity.equals(other.identity)
+					&& lastCellNum == other.lastCellNum
+					&& sheetNumber == other.sheetNumber
+					&& options.equals(other.options);
+		}
+	}
+
+	/**
+	 * A cached result: the rows in memory, or the file holding them.
+	 */
+	private static final class Entry {
+
+		/** The rows, null on disk. */
+		final Map<Integer, List<ExcelDTO>> rows;
+
+		/** The file, null in memory. */
+		final File file;
+
+		/** The estimated heap size of the rows. */
+		final long size;
+
+		/**
+		 * Instantiates an entry in memory.
+		 *
+		 * @param rows
+		 *            the rows
+		 * @param size
+		 *            the estimated heap size
+		 */
+		Entry(Map<Integer, List<ExcelDTO>> rows, long size) {
+			this.rows = rows;
+			this.file = null;
+			this.size = size;
+		}
+
+		/**
+		 * Instantiates an entry on disk.
+		 *
+		 * @param file
+		 *            the file
+		 * @param size
+		 *            the estimated heap size of the rows
+		 */
+		Entry(File file, long size) {
+			this.rows = null;
+			this.file = file;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * The Class Builder. Collects the configuration of a {@link ParseCache}.
+	 */
+	public static class Builder {
+
+		/** The heap budget. */
+		private long maxHeapBytes = 64L * 1024 * 1024;
+
+		/** Whether files are found by a hash of their content. */
+		private boolean hashContent;
+
+		/** The directory of the disk tier. */
+		private File diskDirectory;
+
+		/** The disk budget. */
+		private long maxDiskBytes;
+
+		/**
+		 * Instantiates a new builder.
+		 */
+		private Builder() {
+		}
+
+		/**
+		 * Sets the estimated heap the results in memory may use, 64 MB by
+		 * default. A result larger than that goes straight to the disk tier,
+		 * or is not kept.
+		 *
+		 * @param bytes
+		 *            the heap budget
+		 * @return the builder
+		 */
+		public Builder maxHeapBytes(long bytes) {
+			if (bytes < 0) {
+				throw new IllegalArgumentException("Heap budget (" + bytes
+						+ ") must not be negative");
+			}
+			this.maxHeapBytes = bytes;
+			return this;
+		}
+
+		/**
+		 * Finds files by a hash of their content instead of their path, size
+		 * and modification time, e.g. for uploads saved under new names. The
+		 * whole file is hashed on every read. Off by default.
+		 *
+		 * @param enabled
+		 *            whether to hash the content of files
+		 * @return the builder
+		 */
+		public Builder hashContent(boolean enabled) {
+			this.hashContent = enabled;
+			return this;
+		}
+
+		/**
+		 * Adds a disk tier: results evicted from memory are written to files
+		 * in the directory, up to a budget of disk bytes, instead of being
+		 * dropped. The files are deleted when read back, evicted or cleared.
+		 *
+		 * @param directory
+		 *            the directory, created if missing
+		 * @param maxBytes
+		 *            the disk budget
+		 * @return the builder
+		 */
+		public Builder diskTier(File directory, long maxBytes) {
+			if (null == directory || maxBytes < 0) {
+				throw new IllegalArgumentException("Directory must not be null"
+						+ ", disk budget (" + maxBytes + ") not negative");
+			}
+			this.diskDirectory = directory;
+			this.maxDiskBytes = maxBytes;
+			return this;
+		}
+
+		/**
+		 * Builds the cache.
+		 *
+		 * @return the parse cache
+		 */
+		public ParseCache build() {
+			if (null != diskDirectory && !diskDirectory.isDirectory()
+					&& !diskDirectory.mkdirs()) {
+				throw new IllegalArgumentException("Cannot create directory "
+						+ diskDirectory);
+			}
+			return new ParseCache(this);
+		}
+	}
+}
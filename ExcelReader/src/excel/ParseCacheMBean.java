@@ -0,0 +1,94 @@
+package excel;
+
+/**
+ * The Interface ParseCacheMBean. The JMX management interface of
+ * {@link ParseCache}.
+ *
+ * @author Sourav
+ */
+public interface ParseCacheMBean {
+
+	/**
+	 * Gets the number of reads answered from memory.
+	 *
+	 * @return the hit count
+	 */
+	long getHitCount();
+
+	/**
+	 * Gets the number of reads answered from the disk tier.
+	 *
+	 * @return the disk hit count
+	 */
+	long getDiskHitCount();
+
+	/**
+	 * Gets the number of reads that had to parse the workbook.
+	 *
+	 * @return the miss count
+	 */
+	long getMissCount();
+
+	/**
+	 * Gets the share of reads answered from memory or disk.
+	 *
+	 * @return the hit ratio, between 0 and 1
+	 */
+	double getHitRatio();
+
+	/**
+	 * Gets the number of results moved out of memory to make room, to the
+	 * disk tier if there is one.
+	 *
+	 * @return the eviction count
+	 */
+	long getEvictionCount();
+
+	/**
+	 * Gets the number of results dropped from the disk tier to make room.
+	 *
+	 * @return the disk eviction count
+	 */
+	long getDiskEvictionCount();
+
+	/**
+	 * Gets the number of results in memory.
+	 *
+	 * @return the entry count
+	 */
+	int getEntryCount();
+
+	/**
+	 * Gets the estimated heap used by the results in memory.
+	 *
+	 * @return the bytes
+	 */
+	long getHeapBytes();
+
+	/**
+	 * Gets the heap budget.
+	 *
+	 * @return the bytes
+	 */
+	long getMaxHeapBytes();
+
+	/**
+	 * Gets the number of results in the disk tier.
+	 *
+	 * @return the entry count
+	 */
+	int getDiskEntryCount();
+
+	/**
+	 * Gets the size of the files of the disk tier.
+	 *
+	 * @return the bytes
+	 */
+	long getDiskBytes();
+
+	/**
+	 * Drops all results, from memory and disk.
+	 */
+	void clear();
+
+}
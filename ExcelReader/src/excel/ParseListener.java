@@ -0,0 +1,35 @@
+package excel;
+
+/**
+ * The Interface ParseListener. Receives the {@link ParseMetrics} of every call
+ * of the read methods of an {@link ExcelReader}, set with
+ * {@link ExcelReader.Builder#parseListener(ParseListener)}. Failed reads are
+ * reported as well, including those the map returning methods only log.
+ * Listeners are called on the reading thread once the call is done, by any
+ * number of threads at the same time; an exception thrown by a listener is
+ * logged and does not fail the read.
+ *
+ * @author Sourav
+ * @see ParserStats
+ */
+public interface ParseListener {
+
+	/**
+	 * Called when a read completed.
+	 *
+	 * @param metrics
+	 *            the metrics of the read
+	 */
+	void parseCompleted(ParseMetrics metrics);
+
+	/**
+	 * Called when a read failed.
+	 *
+	 * @param metrics
+	 *            the metrics of the read up to the failure
+	 * @param ex
+	 *            the failure
+	 */
+	void parseFailed(ParseMetrics metrics, Exception ex);
+
+}
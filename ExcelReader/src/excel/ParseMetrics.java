@@ -0,0 +1,370 @@
+package excel;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The Class ParseMetrics. What one call of an {@link ExcelReader} read method
+ * did and where its time went, passed to the {@link ParseListener} of the
+ * reader once the call is done:
+ * <ul>
+ * <li>the time of every {@link Phase} and of the whole call;</li>
+ * <li>the bytes parsed: the inflated xml of the shared strings and sheets of
+ * an xlsx workbook, the records of an xls workbook;</li>
+ * <li>the rows and cells passed on, after the {@link ReadOptions} of the
+ * read, and the widest row;</li>
+ * <li>the number of shared strings of the workbook;</li>
+ * <li>the number of distinct values of every column, when the reader has a
+ * {@link ValueDictionary}.</li>
+ * </ul>
+ * Sheets read in parallel add up their phase times, so the sum of the phases
+ * may exceed the time of the call. Metrics are only collected when the reader
+ * has a listener, and are not changed after being passed to it.
+ *
+ * @author Sourav
+ */
+public final class ParseMetrics {
+
+	/**
+	 * The phases of a read.
+	 */
+	public enum Phase {
+
+		/** Opening the package (xlsx) or the POI file system (xls). */
+		OPEN,
+
+		/** Reading the number formats of the styles (xlsx). */
+		STYLES,
+
+		/** Reading the shared strings table (xlsx). */
+		SHARED_STRINGS,
+
+		/** Parsing the sheets and passing their rows on. */
+		SHEET,
+
+		/** Building the result after the sheets are parsed (columnar reads). */
+		BUILD
+	}
+
+	/** The workbook read, a file name or a description of the input. */
+	private final String source;
+
+	/** The format, xls or xlsx, null until known. */
+	private String format;
+
+	/** The nanoseconds of every phase, by ordinal. */
+	private final long[] phaseNanos = new long[Phase.values().length];
+
+	/** The nanoseconds of the call. */
+	private long totalNanos;
+
+	/** The bytes parsed. */
+	private long bytesRead;
+
+	/** The number of sheets read. */
+	private int sheetCount;
+
+	/** The number of rows passed on. */
+	private long rowCount;
+
+	/** The number of cells holding a value passed on. */
+	private long cellCount;
+
+	/** The width of the widest row. */
+	private int maxRowWidth;
+
+	/** The number of shared strings. */
+	private int sharedStringCount;
+
+	/** The value tables of the sheets parsed, by sheet number. */
+	private final Map<Integer, ValueInterner> valueInterners = new TreeMap<Integer, ValueInterner>();
+
+	/**
+	 * Instantiates new parse metrics.
+	 *
+	 * @param source
+	 *            the workbook read
+	 */
+	ParseMetrics(String source) {
+		this.source = source;
+	}
+
+	/**
+	 * Gets the workbook read.
+	 *
+	 * @return the file name, or a description of an input that is not a file
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * Gets the format of the workbook.
+	 *
+	 * @return xls or xlsx, null if the call failed before it was known
+	 */
+	public String getFormat() {
+		return format;
+	}
+
+	/**
+	 * Gets the time spent in a phase.
+	 *
+	 * @param phase
+	 *            the phase
+	 * @return the nanoseconds, 0 if the read had no such phase
+	 */
+	public long getPhaseNanos(Phase phase) {
+		return phaseNanos[phase.ordinal()];
+	}
+
+	/**
+	 * Gets the time of the whole call.
+	 *
+	 * @return the nanoseconds
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * Gets the bytes parsed: inflated xml for xlsx, records for xls.
+	 *
+	 * @return the bytes read
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * Gets the number of sheets read.
+	 *
+	 * @return the sheet count
+	 */
+	public int getSheetCount() {
+		return sheetCount;
+	}
+
+	/**
+	 * Gets the number of rows passed on, including the header rows.
+	 *
+	 * @return the row count
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Gets the number of cells holding a value passed on.
+	 *
+	 * @return the cell count
+	 */
+	public long getCellCount() {
+		return cellCount;
+	}
+
+	/**
+	 * Gets the width of the widest row: the index of its last cell holding a
+	 * value, plus one.
+	 *
+	 * @return the widest row
+	 */
+	public int getMaxRowWidth() {
+		return maxRowWidth;
+	}
+
+	/**
+	 * Gets the number of strings in the shared strings table.
+	 *
+	 * @return the shared string count
+	 */
+	public int getSharedStringCount() {
+		return sharedStringCount;
+	}
+
+	/**
+	 * Gets the number of distinct values of every column below the header
+	 * row, counted by the {@link ValueDictionary} of the reader. Sheets
+	 * taken from a cache without parsing have no counts.
+	 *
+	 * @return the counts indexed by column (-1 for columns with more distinct
+	 *         values than the dictionary holds), by sheet number; empty if
+	 *         the reader has no dictionary
+	 */
+	public synchronized Map<Integer, int[]> getColumnCardinalities() {
+		Map<Integer, int[]> cardinalities = new TreeMap<Integer, int[]>();
+		for (Map.Entry<Integer, ValueInterner> entry : valueInterners
+				.entrySet()) {
+			cardinalities.put(entry.getKey(), entry.getValue()
+					.getCardinalities());
+		}
+		return cardinalities;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		text.append(source).append(" (").append(format).append("): ")
+				.append(totalNanos / 1000000).append(" ms");
+		for (Phase phase : Phase.values()) {
+			text.append(", ").append(phase.name().toLowerCase())
+					.append(' ').append(phaseNanos[phase.ordinal()] / 1000000)
+					.append(" ms");
+		}
+		text.append(", ").append(bytesRead).append(" bytes, ")
+				.append(sheetCount).append(" sheets, ").append(rowCount)
+				.append(" rows, ").append(cellCount).append(" cells, ")
+				.append(maxRowWidth).append(" widest row, ")
+				.append(sharedStringCount).append(" shared strings");
+		return text.toString();
+	}
+
+	/**
+	 * Sets the format.
+	 *
+	 * @param format
+	 *            xls or xlsx
+	 */
+	void setFormat(String format) {
+		this.format = format;
+	}
+
+	/**
+	 * Sets the time of the whole call.
+	 *
+	 * @param nanos
+	 *            the nanoseconds
+	 */
+	void setTotalNanos(long nanos) {
+		this.totalNanos = nanos;
+	}
+
+	/**
+	 * Sets the number of shared strings.
+	 *
+	 * @param count
+	 *            the shared string count
+	 */
+	synchronized void setSharedStringCount(int count) {
+		this.sharedStringCount = count;
+	}
+
+	/**
+	 * Adds time spent in a phase.
+	 *
+	 * @param phase
+	 *            the phase
+	 * @param nanos
+	 *            the nanoseconds
+	 */
+	synchronized void addPhaseNanos(Phase phase, long nanos) {
+		phaseNanos[phase.ordinal()] += nanos;
+	}
+
+	/**
+	 * Adds bytes parsed.
+	 *
+	 * @param bytes
+	 *            the bytes
+	 */
+	synchronized void addBytesRead(long bytes) {
+		bytesRead += bytes;
+	}
+
+	/**
+	 * Adds the value tables of a sheet, counted once the read is done.
+	 *
+	 * @param sheetNumber
+	 *            the sheet number
+	 * @param valueInterner
+	 *            the value tables of the sheet
+	 */
+	synchronized void addValueInterner(int sheetNumber,
+			ValueInterner valueInterner) {
+		valueInterners.put(sheetNumber, valueInterner);
+	}
+
+	/**
+	 * Adds a sheet read.
+	 *
+	 * @param counter
+	 *            the counter of the rows and cells of the sheet
+	 */
+	synchronized void addSheet(CountingCellHandler counter) {
+		sheetCount++;
+		rowCount += counter.getRowCount();
+		cellCount += counter.getCellCount();
+		maxRowWidth = Math.max(maxRowWidth, counter.getMaxRowWidth());
+	}
+
+	/**
+	 * Adds the time since a start to a phase.
+	 *
+	 * @param metrics
+	 *            the metrics, null if not collected
+	 * @param phase
+	 *            the phase
+	 * @param start
+	 *            the start, from {@link System#nanoTime()}
+	 * @return now, the start of the next phase
+	 */
+	static long endPhase(ParseMetrics metrics, Phase phase, long start) {
+		long now = System.nanoTime();
+		if (null != metrics) {
+			metrics.addPhaseNanos(phase, now - start);
+		}
+		return now;
+	}
+
+	/**
+	 * Counts the bytes read from a stream, added to the metrics when the
+	 * stream is closed.
+	 *
+	 * @param metrics
+	 *            the metrics, null if not collected
+	 * @param in
+	 *            the stream, may be null
+	 * @return the counting stream, or the stream itself if not collected
+	 */
+	static InputStream count(final ParseMetrics metrics, InputStream in) {
+		if (null == metrics || null == in) {
+			return in;
+		}
+		return new FilterInputStream(in) {
+			private long count;
+
+			public int read() throws IOException {
+				int b = super.read();
+				if (b >= 0) {
+					count++;
+				}
+				return b;
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				int n = super.read(b, off, len);
+				if (n > 0) {
+					count += n;
+				}
+				return n;
+			}
+
+			public long skip(long n) throws IOException {
+				long skipped = super.skip(n);
+				count += skipped;
+				return skipped;
+			}
+
+			public void close() throws IOException {
+				metrics.addBytesRead(count);
+				count = 0;
+				super.close();
+			}
+		};
+	}
+}
@@ -0,0 +1,164 @@
+package excel;
+
+import java.text.DateFormat;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+/**
+ * The Class ParserResources. Keeps the objects which are expensive to create
+ * and not thread safe (SAX parsers, formatters) once per thread, so that
+ * concurrent reads neither share nor keep re-creating them.
+ * <p>
+ * A SAX parser is taken with {@link #acquireXMLReader()} and given back with
+ * {@link #releaseXMLReader(XMLReader)}; a read started from within a handler
+ * of another read on the same thread gets a parser of its own. The
+ * formatters must only be used on the calling thread and not be kept.
+ *
+ * @author Sourav
+ */
+final class ParserResources {
+
+	/** The Constant DATE_PATTERN. */
+	private static final String DATE_PATTERN = "yyyy-MM-dd";
+
+	/** The Constant DECIMAL_PATTERN. */
+	private static final String DECIMAL_PATTERN = "0.000";
+
+	/** The Constant GENERAL_WHOLE_PATTERN. */
+	private static final String GENERAL_WHOLE_PATTERN = "#";
+
+	/** The Constant GENERAL_DECIMAL_PATTERN. */
+	private static final String GENERAL_DECIMAL_PATTERN = "#.##########";
+
+	/** Handler set on idle parsers, so they keep no reference to a read. */
+	private static final DefaultHandler NO_HANDLER = new DefaultHandler();
+
+	/** The idle SAX parser of each thread. */
+	private static final ThreadLocal<XMLReader> IDLE_READERS = new ThreadLocal<XMLReader>();
+
+	/** The data formatter of each thread. */
+	private static final ThreadLocal<DataFormatter> DATA_FORMATTERS = new ThreadLocal<DataFormatter>() {
+		protected DataFormatter initialValue() {
+			return new DataFormatter();
+		}
+	};
+
+	/** The date format of each thread. */
+	private static final ThreadLocal<DateFormat> DATE_FORMATS = new ThreadLocal<DateFormat>() {
+		protected DateFormat initialValue() {
+			return new SimpleDateFormat(DATE_PATTERN);
+		}
+	};
+
+	/** The decimal format of each thread. */
+	private static final ThreadLocal<DecimalFormat> DECIMAL_FORMATS = new ThreadLocal<DecimalFormat>() {
+		protected DecimalFormat initialValue() {
+			return new DecimalFormat(DECIMAL_PATTERN);
+		}
+	};
+
+	/** The format of whole numbers in General format, as POI's. */
+	private static final ThreadLocal<DecimalFormat> GENERAL_WHOLE_FORMATS = new ThreadLocal<DecimalFormat>() {
+		protected DecimalFormat initialValue() {
+			return new DecimalFormat(GENERAL_WHOLE_PATTERN,
+					new DecimalFormatSymbols(Locale.getDefault()));
+		}
+	};
+
+	/** The format of other numbers in General format, as POI's. */
+	private static final ThreadLocal<DecimalFormat> GENERAL_DECIMAL_FORMATS = new ThreadLocal<DecimalFormat>() {
+		protected DecimalFormat initialValue() {
+			return new DecimalFormat(GENERAL_DECIMAL_PATTERN,
+					new DecimalFormatSymbols(Locale.getDefault()));
+		}
+	};
+
+	/**
+	 * Instantiates a new parser resources.
+	 */
+	private ParserResources() {
+	}
+
+	/**
+	 * Takes the idle SAX parser of the thread, or creates one if there is
+	 * none.
+	 *
+	 * @return the XML reader, to be given back when done
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	static XMLReader acquireXMLReader() throws SAXException {
+		XMLReader reader = IDLE_READERS.get();
+		if (null == reader) {
+			return XMLReaderFactory.createXMLReader();
+		}
+		IDLE_READERS.remove();
+		return reader;
+	}
+
+	/**
+	 * Gives a SAX parser back once its parse has returned, normally or not.
+	 *
+	 * @param reader
+	 *            the XML reader
+	 */
+	static void releaseXMLReader(XMLReader reader) {
+		reader.setContentHandler(NO_HANDLER);
+		IDLE_READERS.set(reader);
+	}
+
+	/**
+	 * Gets the data formatter of the thread.
+	 *
+	 * @return the data formatter
+	 */
+	static DataFormatter dataFormatter() {
+		return DATA_FORMATTERS.get();
+	}
+
+	/**
+	 * Gets the yyyy-MM-dd date format of the thread.
+	 *
+	 * @return the date format
+	 */
+	static DateFormat dateFormat() {
+		return DATE_FORMATS.get();
+	}
+
+	/**
+	 * Gets the 0.000 decimal format of the thread.
+	 *
+	 * @return the decimal format
+	 */
+	static DecimalFormat decimalFormat() {
+		return DECIMAL_FORMATS.get();
+	}
+
+	/**
+	 * Gets the format of whole numbers in General format of the thread, the
+	 * one {@link DataFormatter} uses.
+	 *
+	 * @return the decimal format
+	 */
+	static DecimalFormat generalWholeFormat() {
+		return GENERAL_WHOLE_FORMATS.get();
+	}
+
+	/**
+	 * Gets the format of other numbers in General format of the thread, the
+	 * one {@link DataFormatter} uses.
+	 *
+	 * @return the decimal format
+	 */
+	static DecimalFormat generalDecimalFormat() {
+		return GENERAL_DECIMAL_FORMATS.get();
+	}
+}
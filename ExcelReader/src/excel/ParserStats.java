@@ -0,0 +1,381 @@
+package excel;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+import excel.ParseMetrics.Phase;
+
+/**
+ * The Class ParserStats. A {@link ParseListener} adding up the metrics of all
+ * reads, and the MBean publishing them over JMX: counts of reads, failures,
+ * rows, cells and bytes, the time of every phase, a histogram of the duration
+ * of the reads and the slowest and the last failed workbook. Register it with
+ * {@link #register()} and set it on the reader, e.g.
+ * <code>ExcelParser.setDefaultReader(ExcelReader.builder().parseListener(stats).build())</code>.
+ * <p>
+ * The duration histogram has buckets of doubling width, from up to 1 ms to
+ * over 65 s. Failed reads are logged at warn level and counted like completed
+ * ones.
+ *
+ * @author Sourav
+ */
+public class ParserStats implements ParseListener, ParserStatsMBean {
+
+	/** The Constant LOG. */
+	private static final Logger LOG = Logger.getLogger(ParserStats.class);
+
+	/** The object name of {@link #register()}. */
+	public static final String DEFAULT_OBJECT_NAME = "excel:type=ParserStats";
+
+	/** The upper bounds of the duration buckets, the last is unbounded. */
+	private static final long[] BUCKET_MILLIS = new long[18];
+
+	static {
+		for (int i = 0; i < BUCKET_MILLIS.length - 1; i++) {
+			BUCKET_MILLIS[i] = 1L << i;
+		}
+		BUCKET_MILLIS[BUCKET_MILLIS.length - 1] = Long.MAX_VALUE;
+	}
+
+	/** The read count. */
+	private long readCount;
+
+	/** The failure count. */
+	private long failureCount;
+
+	/** The sheet count. */
+	private long sheetCount;
+
+	/** The row count. */
+	private long rowCount;
+
+	/** The cell count. */
+	private long cellCount;
+
+	/** The bytes read. */
+	private long bytesRead;
+
+	/** The shared string count. */
+	private long sharedStringCount;
+
+	/** The widest row. */
+	private int maxRowWidth;
+
+	/** The nanoseconds of every phase, by ordinal. */
+	private final long[] phaseNanos = new long[Phase.values().length];
+
+	/** The nanoseconds of all reads. */
+	private long totalNanos;
+
+	/** The reads in every duration bucket. */
+	private final long[] durationHistogram = new long[BUCKET_MILLIS.length];
+
+	/** The nanoseconds of the slowest read. */
+	private long maxDurationNanos;
+
+	/** The metrics of the slowest read. */
+	private String slowestRead;
+
+	/** The last failure. */
+	private String lastFailure;
+
+	/**
+	 * Registers the stats with the platform MBean server under
+	 * {@link #DEFAULT_OBJECT_NAME}.
+	 *
+	 * @return the object name
+	 * @throws JMException
+	 *             if the name is taken or the MBean cannot be registered
+	 */
+	public ObjectName register() throws JMException {
+		return register(DEFAULT_OBJECT_NAME);
+	}
+
+	/**
+	 * Registers the stats with the platform MBean server, e.g. one instance
+	 * per reader under excel:type=ParserStats,name=imports.
+	 *
+	 * @param objectName
+	 *            the object name
+	 * @return the object name
+	 * @throws JMException
+	 *             if the name is taken or the MBean cannot be registered
+	 */
+	public ObjectName register(String objectName) throws JMException {
+		ObjectName name = new ObjectName(objectName);
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+		return name;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParseListener#parseCompleted(excel.ParseMetrics)
+	 */
+	public synchronized void parseCompleted(ParseMetrics metrics) {
+		add(metrics);
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParseListener#parseFailed(excel.ParseMetrics, java.lang.Exception)
+	 */
+	public void parseFailed(ParseMetrics metrics, Exception ex) {
+		LOG.warn("Failed to read " + metrics.getSource() + ":::" + ex);
+		synchronized (this) {
+			add(metrics);
+			failureCount++;
+			lastFailure = metrics.getSource() + ": " + ex;
+		}
+	}
+
+	/**
+	 * Adds the metrics of a read.
+	 *
+	 * @param metrics
+	 *            the metrics
+	 */
+	private void add(ParseMetrics metrics) {
+		readCount++;
+		sheetCount += metrics.getSheetCount();
+		rowCount += metrics.getRowCount();
+		cellCount += metrics.getCellCount();
+		bytesRead += metrics.getBytesRead();
+		sharedStringCount += metrics.getSharedStringCount();
+		maxRowWidth = Math.max(maxRowWidth, metrics.getMaxRowWidth());
+		for (Phase phase : Phase.values()) {
+			phaseNanos[phase.ordinal()] += metrics.getPhaseNanos(phase);
+		}
+
+		long nanos = metrics.getTotalNanos();
+		totalNanos += nanos;
+		long millis = nanos / 1000000;
+		int bucket = 0;
+		while (millis > BUCKET_MILLIS[bucket]) {
+			bucket++;
+		}
+		durationHistogram[bucket]++;
+		if (nanos >= maxDurationNanos) {
+			maxDurationNanos = nanos;
+			slowestRead = metrics.toString();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getReadCount()
+	 */
+	public synchronized long getReadCount() {
+		return readCount;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getFailureCount()
+	 */
+	public synchronized long getFailureCount() {
+		return failureCount;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getSheetCount()
+	 */
+	public synchronized long getSheetCount() {
+		return sheetCount;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getRowCount()
+	 */
+	public synchronized long getRowCount() {
+		return rowCount;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getCellCount()
+	 */
+	public synchronized long getCellCount() {
+		return cellCount;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getBytesRead()
+	 */
+	public synchronized long getBytesRead() {
+		return bytesRead;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getSharedStringCount()
+	 */
+	public synchronized long getSharedStringCount() {
+		return sharedStringCount;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getMaxRowWidth()
+	 */
+	public synchronized int getMaxRowWidth() {
+		return maxRowWidth;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getOpenMillis()
+	 */
+	public long getOpenMillis() {
+		return getPhaseMillis(Phase.OPEN);
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getStylesMillis()
+	 */
+	public long getStylesMillis() {
+		return getPhaseMillis(Phase.STYLES);
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getSharedStringsMillis()
+	 */
+	public long getSharedStringsMillis() {
+		return getPhaseMillis(Phase.SHARED_STRINGS);
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getSheetMillis()
+	 */
+	public long getSheetMillis() {
+		return getPhaseMillis(Phase.SHEET);
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getBuildMillis()
+	 */
+	public long getBuildMillis() {
+		return getPhaseMillis(Phase.BUILD);
+	}
+
+	/**
+	 * Gets the time spent in a phase by all reads.
+	 *
+	 * @param phase
+	 *            the phase
+	 * @return the milliseconds
+	 */
+	public synchronized long getPhaseMillis(Phase phase) {
+		return phaseNanos[phase.ordinal()] / 1000000;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getTotalMillis()
+	 */
+	public synchronized long getTotalMillis() {
+		return totalNanos / 1000000;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getRowsPerSecond()
+	 */
+	public synchronized double getRowsPerSecond() {
+		return totalNanos == 0 ? 0 : rowCount * 1e9 / totalNanos;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getDurationBucketMillis()
+	 */
+	public long[] getDurationBucketMillis() {
+		return BUCKET_MILLIS.clone();
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getDurationHistogram()
+	 */
+	public synchronized long[] getDurationHistogram() {
+		return durationHistogram.clone();
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getDurationP50Millis()
+	 */
+	public long getDurationP50Millis() {
+		return getDurationPercentileMillis(0.5);
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getDurationP90Millis()
+	 */
+	public long getDurationP90Millis() {
+		return getDurationPercentileMillis(0.9);
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getDurationP99Millis()
+	 */
+	public long getDurationP99Millis() {
+		return getDurationPercentileMillis(0.99);
+	}
+
+	/**
+	 * Gets a percentile of the duration of a read, as the upper bound of the
+	 * bucket it falls in, or the slowest read if that is faster.
+	 *
+	 * @param fraction
+	 *            the percentile, between 0 and 1
+	 * @return the milliseconds, 0 before the first read
+	 */
+	public synchronized long getDurationPercentileMillis(double fraction) {
+		long wanted = (long) Math.ceil(readCount * fraction);
+		long seen = 0;
+		for (int bucket = 0; bucket < durationHistogram.length; bucket++) {
+			seen += durationHistogram[bucket];
+			if (seen >= wanted && seen > 0) {
+				return Math.min(BUCKET_MILLIS[bucket],
+						maxDurationNanos / 1000000);
+			}
+		}
+		return 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getMaxDurationMillis()
+	 */
+	public synchronized long getMaxDurationMillis() {
+		return maxDurationNanos / 1000000;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getSlowestRead()
+	 */
+	public synchronized String getSlowestRead() {
+		return slowestRead;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#getLastFailure()
+	 */
+	public synchronized String getLastFailure() {
+		return lastFailure;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.ParserStatsMBean#reset()
+	 */
+	public synchronized void reset() {
+		readCount = 0;
+		failureCount = 0;
+		sheetCount = 0;
+		rowCount = 0;
+		cellCount = 0;
+		bytesRead = 0;
+		sharedStringCount = 0;
+		maxRowWidth = 0;
+		totalNanos = 0;
+		maxDurationNanos = 0;
+		slowestRead = null;
+		lastFailure = null;
+		for (int i = 0; i < phaseNanos.length; i++) {
+			phaseNanos[i] = 0;
+		}
+		for (int i = 0; i < durationHistogram.length; i++) {
+			durationHistogram[i] = 0;
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package excel;
+
+/**
+ * The Interface ParserStatsMBean. The JMX management interface of
+ * {@link ParserStats}. Times are in milliseconds and summed over all reads
+ * since the start or the last {@link #reset()}.
+ *
+ * @author Sourav
+ */
+public interface ParserStatsMBean {
+
+	/**
+	 * Gets the number of reads, completed or failed.
+	 *
+	 * @return the read count
+	 */
+	long getReadCount();
+
+	/**
+	 * Gets the number of failed reads.
+	 *
+	 * @return the failure count
+	 */
+	long getFailureCount();
+
+	/**
+	 * Gets the number of sheets read.
+	 *
+	 * @return the sheet count
+	 */
+	long getSheetCount();
+
+	/**
+	 * Gets the number of rows passed on.
+	 *
+	 * @return the row count
+	 */
+	long getRowCount();
+
+	/**
+	 * Gets the number of cells holding a value passed on.
+	 *
+	 * @return the cell count
+	 */
+	long getCellCount();
+
+	/**
+	 * Gets the bytes parsed.
+	 *
+	 * @return the bytes read
+	 */
+	long getBytesRead();
+
+	/**
+	 * Gets the number of shared strings of all workbooks read.
+	 *
+	 * @return the shared string count
+	 */
+	long getSharedStringCount();
+
+	/**
+	 * Gets the width of the widest row read.
+	 *
+	 * @return the widest row
+	 */
+	int getMaxRowWidth();
+
+	/**
+	 * Gets the time spent opening workbooks.
+	 *
+	 * @return the milliseconds
+	 */
+	long getOpenMillis();
+
+	/**
+	 * Gets the time spent reading styles.
+	 *
+	 * @return the milliseconds
+	 */
+	long getStylesMillis();
+
+	/**
+	 * Gets the time spent reading shared strings tables.
+	 *
+	 * @return the milliseconds
+	 */
+	long getSharedStringsMillis();
+
+	/**
+	 * Gets the time spent parsing sheets.
+	 *
+	 * @return the milliseconds
+	 */
+	long getSheetMillis();
+
+	/**
+	 * Gets the time spent building results after parsing.
+	 *
+	 * @return the milliseconds
+	 */
+	long getBuildMillis();
+
+	/**
+	 * Gets the time of all reads.
+	 *
+	 * @return the milliseconds
+	 */
+	long getTotalMillis();
+
+	/**
+	 * Gets the rows passed on per second of reading.
+	 *
+	 * @return the rows per second
+	 */
+	double getRowsPerSecond();
+
+	/**
+	 * Gets the upper bounds of the buckets of the duration histogram.
+	 *
+	 * @return the milliseconds, the last bucket is unbounded
+	 */
+	long[] getDurationBucketMillis();
+
+	/**
+	 * Gets the number of reads in every bucket of the duration histogram.
+	 *
+	 * @return the counts
+	 */
+	long[] getDurationHistogram();
+
+	/**
+	 * Gets the median duration of a read, as the upper bound of its bucket.
+	 *
+	 * @return the milliseconds
+	 */
+	long getDurationP50Millis();
+
+	/**
+	 * Gets the 90th percentile of the duration of a read.
+	 *
+	 * @return the milliseconds
+	 */
+	long getDurationP90Millis();
+
+	/**
+	 * Gets the 99th percentile of the duration of a read.
+	 *
+	 * @return the milliseconds
+	 */
+	long getDurationP99Millis();
+
+	/**
+	 * Gets the duration of the slowest read.
+	 *
+	 * @return the milliseconds
+	 */
+	long getMaxDurationMillis();
+
+	/**
+	 * Gets the metrics of the slowest read.
+	 *
+	 * @return the metrics, null before the first read
+	 */
+	String getSlowestRead();
+
+	/**
+	 * Gets the workbook and the error of the last failed read.
+	 *
+	 * @return the failure, null before the first failure
+	 */
+	String getLastFailure();
+
+	/**
+	 * Starts all counts again.
+	 */
+	void reset();
+
+}
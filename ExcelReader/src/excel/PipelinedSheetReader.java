@@ -0,0 +1,622 @@
+package excel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
+import org.xml.sax.SAXException;
+
+import excel.SheetHandler.xssfDataType;
+
+/**
+ * The Class PipelinedSheetReader. Reads an xlsx sheet in three stages
+ * running at the same time:
+ * <ol>
+ * <li>a tokenizer thread inflates and parses the sheet xml into batches of
+ * raw cells (type, style and value text);</li>
+ * <li>the workers of the executor convert the batches: shared strings are
+ * resolved, numbers parsed and formatted;</li>
+ * <li>the calling thread hands the converted cells to the cell handler, batch
+ * by batch in sheet order.</li>
+ * </ol>
+ * The batches travel through a bounded queue, so the tokenizer waits when the
+ * conversion or the cell handler falls behind and memory stays bounded.
+ * <p>
+ * Numeric cells are formatted by the workers, so the format given to
+ * {@link CellHandler#numericCell(int, double, CellFormat)} is only valid
+ * during the call. With {@link ReadOptions} the cells are filtered as they
+ * are handed over, and the tokenizer is stopped once the last wanted row is
+ * done.
+ * 
+ * @author Sourav
+ */
+class PipelinedSheetReader {
+
+	/** The Constant LOG. */
+	private static final Logger LOG = Logger
+			.getLogger(PipelinedSheetReader.class);
+
+	/** The number of events after which a batch is closed at a row end. */
+	private static final int BATCH_SIZE = 4096;
+
+	/** The number of batches in flight. */
+	private static final int QUEUE_CAPACITY = 16;
+
+	/** Marks the end of the sheet in the queue. */
+	private static final Future<Batch> END = completed(null);
+
+	/** The shared strings. */
+	private final SharedStrings sharedStrings;
+
+	/** The style formats. */
+	private final StyleFormats styleFormats;
+
+	/** The last cell num. */
+	private final int lastCellNum;
+
+	/** The executor converting the batches. */
+	private final ExecutorService executor;
+
+	/** Whether the sheet is read by the byte level tokenizer. */
+	private final boolean byteTokenizer;
+
+	/** The read options, null to read the whole sheet. */
+	private final ReadOptions options;
+
+	/**
+	 * The converters not in use. A converter is taken for a batch and given
+	 * back after it, so the read needs at most one per batch converted at
+	 * the same time, and none is left on the threads of the executor.
+	 */
+	private final Queue<XLSXCellConverter> converters = new ConcurrentLinkedQueue<XLSXCellConverter>();
+
+	/** The converted batches, in sheet order. */
+	private final BlockingQueue<Future<Batch>> queue = new ArrayBlockingQueue<Future<Batch>>(
+			QUEUE_CAPACITY);
+
+	/** Set when the cell handler stops reading. */
+	private volatile boolean cancelled;
+
+	/**
+	 * Instantiates a new pipelined sheet reader.
+	 * 
+	 * @param sharedStrings
+	 *            the shared strings
+	 * @param styleFormats
+	 *            the style formats
+	 * @param lastCellNum
+	 *            the last cell num
+	 * @param executor
+	 *            the executor converting the batches
+	 * @param byteTokenizer
+	 *            whether to read the sheet with the byte level tokenizer
+	 * @param options
+	 *            the read options, null to read the whole sheet
+	 */
+	PipelinedSheetReader(SharedStrings sharedStrings,
+			StyleFormats styleFormats, int lastCellNum,
+			ExecutorService executor, boolean byteTokenizer,
+			ReadOptions options) {
+		this.sharedStrings = sharedStrings;
+		this.styleFormats = styleFormats;
+		this.lastCellNum = lastCellNum;
+		this.executor = executor;
+		this.byteTokenizer = byteTokenizer;
+		this.options = options;
+	}
+
+	/**
+	 * Reads the sheet. Returns once all cells have been handed to the cell
+	 * handler and the tokenizer thread has ended.
+	 * 
+	 * @param sheetData
+	 *            the content of the sheet xml
+	 * @param cellHandler
+	 *            the cell handler
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	void read(final InputStream sheetData, CellHandler cellHandler)
+			throws IOException, SAXException {
+
+		Thread tokenizer = new Thread(new Runnable() {
+			public void run() {
+				tokenize(sheetData);
+			}
+		}, "xlsx-tokenizer");
+		tokenizer.setDaemon(true);
+		tokenizer.start();
+
+		SheetFilter filter = null;
+		if (null != options) {
+			filter = new SheetFilter(options, cellHandler);
+			cellHandler = filter;
+		}
+		PreformattedFormat format = new PreformattedFormat();
+		try {
+			while (null == filter || !filter.isDone()) {
+				Batch batch = queue.take().get();
+				if (null == batch) {
+					break;
+				}
+				batch.replay(cellHandler, format);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while reading sheet");
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof SAXException) {
+				throw (SAXException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new SAXException((Exception) cause);
+		} finally {
+			cancelled = true;
+			while (tokenizer.isAlive()) {
+				// make room for the tokenizer to notice the end
+				cancelQueued();
+				try {
+					tokenizer.join(100);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			cancelQueued();
+		}
+	}
+
+	/**
+	 * Takes the batches left in the queue and cancels their conversion, so
+	 * the workers do not convert batches nobody reads.
+	 */
+	private void cancelQueued() {
+		Future<Batch> batch;
+		while (null != (batch = queue.poll())) {
+			batch.cancel(false);
+		}
+	}
+
+	/**
+	 * Stage 1, on the tokenizer thread: parses the sheet into batches and
+	 * queues their conversion. Always queues the end of the sheet, after a
+	 * failure if any.
+	 * 
+	 * @param sheetData
+	 *            the content of the sheet xml
+	 */
+	private void tokenize(InputStream sheetData) {
+		try {
+			new Tokenizer().parse(sheetData, byteTokenizer);
+		} catch (Exception ex) {
+			if (!cancelled) {
+				enqueue(failed(ex));
+			}
+		} finally {
+			enqueue(END);
+		}
+	}
+
+	/**
+	 * Queues a batch, waiting for room in the queue.
+	 * 
+	 * @param batch
+	 *            the future batch
+	 */
+	private void enqueue(Future<Batch> batch) {
+		try {
+			queue.put(batch);
+		} catch (InterruptedException ex) {
+			LOG.error("Interrupted while queueing a batch");
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Stage 2, on a worker: converts the cells of a batch.
+	 * 
+	 * @param batch
+	 *            the batch
+	 * @return the batch
+	 */
+	private Batch convert(Batch batch) {
+		XLSXCellConverter converter = converters.poll();
+		if (null == converter) {
+			converter = new XLSXCellConverter(sharedStrings, styleFormats);
+		}
+		try {
+			for (int i = 0; i < batch.size; i++) {
+				if (batch.kinds[i] == Batch.CELL) {
+					batch.current = i;
+					converter.convert(batch.columns[i], batch.types[i],
+							batch.styles[i], batch.texts[i], batch);
+				}
+			}
+		} finally {
+			converters.offer(converter);
+		}
+		return batch;
+	}
+
+	/**
+	 * Gives a future completed with the value.
+	 * 
+	 * @param batch
+	 *            the value
+	 * @return the future
+	 */
+	private static Future<Batch> completed(Batch batch) {
+		FutureTask<Batch> future = new FutureTask<Batch>(new Runnable() {
+			public void run() {
+				// nothing to compute
+			}
+		}, batch);
+		future.run();
+		return future;
+	}
+
+	/**
+	 * Gives a future failed with the exception.
+	 * 
+	 * @param ex
+	 *            the exception
+	 * @return the future
+	 */
+	private static Future<Batch> failed(final Exception ex) {
+		FutureTask<Batch> future = new FutureTask<Batch>(new Callable<Batch>() {
+			public Batch call() throws Exception {
+				throw ex;
+			}
+		});
+		future.run();
+		return future;
+	}
+
+	/**
+	 * Sheet handler collecting the raw cells into batches.
+	 */
+	private class Tokenizer extends SheetHandler {
+
+		/** The batch being filled. */
+		private Batch batch = new Batch();
+
+		/**
+		 * Instantiates a new tokenizer.
+		 */
+		Tokenizer() {
+			super(lastCellNum);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.SheetHandler#startRow(int)
+		 */
+		void startRow(int rowNumber) throws SAXException {
+			if (cancelled) {
+				throw new SAXException("Reading cancelled");
+			}
+			batch.add(Batch.START_ROW, rowNumber, null, -1, null);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.SheetHandler#cell(int, excel.SheetHandler.xssfDataType,
+		 * int, java.lang.CharSequence)
+		 */
+		void cell(int column, xssfDataType dataType, int styleIndex,
+				CharSequence cellValue) {
+			batch.add(Batch.CELL, column, dataType, styleIndex,
+					null == cellValue ? null : cellValue.toString());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.SheetHandler#endRow(int)
+		 */
+		void endRow(int rowNumber) {
+			batch.add(Batch.END_ROW, rowNumber, null, -1, null);
+			if (batch.size >= BATCH_SIZE) {
+				flush();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.xml.sax.helpers.DefaultHandler#endDocument()
+		 */
+		public void endDocument() {
+			if (batch.size > 0) {
+				flush();
+			}
+		}
+
+		/**
+		 * Queues the conversion of the batch and starts a new one.
+		 */
+		private void flush() {
+			final Batch full = batch;
+			batch = new Batch();
+			enqueue(executor.submit(new Callable<Batch>() {
+				public Batch call() {
+					return convert(full);
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Format of a numeric cell formatted by a worker.
+	 */
+	private static class PreformattedFormat implements CellFormat {
+
+		private String text;
+		private boolean date;
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellFormat#isDate()
+		 */
+		public boolean isDate() {
+			return date;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellFormat#format(double)
+		 */
+		public String format(double ignored) {
+			return text;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellFormat#retain()
+		 */
+		public CellFormat retain() {
+			return new CellFormat.Text(text, date);
+		}
+	}
+
+	/**
+	 * A batch of whole rows: the raw cells as read from the sheet, then the
+	 * converted cells recorded in place by the worker.
+	 */
+	private static class Batch implements CellHandler {
+
+		static final byte START_ROW = 0;
+		static final byte CELL = 1;
+		static final byte END_ROW = 2;
+
+		static final byte BLANK = 0;
+		static final byte STRING = 1;
+		static final byte NUMBER = 2;
+		static final byte BOOLEAN = 3;
+		static final byte ERROR = 4;
+
+		/** The event kinds. */
+		byte[] kinds = new byte[BATCH_SIZE + 64];
+
+		/** The column of a cell, the row number of a row event. */
+		int[] columns = new int[kinds.length];
+
+		/** The raw cell types. */
+		xssfDataType[] types = new xssfDataType[kinds.length];
+
+		/** The raw cell styles. */
+		int[] styles = new int[kinds.length];
+
+		/** The raw value texts, replaced by the converted texts. */
+		String[] texts = new String[kinds.length];
+
+		/** The converted cell kinds. */
+		byte[] results = new byte[kinds.length];
+
+		/** The converted numbers. */
+		double[] numbers = new double[kinds.length];
+
+		/** The converted date flags. */
+		boolean[] dates = new boolean[kinds.length];
+
+		/** The number of events. */
+		int size;
+
+		/** The event being converted. */
+		int current;
+
+		/**
+		 * Adds an event.
+		 * 
+		 * @param kind
+		 *            the kind
+		 * @param column
+		 *            the column or row number
+		 * @param type
+		 *            the raw type
+		 * @param style
+		 *            the raw style
+		 * @param text
+		 *            the raw value text
+		 */
+		void add(byte kind, int column, xssfDataType type, int style,
+				String text) {
+			if (size == kinds.length) {
+				grow();
+			}
+			kinds[size] = kind;
+			columns[size] = column;
+			types[size] = type;
+			styles[size] = style;
+			texts[size] = text;
+			size++;
+		}
+
+		/**
+		 * Grows the arrays, for rows wider than the batch.
+		 */
+		private void grow() {
+			int length = kinds.length * 2;
+			kinds = Arrays.copyOf(kinds, length);
+			columns = Arrays.copyOf(columns, length);
+			types = Arrays.copyOf(types, length);
+			styles = Arrays.copyOf(styles, length);
+			texts = Arrays.copyOf(texts, length);
+			results = Arrays.copyOf(results, length);
+			numbers = Arrays.copyOf(numbers, length);
+			dates = Arrays.copyOf(dates, length);
+		}
+
+		/**
+		 * Stage 3: hands the converted events to the cell handler.
+		 * 
+		 * @param cellHandler
+		 *            the cell handler
+		 * @param format
+		 *            the format given with numeric cells
+		 */
+		void replay(CellHandler cellHandler, PreformattedFormat format) {
+			for (int i = 0; i < size; i++) {
+				switch (kinds[i]) {
+				case START_ROW:
+					cellHandler.startRow(columns[i]);
+					break;
+				case END_ROW:
+					cellHandler.endRow(columns[i]);
+					break;
+				default:
+					replayCell(i, cellHandler, format);
+					break;
+				}
+			}
+		}
+
+		/**
+		 * Hands a converted cell to the cell handler.
+		 * 
+		 * @param i
+		 *            the event
+		 * @param cellHandler
+		 *            the cell handler
+		 * @param format
+		 *            the format given with numeric cells
+		 */
+		private void replayCell(int i, CellHandler cellHandler,
+				PreformattedFormat format) {
+			int column = columns[i];
+			switch (results[i]) {
+			case STRING:
+				cellHandler.stringCell(column, texts[i]);
+				break;
+			case NUMBER:
+				format.text = texts[i];
+				format.date = dates[i];
+				cellHandler.numericCell(column, numbers[i], format);
+				break;
+			case BOOLEAN:
+				cellHandler.booleanCell(column, numbers[i] != 0);
+				break;
+			case ERROR:
+				cellHandler.errorCell(column, texts[i]);
+				break;
+			default:
+				cellHandler.blankCell(column);
+				break;
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellHandler#startRow(int)
+		 */
+		public void startRow(int rowNumber) {
+			// rows are not converted
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellHandler#stringCell(int, java.lang.String)
+		 */
+		public void stringCell(int column, String value) {
+			results[current] = STRING;
+			texts[current] = value;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellHandler#numericCell(int, double, excel.CellFormat)
+		 */
+		public void numericCell(int column, double value, CellFormat format) {
+			results[current] = NUMBER;
+			numbers[current] = value;
+			dates[current] = format.isDate();
+			texts[current] = format.format(value);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellHandler#booleanCell(int, boolean)
+		 */
+		public void booleanCell(int column, boolean value) {
+			results[current] = BOOLEAN;
+			numbers[current] = value ? 1 : 0;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellHandler#errorCell(int, java.lang.String)
+		 */
+		public void errorCell(int column, String value) {
+			results[current] = ERROR;
+			texts[current] = value;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellHandler#blankCell(int)
+		 */
+		public void blankCell(int column) {
+			results[current] = BLANK;
+			texts[current] = null;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellHandler#endRow(int)
+		 */
+		public void endRow(int rowNumber) {
+			// rows are not converted
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package excel;
+
+/**
+ * The Enum RawCellType. The type of a cell of a {@link RawRow}.
+ *
+ * @author Sourav
+ */
+public enum RawCellType {
+
+	/** No value. */
+	BLANK,
+
+	/** A number, see {@link RawRow#getNumber(int)}. */
+	NUMBER,
+
+	/** A number with a date format, see {@link RawRow#getEpochDay(int)}. */
+	DATE,
+
+	/** A boolean, see {@link RawRow#getBoolean(int)}. */
+	BOOLEAN,
+
+	/** An error, its code such as #DIV/0! in {@link RawRow#getString(int)}. */
+	ERROR,
+
+	/** A text, see {@link RawRow#getString(int)}. */
+	STRING
+
+}
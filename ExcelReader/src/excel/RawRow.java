@@ -0,0 +1,261 @@
+package excel;
+
+import java.util.Arrays;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * The Class RawRow. A row of a sheet with the raw values of its cells, as
+ * given to a {@link RawRowHandler}: numbers as doubles, dates as epoch days
+ * or epoch millis, booleans, error codes and strings, without turning them
+ * into text. {@link #format(int)} gives the text of
+ * {@link ExcelDTO#getColumnValue()} only for the cells it is asked for.
+ * <p>
+ * The row is reused for the next row of the sheet, so it is only valid
+ * during {@link RawRowHandler#handleRow(RawRow)}.
+ *
+ * @author Sourav
+ */
+public final class RawRow {
+
+	/** The epoch day of excel's day 0, 1899-12-31. */
+	private static final long EXCEL_EPOCH_DAY = -25568;
+
+	/** The first excel day after the fictitious 1900-02-29. */
+	private static final int FIRST_DAY_AFTER_LEAP_BUG = 61;
+
+	/** The last excel day, 9999-12-31. */
+	private static final int LAST_DAY = 2958465;
+
+	/** The types of the cell values. */
+	private static final RawCellType[] TYPES = RawCellType.values();
+
+	/** The row number. */
+	private int rowNumber;
+
+	/** The number of columns, up to the last cell of the row. */
+	private int columnCount;
+
+	/** The types, by column. */
+	private byte[] types = new byte[16];
+
+	/** The numbers, by column. */
+	private double[] numbers = new double[16];
+
+	/** The strings and error codes, by column. */
+	private String[] strings = new String[16];
+
+	/** The formats of the numbers, by column. */
+	private CellFormat[] formats = new CellFormat[16];
+
+	/**
+	 * Instantiates a new raw row.
+	 */
+	RawRow() {
+	}
+
+	/**
+	 * Gets the row number.
+	 *
+	 * @return the row number (Starts from 0)
+	 */
+	public int getRowNumber() {
+		return rowNumber;
+	}
+
+	/**
+	 * Gets the number of columns: the column of the last cell of the row
+	 * plus one.
+	 *
+	 * @return the column count
+	 */
+	public int getColumnCount() {
+		return columnCount;
+	}
+
+	/**
+	 * Gets the type of a cell.
+	 *
+	 * @param column
+	 *            the column (Starts from 0)
+	 * @return the type, {@link RawCellType#BLANK} past the last cell
+	 */
+	public RawCellType getType(int column) {
+		return column < columnCount ? TYPES[types[column]] : RawCellType.BLANK;
+	}
+
+	/**
+	 * Gets the value of a {@link RawCellType#NUMBER} or
+	 * {@link RawCellType#DATE} cell; a date is excel's serial day number.
+	 *
+	 * @param column
+	 *            the column (Starts from 0)
+	 * @return the value, NaN for other cells
+	 */
+	public double getNumber(int column) {
+		return isNumeric(column) ? numbers[column] : Double.NaN;
+	}
+
+	/**
+	 * Gets the day of a {@link RawCellType#DATE} cell, counted from
+	 * 1970-01-01, as for {@link java.time.LocalDate#ofEpochDay(long)}.
+	 *
+	 * @param column
+	 *            the column (Starts from 0)
+	 * @return the epoch day, Long.MIN_VALUE for other cells and invalid dates
+	 */
+	public long getEpochDay(int column) {
+		if (!isValidDate(column)) {
+			return Long.MIN_VALUE;
+		}
+		int day = (int) Math.floor(numbers[column]);
+		return EXCEL_EPOCH_DAY + day
+				- (day < FIRST_DAY_AFTER_LEAP_BUG ? 0 : 1);
+	}
+
+	/**
+	 * Gets the time of a {@link RawCellType#DATE} cell as epoch millis, in
+	 * the default time zone, the same as the date columns of a
+	 * {@link ColumnarSheet}.
+	 *
+	 * @param column
+	 *            the column (Starts from 0)
+	 * @return the epoch millis, Long.MIN_VALUE for other cells and invalid
+	 *         dates
+	 */
+	public long getEpochMillis(int column) {
+		if (!isValidDate(column)) {
+			return Long.MIN_VALUE;
+		}
+		return DateUtil.getJavaDate(numbers[column]).getTime();
+	}
+
+	/**
+	 * Checks if a cell is a date excel can show, from day 0 to 9999-12-31.
+	 *
+	 * @param column
+	 *            the column (Starts from 0)
+	 * @return true, if a valid date
+	 */
+	private boolean isValidDate(int column) {
+		return getType(column) == RawCellType.DATE
+				&& DateUtil.isValidExcelDate(numbers[column])
+				&& numbers[column] < LAST_DAY + 1;
+	}
+
+	/**
+	 * Gets the value of a {@link RawCellType#BOOLEAN} cell.
+	 *
+	 * @param column
+	 *            the column (Starts from 0)
+	 * @return the value, false for other cells
+	 */
+	public boolean getBoolean(int column) {
+		return getType(column) == RawCellType.BOOLEAN && numbers[column] != 0;
+	}
+
+	/**
+	 * Gets the text of a {@link RawCellType#STRING} cell or the code of a
+	 * {@link RawCellType#ERROR} cell.
+	 *
+	 * @param column
+	 *            the column (Starts from 0)
+	 * @return the text, null for other cells
+	 */
+	public String getString(int column) {
+		return column < columnCount ? strings[column] : null;
+	}
+
+	/**
+	 * Formats a cell as the text of {@link ExcelDTO#getColumnValue()}.
+	 *
+	 * @param column
+	 *            the column (Starts from 0)
+	 * @return the text, empty for blank cells
+	 */
+	public String format(int column) {
+		switch (getType(column)) {
+		case NUMBER:
+		case DATE:
+			return formats[column].format(numbers[column]);
+		case BOOLEAN:
+			return numbers[column] != 0 ? "TRUE" : "FALSE";
+		case ERROR:
+		case STRING:
+			return strings[column];
+		default:
+			return "";
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		StringBuilder builder = new StringBuilder("RawRow [rowNumber=")
+				.append(rowNumber);
+		for (int column = 0; column < columnCount; column++) {
+			builder.append(", ").append(getType(column)).append('=')
+					.append(format(column));
+		}
+		return builder.append(']').toString();
+	}
+
+	/**
+	 * Starts a row, clearing the cells of the last one.
+	 *
+	 * @param rowNumber
+	 *            the row number
+	 */
+	void start(int rowNumber) {
+		Arrays.fill(types, 0, columnCount, (byte) RawCellType.BLANK.ordinal());
+		Arrays.fill(strings, 0, columnCount, null);
+		Arrays.fill(formats, 0, columnCount, null);
+		this.rowNumber = rowNumber;
+		columnCount = 0;
+	}
+
+	/**
+	 * Sets a cell.
+	 *
+	 * @param column
+	 *            the column
+	 * @param type
+	 *            the type
+	 * @param number
+	 *            the number, 1 or 0 for booleans
+	 * @param string
+	 *            the string or error code
+	 * @param format
+	 *            the format of a number, valid after the call
+	 */
+	void set(int column, RawCellType type, double number, String string,
+			CellFormat format) {
+		if (column >= types.length) {
+			int length = Math.max(column + 1, types.length * 2);
+			types = Arrays.copyOf(types, length);
+			numbers = Arrays.copyOf(numbers, length);
+			strings = Arrays.copyOf(strings, length);
+			formats = Arrays.copyOf(formats, length);
+		}
+		types[column] = (byte) type.ordinal();
+		numbers[column] = number;
+		strings[column] = string;
+		formats[column] = format;
+		if (column >= columnCount) {
+			columnCount = column + 1;
+		}
+	}
+
+	/**
+	 * Checks if a cell is a number or a date.
+	 *
+	 * @param column
+	 *            the column
+	 * @return true, if numeric
+	 */
+	private boolean isNumeric(int column) {
+		RawCellType type = getType(column);
+		return type == RawCellType.NUMBER || type == RawCellType.DATE;
+	}
+}
@@ -0,0 +1,96 @@
+package excel;
+
+/**
+ * The Class RawRowBuilder. Collects the raw cell values of every row into a
+ * {@link RawRow} and passes it to a {@link RawRowHandler}. Nothing is
+ * formatted; the formats of the numbers are kept for
+ * {@link RawRow#format(int)}.
+ *
+ * @author Sourav
+ */
+class RawRowBuilder implements CellHandler {
+
+	/** The row handler. */
+	private final RawRowHandler rowHandler;
+
+	/** The row, reused for every row. */
+	private final RawRow row = new RawRow();
+
+	/**
+	 * Instantiates a new raw row builder.
+	 *
+	 * @param rowHandler
+	 *            the row handler receiving every row
+	 */
+	RawRowBuilder(RawRowHandler rowHandler) {
+		this.rowHandler = rowHandler;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#startRow(int)
+	 */
+	public void startRow(int rowNumber) {
+		row.start(rowNumber);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#stringCell(int, java.lang.String)
+	 */
+	public void stringCell(int column, String value) {
+		if (null == value || value.length() == 0) {
+			row.set(column, RawCellType.BLANK, 0, null, null);
+		} else {
+			row.set(column, RawCellType.STRING, 0, value, null);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#numericCell(int, double, excel.CellFormat)
+	 */
+	public void numericCell(int column, double value, CellFormat format) {
+		row.set(column, format.isDate() ? RawCellType.DATE
+				: RawCellType.NUMBER, value, null, format.retain());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#booleanCell(int, boolean)
+	 */
+	public void booleanCell(int column, boolean value) {
+		row.set(column, RawCellType.BOOLEAN, value ? 1 : 0, null, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#errorCell(int, java.lang.String)
+	 */
+	public void errorCell(int column, String value) {
+		row.set(column, RawCellType.ERROR, 0, value, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#blankCell(int)
+	 */
+	public void blankCell(int column) {
+		row.set(column, RawCellType.BLANK, 0, null, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#endRow(int)
+	 */
+	public void endRow(int rowNumber) {
+		rowHandler.handleRow(row);
+	}
+}
@@ -0,0 +1,22 @@
+package excel;
+
+/**
+ * The Interface RawRowHandler. Receives the rows of a sheet with their raw
+ * cell values, one at a time while the sheet is being parsed.
+ *
+ * @author Sourav
+ * @see ExcelReader#readRaw(java.io.File, int, int, RawRowHandler)
+ */
+public interface RawRowHandler {
+
+	/**
+	 * Handle row. Called once for every row of the sheet, in sheet order,
+	 * the header row included. The row object is reused for the next row,
+	 * so it is only valid during the call.
+	 *
+	 * @param row
+	 *            the row
+	 */
+	void handleRow(RawRow row);
+
+}
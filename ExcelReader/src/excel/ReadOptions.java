@@ -0,0 +1,366 @@
+package excel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The Class ReadOptions. Narrows a read down to a part of the sheet: the
+ * columns to return, by header name or by index, a range of the rows below
+ * the header and conditions on the cells of the rows to keep. Cells outside
+ * of it are not converted at all, and the sheet is no longer read once the
+ * last row of the range is done, so a preview of the first rows of a huge
+ * sheet only reads the start of it.
+ * <p>
+ * The header row is always returned, with the projected columns only. Rows
+ * are counted by their position below the header, so empty rows count
+ * towards the offset and the limit even where they are not returned. Options
+ * are immutable and may be shared by any number of reads; they are equal when
+ * they read the same part of the sheet with the same predicate instances.
+ *
+ * @author Sourav
+ */
+public final class ReadOptions {
+
+	/** Options reading the whole sheet. */
+	private static final ReadOptions ALL = builder().build();
+
+	/** The header names of the projected columns. */
+	private final List<String> columnNames;
+
+	/** The indexes of the projected columns. */
+	private final Set<Integer> columnIndexes;
+
+	/** The number of rows below the header to skip. */
+	private final int rowOffset;
+
+	/** The maximum number of rows to read after the offset. */
+	private final int rowLimit;
+
+	/** The conditions on the rows, all of which must hold. */
+	private final List<Condition> conditions;
+
+	/**
+	 * Instantiates new read options.
+	 *
+	 * @param builder
+	 *            the builder
+	 */
+	private ReadOptions(Builder builder) {
+		this.columnNames = Collections.unmodifiableList(new ArrayList<String>(
+				builder.columnNames));
+		this.columnIndexes = Collections.unmodifiableSet(new TreeSet<Integer>(
+				builder.columnIndexes));
+		this.rowOffset = builder.rowOffset;
+		this.rowLimit = builder.rowLimit;
+		this.conditions = Collections.unmodifiableList(new ArrayList<Condition>(
+				builder.conditions));
+	}
+
+	/**
+	 * Gets the options reading the whole sheet.
+	 *
+	 * @return the read options
+	 */
+	public static ReadOptions all() {
+		return ALL;
+	}
+
+	/**
+	 * Creates a builder for options reading the whole sheet.
+	 *
+	 * @return the builder
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Gets the header names of the projected columns.
+	 *
+	 * @return the column names, empty if not projected by name
+	 */
+	public List<String> getColumnNames() {
+		return columnNames;
+	}
+
+	/**
+	 * Gets the indexes of the projected columns.
+	 *
+	 * @return the column indexes (Starts from 0), empty if not projected by
+	 *         index
+	 */
+	public Set<Integer> getColumnIndexes() {
+		return columnIndexes;
+	}
+
+	/**
+	 * Checks if the columns are projected, by name or by index.
+	 *
+	 * @return true, if only some columns are read
+	 */
+	public boolean isProjected() {
+		return !columnNames.isEmpty() || !columnIndexes.isEmpty();
+	}
+
+	/**
+	 * Gets the number of rows below the header skipped.
+	 *
+	 * @return the row offset
+	 */
+	public int getRowOffset() {
+		return rowOffset;
+	}
+
+	/**
+	 * Gets the maximum number of rows read after the offset.
+	 *
+	 * @return the row limit, {@link Integer#MAX_VALUE} if unlimited
+	 */
+	public int getRowLimit() {
+		return rowLimit;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	public int hashCode() {
+		return (((columnNames.hashCode() * 31 + columnIndexes.hashCode()) * 31
+				+ rowOffset) * 31 + rowLimit) * 31 + conditions.hashCode();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ReadOptions)) {
+			return false;
+		}
+		ReadOptions other = (ReadOptions) obj;
+		return columnNames.equals(other.columnNames)
+				&& columnIndexes.equals(other.columnIndexes)
+				&& rowOffset == other.rowOffset && rowLimit == other.rowLimit
+				&& conditions.equals(other.conditions);
+	}
+
+	/**
+	 * Gets the conditions on the rows.
+	 *
+	 * @return the conditions, all of which must hold
+	 */
+	List<Condition> getConditions() {
+		return conditions;
+	}
+
+	/**
+	 * A condition on the cell of a row in one column, given by header name or
+	 * by index.
+	 */
+	static final class Condition {
+
+		/** The header name of the column, null if given by index. */
+		final String columnName;
+
+		/** The index of the column, -1 if given by name. */
+		final int columnIndex;
+
+		/** The predicate on the cell. */
+		final CellPredicate predicate;
+
+		/**
+		 * Instantiates a new condition.
+		 *
+		 * @param columnName
+		 *            the column name, null if given by index
+		 * @param columnIndex
+		 *            the column index, -1 if given by name
+		 * @param predicate
+		 *            the predicate
+		 */
+		Condition(String columnName, int columnIndex, CellPredicate predicate) {
+			this.columnName = columnName;
+			this.columnIndex = columnIndex;
+			this.predicate = predicate;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#hashCode()
+		 */
+		public int hashCode() {
+			return ((null == columnName ? 0 : columnName.hashCode()) * 31 + columnIndex)
+					* 31 + System.identityHashCode(predicate);
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Condition)) {
+				return false;
+			}
+			Condition other = (Condition) obj;
+			return (null == columnName ? null == other.columnName : columnName
+					.equals(other.columnName))
+					&& columnIndex == other.columnIndex
+					&& predicate == other.predicate;
+		}
+	}
+
+	/**
+	 * The Class Builder. Collects the read options. A builder is not thread
+	 * safe, the options it builds are.
+	 */
+	public static class Builder {
+
+		/** The column names. */
+		private final List<String> columnNames = new ArrayList<String>();
+
+		/** The column indexes. */
+		private final Set<Integer> columnIndexes = new TreeSet<Integer>();
+
+		/** The row offset. */
+		private int rowOffset;
+
+		/** The row limit. */
+		private int rowLimit = Integer.MAX_VALUE;
+
+		/** The conditions. */
+		private final List<Condition> conditions = new ArrayList<Condition>();
+
+		/**
+		 * Instantiates a new builder.
+		 */
+		private Builder() {
+		}
+
+		/**
+		 * Adds columns to read, by the name in their header cell. Names are
+		 * matched ignoring case, like the columns of a row are matched to the
+		 * header; every column with a matching name is read.
+		 *
+		 * @param names
+		 *            the header names
+		 * @return the builder
+		 */
+		public Builder columns(String... names) {
+			for (String name : names) {
+				if (null == name) {
+					throw new IllegalArgumentException(
+							"Column name must not be null");
+				}
+			}
+			columnNames.addAll(Arrays.asList(names));
+			return this;
+		}
+
+		/**
+		 * Adds columns to read, by index. Columns at or right of lastCellNum
+		 * are not read either way.
+		 *
+		 * @param indexes
+		 *            the column indexes (Starts from 0)
+		 * @return the builder
+		 */
+		public Builder columnIndexes(int... indexes) {
+			for (int index : indexes) {
+				if (index < 0) {
+					throw new IllegalArgumentException("Column index ("
+							+ index + ") must not be negative");
+				}
+			}
+			for (int index : indexes) {
+				columnIndexes.add(index);
+			}
+			return this;
+		}
+
+		/**
+		 * Sets the number of rows below the header to skip.
+		 *
+		 * @param offset
+		 *            the row offset, 0 by default
+		 * @return the builder
+		 */
+		public Builder rowOffset(int offset) {
+			if (offset < 0) {
+				throw new IllegalArgumentException("Row offset (" + offset
+						+ ") must not be negative");
+			}
+			this.rowOffset = offset;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum number of rows to read after the offset. Reading
+		 * stops once the last of them is done.
+		 *
+		 * @param limit
+		 *            the row limit, unlimited by default
+		 * @return the builder
+		 */
+		public Builder rowLimit(int limit) {
+			if (limit < 0) {
+				throw new IllegalArgumentException("Row limit (" + limit
+						+ ") must not be negative");
+			}
+			this.rowLimit = limit;
+			return this;
+		}
+
+		/**
+		 * Keeps only the rows whose cell in the columns with the header name
+		 * matches the predicate. Names are matched ignoring case; a row is
+		 * kept when all its conditions hold. Conditions may be on columns
+		 * which are not projected, and a column that is not in the header is
+		 * tested as blank. Rows are still counted towards the offset and
+		 * the limit when they are left out by a condition.
+		 *
+		 * @param columnName
+		 *            the header name
+		 * @param predicate
+		 *            the predicate on the cell
+		 * @return the builder
+		 */
+		public Builder where(String columnName, CellPredicate predicate) {
+			if (null == columnName || null == predicate) {
+				throw new IllegalArgumentException(
+						"Column name and predicate must not be null");
+			}
+			conditions.add(new Condition(columnName, -1, predicate));
+			return this;
+		}
+
+		/**
+		 * Keeps only the rows whose cell in the column matches the predicate.
+		 * A column at or right of lastCellNum is tested as blank.
+		 *
+		 * @param columnIndex
+		 *            the column index (Starts from 0)
+		 * @param predicate
+		 *            the predicate on the cell
+		 * @return the builder
+		 * @see #where(String, CellPredicate)
+		 */
+		public Builder where(int columnIndex, CellPredicate predicate) {
+			if (columnIndex < 0 || null == predicate) {
+				throw new IllegalArgumentException("Column index ("
+						+ columnIndex
+						+ ") must not be negative, predicate not null");
+			}
+			conditions.add(new Condition(null, columnIndex, predicate));
+			return this;
+		}
+
+		/**
+		 * Builds the read options.
+		 *
+		 * @return the read options
+		 */
+		public ReadOptions build() {
+			return new ReadOptions(this);
+		}
+	}
+}
@@ -0,0 +1,295 @@
+package excel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The Class RowCursor. Pulls the rows of one sheet as they are parsed,
+ * instead of having them pushed to a {@link RowHandler}. The sheet is parsed
+ * on a thread of its own, which hands the rows over in chunks through a
+ * bounded queue; it waits when the caller falls behind, so the memory needed
+ * does not grow with the number of rows in the sheet.
+ * <p>
+ * Closing the cursor stops the parse and returns once the workbook has been
+ * closed. A cursor closes itself after its last row; it must be closed when
+ * it is left before. An error of the parse is thrown by {@link #hasNext()}
+ * once the rows read before it have been taken: I/O and parse errors as
+ * {@link UncheckedIOException}, other runtime exceptions, such as a sheet
+ * number out of range, as they are. A cursor is used by one thread at a time.
+ *
+ * @author Sourav
+ */
+public final class RowCursor implements Iterator<ExcelRow>, Closeable {
+
+	/** The Constant LOG. */
+	private static final Logger LOG = Logger.getLogger(RowCursor.class);
+
+	/** The number of rows in a chunk. */
+	static final int CHUNK_SIZE = 1024;
+
+	/** The number of chunks in flight. */
+	private static final int QUEUE_CAPACITY = 16;
+
+	/** Marks the end of the sheet in the queue. */
+	private static final List<ExcelRow> END = new ArrayList<ExcelRow>(0);
+
+	/** Numbers the parse threads. */
+	private static final AtomicInteger THREADS = new AtomicInteger();
+
+	/** The parsed chunks, in sheet order. */
+	private final BlockingQueue<List<ExcelRow>> queue = new ArrayBlockingQueue<List<ExcelRow>>(
+			QUEUE_CAPACITY);
+
+	/** The parse thread. */
+	private final Thread parser;
+
+	/** Set when the cursor is closed. */
+	private volatile boolean cancelled;
+
+	/** The error of the parse, set before the end is queued. */
+	private volatile Throwable failure;
+
+	/** The chunk being taken. */
+	private List<ExcelRow> chunk;
+
+	/** The index of the next row of the chunk. */
+	private int position;
+
+	/** Set once the last row has been taken or the cursor closed. */
+	private boolean done;
+
+	/**
+	 * Instantiates a new row cursor and starts parsing the sheet.
+	 *
+	 * @param reader
+	 *            the reader
+	 * @param source
+	 *            the excel source
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param sheetNumber
+	 *            the sheet number
+	 */
+	RowCursor(final ExcelReader reader, final ExcelSource source,
+			final int lastCellNum, final int sheetNumber) {
+		parser = new Thread(new Runnable() {
+			public void run() {
+				parse(reader, source, lastCellNum, sheetNumber);
+			}
+		}, "excel-cursor-" + THREADS.incrementAndGet());
+		parser.setDaemon(true);
+		parser.start();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.Iterator#hasNext()
+	 */
+	public boolean hasNext() {
+		while (!done && (null == chunk || position >= chunk.size())) {
+			chunk = take();
+			position = 0;
+			if (END == chunk) {
+				end();
+			}
+		}
+		return !done;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.Iterator#next()
+	 */
+	public ExcelRow next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return chunk.get(position++);
+	}
+
+	/**
+	 * Takes the rows of the current chunk not taken yet, or the next chunk.
+	 *
+	 * @return the rows, null after the last row
+	 */
+	List<ExcelRow> nextChunk() {
+		if (!hasNext()) {
+			return null;
+		}
+		List<ExcelRow> rows = 0 == position ? chunk : chunk.subList(position,
+				chunk.size());
+		chunk = null;
+		return rows;
+	}
+
+	/**
+	 * Stops the parse, if still running, and waits for the workbook to be
+	 * closed. Does nothing when already closed.
+	 */
+	public void close() {
+		cancelled = true;
+		done = true;
+		chunk = null;
+		while (parser.isAlive()) {
+			// make room for the parser to notice the end
+			queue.clear();
+			try {
+				parser.join(100);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		queue.clear();
+	}
+
+	/**
+	 * Takes the next chunk from the queue.
+	 *
+	 * @return the chunk
+	 */
+	private List<ExcelRow> take() {
+		try {
+			return queue.take();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			close();
+			throw new UncheckedIOException(new InterruptedIOException(
+					"Interrupted while reading sheet"));
+		}
+	}
+
+	/**
+	 * Ends the cursor after the last chunk, throwing the error of the parse
+	 * if any.
+	 */
+	private void end() {
+		done = true;
+		chunk = null;
+		try {
+			parser.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		Throwable cause = failure;
+		failure = null;
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		} else if (cause instanceof Error) {
+			throw (Error) cause;
+		} else if (cause instanceof IOException) {
+			throw new UncheckedIOException((IOException) cause);
+		} else if (null != cause) {
+			throw new UncheckedIOException(new IOException(cause.getMessage(),
+					cause));
+		}
+	}
+
+	/**
+	 * On the parse thread: reads the sheet into chunks. Always queues the end
+	 * of the sheet, after the error if any.
+	 *
+	 * @param reader
+	 *            the reader
+	 * @param source
+	 *            the excel source
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param sheetNumber
+	 *            the sheet number
+	 */
+	private void parse(ExcelReader reader, ExcelSource source,
+			int lastCellNum, int sheetNumber) {
+		ChunkHandler chunks = new ChunkHandler(sheetNumber);
+		try {
+			reader.read(source, lastCellNum, sheetNumber, null, chunks);
+			chunks.flush();
+		} catch (Exception ex) {
+			if (!cancelled) {
+				failure = ex;
+			}
+		} catch (Error ex) {
+			failure = ex;
+		} finally {
+			enqueue(END);
+		}
+	}
+
+	/**
+	 * Queues a chunk, waiting for room in the queue.
+	 *
+	 * @param rows
+	 *            the chunk
+	 */
+	private void enqueue(List<ExcelRow> rows) {
+		try {
+			queue.put(rows);
+		} catch (InterruptedException ex) {
+			LOG.error("Interrupted while queueing a chunk");
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Row handler collecting the rows into chunks.
+	 */
+	private class ChunkHandler implements RowHandler {
+
+		/** The sheet number. */
+		private final int sheetNumber;
+
+		/** The chunk being filled. */
+		private List<ExcelRow> rows = new ArrayList<ExcelRow>(CHUNK_SIZE);
+
+		/** Set until the header row has been handled. */
+		private boolean bIsFirstRow = true;
+
+		/**
+		 * Instantiates a new chunk handler.
+		 *
+		 * @param sheetNumber
+		 *            the sheet number
+		 */
+		ChunkHandler(int sheetNumber) {
+			this.sheetNumber = sheetNumber;
+		}
+
+		/* (non-Javadoc)
+		 * @see excel.RowHandler#handleRow(int, java.util.List)
+		 */
+		public void handleRow(int rowNumber, List<ExcelDTO> row) {
+			if (cancelled) {
+				throw new CancellationException("Reading cancelled");
+			}
+			rows.add(new ExcelRow(sheetNumber, rowNumber, bIsFirstRow, row));
+			bIsFirstRow = false;
+			if (rows.size() >= CHUNK_SIZE) {
+				flush();
+			}
+		}
+
+		/**
+		 * Queues the rows collected so far.
+		 */
+		void flush() {
+			if (!rows.isEmpty()) {
+				enqueue(rows);
+				rows = new ArrayList<ExcelRow>(CHUNK_SIZE);
+			}
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package excel;
+
+import java.util.List;
+
+/**
+ * The Interface RowHandler. Receives the rows of a sheet one at a time while
+ * the sheet is being parsed.
+ *
+ * @author Sourav
+ */
+public interface RowHandler {
+
+	/**
+	 * Handle row. Called once for every row of the sheet, in sheet order. The
+	 * header row is passed first with row number 0 and its column names set to
+	 * "HEADER". The parser keeps no reference to the row after this returns.
+	 *
+	 * @param rowNumber
+	 *            the row number (Starts from 0)
+	 * @param row
+	 *            the columns of the row
+	 */
+	void handleRow(int rowNumber, List<ExcelDTO> row);
+
+}
@@ -0,0 +1,202 @@
+package excel;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * The Class RowSpliterator. The spliterator of
+ * {@link ExcelReader#stream(java.io.File, int, java.util.Set)}: pulls the
+ * rows of its sheets, one sheet after the other, from a {@link RowCursor}.
+ * <p>
+ * Splits hand over whole sheets first, the first half of the sheets not
+ * started yet, or the sheet being read when others remain. Once a single
+ * sheet is left, a split hands over the next chunk of rows parsed, so a
+ * parallel stream processes the chunks on the fork-join pool while the
+ * cursor goes on parsing. Every cursor opened is kept, so closing the stream
+ * closes the cursors of all splits.
+ *
+ * @author Sourav
+ */
+class RowSpliterator implements Spliterator<ExcelRow> {
+
+	/** The reader. */
+	private final ExcelReader reader;
+
+	/** The excel file. */
+	private final Path excelPath;
+
+	/** The last cell number. */
+	private final int lastCellNum;
+
+	/** The sheet numbers, shared by the splits. */
+	private final int[] sheetNumbers;
+
+	/** The index of the next sheet to open. */
+	private int from;
+
+	/** The index after the last sheet. */
+	private final int to;
+
+	/** The cursors opened by this spliterator and its splits. */
+	private final List<RowCursor> cursors;
+
+	/** The cursor of the sheet being read, null between sheets. */
+	private RowCursor cursor;
+
+	/**
+	 * Instantiates a new row spliterator over the given sheets.
+	 *
+	 * @param reader
+	 *            the reader
+	 * @param excelPath
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param sheetNumbers
+	 *            the sheet numbers, in the order of the rows
+	 */
+	RowSpliterator(ExcelReader reader, Path excelPath, int lastCellNum,
+			int[] sheetNumbers) {
+		this(reader, excelPath, lastCellNum, sheetNumbers, 0,
+				sheetNumbers.length, new ArrayList<RowCursor>(), null);
+	}
+
+	/**
+	 * Instantiates a new row spliterator.
+	 *
+	 * @param reader
+	 *            the reader
+	 * @param excelPath
+	 *            the excel file
+	 * @param lastCellNum
+	 *            the last cell number
+	 * @param sheetNumbers
+	 *            the sheet numbers
+	 * @param from
+	 *            the index of the first sheet to open
+	 * @param to
+	 *            the index after the last sheet
+	 * @param cursors
+	 *            the cursors opened so far
+	 * @param cursor
+	 *            the cursor of the sheet being read, may be null
+	 */
+	private RowSpliterator(ExcelReader reader, Path excelPath,
+			int lastCellNum, int[] sheetNumbers, int from, int to,
+			List<RowCursor> cursors, RowCursor cursor) {
+		this.reader = reader;
+		this.excelPath = excelPath;
+		this.lastCellNum = lastCellNum;
+		this.sheetNumbers = sheetNumbers;
+		this.from = from;
+		this.to = to;
+		this.cursors = cursors;
+		this.cursor = cursor;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.Spliterator#tryAdvance(java.util.function.Consumer)
+	 */
+	public boolean tryAdvance(Consumer<? super ExcelRow> action) {
+		while (true) {
+			if (null == cursor) {
+				if (from >= to) {
+					return false;
+				}
+				cursor = open(sheetNumbers[from++]);
+			}
+			if (cursor.hasNext()) {
+				action.accept(cursor.next());
+				return true;
+			}
+			cursor = null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.Spliterator#trySplit()
+	 */
+	public Spliterator<ExcelRow> trySplit() {
+		if (null != cursor) {
+			if (from < to) {
+				RowSpliterator prefix = new RowSpliterator(reader, excelPath,
+						lastCellNum, sheetNumbers, from, from, cursors, cursor);
+				cursor = null;
+				return prefix;
+			}
+			List<ExcelRow> rows = cursor.nextChunk();
+			if (null == rows) {
+				cursor = null;
+				return null;
+			}
+			return rows.spliterator();
+		}
+		if (to - from >= 2) {
+			int middle = from + (to - from) / 2;
+			RowSpliterator prefix = new RowSpliterator(reader, excelPath,
+					lastCellNum, sheetNumbers, from, middle, cursors, null);
+			from = middle;
+			return prefix;
+		}
+		if (to - from == 1) {
+			cursor = open(sheetNumbers[from++]);
+			return trySplit();
+		}
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.Spliterator#estimateSize()
+	 */
+	public long estimateSize() {
+		return null == cursor && from >= to ? 0 : Long.MAX_VALUE;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.Spliterator#characteristics()
+	 */
+	public int characteristics() {
+		return ORDERED | NONNULL;
+	}
+
+	/**
+	 * Closes the cursors opened by this spliterator and its splits.
+	 */
+	void close() {
+		List<RowCursor> opened;
+		synchronized (cursors) {
+			opened = new ArrayList<RowCursor>(cursors);
+			cursors.clear();
+		}
+		for (RowCursor openCursor : opened) {
+			openCursor.close();
+		}
+	}
+
+	/**
+	 * Opens the cursor of a sheet.
+	 *
+	 * @param sheetNumber
+	 *            the sheet number
+	 * @return the cursor
+	 */
+	private RowCursor open(int sheetNumber) {
+		RowCursor opened = new RowCursor(reader, ExcelSource.of(excelPath),
+				lastCellNum, sheetNumber);
+		synchronized (cursors) {
+			cursors.add(opened);
+		}
+		return opened;
+	}
+}
@@ -0,0 +1,174 @@
+package excel;
+
+import java.io.File;
+
+/**
+ * The Class RowStore. Decides where the rows of
+ * {@link ExcelReader#read(File, int, int, RowStore)} are kept: on the heap up
+ * to a budget of estimated bytes, and in a temp file beyond it. The rows of a
+ * sheet are grouped into blocks of consecutive rows; once the blocks on the
+ * heap exceed the budget the least recently used are written to the file and
+ * read back when their rows are asked for. See {@link SpillingRowMap}.
+ *
+ * @author Sourav
+ */
+public final class RowStore {
+
+	/** The heap budget. */
+	private final long maxHeapBytes;
+
+	/** The directory of the temp files, null for the default one. */
+	private final File directory;
+
+	/** The number of rows of a block. */
+	private final int blockRows;
+
+	/**
+	 * Instantiates a new row store.
+	 *
+	 * @param builder
+	 *            the builder
+	 */
+	private RowStore(Builder builder) {
+		this.maxHeapBytes = builder.maxHeapBytes;
+		this.directory = builder.directory;
+		this.blockRows = builder.blockRows;
+	}
+
+	/**
+	 * Creates a builder with the default configuration: a heap budget of 64
+	 * MB, blocks of 1024 rows in the default temp directory.
+	 *
+	 * @return the builder
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Gets the estimated heap the rows of a read may use.
+	 *
+	 * @return the heap budget
+	 */
+	public long getMaxHeapBytes() {
+		return maxHeapBytes;
+	}
+
+	/**
+	 * Gets the directory of the temp files.
+	 *
+	 * @return the directory, null for the default temp directory
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Gets the number of rows of a block.
+	 *
+	 * @return the block rows
+	 */
+	public int getBlockRows() {
+		return blockRows;
+	}
+
+	/**
+	 * Creates the map of the rows of a read.
+	 *
+	 * @return the empty map
+	 */
+	SpillingRowMap newMap() {
+		return new SpillingRowMap(maxHeapBytes, directory, blockRows);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "RowStore [maxHeapBytes=" + maxHeapBytes + ", directory="
+				+ directory + ", blockRows=" + blockRows + "]";
+	}
+
+	/**
+	 * The Class Builder. Collects the configuration of a {@link RowStore}.
+	 */
+	public static class Builder {
+
+		/** The heap budget. */
+		private long maxHeapBytes = 64L * 1024 * 1024;
+
+		/** The directory of the temp files. */
+		private File directory;
+
+		/** The number of rows of a block. */
+		private int blockRows = 1024;
+
+		/**
+		 * Instantiates a new builder.
+		 */
+		private Builder() {
+		}
+
+		/**
+		 * Sets the estimated heap the rows of a read may use, 64 MB by
+		 * default. At least one block is always kept on the heap.
+		 *
+		 * @param bytes
+		 *            the heap budget
+		 * @return the builder
+		 */
+		public Builder maxHeapBytes(long bytes) {
+			if (bytes < 0) {
+				throw new IllegalArgumentException("Heap budget (" + bytes
+						+ ") must not be negative");
+			}
+			this.maxHeapBytes = bytes;
+			return this;
+		}
+
+		/**
+		 * Sets the directory the temp files are created in.
+		 *
+		 * @param directory
+		 *            the directory, created if missing; null for the default
+		 *            temp directory
+		 * @return the builder
+		 */
+		public Builder directory(File directory) {
+			this.directory = directory;
+			return this;
+		}
+
+		/**
+		 * Sets the number of rows of a block, 1024 by default: the rows
+		 * written and read back together. Smaller blocks suit random access,
+		 * larger ones sequential passes.
+		 *
+		 * @param rows
+		 *            the block rows
+		 * @return the builder
+		 */
+		public Builder blockRows(int rows) {
+			if (rows < 1) {
+				throw new IllegalArgumentException("Block rows (" + rows
+						+ ") must be positive");
+			}
+			this.blockRows = rows;
+			return this;
+		}
+
+		/**
+		 * Builds the row store.
+		 *
+		 * @return the row store
+		 */
+		public RowStore build() {
+			if (null != directory && !directory.isDirectory()
+					&& !directory.mkdirs()) {
+				throw new IllegalArgumentException("Cannot create directory "
+						+ directory);
+			}
+			return new RowStore(this);
+		}
+	}
+}
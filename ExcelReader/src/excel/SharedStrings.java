@@ -0,0 +1,37 @@
+package excel;
+
+import java.io.IOException;
+
+/**
+ * The Interface SharedStrings. The shared strings table of an xlsx workbook,
+ * looked up by {@link SheetHandler} for cells holding a string index.
+ * 
+ * @author Sourav
+ */
+interface SharedStrings {
+
+	/**
+	 * Gets the number of strings in the table.
+	 * 
+	 * @return the count
+	 */
+	int getCount();
+
+	/**
+	 * Gets the string at the index.
+	 * 
+	 * @param index
+	 *            the index (Starts from 0)
+	 * @return the string
+	 */
+	String getEntryAt(int index);
+
+	/**
+	 * Releases what the table holds outside the heap.
+	 * 
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	void close() throws IOException;
+
+}
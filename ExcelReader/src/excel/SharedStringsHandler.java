@@ -0,0 +1,138 @@
+package excel;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The Class SharedStringsHandler. Reads the sharedStrings.xml part of a
+ * workbook and hands every string to {@link #addString(String)}, in index
+ * order. The text of a rich text string is the text of all its runs; phonetic
+ * runs are left out.
+ * 
+ * @author Sourav
+ */
+abstract class SharedStringsHandler extends DefaultHandler {
+
+	private static String sst = "sst";
+	private static String uniqueCount = "uniqueCount";
+	private static String stringItem = "si";
+	private static String text = "t";
+	private static String phoneticRun = "rPh";
+
+	/** The text of the current string. */
+	private StringBuffer characters = new StringBuffer();
+
+	/** Set while inside a text element. */
+	private boolean tIsOpen;
+
+	/** Set while inside a phonetic run. */
+	private boolean inPhoneticRun;
+
+	/**
+	 * Parses the shared strings table into the handler.
+	 * 
+	 * @param sharedStringsData
+	 *            the content of sharedStrings.xml, or null if the workbook
+	 *            has no shared strings; it is closed when done
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	void parse(InputStream sharedStringsData) throws IOException,
+			SAXException {
+
+		if (null == sharedStringsData) {
+			return;
+		}
+		try {
+			XMLReader parser = ParserResources.acquireXMLReader();
+			try {
+				parser.setContentHandler(this);
+				parser.parse(new InputSource(sharedStringsData));
+			} finally {
+				ParserResources.releaseXMLReader(parser);
+			}
+		} finally {
+			sharedStringsData.close();
+		}
+	}
+
+	/**
+	 * Called before the first string with the number of strings announced by
+	 * the table, if any.
+	 * 
+	 * @param count
+	 *            the unique count
+	 */
+	void expectStrings(int count) {
+		// nothing by default
+	}
+
+	/**
+	 * Called for every string of the table, in index order.
+	 * 
+	 * @param string
+	 *            the string
+	 * @throws SAXException
+	 *             the string cannot be stored
+	 */
+	abstract void addString(String string) throws SAXException;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.xml.sax.helpers.DefaultHandler#startElement(java.lang.String,
+	 * java.lang.String, java.lang.String, org.xml.sax.Attributes)
+	 */
+	public void startElement(String uri, String localName, String name,
+			Attributes attributes) throws SAXException {
+		if (sst.equals(name)) {
+			String count = attributes.getValue(uniqueCount);
+			if (null != count) {
+				expectStrings(Integer.parseInt(count));
+			}
+		} else if (stringItem.equals(name)) {
+			characters.setLength(0);
+		} else if (text.equals(name)) {
+			tIsOpen = !inPhoneticRun;
+		} else if (phoneticRun.equals(name)) {
+			inPhoneticRun = true;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.xml.sax.helpers.DefaultHandler#endElement(java.lang.String,
+	 * java.lang.String, java.lang.String)
+	 */
+	public void endElement(String uri, String localName, String name)
+			throws SAXException {
+		if (stringItem.equals(name)) {
+			addString(characters.toString());
+		} else if (text.equals(name)) {
+			tIsOpen = false;
+		} else if (phoneticRun.equals(name)) {
+			inPhoneticRun = false;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.xml.sax.helpers.DefaultHandler#characters(char[], int, int)
+	 */
+	public void characters(char[] ch, int start, int length)
+			throws SAXException {
+		if (tIsOpen) {
+			characters.append(ch, start, length);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package excel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xml.sax.SAXException;
+
+/**
+ * The Class SharedStringsStore. Decides where the shared strings table of an
+ * xlsx workbook is kept while its sheet is read.
+ * <ul>
+ * <li>{@link #heap()} keeps every string on the heap, which is the fastest
+ * but needs memory for all unique strings of the workbook;</li>
+ * <li>{@link #spilling(int, int)} moves large tables to a temp file and keeps
+ * only the recently used strings on the heap.</li>
+ * </ul>
+ * The cache counters add up over all the workbooks read with the store, to
+ * help choosing the cache size.
+ * 
+ * @author Sourav
+ */
+public class SharedStringsStore {
+
+	/** The number of strings kept on the heap before spilling. */
+	private final int spillThreshold;
+
+	/** The number of spilled strings cached. */
+	private final int cacheSize;
+
+	/** The cache hits. */
+	private final AtomicLong hits = new AtomicLong();
+
+	/** The cache misses. */
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Instantiates a new shared strings store.
+	 * 
+	 * @param spillThreshold
+	 *            the spill threshold, 0 for heap only
+	 * @param cacheSize
+	 *            the cache size
+	 */
+	private SharedStringsStore(int spillThreshold, int cacheSize) {
+		this.spillThreshold = spillThreshold;
+		this.cacheSize = cacheSize;
+	}
+
+	/**
+	 * Store keeping all shared strings on the heap.
+	 * 
+	 * @return the shared strings store
+	 */
+	public static SharedStringsStore heap() {
+		return new SharedStringsStore(0, 0);
+	}
+
+	/**
+	 * Store spilling large shared strings tables to disk. Tables of up to
+	 * spillThreshold strings stay on the heap; for larger ones only the
+	 * cacheSize most recently used strings do.
+	 * 
+	 * @param spillThreshold
+	 *            the number of strings kept on the heap before spilling
+	 * @param cacheSize
+	 *            the number of spilled strings cached per workbook
+	 * @return the shared strings store
+	 */
+	public static SharedStringsStore spilling(int spillThreshold,
+			int cacheSize) {
+		if (spillThreshold < 1 || cacheSize < 1) {
+			throw new IllegalArgumentException(
+					"Spill threshold and cache size must be positive");
+		}
+		return new SharedStringsStore(spillThreshold, cacheSize);
+	}
+
+	/**
+	 * Gets the number of lookups of spilled strings served by the cache.
+	 * 
+	 * @return the cache hits
+	 */
+	public long getCacheHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the number of lookups of spilled strings read from disk.
+	 * 
+	 * @return the cache misses
+	 */
+	public long getCacheMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Resets the cache counters.
+	 */
+	public void resetCounters() {
+		hits.set(0);
+		misses.set(0);
+	}
+
+	/**
+	 * Reads a shared strings table into the store.
+	 * 
+	 * @param sharedStringsData
+	 *            the content of sharedStrings.xml, or null if the workbook
+	 *            has no shared strings; it is closed when done
+	 * @return the shared strings, to be closed by the caller
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	SharedStrings read(InputStream sharedStringsData) throws IOException,
+			SAXException {
+		if (spillThreshold == 0) {
+			return HeapSharedStrings.read(sharedStringsData);
+		}
+		SpillingSharedStrings sharedStrings = new SpillingSharedStrings(
+				spillThreshold, cacheSize, hits, misses);
+		sharedStrings.read(sharedStringsData);
+		return sharedStrings;
+	}
+}
@@ -0,0 +1,603 @@
+package excel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import excel.ReadOptions.Condition;
+
+/**
+ * The Class SheetFilter. Applies {@link ReadOptions} to the cells of a sheet
+ * on their way to a {@link CellHandler}: only the header row and the rows in
+ * the range which meet the conditions are passed on, with the projected
+ * columns only. The sheet handlers ask {@link #isCellWanted(int)} before
+ * converting a cell, so the others are never built, and stop reading once
+ * {@link #isDone()}.
+ * <p>
+ * The first row of the sheet is the header row. Columns projected or tested
+ * by name are found while it is read; every header cell is wanted for that.
+ * A row is tested as soon as the cells of its conditions are read: the cells
+ * before are held back until then, and the rest of a rejected row is not
+ * wanted. Conditions on cells missing from a row are tested at its end.
+ *
+ * @author Sourav
+ */
+class SheetFilter implements CellHandler {
+
+	/** The cell handler receiving the wanted cells. */
+	private final CellHandler cellHandler;
+
+	/** The header names of the projected columns, empty if none. */
+	private final List<String> columnNames;
+
+	/** The wanted columns, null if all are. */
+	private final BitSet wantedColumns;
+
+	/** The number of rows below the header to skip. */
+	private final int rowOffset;
+
+	/** The maximum number of rows read after the offset. */
+	private final int rowLimit;
+
+	/** The conditions on the rows. */
+	private final List<Condition> conditions;
+
+	/** Whether the header names are needed. */
+	private final boolean byName;
+
+	/** The predicates on every column, by column, null where none. */
+	private CellPredicate[][] columnPredicates = new CellPredicate[0][];
+
+	/** The columns with predicates. */
+	private final BitSet testedColumns = new BitSet();
+
+	/** The number of columns with predicates. */
+	private int testedCount;
+
+	/** The conditions by name found in the header, by condition. */
+	private final BitSet matchedConditions = new BitSet();
+
+	/** The row in which every tested column was last seen, by column. */
+	private int[] testedInRow = new int[0];
+
+	/** Counts the rows, to tell the marks of the current row apart. */
+	private int rowStamp;
+
+	/** The number of tested columns not yet seen in the current row. */
+	private int untested;
+
+	/** The cells held back until the current row is accepted. */
+	private final HeldCells heldCells = new HeldCells();
+
+	/** The number of the header row, -1 until it is read. */
+	private int headerRow = -1;
+
+	/** Set while the header row is being read. */
+	private boolean inHeader;
+
+	/** Set while the current row is wanted. */
+	private boolean rowWanted;
+
+	/** Set once the current row meets all conditions. */
+	private boolean rowAccepted;
+
+	/** Set once the current row fails a condition. */
+	private boolean rowRejected;
+
+	/** The number of the current row. */
+	private int rowNumber;
+
+	/** Set once the last row of the range is done. */
+	private boolean done;
+
+	/**
+	 * Instantiates a new sheet filter.
+	 *
+	 * @param options
+	 *            the read options
+	 * @param cellHandler
+	 *            the cell handler receiving the wanted cells
+	 */
+	SheetFilter(ReadOptions options, CellHandler cellHandler) {
+		this.cellHandler = cellHandler;
+		this.columnNames = options.getColumnNames();
+		this.rowOffset = options.getRowOffset();
+		this.rowLimit = options.getRowLimit();
+		this.conditions = options.getConditions();
+		if (options.isProjected()) {
+			wantedColumns = new BitSet();
+			for (Integer index : options.getColumnIndexes()) {
+				wantedColumns.set(index);
+			}
+		} else {
+			wantedColumns = null;
+		}
+		boolean conditionByName = false;
+		for (Condition condition : conditions) {
+			if (null == condition.columnName) {
+				addPredicate(condition.columnIndex, condition.predicate);
+			} else {
+				conditionByName = true;
+			}
+		}
+		this.byName = !columnNames.isEmpty() || conditionByName;
+	}
+
+	/**
+	 * Checks if a cell of the current row is wanted, to be called between
+	 * {@link #startRow(int)} and {@link #endRow(int)}.
+	 *
+	 * @param column
+	 *            the column index (Starts from 0)
+	 * @return true, if the cell must be converted and passed on
+	 */
+	boolean isCellWanted(int column) {
+		if (!rowWanted || rowRejected) {
+			return false;
+		}
+		if (inHeader && byName) {
+			return true;
+		}
+		return isProjected(column)
+				|| (!rowAccepted && testedColumns.get(column));
+	}
+
+	/**
+	 * Checks if the last row of the range is done, after which the rest of
+	 * the sheet need not be read.
+	 *
+	 * @return true, if done
+	 */
+	boolean isDone() {
+		return done;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#startRow(int)
+	 */
+	public void startRow(int rowNumber) {
+		this.rowNumber = rowNumber;
+		if (headerRow < 0) {
+			headerRow = rowNumber;
+			inHeader = true;
+			rowWanted = true;
+		} else {
+			long position = (long) rowNumber - headerRow - 1;
+			if (position >= (long) rowOffset + rowLimit) {
+				done = true;
+			}
+			rowWanted = !done && position >= rowOffset;
+		}
+		if (!rowWanted) {
+			return;
+		}
+		rowStamp++;
+		untested = inHeader ? 0 : testedCount;
+		rowAccepted = untested == 0;
+		rowRejected = false;
+		if (rowAccepted) {
+			cellHandler.startRow(rowNumber);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#stringCell(int, java.lang.String)
+	 */
+	public void stringCell(int column, String value) {
+		if (isPassedOn(column, CellKind.TEXT, value, 0, false)) {
+			cellHandler.stringCell(column, value);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#numericCell(int, double, excel.CellFormat)
+	 */
+	public void numericCell(int column, double value, CellFormat format) {
+		String text = null;
+		if (rowWanted && !rowRejected
+				&& (inHeader ? byName : !rowAccepted && isProjected(column))) {
+			// needed as header name, or kept while the row is tested
+			text = format.format(value);
+		}
+		if (isPassedOn(column, CellKind.NUMBER, text, value, format.isDate())) {
+			cellHandler.numericCell(column, value, format);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#booleanCell(int, boolean)
+	 */
+	public void booleanCell(int column, boolean value) {
+		if (isPassedOn(column, CellKind.BOOLEAN, value ? "TRUE" : "FALSE",
+				value ? 1 : 0, false)) {
+			cellHandler.booleanCell(column, value);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#errorCell(int, java.lang.String)
+	 */
+	public void errorCell(int column, String value) {
+		if (isPassedOn(column, CellKind.ERROR, value, 0, false)) {
+			cellHandler.errorCell(column, value);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#blankCell(int)
+	 */
+	public void blankCell(int column) {
+		if (isPassedOn(column, CellKind.BLANK, "", 0, false)) {
+			cellHandler.blankCell(column);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see excel.CellHandler#endRow(int)
+	 */
+	public void endRow(int rowNumber) {
+		if (!rowWanted) {
+			return;
+		}
+		if (!rowAccepted && !rowRejected && passesMissingCells()) {
+			accept();
+		}
+		if (rowAccepted) {
+			cellHandler.endRow(rowNumber);
+		}
+		heldCells.clear();
+		if (inHeader) {
+			inHeader = false;
+			done = rowLimit == 0;
+			resolveConditions();
+		} else if ((long) rowNumber - headerRow >= (long) rowOffset
+				+ rowLimit) {
+			done = true;
+		}
+		rowWanted = false;
+	}
+
+	/**
+	 * Checks if a cell is passed on now. A header cell whose text matches a
+	 * name makes its column projected or tested. A tested cell of an
+	 * undecided row may reject the row, or accept it once all tested cells
+	 * are read; until then the projected cells are held back.
+	 *
+	 * @param column
+	 *            the column index
+	 * @param kind
+	 *            the kind of cell
+	 * @param text
+	 *            the text of the cell, null if not needed
+	 * @param number
+	 *            the numeric value of a number or boolean cell
+	 * @param date
+	 *            whether a number cell is a date
+	 * @return true, if the cell is passed on
+	 */
+	private boolean isPassedOn(int column, CellKind kind, String text,
+			double number, boolean date) {
+		if (!rowWanted || rowRejected) {
+			return false;
+		}
+		if (inHeader) {
+			if (byName) {
+				matchHeader(column, null == text ? "" : text);
+			}
+			return isProjected(column);
+		}
+		if (!rowAccepted && testedColumns.get(column)
+				&& testedInRow[column] != rowStamp) {
+			testedInRow[column] = rowStamp;
+			if (!test(columnPredicates[column], kind, text, number, date)) {
+				reject();
+				return false;
+			}
+			if (--untested == 0) {
+				accept();
+			}
+		}
+		if (!isProjected(column)) {
+			return false;
+		}
+		if (!rowAccepted) {
+			heldCells.add(kind, column, text, number, date);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if a column is projected.
+	 *
+	 * @param column
+	 *            the column index
+	 * @return true, if the column is passed on
+	 */
+	private boolean isProjected(int column) {
+		return null == wantedColumns || wantedColumns.get(column);
+	}
+
+	/**
+	 * Accepts the current row: passes on its start and the cells held back.
+	 */
+	private void accept() {
+		rowAccepted = true;
+		cellHandler.startRow(rowNumber);
+		heldCells.replay(cellHandler);
+		heldCells.clear();
+	}
+
+	/**
+	 * Rejects the current row: none of its cells is wanted any more.
+	 */
+	private void reject() {
+		rowRejected = true;
+		heldCells.clear();
+	}
+
+	/**
+	 * Tests the tested columns missing from the current row as blank cells.
+	 *
+	 * @return true, if all of them pass
+	 */
+	private boolean passesMissingCells() {
+		int column = testedColumns.nextSetBit(0);
+		while (column >= 0) {
+			if (testedInRow[column] != rowStamp
+					&& !test(columnPredicates[column], CellKind.BLANK, "", 0,
+							false)) {
+				return false;
+			}
+			column = testedColumns.nextSetBit(column + 1);
+		}
+		return true;
+	}
+
+	/**
+	 * Matches a header cell to the names of the projected and tested columns.
+	 *
+	 * @param column
+	 *            the column index
+	 * @param name
+	 *            the header name
+	 */
+	private void matchHeader(int column, String name) {
+		for (String columnName : columnNames) {
+			if (columnName.equalsIgnoreCase(name)) {
+				wantedColumns.set(column);
+				break;
+			}
+		}
+		for (int i = 0; i < conditions.size(); i++) {
+			Condition condition = conditions.get(i);
+			if (null != condition.columnName
+					&& condition.columnName.equalsIgnoreCase(name)) {
+				addPredicate(column, condition.predicate);
+				matchedConditions.set(i);
+			}
+		}
+	}
+
+	/**
+	 * Resolves the conditions once the header has been read: a condition on a
+	 * name missing from the header tests every row as blank, so if it fails
+	 * no row can be kept.
+	 */
+	private void resolveConditions() {
+		for (int i = 0; i < conditions.size(); i++) {
+			Condition condition = conditions.get(i);
+			if (null != condition.columnName && !matchedConditions.get(i)
+					&& !condition.predicate.testBlank()) {
+				done = true;
+			}
+		}
+		testedCount = testedColumns.cardinality();
+		testedInRow = new int[columnPredicates.length];
+	}
+
+	/**
+	 * Adds a predicate on a column.
+	 *
+	 * @param column
+	 *            the column index
+	 * @param predicate
+	 *            the predicate
+	 */
+	private void addPredicate(int column, CellPredicate predicate) {
+		if (column >= columnPredicates.length) {
+			columnPredicates = Arrays.copyOf(columnPredicates, column + 1);
+		}
+		CellPredicate[] predicates = columnPredicates[column];
+		if (null == predicates) {
+			predicates = new CellPredicate[] { predicate };
+		} else {
+			predicates = Arrays.copyOf(predicates, predicates.length + 1);
+			predicates[predicates.length - 1] = predicate;
+		}
+		columnPredicates[column] = predicates;
+		testedColumns.set(column);
+	}
+
+	/**
+	 * Tests a cell with the predicates on its column.
+	 *
+	 * @param predicates
+	 *            the predicates
+	 * @param kind
+	 *            the kind of cell
+	 * @param text
+	 *            the text of a text or error cell
+	 * @param number
+	 *            the numeric value of a number or boolean cell
+	 * @param date
+	 *            whether a number cell is a date
+	 * @return true, if all predicates pass
+	 */
+	private static boolean test(CellPredicate[] predicates, CellKind kind,
+			String text, double number, boolean date) {
+		for (CellPredicate predicate : predicates) {
+			boolean passed;
+			switch (kind) {
+			case TEXT:
+			case ERROR:
+				passed = predicate.testText(null == text ? "" : text);
+				break;
+			case NUMBER:
+				passed = predicate.testNumber(number, date);
+				break;
+			case BOOLEAN:
+				passed = predicate.testBoolean(number != 0);
+				break;
+			default:
+				passed = predicate.testBlank();
+				break;
+			}
+			if (!passed) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The kinds of cells.
+	 */
+	private enum CellKind {
+		TEXT, NUMBER, BOOLEAN, ERROR, BLANK
+	}
+
+	/**
+	 * The cells of a row held back until the row is accepted. Numbers are
+	 * kept with their formatted text, as formats are only valid during the
+	 * call.
+	 */
+	private static class HeldCells implements CellFormat {
+
+		/** The kinds. */
+		private final List<CellKind> kinds = new ArrayList<CellKind>();
+
+		/** The columns. */
+		private int[] columns = new int[16];
+
+		/** The texts. */
+		private final List<String> texts = new ArrayList<String>();
+
+		/** The numbers. */
+		private double[] numbers = new double[16];
+
+		/** The date flags. */
+		private boolean[] dates = new boolean[16];
+
+		/** The cell being replayed. */
+		private int current;
+
+		/**
+		 * Holds a cell back.
+		 *
+		 * @param kind
+		 *            the kind
+		 * @param column
+		 *            the column
+		 * @param text
+		 *            the text, formatted for numbers
+		 * @param number
+		 *            the number
+		 * @param date
+		 *            the date flag
+		 */
+		void add(CellKind kind, int column, String text, double number,
+				boolean date) {
+			int size = kinds.size();
+			if (size == columns.length) {
+				columns = Arrays.copyOf(columns, size * 2);
+				numbers = Arrays.copyOf(numbers, size * 2);
+				dates = Arrays.copyOf(dates, size * 2);
+			}
+			kinds.add(kind);
+			columns[size] = column;
+			texts.add(text);
+			numbers[size] = number;
+			dates[size] = date;
+		}
+
+		/**
+		 * Passes the cells held back on.
+		 *
+		 * @param cellHandler
+		 *            the cell handler
+		 */
+		void replay(CellHandler cellHandler) {
+			for (current = 0; current < kinds.size(); current++) {
+				int column = columns[current];
+				switch (kinds.get(current)) {
+				case TEXT:
+					cellHandler.stringCell(column, texts.get(current));
+					break;
+				case NUMBER:
+					cellHandler.numericCell(column, numbers[current], this);
+					break;
+				case BOOLEAN:
+					cellHandler.booleanCell(column, numbers[current] != 0);
+					break;
+				case ERROR:
+					cellHandler.errorCell(column, texts.get(current));
+					break;
+				default:
+					cellHandler.blankCell(column);
+					break;
+				}
+			}
+		}
+
+		/**
+		 * Forgets the cells held back.
+		 */
+		void clear() {
+			kinds.clear();
+			texts.clear();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.CellFormat#isDate()
+		 */
+		public boolean isDate() {
+			return dates[current];
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.CellFormat#format(double)
+		 */
+		public String format(double value) {
+			return texts.get(current);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.CellFormat#retain()
+		 */
+		public CellFormat retain() {
+			return new CellFormat.Text(texts.get(current), dates[current]);
+		}
+	}
+}
@@ -0,0 +1,368 @@
+package excel;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The Class SheetHandler. SAX handler of an xlsx sheet: passes every cell up
+ * to lastCellNum, converted by an {@link XLSXCellConverter}, to a
+ * {@link CellHandler}. The text of a cell value is collected in a buffer
+ * reused for all cells of the sheet. The sheet xml is read by a SAX parser, or
+ * by a {@link ByteSheetTokenizer} calling the same hooks.
+ * 
+ * @author Sourav
+ */
+class SheetHandler extends DefaultHandler {
+	enum xssfDataType {
+		BOOL, ERROR, FORMULA, INLINESTR, SSTINDEX, NUMBER, NO_STYLE
+	}
+
+	private final StringBuilder value = new StringBuilder();
+
+	// Set when V start element is seen
+	private boolean vExists;
+
+	// Set when the current cell has a value element
+	private boolean cellHasValue;
+
+	// Set when cell start element is seen
+	// used when cell close element is seen.
+	private xssfDataType nextDataType;
+
+	// Style of the current cell, -1 if none
+	private int nextStyleIndex;
+
+	// Converts the cell values
+	private XLSXCellConverter converter;
+
+	private int currentColumn = -1;
+
+	private int rownum = -1;
+	private int lastCellNum;
+
+	private CellHandler cellHandler;
+
+	// Narrows the read down to the wanted cells, null if all are
+	private SheetFilter filter;
+
+	private static String inlineStr = "inlineStr";
+	private static String inlineStrValue = "is";
+	private static String cellValue = "v";
+	private static String row = "row";
+	private static String cell = "c";
+	private static String xmlRow = "r";
+	private static String cellTypeInXML = "t";
+	private static String cellStyle = "s";
+	private static String booleanType = "b";
+	private static String errorType = "e";
+	private static String stringType = "str";
+	private static String sstIndex = "s";
+
+	/**
+	 * Instantiates a new sheet handler.
+	 * 
+	 * @param sst
+	 *            the sst
+	 * @param lastCellNum
+	 *            the last cell num
+	 * @param styleFormats
+	 *            the number formats of the styles
+	 * @param cellHandler
+	 *            the cell handler receiving every cell value
+	 */
+	public SheetHandler(SharedStrings sst, int lastCellNum,
+			StyleFormats styleFormats, CellHandler cellHandler) {
+		this(sst, lastCellNum, styleFormats, cellHandler, null);
+	}
+
+	/**
+	 * Instantiates a new sheet handler reading part of the sheet. Cells which
+	 * are not wanted are not converted, and parsing ends once the last wanted
+	 * row is done.
+	 * 
+	 * @param sst
+	 *            the sst
+	 * @param lastCellNum
+	 *            the last cell num
+	 * @param styleFormats
+	 *            the number formats of the styles
+	 * @param cellHandler
+	 *            the cell handler receiving every wanted cell value
+	 * @param options
+	 *            the read options, null to read the whole sheet
+	 */
+	SheetHandler(SharedStrings sst, int lastCellNum,
+			StyleFormats styleFormats, CellHandler cellHandler,
+			ReadOptions options) {
+		this.lastCellNum = lastCellNum;
+		this.converter = new XLSXCellConverter(sst, styleFormats);
+		if (null == options) {
+			this.cellHandler = cellHandler;
+		} else {
+			this.filter = new SheetFilter(options, cellHandler);
+			this.cellHandler = filter;
+		}
+	}
+
+	/**
+	 * Instantiates a new sheet handler which only tokenizes the sheet: the
+	 * subclass receives the raw cells through
+	 * {@link #cell(int, xssfDataType, int, CharSequence)}.
+	 * 
+	 * @param lastCellNum
+	 *            the last cell num
+	 */
+	SheetHandler(int lastCellNum) {
+		this.lastCellNum = lastCellNum;
+	}
+
+	/**
+	 * Parses the sheet.
+	 * 
+	 * @param sheetData
+	 *            the content of the sheet xml, not closed
+	 * @param byteLevel
+	 *            whether to read the xml with a {@link ByteSheetTokenizer}
+	 *            instead of a SAX parser
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	void parse(InputStream sheetData, boolean byteLevel) throws IOException,
+			SAXException {
+		try {
+			if (byteLevel) {
+				new ByteSheetTokenizer(this).parse(sheetData);
+				return;
+			}
+			XMLReader parser = ParserResources.acquireXMLReader();
+			try {
+				parser.setContentHandler(this);
+				parser.parse(new InputSource(sheetData));
+			} finally {
+				ParserResources.releaseXMLReader(parser);
+			}
+		} catch (StopParsing ex) {
+			// the rest of the sheet is not wanted
+		}
+	}
+
+	/**
+	 * Gets the last cell num.
+	 * 
+	 * @return the number of columns read
+	 */
+	int getLastCellNum() {
+		return lastCellNum;
+	}
+
+	/**
+	 * Start of a row.
+	 * 
+	 * @param rowNumber
+	 *            the row number (Starts from 0)
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	void startRow(int rowNumber) throws SAXException {
+		cellHandler.startRow(rowNumber);
+		stopIfDone();
+	}
+
+	/**
+	 * A raw cell, within lastCellNum.
+	 * 
+	 * @param column
+	 *            the column
+	 * @param dataType
+	 *            the type of the cell
+	 * @param styleIndex
+	 *            the style of the cell, -1 if none
+	 * @param cellValue
+	 *            the text of the value, null if the cell has no value; only
+	 *            valid during the call
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	void cell(int column, xssfDataType dataType, int styleIndex,
+			CharSequence cellValue) throws SAXException {
+		if (null == filter || filter.isCellWanted(column)) {
+			converter.convert(column, dataType, styleIndex, cellValue,
+					cellHandler);
+		}
+	}
+
+	/**
+	 * End of a row.
+	 * 
+	 * @param rowNumber
+	 *            the row number (Starts from 0)
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	void endRow(int rowNumber) throws SAXException {
+		cellHandler.endRow(rowNumber);
+		stopIfDone();
+	}
+
+	/**
+	 * Ends parsing once the last wanted row is done.
+	 * 
+	 * @throws StopParsing
+	 *             if no more rows are wanted
+	 */
+	private void stopIfDone() throws StopParsing {
+		if (null != filter && filter.isDone()) {
+			throw new StopParsing();
+		}
+	}
+
+	/**
+	 * Column name to index.
+	 * 
+	 * @param name
+	 *            the name
+	 * @return the int
+	 */
+	private int columnNameToIndex(String name) {
+		int column = -1;
+		for (int i = 0; i < name.length(); ++i) {
+			int c = name.charAt(i);
+			column = (column + 1) * 26 + c - 'A';
+		}
+		return column;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.xml.sax.helpers.DefaultHandler#startElement(java.lang.String,
+	 * java.lang.String, java.lang.String, org.xml.sax.Attributes)
+	 */
+	public void startElement(String uri, String localName, String name,
+			Attributes attributes) throws SAXException {
+		if (inlineStrValue.equals(name) || cellValue.equals(name)) {
+			vExists = true;
+			cellHasValue = true;
+		}
+		// row => row
+		else if (row.equals(name)) {
+			String r = attributes.getValue(xmlRow);
+			rownum = Integer.parseInt(r);
+			startRow(rownum - 1);
+		} else if (cell.equals(name)) {
+			// Get the cell reference
+			// Clear contents cache
+			value.setLength(0);
+			cellHasValue = false;
+
+			String r = attributes.getValue(xmlRow);
+			int firstDigit = -1;
+			for (int c = 0; c < r.length(); ++c) {
+				if (Character.isDigit(r.charAt(c))) {
+					firstDigit = c;
+					break;
+				}
+			}
+
+			currentColumn = columnNameToIndex(r.substring(0, firstDigit));
+			if (currentColumn >= lastCellNum) {
+				// stop processing
+				return;
+			}
+
+			// Set up defaults.
+			this.nextDataType = xssfDataType.NUMBER;
+			this.nextStyleIndex = -1;
+			String cellType = attributes.getValue(cellTypeInXML);
+			String cellStyleStr = attributes.getValue(cellStyle);
+
+			if (cellType == null && cellStyleStr == null) {
+				nextDataType = xssfDataType.NO_STYLE;
+			}
+
+			if (booleanType.equals(cellType)) {
+				nextDataType = xssfDataType.BOOL;
+			} else if (errorType.equals(cellType)) {
+				nextDataType = xssfDataType.ERROR;
+			} else if (inlineStr.equals(cellType)) {
+				nextDataType = xssfDataType.INLINESTR;
+			} else if (sstIndex.equals(cellType)) {
+				nextDataType = xssfDataType.SSTINDEX;
+			} else if (stringType.equals(cellType)) {
+				nextDataType = xssfDataType.FORMULA;
+			} else if (cellStyleStr != null) {
+				// It's a number, but almost certainly one
+				// with a special style or format
+				nextStyleIndex = Integer.parseInt(cellStyleStr);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.xml.sax.helpers.DefaultHandler#endElement(java.lang.String,
+	 * java.lang.String, java.lang.String)
+	 */
+	public void endElement(String uri, String localName, String name)
+			throws SAXException {
+
+		if (inlineStrValue.equals(name) || cellValue.equals(name)) {
+			vExists = false;
+		}
+
+		// c => the cell, its value is complete
+		else if (cell.equals(name)) {
+
+			if (currentColumn >= lastCellNum) {
+				// stop processing
+				return;
+			}
+
+			// Process the value contents as required.
+			// Do now, as characters() may be called more than once
+			cell(currentColumn, nextDataType, nextStyleIndex,
+					cellHasValue ? value : null);
+
+		} else if (row.equals(name)) {
+			// We're onto a new row
+			endRow(rownum - 1);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.xml.sax.helpers.DefaultHandler#characters(char[], int, int)
+	 */
+	public void characters(char[] ch, int start, int length)
+			throws SAXException {
+
+		if (vExists) {
+			value.append(ch, start, length);
+		}
+	}
+
+	/**
+	 * Thrown through the parser to end it before the end of the sheet.
+	 */
+	private static class StopParsing extends SAXException {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Instantiates a new stop parsing.
+		 */
+		StopParsing() {
+			super("No more rows wanted");
+		}
+	}
+}
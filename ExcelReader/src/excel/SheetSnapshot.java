@@ -0,0 +1,488 @@
+package excel;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import excel.ColumnarSheet.ColumnType;
+
+/**
+ * The Class SheetSnapshot. A sheet parsed once and saved by
+ * {@link ExcelReader#writeSnapshot(File, int, int, File)} in a compact binary
+ * file: the header, a block per column and a dictionary of the distinct
+ * strings. The file is memory mapped, so any row or column is read in place
+ * without parsing, and the heap holds little more than the small tables
+ * indexing the file.
+ * <p>
+ * Row 0 is the header row. The rows are the same as those of
+ * {@link ExcelReader#read(File, int, int)}: {@link #getRow(int)} rebuilds a
+ * row exactly, and {@link #toMap()} the whole map. Number, date and boolean
+ * columns also keep the raw cell values, see {@link #getColumnType(int)}.
+ * <p>
+ * A snapshot is immutable and can be read by several threads. The mapping is
+ * released by the garbage collector once the snapshot is no longer
+ * referenced; snapshots are limited to 2 GB.
+ *
+ * @author Sourav
+ */
+public final class SheetSnapshot implements Closeable {
+
+	/** The file. */
+	private final File file;
+
+	/** The mapped file. */
+	private volatile ByteBuffer buffer;
+
+	/** The row count, including the header row. */
+	private final int rowCount;
+
+	/** The column count. */
+	private final int columnCount;
+
+	/** The string count. */
+	private final int stringCount;
+
+	/** The offset of the row numbers. */
+	private final int rowNumbersOffset;
+
+	/** The offset of the column table. */
+	private final int columnTableOffset;
+
+	/** The offset of the string offsets. */
+	private final int stringOffsetsOffset;
+
+	/** The column types. */
+	private final ColumnType[] columnTypes;
+
+	/** The rows stored cell by cell, sorted. */
+	private final int[] irregularRows;
+
+	/** The offsets of the cells of the rows stored cell by cell. */
+	private final int[] irregularOffsets;
+
+	/**
+	 * Instantiates a new sheet snapshot.
+	 *
+	 * @param file
+	 *            the file
+	 * @param buffer
+	 *            the mapped file
+	 * @throws IOException
+	 *             if the file is not a snapshot
+	 */
+	private SheetSnapshot(File file, ByteBuffer buffer) throws IOException {
+		this.file = file;
+		this.buffer = buffer;
+		if (buffer.capacity() < SheetSnapshotWriter.HEADER_SIZE
+				|| buffer.getLong(0) != SheetSnapshotWriter.MAGIC) {
+			throw new IOException("Not a sheet snapshot: " + file);
+		}
+		rowCount = buffer.getInt(8);
+		columnCount = buffer.getInt(12);
+		stringCount = buffer.getInt(16);
+		rowNumbersOffset = (int) buffer.getLong(24);
+		columnTableOffset = (int) buffer.getLong(32);
+		int irregularOffset = (int) buffer.getLong(40);
+		stringOffsetsOffset = (int) buffer.getLong(48);
+
+		columnTypes = new ColumnType[columnCount];
+		for (int column = 0; column < columnCount; column++) {
+			columnTypes[column] = ColumnType.values()[buffer
+					.getInt(columnEntry(column) + 4)];
+		}
+		irregularRows = new int[buffer.getInt(irregularOffset)];
+		irregularOffsets = new int[irregularRows.length];
+		int offset = irregularOffset + 4;
+		for (int i = 0; i < irregularRows.length; i++) {
+			irregularRows[i] = buffer.getInt(offset);
+			irregularOffsets[i] = offset + 4;
+			offset += 8 + 12 * buffer.getInt(offset + 4);
+		}
+	}
+
+	/**
+	 * Opens a snapshot file.
+	 *
+	 * @param file
+	 *            the file written by
+	 *            {@link ExcelReader#writeSnapshot(File, int, int, File)}
+	 * @return the snapshot
+	 * @throws IOException
+	 *             if the file cannot be read or is not a snapshot
+	 */
+	public static SheetSnapshot open(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Not a sheet snapshot: " + file);
+			}
+			return new SheetSnapshot(file, channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * Gets the file.
+	 *
+	 * @return the file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Gets the number of rows, including the header row.
+	 *
+	 * @return the row count
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Gets the row number of a row in the sheet, 0 based.
+	 *
+	 * @param row
+	 *            the row index
+	 * @return the row number
+	 */
+	public int getRowNumber(int row) {
+		checkRow(row);
+		return buffer().getInt(rowNumbersOffset + 4 * row);
+	}
+
+	/**
+	 * Gets the number of columns, up to the last one with a cell.
+	 *
+	 * @return the column count
+	 */
+	public int getColumnCount() {
+		return columnCount;
+	}
+
+	/**
+	 * Gets the name of a column, the value of its header cell.
+	 *
+	 * @param column
+	 *            the column index
+	 * @return the name, "" if the header row has no cell in it
+	 */
+	public String getColumnName(int column) {
+		checkColumn(column);
+		return getString(buffer().getInt(columnEntry(column)));
+	}
+
+	/**
+	 * Gets the first column with a name, ignoring case.
+	 *
+	 * @param name
+	 *            the name
+	 * @return the column index, -1 if none
+	 */
+	public int getColumnIndex(String name) {
+		for (int column = 0; column < columnCount; column++) {
+			if (getColumnName(column).equalsIgnoreCase(name)) {
+				return column;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the type of the values of a column, over the rows below the
+	 * header. Number, date and boolean columns keep the raw values, read with
+	 * {@link #getDouble(int, int)} and {@link #getLong(int, int)}; columns of
+	 * mixed types are string columns.
+	 *
+	 * @param column
+	 *            the column index
+	 * @return the column type
+	 */
+	public ColumnType getColumnType(int column) {
+		checkColumn(column);
+		return columnTypes[column];
+	}
+
+	/**
+	 * Gets the value of a cell, formatted as in the rows.
+	 *
+	 * @param row
+	 *            the row index
+	 * @param column
+	 *            the column index
+	 * @return the value, "" for a blank cell or a missing header column, null
+	 *         if the row has no cell in the column
+	 */
+	public String getValue(int row, int column) {
+		checkRow(row);
+		checkColumn(column);
+		int irregular = Arrays.binarySearch(irregularRows, row);
+		if (irregular >= 0) {
+			ByteBuffer buffer = buffer();
+			int offset = irregularOffsets[irregular];
+			int cellCount = buffer.getInt(offset);
+			for (int cell = 0; cell < cellCount; cell++) {
+				int cellOffset = offset + 4 + 12 * cell;
+				if (buffer.getInt(cellOffset) == column) {
+					return getString(buffer.getInt(cellOffset + 8));
+				}
+			}
+			return null;
+		}
+		int code = getCode(row, column);
+		if (code == SheetSnapshotWriter.APPENDED) {
+			return "";
+		}
+		return code == SheetSnapshotWriter.ABSENT ? null : getString(code);
+	}
+
+	/**
+	 * Gets the value of a cell of a number column.
+	 *
+	 * @param row
+	 *            the row index
+	 * @param column
+	 *            the column index
+	 * @return the number, NaN if the cell holds none
+	 */
+	public double getDouble(int row, int column) {
+		return Double.longBitsToDouble(getRawValue(row, column,
+				ColumnType.NUMBER));
+	}
+
+	/**
+	 * Gets the value of a cell of a date or boolean column.
+	 *
+	 * @param row
+	 *            the row index
+	 * @param column
+	 *            the column index
+	 * @return the date in epoch milliseconds or the boolean as 0 or 1,
+	 *         Long.MIN_VALUE if the cell holds none
+	 */
+	public long getLong(int row, int column) {
+		ColumnType type = getColumnType(column);
+		return getRawValue(row, column,
+				type == ColumnType.BOOLEAN ? ColumnType.BOOLEAN
+						: ColumnType.DATE);
+	}
+
+	/**
+	 * Gets the raw value of a cell of a typed column.
+	 *
+	 * @param row
+	 *            the row index
+	 * @param column
+	 *            the column index
+	 * @param type
+	 *            the expected column type
+	 * @return the raw value
+	 */
+	private long getRawValue(int row, int column, ColumnType type) {
+		checkRow(row);
+		if (getColumnType(column) != type) {
+			throw new IllegalStateException("Column " + column + " is of type "
+					+ columnTypes[column] + ", not " + type);
+		}
+		ByteBuffer buffer = buffer();
+		int valuesOffset = (int) buffer.getLong(columnEntry(column) + 16);
+		return buffer.getLong(valuesOffset + 8 * row);
+	}
+
+	/**
+	 * Gets a row, the same list of columns as the row of
+	 * {@link ExcelReader#read(File, int, int)}.
+	 *
+	 * @param row
+	 *            the row index
+	 * @return the row
+	 */
+	public List<ExcelDTO> getRow(int row) {
+		checkRow(row);
+		List<ExcelDTO> listExcelDTO = new ArrayList<ExcelDTO>();
+		int irregular = Arrays.binarySearch(irregularRows, row);
+		if (irregular >= 0) {
+			ByteBuffer buffer = buffer();
+			int offset = irregularOffsets[irregular];
+			int cellCount = buffer.getInt(offset);
+			for (int cell = 0; cell < cellCount; cell++) {
+				int cellOffset = offset + 4 + 12 * cell;
+				listExcelDTO.add(newExcelDTO(getString(buffer
+						.getInt(cellOffset + 4)), getString(buffer
+						.getInt(cellOffset + 8))));
+			}
+			return listExcelDTO;
+		}
+		boolean appended = false;
+		for (int column = 0; column < columnCount; column++) {
+			int code = getCode(row, column);
+			if (code >= 0) {
+				listExcelDTO.add(newExcelDTO(row == 0 ? SheetSnapshotWriter.HEADER
+						: getColumnName(column), getString(code)));
+			} else if (code == SheetSnapshotWriter.APPENDED) {
+				appended = true;
+			}
+		}
+		for (int column = 0; appended && column < columnCount; column++) {
+			if (getCode(row, column) == SheetSnapshotWriter.APPENDED) {
+				listExcelDTO.add(newExcelDTO(getColumnName(column), ""));
+			}
+		}
+		return listExcelDTO;
+	}
+
+	/**
+	 * Passes every row to a row handler, as a read of the sheet would.
+	 *
+	 * @param rowHandler
+	 *            the row handler
+	 */
+	public void read(RowHandler rowHandler) {
+		for (int row = 0; row < rowCount; row++) {
+			rowHandler.handleRow(getRowNumber(row), getRow(row));
+		}
+	}
+
+	/**
+	 * Rebuilds the map of {@link ExcelReader#read(File, int, int)}.
+	 *
+	 * @return the rows by row number
+	 */
+	public Map<Integer, List<ExcelDTO>> toMap() {
+		Map<Integer, List<ExcelDTO>> rows = new LinkedHashMap<Integer, List<ExcelDTO>>();
+		for (int row = 0; row < rowCount; row++) {
+			rows.put(getRowNumber(row), getRow(row));
+		}
+		return rows;
+	}
+
+	/**
+	 * Drops the mapping; the snapshot cannot be read afterwards.
+	 */
+	public void close() {
+		buffer = null;
+	}
+
+	/**
+	 * Gets the string code of a cell.
+	 *
+	 * @param row
+	 *            the row index
+	 * @param column
+	 *            the column index
+	 * @return the code
+	 */
+	private int getCode(int row, int column) {
+		ByteBuffer buffer = buffer();
+		int codesOffset = (int) buffer.getLong(columnEntry(column) + 8);
+		return buffer.getInt(codesOffset + 4 * row);
+	}
+
+	/**
+	 * Gets a string of the dictionary.
+	 *
+	 * @param code
+	 *            the code
+	 * @return the string
+	 */
+	private String getString(int code) {
+		if (code < 0 || code >= stringCount) {
+			throw new IllegalStateException("Corrupt sheet snapshot " + file
+					+ ": string " + code);
+		}
+		ByteBuffer buffer = buffer().duplicate();
+		int start = (int) buffer.getLong(stringOffsetsOffset + 8 * code);
+		int end = (int) buffer.getLong(stringOffsetsOffset + 8 * code + 8);
+		byte[] bytes = new byte[end - start];
+		buffer.position(start);
+		buffer.get(bytes);
+		return new String(bytes, SheetSnapshotWriter.UTF_8);
+	}
+
+	/**
+	 * Gets the offset of the entry of a column in the column table.
+	 *
+	 * @param column
+	 *            the column index
+	 * @return the offset
+	 */
+	private int columnEntry(int column) {
+		return columnTableOffset + SheetSnapshotWriter.COLUMN_ENTRY_SIZE
+				* column;
+	}
+
+	/**
+	 * Gets the mapped file.
+	 *
+	 * @return the buffer
+	 */
+	private ByteBuffer buffer() {
+		ByteBuffer mapped = buffer;
+		if (null == mapped) {
+			throw new IllegalStateException("Sheet snapshot " + file
+					+ " is closed");
+		}
+		return mapped;
+	}
+
+	/**
+	 * Checks a row index.
+	 *
+	 * @param row
+	 *            the row index
+	 */
+	private void checkRow(int row) {
+		if (row < 0 || row >= rowCount) {
+			throw new IndexOutOfBoundsException("Row " + row + " of "
+					+ rowCount);
+		}
+	}
+
+	/**
+	 * Checks a column index.
+	 *
+	 * @param column
+	 *            the column index
+	 */
+	private void checkColumn(int column) {
+		if (column < 0 || column >= columnCount) {
+			throw new IndexOutOfBoundsException("Column " + column + " of "
+					+ columnCount);
+		}
+	}
+
+	/**
+	 * Creates a column of a row.
+	 *
+	 * @param name
+	 *            the column name
+	 * @param value
+	 *            the column value
+	 * @return the excel dto
+	 */
+	private static ExcelDTO newExcelDTO(String name, String value) {
+		ExcelDTO objExcelDTO = new ExcelDTO();
+		objExcelDTO.setColumnName(name);
+		objExcelDTO.setColumnValue(value);
+		return objExcelDTO;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "SheetSnapshot [" + file + ", " + rowCount + " rows, "
+				+ columnCount + " columns, " + stringCount + " strings]";
+	}
+}
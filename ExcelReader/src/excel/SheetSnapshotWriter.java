@@ -0,0 +1,541 @@
+package excel;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import excel.ColumnarSheet.ColumnType;
+
+/**
+ * The Class SheetSnapshotWriter. Collects a parsed sheet column by column and
+ * writes it as a {@link SheetSnapshot} file. The rows are built by an
+ * {@link ExcelDTORowBuilder} exactly as a map read builds them; the writer
+ * only records the column and the type of every cell on its way, so the rows
+ * can be stored by column and rebuilt in the same order.
+ * <p>
+ * A row is stored by column when its cells are in column order, followed by
+ * the blank cells the row builder appends for missing header columns. Any
+ * other row is stored as it is, cell by cell.
+ *
+ * @author Sourav
+ */
+class SheetSnapshotWriter implements CellHandler, RowHandler {
+
+	/** The encoding of the strings. */
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** The first bytes of a snapshot file, "XLSNAP" and the version. */
+	static final long MAGIC = 0x584C534E41500001L;
+
+	/** The size of the file header. */
+	static final int HEADER_SIZE = 64;
+
+	/** The size of an entry of the column table. */
+	static final int COLUMN_ENTRY_SIZE = 24;
+
+	/** Code of a column the row has no cell in. */
+	static final int ABSENT = -1;
+
+	/** Code of a blank cell appended for a missing header column. */
+	static final int APPENDED = -2;
+
+	/** The column name of the cells of the header row. */
+	static final String HEADER = "HEADER";
+
+	/** The initial capacity of the blocks. */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** The kind of a blank cell, or of an empty text. */
+	private static final int BLANK = -1;
+
+	/** Builds the rows, handing them back to this writer. */
+	private final ExcelDTORowBuilder rowBuilder;
+
+	/** The columns. */
+	private final List<ColumnBlock> columns = new ArrayList<ColumnBlock>();
+
+	/** The row numbers. */
+	private int[] rowNumbers = new int[INITIAL_CAPACITY];
+
+	/** The row count, including the header row. */
+	private int rowCount;
+
+	/** The header names by column, "" in gaps. */
+	private final List<String> headerNames = new ArrayList<String>();
+
+	/** The first column of every header name. */
+	private final Map<String, Integer> firstColumns = new HashMap<String, Integer>();
+
+	/** The distinct strings. */
+	private final List<String> strings = new ArrayList<String>();
+
+	/** The code of every distinct string. */
+	private final Map<String, Integer> stringCodes = new HashMap<String, Integer>();
+
+	/** The rows stored cell by cell, by row index. */
+	private final Map<Integer, int[]> irregularRows = new HashMap<Integer, int[]>();
+
+	/** The columns of the cells of the current row, in order. */
+	private int[] cellColumns = new int[INITIAL_CAPACITY];
+
+	/** The kinds of the cells of the current row, a column type or blank. */
+	private int[] cellKinds = new int[INITIAL_CAPACITY];
+
+	/** The raw values of the cells of the current row. */
+	private long[] cellValues = new long[INITIAL_CAPACITY];
+
+	/** The number of cells of the current row. */
+	private int cellCount;
+
+	/**
+	 * Instantiates a new sheet snapshot writer.
+	 *
+	 * @param completeRows
+	 *            whether rows are completed from the header, as for xlsx
+	 */
+	SheetSnapshotWriter(boolean completeRows) {
+		this.rowBuilder = new ExcelDTORowBuilder(this, completeRows);
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.CellHandler#startRow(int)
+	 */
+	public void startRow(int rowNumber) {
+		cellCount = 0;
+		rowBuilder.startRow(rowNumber);
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.CellHandler#stringCell(int, java.lang.String)
+	 */
+	public void stringCell(int column, String value) {
+		record(column, null == value || value.length() == 0 ? BLANK
+				: ColumnType.STRING.ordinal(), 0);
+		rowBuilder.stringCell(column, value);
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.CellHandler#numericCell(int, double, excel.CellFormat)
+	 */
+	public void numericCell(int column, double value, CellFormat format) {
+		if (format.isDate() && DateUtil.isValidExcelDate(value)) {
+			record(column, ColumnType.DATE.ordinal(), DateUtil.getJavaDate(
+					value).getTime());
+		} else if (format.isDate()) {
+			// out of the range of Excel dates, kept as its text
+			record(column, ColumnType.STRING.ordinal(), 0);
+		} else {
+			record(column, ColumnType.NUMBER.ordinal(),
+					Double.doubleToRawLongBits(value));
+		}
+		rowBuilder.numericCell(column, value, format);
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.CellHandler#booleanCell(int, boolean)
+	 */
+	public void booleanCell(int column, boolean value) {
+		record(column, ColumnType.BOOLEAN.ordinal(), value ? 1 : 0);
+		rowBuilder.booleanCell(column, value);
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.CellHandler#errorCell(int, java.lang.String)
+	 */
+	public void errorCell(int column, String value) {
+		record(column, ColumnType.STRING.ordinal(), 0);
+		rowBuilder.errorCell(column, value);
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.CellHandler#blankCell(int)
+	 */
+	public void blankCell(int column) {
+		record(column, BLANK, 0);
+		rowBuilder.blankCell(column);
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.CellHandler#endRow(int)
+	 */
+	public void endRow(int rowNumber) {
+		rowBuilder.endRow(rowNumber);
+	}
+
+	/**
+	 * Records a cell of the current row.
+	 *
+	 * @param column
+	 *            the column index
+	 * @param kind
+	 *            the ordinal of its column type, or blank
+	 * @param value
+	 *            the raw value: double bits, epoch millis or 0 and 1
+	 */
+	private void record(int column, int kind, long value) {
+		if (cellCount == cellColumns.length) {
+			cellColumns = Arrays.copyOf(cellColumns, cellCount * 2);
+			cellKinds = Arrays.copyOf(cellKinds, cellCount * 2);
+			cellValues = Arrays.copyOf(cellValues, cellCount * 2);
+		}
+		cellColumns[cellCount] = column;
+		cellKinds[cellCount] = kind;
+		cellValues[cellCount] = value;
+		cellCount++;
+	}
+
+	/* (non-Javadoc)
+	 * @see excel.RowHandler#handleRow(int, java.util.List)
+	 */
+	public void handleRow(int rowNumber, List<ExcelDTO> row) {
+		int rowIndex = rowCount;
+		if (rowCount == rowNumbers.length) {
+			rowNumbers = Arrays.copyOf(rowNumbers, rowCount * 2);
+		}
+		rowNumbers[rowCount++] = rowNumber;
+
+		if (rowIndex == 0) {
+			for (int i = 0; i < cellCount; i++) {
+				while (headerNames.size() <= cellColumns[i]) {
+					headerNames.add("");
+				}
+				headerNames.set(cellColumns[i], row.get(i).getColumnValue());
+			}
+			for (int column = 0; column < headerNames.size(); column++) {
+				if (!firstColumns.containsKey(headerNames.get(column))) {
+					firstColumns.put(headerNames.get(column), column);
+				}
+			}
+		}
+
+		if (isRegular(rowIndex, row)) {
+			for (int i = 0; i < cellCount; i++) {
+				ColumnBlock column = getColumn(cellColumns[i]);
+				column.setCode(rowIndex, code(row.get(i).getColumnValue()));
+				if (rowIndex > 0) {
+					column.setValue(rowIndex, cellKinds[i], cellValues[i]);
+				}
+			}
+			for (int i = cellCount; i < row.size(); i++) {
+				getColumn(firstColumns.get(row.get(i).getColumnName()))
+						.setCode(rowIndex, APPENDED);
+			}
+		} else {
+			// column, name and value of every cell; -1 for appended cells
+			int[] cells = new int[row.size() * 3];
+			for (int i = 0; i < row.size(); i++) {
+				cells[i * 3] = i < cellCount ? cellColumns[i] : -1;
+				if (i < cellCount) {
+					getColumn(cellColumns[i]);
+				}
+				cells[i * 3 + 1] = code(row.get(i).getColumnName());
+				cells[i * 3 + 2] = code(row.get(i).getColumnValue());
+			}
+			irregularRows.put(rowIndex, cells);
+		}
+	}
+
+	/**
+	 * Checks if a row can be stored by column: its cells are in column order
+	 * with the name of their column, followed by blank cells appended for
+	 * header columns it has no cell in, also in column order.
+	 *
+	 * @param rowIndex
+	 *            the row index
+	 * @param row
+	 *            the row
+	 * @return true, if the row can be stored by column
+	 */
+	private boolean isRegular(int rowIndex, List<ExcelDTO> row) {
+		if (row.size() < cellCount) {
+			return false;
+		}
+		int previous = -1;
+		for (int i = 0; i < cellCount; i++) {
+			int column = cellColumns[i];
+			if (column <= previous
+					|| !getName(rowIndex, column).equals(
+							row.get(i).getColumnName())
+					|| null == row.get(i).getColumnValue()) {
+				return false;
+			}
+			previous = column;
+		}
+		previous = -1;
+		for (int i = cellCount; i < row.size(); i++) {
+			Integer column = firstColumns.get(row.get(i).getColumnName());
+			if (rowIndex == 0 || null == column || column <= previous
+					|| !"".equals(row.get(i).getColumnValue())) {
+				return false;
+			}
+			for (int j = 0; j < cellCount; j++) {
+				if (cellColumns[j] == column) {
+					return false;
+				}
+			}
+			previous = column;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the name of the cells of a column in a row.
+	 *
+	 * @param rowIndex
+	 *            the row index
+	 * @param column
+	 *            the column index
+	 * @return HEADER in the header row, the header name of the column below
+	 */
+	private String getName(int rowIndex, int column) {
+		if (rowIndex == 0) {
+			return HEADER;
+		}
+		return column < headerNames.size() ? headerNames.get(column) : "";
+	}
+
+	/**
+	 * Gets the code of a string, adding it to the strings if new.
+	 *
+	 * @param value
+	 *            the string
+	 * @return the code
+	 */
+	private int code(String value) {
+		Integer code = stringCodes.get(value);
+		if (null == code) {
+			code = strings.size();
+			strings.add(value);
+			stringCodes.put(value, code);
+		}
+		return code;
+	}
+
+	/**
+	 * Gets a column, adding columns up to it.
+	 *
+	 * @param column
+	 *            the column index
+	 * @return the column
+	 */
+	private ColumnBlock getColumn(int column) {
+		while (columns.size() <= column) {
+			columns.add(new ColumnBlock());
+		}
+		return columns.get(column);
+	}
+
+	/**
+	 * Writes the snapshot file. All offsets are from the start of the file,
+	 * numbers are big endian:
+	 * <ul>
+	 * <li>header: magic, row count, column count, string count and the offsets
+	 * of the sections below;</li>
+	 * <li>row numbers: an int per row;</li>
+	 * <li>column table: per column the code of its name, its type and the
+	 * offsets of its blocks;</li>
+	 * <li>per column a block of the string codes of its cells, an int per row
+	 * ({@link #ABSENT} or {@link #APPENDED} for no value), and for typed
+	 * columns a block of raw values, a long per row;</li>
+	 * <li>rows stored cell by cell: their count, then per row its index and
+	 * the column, name code and value code of every cell;</li>
+	 * <li>string offsets, a long per string and one past the last;</li>
+	 * <li>string data, UTF-8.</li>
+	 * </ul>
+	 *
+	 * @param file
+	 *            the file
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	void write(File file) throws IOException {
+		int columnCount = columns.size();
+		int[] nameCodes = new int[columnCount];
+		for (int column = 0; column < columnCount; column++) {
+			nameCodes[column] = code(getName(1, column));
+		}
+		byte[][] stringBytes = new byte[strings.size()][];
+		long stringDataSize = 0;
+		for (int i = 0; i < stringBytes.length; i++) {
+			stringBytes[i] = strings.get(i).getBytes(UTF_8);
+			stringDataSize += stringBytes[i].length;
+		}
+
+		long rowNumbersOffset = HEADER_SIZE;
+		long columnTableOffset = rowNumbersOffset + 4L * rowCount;
+		long offset = columnTableOffset + (long) COLUMN_ENTRY_SIZE
+				* columnCount;
+		long[] codesOffsets = new long[columnCount];
+		long[] valuesOffsets = new long[columnCount];
+		for (int column = 0; column < columnCount; column++) {
+			codesOffsets[column] = offset;
+			offset += 4L * rowCount;
+			if (columns.get(column).isTyped()) {
+				valuesOffsets[column] = offset;
+				offset += 8L * rowCount;
+			}
+		}
+		Integer[] irregular = irregularRows.keySet().toArray(
+				new Integer[irregularRows.size()]);
+		Arrays.sort(irregular);
+		long irregularOffset = offset;
+		offset += 4;
+		for (Integer rowIndex : irregular) {
+			offset += 8 + 4L * irregularRows.get(rowIndex).length;
+		}
+		long stringOffsetsOffset = offset;
+		long stringDataOffset = stringOffsetsOffset + 8L
+				* (stringBytes.length + 1);
+		if (stringDataOffset + stringDataSize > Integer.MAX_VALUE) {
+			throw new IOException("Snapshot of " + rowCount + " rows and "
+					+ columnCount + " columns exceeds 2 GB");
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), 1 << 16));
+		try {
+			out.writeLong(MAGIC);
+			out.writeInt(rowCount);
+			out.writeInt(columnCount);
+			out.writeInt(stringBytes.length);
+			out.writeInt(0);
+			out.writeLong(rowNumbersOffset);
+			out.writeLong(columnTableOffset);
+			out.writeLong(irregularOffset);
+			out.writeLong(stringOffsetsOffset);
+			out.writeLong(stringDataOffset);
+
+			for (int row = 0; row < rowCount; row++) {
+				out.writeInt(rowNumbers[row]);
+			}
+			for (int column = 0; column < columnCount; column++) {
+				out.writeInt(nameCodes[column]);
+				out.writeInt(columns.get(column).type.ordinal());
+				out.writeLong(codesOffsets[column]);
+				out.writeLong(valuesOffsets[column]);
+			}
+			for (ColumnBlock column : columns) {
+				for (int row = 0; row < rowCount; row++) {
+					out.writeInt(row < column.size ? column.codes[row] : ABSENT);
+				}
+				if (column.isTyped()) {
+					long missing = column.type == ColumnType.NUMBER ? Double
+							.doubleToRawLongBits(Double.NaN) : Long.MIN_VALUE;
+					for (int row = 0; row < rowCount; row++) {
+						out.writeLong(row < column.size && column.hasValue[row] ? column.values[row]
+								: missing);
+					}
+				}
+			}
+			out.writeInt(irregular.length);
+			for (Integer rowIndex : irregular) {
+				int[] cells = irregularRows.get(rowIndex);
+				out.writeInt(rowIndex);
+				out.writeInt(cells.length / 3);
+				for (int value : cells) {
+					out.writeInt(value);
+				}
+			}
+			long stringOffset = stringDataOffset;
+			for (byte[] bytes : stringBytes) {
+				out.writeLong(stringOffset);
+				stringOffset += bytes.length;
+			}
+			out.writeLong(stringOffset);
+			for (byte[] bytes : stringBytes) {
+				out.write(bytes);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * The cells of one column: the string codes of all rows, and the raw
+	 * values while all cells holding a value have the same type.
+	 */
+	private static class ColumnBlock {
+
+		/** The type, STRING once types are mixed. */
+		private ColumnType type = ColumnType.EMPTY;
+
+		/** The string codes. */
+		private int[] codes = new int[0];
+
+		/** The raw values. */
+		private long[] values = new long[0];
+
+		/** The rows with a raw value. */
+		private boolean[] hasValue = new boolean[0];
+
+		/** The number of rows up to the last one with a cell. */
+		private int size;
+
+		/**
+		 * Sets the string code of a row.
+		 *
+		 * @param row
+		 *            the row index
+		 * @param code
+		 *            the code
+		 */
+		void setCode(int row, int code) {
+			if (row >= codes.length) {
+				int capacity = Math.max(INITIAL_CAPACITY, Math.max(
+						codes.length * 2, row + 1));
+				int oldCapacity = codes.length;
+				codes = Arrays.copyOf(codes, capacity);
+				Arrays.fill(codes, oldCapacity, capacity, ABSENT);
+				values = Arrays.copyOf(values, capacity);
+				hasValue = Arrays.copyOf(hasValue, capacity);
+			}
+			codes[row] = code;
+			size = row + 1;
+		}
+
+		/**
+		 * Sets the raw value of a row, after its code.
+		 *
+		 * @param row
+		 *            the row index
+		 * @param kind
+		 *            the ordinal of the column type of the cell, or blank
+		 * @param value
+		 *            the raw value
+		 */
+		void setValue(int row, int kind, long value) {
+			if (kind == BLANK || type == ColumnType.STRING) {
+				return;
+			}
+			ColumnType cellType = ColumnType.values()[kind];
+			if (type == ColumnType.EMPTY) {
+				type = cellType;
+			} else if (type != cellType) {
+				type = ColumnType.STRING;
+				return;
+			}
+			values[row] = value;
+			hasValue[row] = true;
+		}
+
+		/**
+		 * Checks if the column has a block of raw values.
+		 *
+		 * @return true, for number, date and boolean columns
+		 */
+		boolean isTyped() {
+			return type == ColumnType.NUMBER || type == ColumnType.DATE
+					|| type == ColumnType.BOOLEAN;
+		}
+	}
+}
@@ -0,0 +1,673 @@
+package excel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The Class SpillingRowMap. The rows of a sheet read with a {@link RowStore}:
+ * the same map of rows by row number as {@link ExcelReader#read(File, int,
+ * int)} returns, whose rows may be kept in a temp file instead of the heap.
+ * <p>
+ * The rows are added in ascending order into blocks of consecutive rows. The
+ * blocks on the heap are a cache, least recently used first, within the heap
+ * budget of the store: beyond it the least recently used block is dropped,
+ * after being written to the temp file if it is not there yet. A block is
+ * written once and compactly: row numbers as differences, column names as
+ * indexes into the names of the map, which stay on the heap, values as UTF-8,
+ * and all counts and lengths as variable length integers. Only the first and
+ * last row number, the offset and the length of every block stay on the heap,
+ * so a row is found by a binary search over the blocks and read back with its
+ * block.
+ * <p>
+ * The map cannot be changed, and changes to the cells of its rows are lost
+ * once their block leaves the heap. It iterates in ascending row order, one
+ * block after the other. It is thread safe. Closing it deletes the temp file;
+ * a closed map throws {@link IllegalStateException}, and temp file errors are
+ * thrown as {@link UncheckedIOException}.
+ *
+ * @author Sourav
+ */
+public final class SpillingRowMap extends AbstractMap<Integer, List<ExcelDTO>>
+		implements Closeable {
+
+	/** The Constant LOG. */
+	private static final Logger LOG = Logger.getLogger(SpillingRowMap.class);
+
+	/** The encoding of the values in the temp file. */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** The Constant EMPTY_STRING. */
+	private static final String EMPTY_STRING = "";
+
+	/** The heap budget. */
+	private final long maxHeapBytes;
+
+	/** The directory of the temp file, null for the default one. */
+	private final File directory;
+
+	/** The number of rows of a block. */
+	private final int blockRows;
+
+	/** The blocks, in row order. */
+	private final List<Block> blocks = new ArrayList<Block>();
+
+	/** The full blocks on the heap by index, least recently used first. */
+	private final LinkedHashMap<Integer, Block> resident = new LinkedHashMap<Integer, Block>(
+			16, 0.75f, true);
+
+	/** The estimated heap used by the rows on the heap. */
+	private long residentBytes;
+
+	/** The column names, by index. */
+	private final List<String> names = new ArrayList<String>();
+
+	/** The indexes of the column names. */
+	private final Map<String, Integer> nameIndexes = new HashMap<String, Integer>();
+
+	/** Encodes the blocks written. */
+	private final BlockOutput output = new BlockOutput();
+
+	/** The entries, iterated in row order. */
+	private final EntrySet entrySet = new EntrySet();
+
+	/** The block the rows are added to, null if none. */
+	private Block filling;
+
+	/** The number of rows. */
+	private int rowCount;
+
+	/** The temp file, null until a block is written. */
+	private File file;
+
+	/** The temp file, open while the map is. */
+	private FileChannel channel;
+
+	/** The size of the temp file. */
+	private long fileBytes;
+
+	/** Set when the map is closed. */
+	private boolean closed;
+
+	/**
+	 * Instantiates a new spilling row map.
+	 *
+	 * @param maxHeapBytes
+	 *            the heap budget
+	 * @param directory
+	 *            the directory of the temp file, null for the default one
+	 * @param blockRows
+	 *            the number of rows of a block
+	 */
+	SpillingRowMap(long maxHeapBytes, File directory, int blockRows) {
+		this.maxHeapBytes = maxHeapBytes;
+		this.directory = directory;
+		this.blockRows = blockRows;
+	}
+
+	/**
+	 * Adds a row after the rows added so far.
+	 *
+	 * @param rowNumber
+	 *            the row number, above the ones added so far
+	 * @param row
+	 *            the row
+	 */
+	synchronized void add(int rowNumber, List<ExcelDTO> row) {
+		checkOpen();
+		if (rowCount > 0
+				&& rowNumber <= blocks.get(blocks.size() - 1).lastRowNumber) {
+			throw new IllegalArgumentException("Row " + rowNumber
+					+ " added after row "
+					+ blocks.get(blocks.size() - 1).lastRowNumber);
+		}
+		if (null == filling) {
+			filling = new Block(blocks.size(), rowNumber, blockRows);
+			blocks.add(filling);
+		}
+		long bytes = ParseCache.estimateRowSize(row);
+		filling.add(rowNumber, row, bytes);
+		residentBytes += bytes;
+		rowCount++;
+		if (filling.rowCount == blockRows) {
+			finish();
+		}
+	}
+
+	/**
+	 * Ends the block the rows are added to, which joins the cache.
+	 */
+	synchronized void finish() {
+		if (null != filling) {
+			resident.put(filling.index, filling);
+			filling = null;
+			evict();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.AbstractMap#size()
+	 */
+	public synchronized int size() {
+		checkOpen();
+		return rowCount;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.AbstractMap#containsKey(java.lang.Object)
+	 */
+	public boolean containsKey(Object key) {
+		return null != get(key);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.AbstractMap#get(java.lang.Object)
+	 */
+	public synchronized List<ExcelDTO> get(Object key) {
+		checkOpen();
+		if (!(key instanceof Integer)) {
+			return null;
+		}
+		int rowNumber = ((Integer) key).intValue();
+		Block block = findBlock(rowNumber);
+		if (null == block) {
+			return null;
+		}
+		load(block);
+		int position = Arrays.binarySearch(block.rowNumbers, 0,
+				block.rowCount, rowNumber);
+		return position < 0 ? null : block.rows.get(position);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.AbstractMap#entrySet()
+	 */
+	public Set<Map.Entry<Integer, List<ExcelDTO>>> entrySet() {
+		return entrySet;
+	}
+
+	/**
+	 * Gets the size of the temp file.
+	 *
+	 * @return the bytes written, 0 if no block left the heap
+	 */
+	public synchronized long getFileBytes() {
+		return fileBytes;
+	}
+
+	/**
+	 * Closes the map and deletes its temp file. Does nothing when already
+	 * closed.
+	 */
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		blocks.clear();
+		resident.clear();
+		filling = null;
+		if (null != channel) {
+			try {
+				channel.close();
+			} catch (IOException ex) {
+				LOG.warn("Error closing " + file + ":::" + ex);
+			}
+		}
+		if (null != file && !file.delete() && file.exists()) {
+			LOG.warn("Cannot delete row file " + file);
+		}
+	}
+
+	/**
+	 * Throws if the map is closed.
+	 */
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Row map is closed");
+		}
+	}
+
+	/**
+	 * Finds the block which may hold a row.
+	 *
+	 * @param rowNumber
+	 *            the row number
+	 * @return the block, null if no block spans the row number
+	 */
+	private Block findBlock(int rowNumber) {
+		int low = 0;
+		int high = blocks.size() - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			Block block = blocks.get(middle);
+			if (rowNumber < block.firstRowNumber) {
+				high = middle - 1;
+			} else if (rowNumber > block.lastRowNumber) {
+				low = middle + 1;
+			} else {
+				return block;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Makes sure the rows of a block are on the heap, reading them back from
+	 * the temp file if needed.
+	 *
+	 * @param block
+	 *            the block
+	 */
+	private void load(Block block) {
+		if (null != block.rows) {
+			// touches the block in the cache
+			resident.get(block.index);
+			return;
+		}
+		try {
+			read(block);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		resident.put(block.index, block);
+		residentBytes += block.heapBytes;
+		evict();
+	}
+
+	/**
+	 * Drops the least recently used blocks from the heap while the budget is
+	 * exceeded, writing those not written yet. The most recently used block
+	 * stays.
+	 */
+	private void evict() {
+		Iterator<Block> eldest = resident.values().iterator();
+		while (residentBytes > maxHeapBytes && resident.size() > 1) {
+			Block block = eldest.next();
+			if (block.offset < 0) {
+				try {
+					write(block);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}
+			eldest.remove();
+			block.rowNumbers = null;
+			block.rows = null;
+			residentBytes -= block.heapBytes;
+		}
+	}
+
+	/**
+	 * Appends a block to the temp file, creating it if needed.
+	 *
+	 * @param block
+	 *            the block
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void write(Block block) throws IOException {
+		output.reset();
+		output.writeVarInt(block.rowCount);
+		int previous = block.firstRowNumber;
+		for (int i = 0; i < block.rowCount; i++) {
+			output.writeVarInt(block.rowNumbers[i] - previous);
+			previous = block.rowNumbers[i];
+			List<ExcelDTO> row = block.rows.get(i);
+			output.writeVarInt(row.size());
+			for (ExcelDTO cell : row) {
+				output.writeVarInt(nameIndex(cell.getColumnName()));
+				output.writeString(cell.getColumnValue());
+			}
+		}
+
+		if (null == channel) {
+			open();
+		}
+		ByteBuffer buffer = output.toBuffer();
+		long offset = fileBytes;
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, offset + buffer.position());
+		}
+		block.offset = offset;
+		block.length = buffer.limit();
+		fileBytes += block.length;
+	}
+
+	/**
+	 * Reads a block back from the temp file.
+	 *
+	 * @param block
+	 *            the block
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void read(Block block) throws IOException {
+		byte[] bytes = new byte[block.length];
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, block.offset + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of " + file);
+			}
+		}
+
+		BlockInput input = new BlockInput(bytes);
+		int count = input.readVarInt();
+		int[] rowNumbers = new int[count];
+		List<List<ExcelDTO>> rows = new ArrayList<List<ExcelDTO>>(count);
+		int rowNumber = block.firstRowNumber;
+		for (int i = 0; i < count; i++) {
+			rowNumber += input.readVarInt();
+			rowNumbers[i] = rowNumber;
+			int cellCount = input.readVarInt();
+			List<ExcelDTO> row = new ArrayList<ExcelDTO>(cellCount);
+			for (int column = 0; column < cellCount; column++) {
+				int name = input.readVarInt();
+				ExcelDTO cell = new ExcelDTO();
+				cell.setColumnName(0 == name ? null : names.get(name - 1));
+				cell.setColumnValue(input.readString());
+				row.add(cell);
+			}
+			rows.add(row);
+		}
+		block.rowNumbers = rowNumbers;
+		block.rows = rows;
+	}
+
+	/**
+	 * Creates and opens the temp file.
+	 *
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void open() throws IOException {
+		File created = File.createTempFile("rows-", ".bin", directory);
+		try {
+			channel = new RandomAccessFile(created, "rw").getChannel();
+		} finally {
+			if (null == channel && !created.delete()) {
+				LOG.warn("Cannot delete row file " + created);
+			}
+		}
+		file = created;
+		LOG.info("Spilling rows beyond " + maxHeapBytes + " heap bytes to "
+				+ file);
+	}
+
+	/**
+	 * Gets the index of a column name, adding it if new.
+	 *
+	 * @param name
+	 *            the column name, may be null
+	 * @return the index plus one, 0 for null
+	 */
+	private int nameIndex(String name) {
+		if (null == name) {
+			return 0;
+		}
+		Integer index = nameIndexes.get(name);
+		if (null == index) {
+			index = Integer.valueOf(names.size());
+			names.add(name);
+			nameIndexes.put(name, index);
+		}
+		return index.intValue() + 1;
+	}
+
+	/**
+	 * A block of consecutive rows.
+	 */
+	private static final class Block {
+
+		/** The index of the block. */
+		private final int index;
+
+		/** The first row number. */
+		private final int firstRowNumber;
+
+		/** The last row number. */
+		private int lastRowNumber;
+
+		/** The number of rows. */
+		private int rowCount;
+
+		/** The estimated heap used by the rows. */
+		private long heapBytes;
+
+		/** The offset in the temp file, -1 until written. */
+		private long offset = -1;
+
+		/** The length in the temp file. */
+		private int length;
+
+		/** The row numbers, null while not on the heap. */
+		private int[] rowNumbers;
+
+		/** The rows, null while not on the heap. */
+		private List<List<ExcelDTO>> rows;
+
+		/**
+		 * Instantiates a new block.
+		 *
+		 * @param index
+		 *            the index of the block
+		 * @param firstRowNumber
+		 *            the first row number
+		 * @param capacity
+		 *            the number of rows of a block
+		 */
+		Block(int index, int firstRowNumber, int capacity) {
+			this.index = index;
+			this.firstRowNumber = firstRowNumber;
+			this.rowNumbers = new int[capacity];
+			this.rows = new ArrayList<List<ExcelDTO>>(capacity);
+		}
+
+		/**
+		 * Adds a row.
+		 *
+		 * @param rowNumber
+		 *            the row number
+		 * @param row
+		 *            the row
+		 * @param bytes
+		 *            the estimated heap used by the row
+		 */
+		void add(int rowNumber, List<ExcelDTO> row, long bytes) {
+			rowNumbers[rowCount++] = rowNumber;
+			rows.add(row);
+			lastRowNumber = rowNumber;
+			heapBytes += bytes;
+		}
+	}
+
+	/**
+	 * Encodes a block into a reused buffer.
+	 */
+	private static final class BlockOutput extends ByteArrayOutputStream {
+
+		/**
+		 * Instantiates a new block output.
+		 */
+		BlockOutput() {
+			super(1 << 16);
+		}
+
+		/**
+		 * Writes a non negative int in 1 to 5 bytes, 7 bits at a time.
+		 *
+		 * @param value
+		 *            the value
+		 */
+		void writeVarInt(int value) {
+			while ((value & ~0x7F) != 0) {
+				write((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			write(value);
+		}
+
+		/**
+		 * Writes a string as its UTF-8 length plus one and bytes, or 0 for
+		 * null.
+		 *
+		 * @param value
+		 *            the string, may be null
+		 */
+		void writeString(String value) {
+			if (null == value) {
+				writeVarInt(0);
+				return;
+			}
+			byte[] bytes = value.getBytes(UTF_8);
+			writeVarInt(bytes.length + 1);
+			write(bytes, 0, bytes.length);
+		}
+
+		/**
+		 * Wraps the bytes written.
+		 *
+		 * @return the buffer
+		 */
+		ByteBuffer toBuffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+	}
+
+	/**
+	 * Decodes a block written by {@link BlockOutput}.
+	 */
+	private static final class BlockInput {
+
+		/** The bytes of the block. */
+		private final byte[] bytes;
+
+		/** The position of the next byte. */
+		private int position;
+
+		/**
+		 * Instantiates a new block input.
+		 *
+		 * @param bytes
+		 *            the bytes of the block
+		 */
+		BlockInput(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		/**
+		 * Reads an int written by {@link BlockOutput#writeVarInt(int)}.
+		 *
+		 * @return the value
+		 */
+		int readVarInt() {
+			int value = 0;
+			for (int shift = 0;; shift += 7) {
+				int b = bytes[position++];
+				value |= (b & 0x7F) << shift;
+				if (b >= 0) {
+					return value;
+				}
+			}
+		}
+
+		/**
+		 * Reads a string written by {@link BlockOutput#writeString(String)}.
+		 *
+		 * @return the string, may be null
+		 */
+		String readString() {
+			int length = readVarInt() - 1;
+			if (length <= 0) {
+				return length < 0 ? null : EMPTY_STRING;
+			}
+			String value = new String(bytes, position, length, UTF_8);
+			position += length;
+			return value;
+		}
+	}
+
+	/**
+	 * The entries of the map, in row order.
+	 */
+	private final class EntrySet extends
+			AbstractSet<Map.Entry<Integer, List<ExcelDTO>>> {
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.AbstractCollection#size()
+		 */
+		public int size() {
+			return SpillingRowMap.this.size();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.AbstractCollection#iterator()
+		 */
+		public Iterator<Map.Entry<Integer, List<ExcelDTO>>> iterator() {
+			return new Iterator<Map.Entry<Integer, List<ExcelDTO>>>() {
+
+				/** The index of the block of the next row. */
+				private int blockIndex;
+
+				/** The position of the next row in its block. */
+				private int position;
+
+				public boolean hasNext() {
+					synchronized (SpillingRowMap.this) {
+						checkOpen();
+						return blockIndex < blocks.size();
+					}
+				}
+
+				public Map.Entry<Integer, List<ExcelDTO>> next() {
+					synchronized (SpillingRowMap.this) {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						Block block = blocks.get(blockIndex);
+						load(block);
+						Map.Entry<Integer, List<ExcelDTO>> entry = new AbstractMap.SimpleImmutableEntry<Integer, List<ExcelDTO>>(
+								block.rowNumbers[position], block.rows
+										.get(position));
+						if (++position == block.rowCount) {
+							blockIndex++;
+							position = 0;
+						}
+						return entry;
+					}
+				}
+			};
+		}
+	}
+}
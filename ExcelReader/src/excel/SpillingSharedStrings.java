@@ -0,0 +1,340 @@
+package excel;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.xml.sax.SAXException;
+
+/**
+ * The Class SpillingSharedStrings. Shared strings table which keeps at most
+ * spillThreshold strings on the heap. A larger table is written to two temp
+ * files while it is read: the UTF-8 text of all strings one after the other,
+ * and the offset of every string in the text. The offsets are memory mapped,
+ * the text is read from its file on demand and the most recently used strings
+ * are kept in an LRU cache of cacheSize entries.
+ * 
+ * @author Sourav
+ */
+class SpillingSharedStrings extends SharedStringsHandler implements
+		SharedStrings {
+
+	/** The Constant LOG. */
+	private static final Logger LOG = Logger
+			.getLogger(SpillingSharedStrings.class);
+
+	/** The Constant UTF8. */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The Constant OFFSET_SIZE. */
+	private static final int OFFSET_SIZE = 8;
+
+	/** The Constant BUFFER_SIZE. */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/** The number of strings kept on the heap before spilling. */
+	private final int spillThreshold;
+
+	/** The cache hits, shared with the store. */
+	private final AtomicLong hits;
+
+	/** The cache misses, shared with the store. */
+	private final AtomicLong misses;
+
+	/** The recently used spilled strings. */
+	private final Map<Integer, String> cache;
+
+	/** The strings while the table is on the heap, null once spilled. */
+	private List<String> strings = new ArrayList<String>();
+
+	/** The number of strings. */
+	private int count;
+
+	/** The temp file holding the text, null until spilled. */
+	private File textFile;
+
+	/** The temp file holding the offsets, null until spilled. */
+	private File offsetsFile;
+
+	/** The text output, open while spilling. */
+	private DataOutputStream textOutput;
+
+	/** The offsets output, open while spilling. */
+	private DataOutputStream offsetsOutput;
+
+	/** The offset of the next string in the text. */
+	private long textOffset;
+
+	/** The spilled text, read on demand. */
+	private FileChannel textChannel;
+
+	/** The mapped offsets of the spilled strings, count + 1 of them. */
+	private LongBuffer offsets;
+
+	/**
+	 * Instantiates a new spilling shared strings table.
+	 * 
+	 * @param spillThreshold
+	 *            the number of strings kept on the heap before spilling
+	 * @param cacheSize
+	 *            the number of spilled strings cached
+	 * @param hits
+	 *            the cache hit counter
+	 * @param misses
+	 *            the cache miss counter
+	 */
+	SpillingSharedStrings(int spillThreshold, final int cacheSize,
+			AtomicLong hits, AtomicLong misses) {
+		this.spillThreshold = spillThreshold;
+		this.hits = hits;
+		this.misses = misses;
+		this.cache = new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(
+					Map.Entry<Integer, String> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	/**
+	 * Reads the shared strings table. The temp files are removed again if
+	 * reading fails.
+	 * 
+	 * @param sharedStringsData
+	 *            the content of sharedStrings.xml, or null if the workbook
+	 *            has no shared strings; it is closed when done
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	void read(InputStream sharedStringsData) throws IOException, SAXException {
+		boolean done = false;
+		try {
+			parse(sharedStringsData);
+			if (null == strings) {
+				finishSpill();
+			}
+			done = true;
+		} finally {
+			if (!done) {
+				close();
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see excel.SharedStrings#getCount()
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see excel.SharedStrings#getEntryAt(int)
+	 */
+	public synchronized String getEntryAt(int index) {
+		if (null != strings) {
+			return strings.get(index);
+		}
+		if (index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ count);
+		}
+
+		String string = cache.get(index);
+		if (null != string) {
+			hits.incrementAndGet();
+			return string;
+		}
+		misses.incrementAndGet();
+		try {
+			string = readSpilled(index);
+		} catch (IOException ex) {
+			throw new IllegalStateException("Cannot read shared string "
+					+ index + " from " + textFile, ex);
+		}
+		cache.put(index, string);
+		return string;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see excel.SharedStrings#close()
+	 */
+	public synchronized void close() throws IOException {
+		try {
+			closeOutputs();
+			if (null != textChannel) {
+				textChannel.close();
+			}
+		} finally {
+			textChannel = null;
+			offsets = null;
+			cache.clear();
+			textFile = delete(textFile);
+			offsetsFile = delete(offsetsFile);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see excel.SharedStringsHandler#addString(java.lang.String)
+	 */
+	void addString(String string) throws SAXException {
+		try {
+			if (null != strings) {
+				if (strings.size() < spillThreshold) {
+					strings.add(string);
+					count++;
+					return;
+				}
+				startSpill();
+			}
+			spill(string);
+			count++;
+		} catch (IOException ex) {
+			throw new SAXException(ex);
+		}
+	}
+
+	/**
+	 * Moves the strings read so far to new temp files.
+	 * 
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void startSpill() throws IOException {
+		LOG.info("Spilling shared strings to disk after " + strings.size()
+				+ " strings");
+		textFile = File.createTempFile("sharedStrings", ".txt");
+		offsetsFile = File.createTempFile("sharedStrings", ".idx");
+		textOutput = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(textFile), BUFFER_SIZE));
+		offsetsOutput = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(offsetsFile), BUFFER_SIZE));
+
+		List<String> heapStrings = strings;
+		strings = null;
+		for (String string : heapStrings) {
+			spill(string);
+		}
+	}
+
+	/**
+	 * Writes a string to the temp files.
+	 * 
+	 * @param string
+	 *            the string
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void spill(String string) throws IOException {
+		offsetsOutput.writeLong(textOffset);
+		byte[] bytes = string.getBytes(UTF8);
+		textOutput.write(bytes);
+		textOffset += bytes.length;
+	}
+
+	/**
+	 * Writes the end offset, closes the outputs and maps the offsets.
+	 * 
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void finishSpill() throws IOException {
+		offsetsOutput.writeLong(textOffset);
+		closeOutputs();
+
+		RandomAccessFile offsetsAccess = new RandomAccessFile(offsetsFile, "r");
+		try {
+			// the mapping stays valid once the file is closed
+			offsets = offsetsAccess.getChannel()
+					.map(FileChannel.MapMode.READ_ONLY, 0,
+							(long) (count + 1) * OFFSET_SIZE).asLongBuffer();
+		} finally {
+			offsetsAccess.close();
+		}
+		textChannel = new RandomAccessFile(textFile, "r").getChannel();
+		LOG.info("Spilled " + count + " shared strings, " + textOffset
+				+ " bytes");
+	}
+
+	/**
+	 * Reads a spilled string from the text file.
+	 * 
+	 * @param index
+	 *            the index
+	 * @return the string
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private String readSpilled(int index) throws IOException {
+		long start = offsets.get(index);
+		int length = (int) (offsets.get(index + 1) - start);
+		ByteBuffer bytes = ByteBuffer.allocate(length);
+		while (bytes.hasRemaining()) {
+			if (textChannel.read(bytes, start + bytes.position()) < 0) {
+				throw new IOException("Unexpected end of " + textFile);
+			}
+		}
+		return new String(bytes.array(), 0, length, UTF8);
+	}
+
+	/**
+	 * Closes the outputs, if open.
+	 * 
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void closeOutputs() throws IOException {
+		try {
+			if (null != textOutput) {
+				textOutput.close();
+			}
+		} finally {
+			textOutput = null;
+			if (null != offsetsOutput) {
+				offsetsOutput.close();
+				offsetsOutput = null;
+			}
+		}
+	}
+
+	/**
+	 * Deletes a temp file.
+	 * 
+	 * @param file
+	 *            the file, may be null
+	 * @return null
+	 */
+	private static File delete(File file) {
+		if (null != file && !file.delete()) {
+			// still mapped on some platforms
+			file.deleteOnExit();
+		}
+		return null;
+	}
+}
@@ -0,0 +1,347 @@
+package excel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The Class StyleFormats. The number format of every cell style of an xlsx
+ * workbook, read from the styles.xml part. This is all {@link SheetHandler}
+ * needs from the styles, so the full styles table is not built.
+ * <p>
+ * Once read, the formats are compiled into one {@link CellFormat} per style:
+ * whether the format is a date, the pattern to format with and a fast path
+ * for the common formats are worked out once per workbook, so a numeric cell
+ * costs an array lookup instead of a format lookup and a date test. The
+ * compiled formats keep no state of their own and may be used by several
+ * threads.
+ * 
+ * @author Sourav
+ */
+class StyleFormats extends DefaultHandler {
+
+	private static String numFmt = "numFmt";
+	private static String numFmtId = "numFmtId";
+	private static String formatCode = "formatCode";
+	private static String cellXfs = "cellXfs";
+	private static String xf = "xf";
+
+	/** The custom number formats by id. */
+	private final Map<Integer, String> numberFormats = new HashMap<Integer, String>();
+
+	/** The number format id of every cell style. */
+	private int[] styleFormatIds = new int[16];
+
+	/** The number of cell styles. */
+	private int styleCount;
+
+	/** Set while inside the cell styles. */
+	private boolean inCellXfs;
+
+	/** Set when the workbook uses the 1904 date system. */
+	private boolean date1904;
+
+	/** The compiled format of every cell style. */
+	private CellFormat[] cellFormats = new CellFormat[0];
+
+	/** The compiled format of unknown styles. */
+	private CellFormat defaultCellFormat = compile(0, getFormatString(0));
+
+	/** The format of numeric cells without a number format. */
+	static final CellFormat NO_FORMAT = new CompiledFormat(Kind.EMPTY, false,
+			0, null);
+
+	/**
+	 * Reads the style formats.
+	 * 
+	 * @param stylesData
+	 *            the content of styles.xml, or null if the workbook has no
+	 *            styles; it is closed when done
+	 * @param date1904
+	 *            whether the workbook uses the 1904 date system
+	 * @return the style formats
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	static StyleFormats read(InputStream stylesData, boolean date1904)
+			throws IOException, SAXException {
+
+		StyleFormats styleFormats = new StyleFormats();
+		styleFormats.date1904 = date1904;
+		if (null == stylesData) {
+			styleFormats.compile();
+			return styleFormats;
+		}
+		try {
+			XMLReader parser = ParserResources.acquireXMLReader();
+			try {
+				parser.setContentHandler(styleFormats);
+				parser.parse(new InputSource(stylesData));
+			} finally {
+				ParserResources.releaseXMLReader(parser);
+			}
+		} finally {
+			stylesData.close();
+		}
+		return styleFormats;
+	}
+
+	/**
+	 * Checks if the workbook uses the 1904 date system, whose serial dates
+	 * are 1462 days behind those of the 1900 system.
+	 * 
+	 * @return true, if 1904 based
+	 */
+	boolean isDate1904() {
+		return date1904;
+	}
+
+	/**
+	 * Gets the number of cell styles.
+	 * 
+	 * @return the style count
+	 */
+	int getStyleCount() {
+		return styleCount;
+	}
+
+	/**
+	 * Gets the compiled number format of a cell style.
+	 * 
+	 * @param styleIndex
+	 *            the style index
+	 * @return the cell format, that of General for an unknown style
+	 */
+	CellFormat getCellFormat(int styleIndex) {
+		if (styleIndex < 0 || styleIndex >= cellFormats.length) {
+			return defaultCellFormat;
+		}
+		return cellFormats[styleIndex];
+	}
+
+	/**
+	 * Gets the number format string of a format id.
+	 * 
+	 * @param formatIndex
+	 *            the format index
+	 * @return the format string, null if the format is unknown
+	 */
+	private String getFormatString(int formatIndex) {
+		String formatString = numberFormats.get(formatIndex);
+		if (null == formatString) {
+			formatString = BuiltinFormats.getBuiltinFormat(formatIndex);
+		}
+		return formatString;
+	}
+
+	/**
+	 * Compiles the formats of all cell styles. Styles sharing a number
+	 * format share its compiled format.
+	 */
+	private void compile() {
+		Map<Integer, CellFormat> compiled = new HashMap<Integer, CellFormat>();
+		cellFormats = new CellFormat[styleCount];
+		for (int i = 0; i < styleCount; i++) {
+			int formatIndex = styleFormatIds[i];
+			CellFormat cellFormat = compiled.get(formatIndex);
+			if (null == cellFormat) {
+				cellFormat = compile(formatIndex, getFormatString(formatIndex));
+				compiled.put(formatIndex, cellFormat);
+			}
+			cellFormats[i] = cellFormat;
+		}
+		defaultCellFormat = compile(0, getFormatString(0));
+	}
+
+	/**
+	 * Compiles a number format.
+	 * 
+	 * @param formatIndex
+	 *            the format index
+	 * @param formatString
+	 *            the format string, null if unknown
+	 * @return the cell format
+	 */
+	private static CellFormat compile(int formatIndex, String formatString) {
+		if (null == formatString) {
+			return NO_FORMAT;
+		}
+		boolean date = DateUtil.isADateFormat(formatIndex, formatString);
+		if (CompiledFormat.XML_DATE_FORMAT.equals(formatString)) {
+			return new CompiledFormat(Kind.ISO_DATE, date, formatIndex,
+					CompiledFormat.EXCEL_DATE_FORMAT);
+		}
+		if (!date
+				&& (CompiledFormat.GENERAL.equalsIgnoreCase(formatString) || CompiledFormat.TEXT
+						.equals(formatString))) {
+			return new CompiledFormat(Kind.GENERAL, false, formatIndex,
+					formatString);
+		}
+		return new CompiledFormat(Kind.PATTERN, date, formatIndex,
+				formatString);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.xml.sax.helpers.DefaultHandler#startElement(java.lang.String,
+	 * java.lang.String, java.lang.String, org.xml.sax.Attributes)
+	 */
+	public void startElement(String uri, String localName, String name,
+			Attributes attributes) throws SAXException {
+		if (numFmt.equals(name)) {
+			numberFormats.put(Integer.valueOf(attributes.getValue(numFmtId)),
+					attributes.getValue(formatCode));
+		} else if (cellXfs.equals(name)) {
+			inCellXfs = true;
+		} else if (inCellXfs && xf.equals(name)) {
+			if (styleCount == styleFormatIds.length) {
+				int[] grown = new int[styleCount * 2];
+				System.arraycopy(styleFormatIds, 0, grown, 0, styleCount);
+				styleFormatIds = grown;
+			}
+			String id = attributes.getValue(numFmtId);
+			styleFormatIds[styleCount++] = null == id ? 0 : Integer.parseInt(id);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.xml.sax.helpers.DefaultHandler#endElement(java.lang.String,
+	 * java.lang.String, java.lang.String)
+	 */
+	public void endElement(String uri, String localName, String name)
+			throws SAXException {
+		if (cellXfs.equals(name)) {
+			inCellXfs = false;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.xml.sax.helpers.DefaultHandler#endDocument()
+	 */
+	public void endDocument() throws SAXException {
+		compile();
+	}
+
+	/**
+	 * How a compiled format formats its values.
+	 */
+	private enum Kind {
+
+		/** No format: the legacy empty text. */
+		EMPTY,
+
+		/** General or text: the shortest decimal form, as POI does. */
+		GENERAL,
+
+		/** The m/d/yy date, written as yyyy-MM-dd. */
+		ISO_DATE,
+
+		/** Any other pattern, formatted by POI. */
+		PATTERN
+	}
+
+	/**
+	 * The compiled number format of a cell style.
+	 */
+	private static class CompiledFormat implements CellFormat {
+
+		private static final String XML_DATE_FORMAT = "m/d/yy";
+		private static final String EXCEL_DATE_FORMAT = "yyyy-MM-dd";
+		private static final String GENERAL = "General";
+		private static final String TEXT = "@";
+
+		/** The kind. */
+		private final Kind kind;
+
+		/** Whether numbers with this format are dates. */
+		private final boolean date;
+
+		/** The format index. */
+		private final int formatIndex;
+
+		/** The pattern to format with. */
+		private final String pattern;
+
+		/**
+		 * Instantiates a new compiled format.
+		 * 
+		 * @param kind
+		 *            the kind
+		 * @param date
+		 *            whether numbers with this format are dates
+		 * @param formatIndex
+		 *            the format index
+		 * @param pattern
+		 *            the pattern to format with
+		 */
+		CompiledFormat(Kind kind, boolean date, int formatIndex, String pattern) {
+			this.kind = kind;
+			this.date = date;
+			this.formatIndex = formatIndex;
+			this.pattern = pattern;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellFormat#isDate()
+		 */
+		public boolean isDate() {
+			return date;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellFormat#format(double)
+		 */
+		public String format(double value) {
+			switch (kind) {
+			case EMPTY:
+				return "";
+			case GENERAL:
+				if (value == Math.floor(value)) {
+					return ParserResources.generalWholeFormat().format(value);
+				}
+				return ParserResources.generalDecimalFormat().format(value);
+			case ISO_DATE:
+				if (DateUtil.isValidExcelDate(value)) {
+					return ParserResources.dateFormat().format(
+							DateUtil.getJavaDate(value));
+				}
+				// POI formats an invalid date as epoch millis
+				return ParserResources.dateFormat().format(
+						new Date((long) value));
+			default:
+				return ParserResources.dataFormatter().formatRawCellContents(
+						value, formatIndex, pattern);
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellFormat#retain()
+		 */
+		public CellFormat retain() {
+			return this;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package excel;
+
+/**
+ * The Class ValueDictionary. Decides how the cell values of a read are
+ * deduplicated before they are kept in the {@link ExcelDTO} of the rows.
+ * Sheets of low cardinality columns (country, status, currency) hold the same
+ * few texts over and over; with a dictionary every repeated value is kept
+ * once per parse instead of once per cell.
+ * <ul>
+ * <li>{@link #shared(int)} keeps one table for all columns of a sheet;</li>
+ * <li>{@link #perColumn(int)} keeps a table per column, so a column of unique
+ * values cannot fill the table of the others.</li>
+ * </ul>
+ * Tables are bounded: once full, new values are kept as they are, so a sheet
+ * of unique values costs at most the table. Every sheet parsed gets tables of
+ * its own, which are dropped with the parse; the number of distinct values of
+ * every column is reported by {@link ParseMetrics#getColumnCardinalities()}.
+ *
+ * @author Sourav
+ */
+public class ValueDictionary {
+
+	/** The maximum number of values of a table. */
+	private final int maxEntries;
+
+	/** Whether every column has a table of its own. */
+	private final boolean perColumn;
+
+	/**
+	 * Instantiates a new value dictionary.
+	 *
+	 * @param maxEntries
+	 *            the maximum number of values of a table
+	 * @param perColumn
+	 *            whether every column has a table of its own
+	 */
+	private ValueDictionary(int maxEntries, boolean perColumn) {
+		this.maxEntries = maxEntries;
+		this.perColumn = perColumn;
+	}
+
+	/**
+	 * Dictionary keeping one table for all columns of a sheet.
+	 *
+	 * @param maxEntries
+	 *            the maximum number of distinct values kept per sheet
+	 * @return the value dictionary
+	 */
+	public static ValueDictionary shared(int maxEntries) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException(
+					"Maximum entries must be positive");
+		}
+		return new ValueDictionary(maxEntries, false);
+	}
+
+	/**
+	 * Dictionary keeping a table per column.
+	 *
+	 * @param maxEntries
+	 *            the maximum number of distinct values kept per column
+	 * @return the value dictionary
+	 */
+	public static ValueDictionary perColumn(int maxEntries) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException(
+					"Maximum entries must be positive");
+		}
+		return new ValueDictionary(maxEntries, true);
+	}
+
+	/**
+	 * Gets the maximum number of values of a table.
+	 *
+	 * @return the maximum entries, per sheet or per column
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Checks if every column has a table of its own.
+	 *
+	 * @return true, if per column
+	 */
+	public boolean isPerColumn() {
+		return perColumn;
+	}
+
+	/**
+	 * Creates the tables of a sheet parse.
+	 *
+	 * @return the value interner
+	 */
+	ValueInterner newInterner() {
+		return new ValueInterner(maxEntries, perColumn);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "ValueDictionary [maxEntries=" + maxEntries + ", perColumn="
+				+ perColumn + "]";
+	}
+}
@@ -0,0 +1,246 @@
+package excel;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The Class ValueInterner. The tables of a {@link ValueDictionary} for one
+ * sheet parse: returns the first instance of every value seen, and counts
+ * the distinct values of every column.
+ * <p>
+ * A table is an open addressing hash table of the values and their hash
+ * codes, grown by doubling up to its maximum number of values. With a shared
+ * table every value gets the index it was added at, and every column marks
+ * the indexes of its values in a bit set; with a table per column the size
+ * of the table is the count. A column that met a value after its table was
+ * full has an unknown count. An interner is used by one thread.
+ *
+ * @author Sourav
+ */
+class ValueInterner {
+
+	/** The initial capacity of a table. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The maximum number of values of a table. */
+	private final int maxEntries;
+
+	/** The table of all columns, null with a table per column. */
+	private final StringTable sharedTable;
+
+	/** The tables by column, with a table per column. */
+	private final List<StringTable> columnTables = new ArrayList<StringTable>();
+
+	/** The indexes of the values of every column, with a shared table. */
+	private final List<BitSet> columnValues = new ArrayList<BitSet>();
+
+	/** The columns which met a value not kept. */
+	private final BitSet overflowed = new BitSet();
+
+	/** The number of columns holding a value. */
+	private int columnCount;
+
+	/**
+	 * Instantiates a new value interner.
+	 *
+	 * @param maxEntries
+	 *            the maximum number of values of a table
+	 * @param perColumn
+	 *            whether every column has a table of its own
+	 */
+	ValueInterner(int maxEntries, boolean perColumn) {
+		this.maxEntries = maxEntries;
+		this.sharedTable = perColumn ? null : new StringTable(maxEntries);
+	}
+
+	/**
+	 * Gets the first instance of a value seen in the sheet, or in the column
+	 * with a table per column.
+	 *
+	 * @param column
+	 *            the column (Starts from 0)
+	 * @param value
+	 *            the value, not empty
+	 * @return the value kept, or the value itself if new and the table is
+	 *         full
+	 */
+	String intern(int column, String value) {
+		if (column >= columnCount) {
+			columnCount = column + 1;
+		}
+		StringTable table = sharedTable;
+		if (null == table) {
+			while (columnTables.size() <= column) {
+				columnTables.add(null);
+			}
+			table = columnTables.get(column);
+			if (null == table) {
+				table = new StringTable(maxEntries);
+				columnTables.set(column, table);
+			}
+		}
+
+		int index = table.add(value);
+		if (index < 0) {
+			overflowed.set(column);
+			return value;
+		}
+		if (null == sharedTable) {
+			return table.get(index);
+		}
+		while (columnValues.size() <= column) {
+			columnValues.add(null);
+		}
+		BitSet values = columnValues.get(column);
+		if (null == values) {
+			values = new BitSet();
+			columnValues.set(column, values);
+		}
+		values.set(index);
+		return table.get(index);
+	}
+
+	/**
+	 * Gets the number of distinct values of every column.
+	 *
+	 * @return the counts, indexed by column, -1 for columns with more
+	 *         distinct values than the table holds
+	 */
+	int[] getCardinalities() {
+		int[] cardinalities = new int[columnCount];
+		for (int column = 0; column < columnCount; column++) {
+			if (overflowed.get(column)) {
+				cardinalities[column] = -1;
+			} else if (null == sharedTable) {
+				StringTable table = column < columnTables.size() ? columnTables
+						.get(column) : null;
+				cardinalities[column] = null == table ? 0 : table.size();
+			} else {
+				BitSet values = column < columnValues.size() ? columnValues
+						.get(column) : null;
+				cardinalities[column] = null == values ? 0 : values
+						.cardinality();
+			}
+		}
+		return cardinalities;
+	}
+
+	/**
+	 * Bounded open addressing hash table of strings.
+	 */
+	private static class StringTable {
+
+		/** The maximum number of values. */
+		private final int maxEntries;
+
+		/** The values, in the order they were added. */
+		private String[] values = new String[INITIAL_CAPACITY];
+
+		/** The slots: the index of a value plus one, 0 for a free slot. */
+		private int[] slots = new int[INITIAL_CAPACITY * 2];
+
+		/** The hash codes of the values, by index. */
+		private int[] hashes = new int[INITIAL_CAPACITY];
+
+		/** The number of values. */
+		private int size;
+
+		/**
+		 * Instantiates a new string table.
+		 *
+		 * @param maxEntries
+		 *            the maximum number of values
+		 */
+		StringTable(int maxEntries) {
+			this.maxEntries = maxEntries;
+		}
+
+		/**
+		 * Gets the number of values.
+		 *
+		 * @return the size
+		 */
+		int size() {
+			return size;
+		}
+
+		/**
+		 * Gets a value.
+		 *
+		 * @param index
+		 *            the index
+		 * @return the value
+		 */
+		String get(int index) {
+			return values[index];
+		}
+
+		/**
+		 * Finds a value, adding it if new and there is room.
+		 *
+		 * @param value
+		 *            the value
+		 * @return the index of the value, -1 if new and the table is full
+		 */
+		int add(String value) {
+			int hash = value.hashCode();
+			int mask = slots.length - 1;
+			int slot = spread(hash) & mask;
+			while (slots[slot] != 0) {
+				int index = slots[slot] - 1;
+				if (hashes[index] == hash && values[index].equals(value)) {
+					return index;
+				}
+				slot = (slot + 1) & mask;
+			}
+			if (size >= maxEntries) {
+				return -1;
+			}
+			if (size == values.length) {
+				grow();
+				return add(value);
+			}
+			values[size] = value;
+			hashes[size] = hash;
+			slots[slot] = ++size;
+			return size - 1;
+		}
+
+		/**
+		 * Doubles the table, keeping the slots at most half full.
+		 */
+		private void grow() {
+			int capacity = values.length * 2;
+			String[] newValues = new String[capacity];
+			System.arraycopy(values, 0, newValues, 0, size);
+			int[] newHashes = new int[capacity];
+			System.arraycopy(hashes, 0, newHashes, 0, size);
+			int[] newSlots = new int[capacity * 2];
+			int mask = newSlots.length - 1;
+			for (int index = 0; index < size; index++) {
+				int slot = spread(newHashes[index]) & mask;
+				while (newSlots[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				newSlots[slot] = index + 1;
+			}
+			values = newValues;
+			hashes = newHashes;
+			slots = newSlots;
+		}
+
+		/**
+		 * Spreads the high bits of a hash code to the low ones, which pick
+		 * the slot.
+		 *
+		 * @param hash
+		 *            the hash code
+		 * @return the spread hash
+		 */
+		private static int spread(int hash) {
+			hash *= 0x9E3779B9;
+			return hash ^ (hash >>> 16);
+		}
+	}
+}
@@ -0,0 +1,480 @@
+package excel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.DateWindow1904Record;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.FormulaError;
+
+/**
+ * The Class XLSSheetHandler. Reads one sheet of an xls workbook from the
+ * record stream of POI's HSSF event API, the counterpart of
+ * {@link SheetHandler} for xlsx files. Only the current record and row are
+ * held in memory.
+ * <p>
+ * Rows are reported from row 0 up to the last row holding a non blank cell.
+ * Missing rows and cells in between are reported as blank, and every row has
+ * exactly lastCellNum cells.
+ *
+ * @author Sourav
+ */
+class XLSSheetHandler extends AbortableHSSFListener {
+
+	/** Days between the 1900 and the 1904 date systems. */
+	static final int DAYS_1900_TO_1904 = 1462;
+
+	/** Value returned to stop reading once the sheet is done. */
+	static final short STOP = 1;
+
+	/** The cell handler. */
+	private final CellHandler cellHandler;
+
+	/** Narrows the read down to the wanted cells, null if all are. */
+	private final SheetFilter filter;
+
+	/** The sheet number. */
+	private final int sheetNumber;
+
+	/** The last cell num. */
+	private final int lastCellNum;
+
+	/** Keeps track of the number formats of the workbook. */
+	private final FormatTrackingHSSFListener formatListener;
+
+	/** The bound sheets, in workbook order. */
+	private final List<BoundSheetRecord> boundSheets = new ArrayList<BoundSheetRecord>();
+
+	/** The bound sheets, in the order of the sheet streams. */
+	private BoundSheetRecord[] orderedBoundSheets;
+
+	/** The shared strings. */
+	private SSTRecord sstRecord;
+
+	/** Set when the workbook uses the 1904 date system. */
+	private boolean date1904;
+
+	/** Nesting level of BOF / EOF records. */
+	private int depth;
+
+	/** Number of sheet streams seen. */
+	private int sheetStreamCount;
+
+	/** Set while inside the stream of the wanted sheet. */
+	private boolean inSheet;
+
+	/** Set once the wanted sheet is found. */
+	private boolean sheetFound;
+
+	/** The current row, -1 if no row is open. */
+	private int currentRow = -1;
+
+	/** The last row reported. */
+	private int lastRow = -1;
+
+	/** The next column to report in the current row. */
+	private int nextColumn;
+
+	/** The column of a formula waiting for its string result, or -1. */
+	private int pendingStringColumn = -1;
+
+	/** The format of date cells. */
+	private final CellFormat dateFormat = new XLSDateFormat();
+
+	/** The format of the other numeric cells. */
+	private final CellFormat decimalFormat = new XLSDecimalFormat();
+
+	/**
+	 * Instantiates a new XLS sheet handler.
+	 *
+	 * @param sheetNumber
+	 *            the sheet number (Starts from 1)
+	 * @param lastCellNum
+	 *            the last cell num
+	 * @param cellHandler
+	 *            the cell handler receiving every cell value
+	 */
+	XLSSheetHandler(int sheetNumber, int lastCellNum, CellHandler cellHandler) {
+		this(sheetNumber, lastCellNum, cellHandler, null);
+	}
+
+	/**
+	 * Instantiates a new XLS sheet handler reading part of the sheet. Cells
+	 * which are not wanted are not reported, and reading stops once the last
+	 * wanted row is done.
+	 *
+	 * @param sheetNumber
+	 *            the sheet number (Starts from 1)
+	 * @param lastCellNum
+	 *            the last cell num
+	 * @param cellHandler
+	 *            the cell handler receiving every wanted cell value
+	 * @param options
+	 *            the read options, null to read the whole sheet
+	 */
+	XLSSheetHandler(int sheetNumber, int lastCellNum,
+			CellHandler cellHandler, ReadOptions options) {
+		this.sheetNumber = sheetNumber;
+		this.lastCellNum = lastCellNum;
+		if (null == options) {
+			this.filter = null;
+			this.cellHandler = cellHandler;
+		} else {
+			this.filter = new SheetFilter(options, cellHandler);
+			this.cellHandler = filter;
+		}
+		this.formatListener = new FormatTrackingHSSFListener(this);
+	}
+
+	/**
+	 * Checks if the sheet was found in the workbook.
+	 *
+	 * @return true, if the sheet was found
+	 */
+	boolean isSheetFound() {
+		return sheetFound;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.apache.poi.hssf.eventusermodel.AbortableHSSFListener#abortableProcessRecord
+	 * (org.apache.poi.hssf.record.Record)
+	 */
+	public short abortableProcessRecord(Record record) {
+		formatListener.processRecordInternally(record);
+
+		switch (record.getSid()) {
+		case BoundSheetRecord.sid:
+			boundSheets.add((BoundSheetRecord) record);
+			break;
+
+		case SSTRecord.sid:
+			sstRecord = (SSTRecord) record;
+			break;
+
+		case DateWindow1904Record.sid:
+			date1904 = ((DateWindow1904Record) record).getWindowing() == 1;
+			break;
+
+		case BOFRecord.sid:
+			depth++;
+			if (depth == 1
+					&& ((BOFRecord) record).getType() != BOFRecord.TYPE_WORKBOOK) {
+				startSheetStream();
+			}
+			break;
+
+		case EOFRecord.sid:
+			depth--;
+			if (depth == 0 && inSheet) {
+				finishRow();
+				inSheet = false;
+				return STOP;
+			}
+			break;
+
+		case NumberRecord.sid:
+			if (inSheet) {
+				NumberRecord number = (NumberRecord) record;
+				numericCell(number, number.getValue());
+			}
+			break;
+
+		case LabelSSTRecord.sid:
+			if (inSheet) {
+				LabelSSTRecord label = (LabelSSTRecord) record;
+				if (prepareCell(label)) {
+					cellHandler.stringCell(label.getColumn(), sstRecord
+							.getString(label.getSSTIndex()).getString());
+				}
+			}
+			break;
+
+		case LabelRecord.sid:
+			if (inSheet) {
+				LabelRecord label = (LabelRecord) record;
+				if (prepareCell(label)) {
+					cellHandler.stringCell(label.getColumn(), label.getValue());
+				}
+			}
+			break;
+
+		case BoolErrRecord.sid:
+			if (inSheet) {
+				BoolErrRecord boolErr = (BoolErrRecord) record;
+				if (!prepareCell(boolErr)) {
+					break;
+				}
+				if (boolErr.isBoolean()) {
+					cellHandler.booleanCell(boolErr.getColumn(),
+							boolErr.getBooleanValue());
+				} else {
+					cellHandler.errorCell(boolErr.getColumn(), FormulaError
+							.forInt(boolErr.getErrorValue()).getString());
+				}
+			}
+			break;
+
+		case FormulaRecord.sid:
+			if (inSheet) {
+				formulaCell((FormulaRecord) record);
+			}
+			break;
+
+		case StringRecord.sid:
+			if (inSheet && pendingStringColumn >= 0) {
+				cellHandler.stringCell(pendingStringColumn,
+						((StringRecord) record).getString());
+				pendingStringColumn = -1;
+			}
+			break;
+
+		default:
+			break;
+		}
+		if (inSheet && isDone()) {
+			inSheet = false;
+			return STOP;
+		}
+		return 0;
+	}
+
+	/**
+	 * Checks if the last wanted row is done.
+	 *
+	 * @return true, if the rest of the sheet is not wanted
+	 */
+	private boolean isDone() {
+		return null != filter && filter.isDone();
+	}
+
+	/**
+	 * Start of the stream of a sheet.
+	 */
+	private void startSheetStream() {
+		if (null == orderedBoundSheets) {
+			orderedBoundSheets = BoundSheetRecord
+					.orderByBofPosition(boundSheets);
+		}
+		int streamIndex = sheetStreamCount++;
+		if (streamIndex < orderedBoundSheets.length) {
+			int workbookIndex = boundSheets
+					.indexOf(orderedBoundSheets[streamIndex]);
+			inSheet = workbookIndex == sheetNumber - 1;
+			sheetFound |= inSheet;
+		}
+	}
+
+	/**
+	 * Formula cell, reported with its cached result.
+	 *
+	 * @param formula
+	 *            the formula record
+	 */
+	private void formulaCell(FormulaRecord formula) {
+		switch (formula.getCachedResultType()) {
+		case Cell.CELL_TYPE_NUMERIC:
+			numericCell(formula, formula.getValue());
+			break;
+
+		case Cell.CELL_TYPE_STRING:
+			if (prepareCell(formula)) {
+				if (formula.hasCachedResultString()) {
+					// the text follows in a string record
+					pendingStringColumn = formula.getColumn();
+				} else {
+					cellHandler.stringCell(formula.getColumn(), "");
+				}
+			}
+			break;
+
+		case Cell.CELL_TYPE_BOOLEAN:
+			if (prepareCell(formula)) {
+				cellHandler.booleanCell(formula.getColumn(),
+						formula.getCachedBooleanValue());
+			}
+			break;
+
+		case Cell.CELL_TYPE_ERROR:
+			if (prepareCell(formula)) {
+				cellHandler.errorCell(formula.getColumn(), FormulaError
+						.forInt((byte) formula.getCachedErrorValue())
+						.getString());
+			}
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Numeric cell, a date if its format is a date format.
+	 *
+	 * @param record
+	 *            the cell record
+	 * @param value
+	 *            the value
+	 */
+	private void numericCell(CellValueRecordInterface record, double value) {
+		if (!prepareCell(record)) {
+			return;
+		}
+		int formatIndex = formatListener.getFormatIndex(record);
+		String formatString = formatListener.getFormatString(formatIndex);
+		if (DateUtil.isADateFormat(formatIndex, formatString)
+				&& DateUtil.isValidExcelDate(value)) {
+			// normalize 1904 based workbooks to 1900 serial dates
+			cellHandler.numericCell(record.getColumn(), date1904 ? value
+					+ DAYS_1900_TO_1904 : value, dateFormat);
+		} else {
+			cellHandler.numericCell(record.getColumn(), value, decimalFormat);
+		}
+	}
+
+	/**
+	 * Moves to the row and column of a non blank cell: finishes the open row,
+	 * reports the empty rows before it and the blank cells to its left.
+	 *
+	 * @param record
+	 *            the cell record
+	 * @return true, if the cell is within lastCellNum, wanted and must be
+	 *         reported
+	 */
+	private boolean prepareCell(CellValueRecordInterface record) {
+		int row = record.getRow();
+		int column = record.getColumn();
+
+		if (row != currentRow) {
+			finishRow();
+			for (int emptyRow = lastRow + 1; emptyRow < row && !isDone();
+					emptyRow++) {
+				cellHandler.startRow(emptyRow);
+				blankCells(0, lastCellNum);
+				cellHandler.endRow(emptyRow);
+			}
+			cellHandler.startRow(row);
+			currentRow = row;
+			nextColumn = 0;
+		}
+
+		if (column < nextColumn) {
+			return false;
+		}
+		blankCells(nextColumn, Math.min(column, lastCellNum));
+		nextColumn = column + 1;
+		return column < lastCellNum
+				&& (null == filter || filter.isCellWanted(column));
+	}
+
+	/**
+	 * Finishes the open row, if any.
+	 */
+	private void finishRow() {
+		if (currentRow < 0) {
+			return;
+		}
+		blankCells(nextColumn, lastCellNum);
+		cellHandler.endRow(currentRow);
+		lastRow = currentRow;
+		currentRow = -1;
+	}
+
+	/**
+	 * Reports blank cells.
+	 *
+	 * @param fromColumn
+	 *            the first column
+	 * @param toColumn
+	 *            the column after the last one
+	 */
+	private void blankCells(int fromColumn, int toColumn) {
+		for (int column = fromColumn; column < toColumn; column++) {
+			cellHandler.blankCell(column);
+		}
+	}
+
+	/**
+	 * Format of date cells in xls files.
+	 */
+	private static class XLSDateFormat implements CellFormat {
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.CellFormat#isDate()
+		 */
+		public boolean isDate() {
+			return true;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.CellFormat#format(double)
+		 */
+		public String format(double value) {
+			return ParserResources.dateFormat().format(
+					DateUtil.getJavaDate(value));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.CellFormat#retain()
+		 */
+		public CellFormat retain() {
+			return this;
+		}
+	}
+
+	/**
+	 * Format of the other numeric cells in xls files.
+	 */
+	private static class XLSDecimalFormat implements CellFormat {
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.CellFormat#isDate()
+		 */
+		public boolean isDate() {
+			return false;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.CellFormat#format(double)
+		 */
+		public String format(double value) {
+			return ParserResources.decimalFormat().format(value);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.CellFormat#retain()
+		 */
+		public CellFormat retain() {
+			return this;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package excel;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.Record;
+
+/**
+ * The Class XLSWorkbookListener. Reads several sheets of an xls workbook in
+ * a single pass over its record stream, with one {@link XLSSheetHandler} per
+ * sheet. The handlers are created once the workbook globals (sheet list,
+ * shared strings, formats) have been read and get those records replayed, so
+ * the sheets to read can depend on the number of sheets in the workbook.
+ * Reading stops after the last wanted sheet.
+ * 
+ * @author Sourav
+ */
+abstract class XLSWorkbookListener extends AbortableHSSFListener {
+
+	/** The last cell num. */
+	private final int lastCellNum;
+
+	/** The sheet numbers to read, null for all. */
+	private final Set<Integer> sheetNumbers;
+
+	/** The records of the workbook globals, until the handlers exist. */
+	private List<Record> globals = new ArrayList<Record>();
+
+	/** The number of sheets of the workbook. */
+	private int sheetCount;
+
+	/** The handlers by sheet number, in sheet order. */
+	private final Map<Integer, XLSSheetHandler> sheetHandlers = new LinkedHashMap<Integer, XLSSheetHandler>();
+
+	/** The handlers still reading. */
+	private final List<XLSSheetHandler> openHandlers = new ArrayList<XLSSheetHandler>();
+
+	/**
+	 * Instantiates a new XLS workbook listener.
+	 * 
+	 * @param lastCellNum
+	 *            the last cell num
+	 * @param sheetNumbers
+	 *            the sheet numbers to read (Starts from 1), null for all
+	 *            sheets
+	 */
+	XLSWorkbookListener(int lastCellNum, Set<Integer> sheetNumbers) {
+		this.lastCellNum = lastCellNum;
+		this.sheetNumbers = sheetNumbers;
+	}
+
+	/**
+	 * Creates the cell handler receiving the cells of a sheet.
+	 * 
+	 * @param sheetNumber
+	 *            the sheet number (Starts from 1)
+	 * @return the cell handler
+	 */
+	abstract CellHandler createCellHandler(int sheetNumber);
+
+	/**
+	 * Gets the handlers by sheet number, available once the workbook globals
+	 * have been read.
+	 * 
+	 * @return the sheet handlers
+	 */
+	Map<Integer, XLSSheetHandler> getSheetHandlers() {
+		return sheetHandlers;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.apache.poi.hssf.eventusermodel.AbortableHSSFListener#abortableProcessRecord
+	 * (org.apache.poi.hssf.record.Record)
+	 */
+	public short abortableProcessRecord(Record record) {
+		if (null != globals) {
+			globals.add(record);
+			if (record.getSid() == BoundSheetRecord.sid) {
+				sheetCount++;
+			} else if (record.getSid() == EOFRecord.sid) {
+				createSheetHandlers();
+				return openHandlers.isEmpty() ? XLSSheetHandler.STOP : 0;
+			}
+			return 0;
+		}
+		return forward(record);
+	}
+
+	/**
+	 * Creates the handlers of the wanted sheets and replays the workbook
+	 * globals to them.
+	 */
+	private void createSheetHandlers() {
+		for (int sheetNumber = 1; sheetNumber <= sheetCount; sheetNumber++) {
+			if (null == sheetNumbers || sheetNumbers.contains(sheetNumber)) {
+				XLSSheetHandler sheetHandler = new XLSSheetHandler(
+						sheetNumber, lastCellNum,
+						createCellHandler(sheetNumber));
+				sheetHandlers.put(sheetNumber, sheetHandler);
+				openHandlers.add(sheetHandler);
+			}
+		}
+		List<Record> replay = globals;
+		globals = null;
+		for (Record record : replay) {
+			forward(record);
+		}
+	}
+
+	/**
+	 * Hands a record to the handlers still reading.
+	 * 
+	 * @param record
+	 *            the record
+	 * @return STOP once no handler is reading any more
+	 */
+	private short forward(Record record) {
+		for (int i = openHandlers.size() - 1; i >= 0; i--) {
+			short result = openHandlers.get(i).abortableProcessRecord(record);
+			if (result == XLSSheetHandler.STOP) {
+				openHandlers.remove(i);
+			}
+		}
+		return openHandlers.isEmpty() ? XLSSheetHandler.STOP : 0;
+	}
+}
@@ -0,0 +1,389 @@
+package excel;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import org.apache.log4j.Logger;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import excel.SheetHandler.xssfDataType;
+
+/**
+ * The Class XLSXCellConverter. Turns the raw content of an xlsx cell (its
+ * type attribute, style and value text) into a typed cell event: shared
+ * strings are resolved and numbers get the compiled format of their style.
+ * Dates of a 1904 based workbook are shifted to 1900 serial dates, as
+ * {@link XLSSheetHandler} does for xls. A converter reuses one format for all
+ * numbers without style, so it must not be used by several threads at the
+ * same time; the shared strings and style formats may be shared by several
+ * converters.
+ * 
+ * @author Sourav
+ */
+class XLSXCellConverter {
+
+	private static final Logger LOG = Logger.getLogger(XLSXCellConverter.class);
+
+	/** The largest mantissa held exactly by a double, 2^53. */
+	private static final long MAX_MANTISSA = 1L << 53;
+
+	/** The largest power of ten held exactly by a double. */
+	private static final int MAX_POWER = 22;
+
+	/** The powers of ten up to MAX_POWER. */
+	private static final double[] POWERS_OF_TEN = new double[MAX_POWER + 1];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i <= MAX_POWER; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	/** The most significant digits of a plain decimal, all exact in a double. */
+	private static final int MAX_PLAIN_DIGITS = 15;
+
+	/** Gives back the text of numbers stored as plain decimals. */
+	private static final CellFormat PLAIN_DECIMAL = new PlainDecimalFormat();
+
+	/** The shared strings. */
+	private final SharedStrings sharedStrings;
+
+	/** The style formats. */
+	private final StyleFormats styleFormats;
+
+	/** Used for numeric cells without style. */
+	private final RawTextFormat rawTextFormat = new RawTextFormat();
+
+	/**
+	 * Instantiates a new XLSX cell converter.
+	 * 
+	 * @param sharedStrings
+	 *            the shared strings
+	 * @param styleFormats
+	 *            the number formats of the styles
+	 */
+	XLSXCellConverter(SharedStrings sharedStrings, StyleFormats styleFormats) {
+		this.sharedStrings = sharedStrings;
+		this.styleFormats = styleFormats;
+	}
+
+	/**
+	 * Converts a cell and hands it to the cell handler. Exactly one cell
+	 * event is sent for every cell.
+	 * 
+	 * @param column
+	 *            the column
+	 * @param dataType
+	 *            the type of the cell
+	 * @param styleIndex
+	 *            the style of the cell, -1 if none
+	 * @param value
+	 *            the text of the value, null if the cell has no value; only
+	 *            read during the call
+	 * @param cellHandler
+	 *            the cell handler
+	 */
+	void convert(int column, xssfDataType dataType, int styleIndex,
+			CharSequence value, CellHandler cellHandler) {
+
+		if (null == value || value.length() == 0) {
+			cellHandler.blankCell(column);
+			return;
+		}
+
+		switch (dataType) {
+
+		case BOOL:
+			char first = value.charAt(0);
+			cellHandler.booleanCell(column, first != '0');
+			break;
+
+		case ERROR:
+			cellHandler.errorCell(column, value.toString());
+			break;
+
+		case FORMULA:
+		case INLINESTR:
+			cellHandler.stringCell(column, value.toString());
+			break;
+
+		case NO_STYLE:
+			rawTextFormat.text = value;
+			cellHandler.numericCell(column, parseDouble(value), rawTextFormat);
+			break;
+
+		case SSTINDEX:
+			try {
+				int idx = parseInt(value);
+				cellHandler.stringCell(column, sharedStrings.getEntryAt(idx));
+			} catch (NumberFormatException ex) {
+				LOG.error("Failed to parse SST index '" + value + "': "
+						+ ex.toString());
+				cellHandler.blankCell(column);
+			}
+			break;
+
+		case NUMBER:
+			CellFormat format = styleIndex < 0 ? StyleFormats.NO_FORMAT
+					: styleFormats.getCellFormat(styleIndex);
+			double number = parseDouble(value);
+			if (styleFormats.isDate1904() && format.isDate()
+					&& DateUtil.isValidExcelDate(number)) {
+				// normalize 1904 based workbooks to 1900 serial dates
+				number += XLSSheetHandler.DAYS_1900_TO_1904;
+			}
+			cellHandler.numericCell(column, number, format);
+			break;
+
+		default:
+			cellHandler.stringCell(column, "Unexpected type: " + dataType);
+			break;
+		}
+	}
+
+	/**
+	 * Parses a number as {@link Double#parseDouble(String)} does, without
+	 * creating a string for the plain decimals found in sheets: a mantissa of
+	 * up to 2^53 and a power of ten up to 10^22 are both exact, so a single
+	 * multiplication or division rounds correctly. Other numbers are left to
+	 * {@link Double#parseDouble(String)}.
+	 * 
+	 * @param text
+	 *            the text
+	 * @return the number
+	 * @throws NumberFormatException
+	 *             if the text is no number
+	 */
+	static double parseDouble(CharSequence text) {
+		int length = text.length();
+		int i = 0;
+		boolean negative = false;
+		if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+			negative = text.charAt(0) == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int scale = 0;
+		boolean digits = false;
+		boolean fraction = false;
+		for (; i < length; i++) {
+			char c = text.charAt(i);
+			if (c == '.' && !fraction) {
+				fraction = true;
+				continue;
+			}
+			if (c < '0' || c > '9') {
+				break;
+			}
+			if (mantissa > MAX_MANTISSA / 10) {
+				return Double.parseDouble(text.toString());
+			}
+			mantissa = mantissa * 10 + (c - '0');
+			digits = true;
+			if (fraction) {
+				scale--;
+			}
+		}
+		if (!digits || mantissa > MAX_MANTISSA) {
+			return Double.parseDouble(text.toString());
+		}
+
+		if (i < length && (text.charAt(i) == 'E' || text.charAt(i) == 'e')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+				negativeExponent = text.charAt(i) == '-';
+				i++;
+			}
+			int exponent = 0;
+			int start = i;
+			for (; i < length && i - start < 4; i++) {
+				char c = text.charAt(i);
+				if (c < '0' || c > '9') {
+					break;
+				}
+				exponent = exponent * 10 + (c - '0');
+			}
+			if (i == start) {
+				return Double.parseDouble(text.toString());
+			}
+			scale += negativeExponent ? -exponent : exponent;
+		}
+		if (i != length || scale > MAX_POWER || scale < -MAX_POWER) {
+			return Double.parseDouble(text.toString());
+		}
+
+		double result = mantissa;
+		if (scale > 0) {
+			result *= POWERS_OF_TEN[scale];
+		} else if (scale < 0) {
+			result /= POWERS_OF_TEN[-scale];
+		}
+		return negative ? -result : result;
+	}
+
+	/**
+	 * Parses an int as {@link Integer#parseInt(String)} does, without
+	 * creating a string for plain digits.
+	 * 
+	 * @param text
+	 *            the text
+	 * @return the int
+	 * @throws NumberFormatException
+	 *             if the text is no int
+	 */
+	static int parseInt(CharSequence text) {
+		int length = text.length();
+		if (length == 0 || length > 9) {
+			return Integer.parseInt(text.toString());
+		}
+		int result = 0;
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9') {
+				return Integer.parseInt(text.toString());
+			}
+			result = result * 10 + (c - '0');
+		}
+		return result;
+	}
+
+	/**
+	 * Checks if a number is stored as a plain decimal: an optional minus, an
+	 * integer part without leading zeros, and an optional fraction not ending
+	 * with a zero, with at most 15 significant digits. Such a text is the
+	 * only decimal of its digits that parses to its double, so it can be
+	 * given back from the double instead of being kept.
+	 * 
+	 * @param text
+	 *            the text
+	 * @return true, if a plain decimal
+	 */
+	static boolean isPlainDecimal(CharSequence text) {
+		int length = text.length();
+		int i = 0;
+		if (length > 0 && text.charAt(0) == '-') {
+			i++;
+		}
+		int start = i;
+		while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+			i++;
+		}
+		int integerDigits = i - start;
+		if (integerDigits == 0
+				|| (integerDigits > 1 && text.charAt(start) == '0')) {
+			return false;
+		}
+		boolean zeroInteger = text.charAt(start) == '0';
+		int digits = zeroInteger ? 0 : integerDigits;
+		if (i < length) {
+			if (text.charAt(i) != '.' || i == length - 1
+					|| text.charAt(length - 1) == '0') {
+				return false;
+			}
+			boolean leading = zeroInteger;
+			for (i++; i < length; i++) {
+				char c = text.charAt(i);
+				if (c < '0' || c > '9') {
+					return false;
+				}
+				if (c != '0') {
+					leading = false;
+				}
+				if (!leading) {
+					digits++;
+				}
+			}
+		} else if (zeroInteger && start > 0) {
+			// -0 would be given back as 0
+			return false;
+		}
+		return digits <= MAX_PLAIN_DIGITS;
+	}
+
+	/**
+	 * Format of a numeric cell without style, gives back the text stored in
+	 * the sheet. Once retained, a plain decimal is given back from the number
+	 * and any other text is copied.
+	 */
+	private static class RawTextFormat implements CellFormat {
+
+		private CharSequence text;
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellFormat#isDate()
+		 */
+		public boolean isDate() {
+			return false;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellFormat#format(double)
+		 */
+		public String format(double ignored) {
+			return text.toString();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellFormat#retain()
+		 */
+		public CellFormat retain() {
+			if (isPlainDecimal(text)) {
+				return PLAIN_DECIMAL;
+			}
+			return new CellFormat.Text(text.toString(), false);
+		}
+	}
+
+	/**
+	 * Format of the numbers stored as plain decimals, see
+	 * {@link XLSXCellConverter#isPlainDecimal(CharSequence)}: the double
+	 * rounded to 15 significant digits has the digits of the text.
+	 */
+	private static class PlainDecimalFormat implements CellFormat {
+
+		/** Rounds to the significant digits of a plain decimal. */
+		private static final MathContext PLAIN_DIGITS = new MathContext(
+				MAX_PLAIN_DIGITS);
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellFormat#isDate()
+		 */
+		public boolean isDate() {
+			return false;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellFormat#format(double)
+		 */
+		public String format(double value) {
+			long whole = (long) value;
+			if (whole == value) {
+				return Long.toString(whole);
+			}
+			return new BigDecimal(value).round(PLAIN_DIGITS)
+					.stripTrailingZeros().toPlainString();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see excel.CellFormat#retain()
+		 */
+		public CellFormat retain() {
+			return this;
+		}
+	}
+}
@@ -0,0 +1,799 @@
+package excel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
+import org.apache.poi.openxml4j.opc.PackagingURIHelper;
+import org.apache.poi.openxml4j.opc.ZipPackagePart;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The Class XLSXPackage. The parts of an xlsx workbook needed to read its
+ * sheets: the styles, the shared strings and the sheets by relationship id.
+ *
+ * @author Sourav
+ */
+abstract class XLSXPackage {
+
+	/**
+	 * Opens the styles part.
+	 *
+	 * @return the content of styles.xml, null if there is none
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	abstract InputStream getStylesData() throws IOException,
+			OpenXML4JException;
+
+	/**
+	 * Opens the shared strings part.
+	 *
+	 * @return the content of sharedStrings.xml, null if there is none
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	abstract InputStream getSharedStringsData() throws IOException,
+			OpenXML4JException;
+
+	/**
+	 * Opens the workbook part.
+	 *
+	 * @return the content of workbook.xml
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	abstract InputStream getWorkbookData() throws IOException,
+			OpenXML4JException;
+
+	/**
+	 * Opens a sheet part.
+	 *
+	 * @param relId
+	 *            the relationship id of the sheet
+	 * @return the content of the sheet xml
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 */
+	abstract InputStream getSheet(String relId) throws IOException,
+			OpenXML4JException;
+
+	/**
+	 * Gets the fingerprint of the styles part.
+	 *
+	 * @return the fingerprint, "" if there is no such part, null if the part
+	 *         has none
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #fingerprint(String, long, long)
+	 */
+	abstract String getStylesFingerprint() throws IOException,
+			OpenXML4JException;
+
+	/**
+	 * Gets the fingerprint of the shared strings part.
+	 *
+	 * @return the fingerprint, "" if there is no such part, null if the part
+	 *         has none
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #fingerprint(String, long, long)
+	 */
+	abstract String getSharedStringsFingerprint() throws IOException,
+			OpenXML4JException;
+
+	/**
+	 * Gets the fingerprint of the workbook part.
+	 *
+	 * @return the fingerprint, null if the part has none
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #fingerprint(String, long, long)
+	 */
+	abstract String getWorkbookFingerprint() throws IOException,
+			OpenXML4JException;
+
+	/**
+	 * Gets the fingerprint of a sheet part.
+	 *
+	 * @param relId
+	 *            the relationship id of the sheet
+	 * @return the fingerprint, "" if there is no such part, null if the part
+	 *         has none
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #fingerprint(String, long, long)
+	 */
+	abstract String getSheetFingerprint(String relId) throws IOException,
+			OpenXML4JException;
+
+	/**
+	 * Closes the package.
+	 *
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	abstract void close() throws IOException;
+
+	/**
+	 * Reads the style formats, with the date system of the workbook.
+	 *
+	 * @return the style formats
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	StyleFormats readStyleFormats() throws IOException, OpenXML4JException,
+			SAXException {
+		return StyleFormats.read(getStylesData(), readWorkbook().date1904);
+	}
+
+	/**
+	 * Reads the shared strings, counting the bytes of their xml.
+	 *
+	 * @param store
+	 *            where to keep the shared strings
+	 * @param metrics
+	 *            the metrics the bytes are added to, null if not collected
+	 * @return the shared strings, to be closed by the caller
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	SharedStrings readSharedStrings(SharedStringsStore store,
+			ParseMetrics metrics) throws IOException, OpenXML4JException,
+			SAXException {
+		return store.read(ParseMetrics.count(metrics, getSharedStringsData()));
+	}
+
+	/**
+	 * Reads the relationship ids of the sheets, in workbook order.
+	 *
+	 * @return the sheet ids
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	List<String> readSheetIds() throws IOException, OpenXML4JException,
+			SAXException {
+		return readWorkbook().ids;
+	}
+
+	/**
+	 * Gets the fingerprint of the parts the number formats are read from:
+	 * the styles, and the workbook giving the date system.
+	 *
+	 * @return the fingerprint, null if a part has none
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @see #fingerprint(String, long, long)
+	 */
+	String getFormatsFingerprint() throws IOException, OpenXML4JException {
+		String styles = getStylesFingerprint();
+		String workbook = getWorkbookFingerprint();
+		if (null == styles || null == workbook) {
+			return null;
+		}
+		return styles + "+" + workbook;
+	}
+
+	/**
+	 * Reads the workbook part.
+	 *
+	 * @return the sheet ids and the date system
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws OpenXML4JException
+	 *             the OpenXML4J exception
+	 * @throws SAXException
+	 *             the SAX exception
+	 */
+	private SheetIds readWorkbook() throws IOException, OpenXML4JException,
+			SAXException {
+		SheetIds sheetIds = new SheetIds();
+		InputStream workbookData = getWorkbookData();
+		try {
+			XMLReader parser = ParserResources.acquireXMLReader();
+			try {
+				parser.setContentHandler(sheetIds);
+				parser.parse(new InputSource(workbookData));
+			} finally {
+				ParserResources.releaseXMLReader(parser);
+			}
+		} finally {
+			workbookData.close();
+		}
+		return sheetIds;
+	}
+
+	/**
+	 * Makes the fingerprint of a part from its zip entry: the part changes
+	 * when its name, CRC or size does.
+	 *
+	 * @param partName
+	 *            the part name
+	 * @param crc
+	 *            the CRC-32 of the entry, -1 if unknown
+	 * @param size
+	 *            the uncompressed size of the entry, -1 if unknown
+	 * @return the fingerprint, null if the CRC or the size is unknown
+	 */
+	static String fingerprint(String partName, long crc, long size) {
+		if (crc < 0 || size < 0) {
+			return null;
+		}
+		return partName + "|" + Long.toHexString(crc) + "|" + size;
+	}
+
+	/**
+	 * Package opened by POI, used for files: the parts are read from the file
+	 * through its zip directory.
+	 */
+	static class OPC extends XLSXPackage {
+
+		/** The opc package. */
+		private final OPCPackage opcPackage;
+
+		/** The reader. */
+		private final XSSFReader reader;
+
+		/** The workbook part. */
+		private final PackagePart workbookPart;
+
+		/**
+		 * Instantiates a new OPC package.
+		 *
+		 * @param opcPackage
+		 *            the opc package
+		 * @throws IOException
+		 *             Signals that an I/O exception has occurred.
+		 * @throws OpenXML4JException
+		 *             the OpenXML4J exception
+		 */
+		OPC(OPCPackage opcPackage) throws IOException, OpenXML4JException {
+			this.opcPackage = opcPackage;
+			this.reader = new XSSFReader(opcPackage);
+			this.workbookPart = opcPackage.getPart(opcPackage
+					.getRelationshipsByType(
+							PackageRelationshipTypes.CORE_DOCUMENT)
+					.getRelationship(0));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.XLSXPackage#getStylesData()
+		 */
+		InputStream getStylesData() throws IOException {
+			return getPartData(XSSFRelation.STYLES.getContentType());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.XLSXPackage#getSharedStringsData()
+		 */
+		InputStream getSharedStringsData() throws IOException {
+			return getPartData(XSSFRelation.SHARED_STRINGS.getContentType());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.XLSXPackage#getWorkbookData()
+		 */
+		InputStream getWorkbookData() throws IOException,
+				OpenXML4JException {
+			return reader.getWorkbookData();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.XLSXPackage#getSheet(java.lang.String)
+		 */
+		InputStream getSheet(String relId) throws IOException,
+				OpenXML4JException {
+			return reader.getSheet(relId);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.XLSXPackage#getStylesFingerprint()
+		 */
+		String getStylesFingerprint() {
+			return getPartFingerprint(getPart(XSSFRelation.STYLES
+					.getContentType()));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.XLSXPackage#getSharedStringsFingerprint()
+		 */
+		String getSharedStringsFingerprint() {
+			return getPartFingerprint(getPart(XSSFRelation.SHARED_STRINGS
+					.getContentType()));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.XLSXPackage#getWorkbookFingerprint()
+		 */
+		String getWorkbookFingerprint() {
+			return getPartFingerprint(workbookPart);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.XLSXPackage#getSheetFingerprint(java.lang.String)
+		 */
+		String getSheetFingerprint(String relId) throws OpenXML4JException {
+			PackageRelationship rel = workbookPart.getRelationship(relId);
+			if (null == rel) {
+				return "";
+			}
+			return getPartFingerprint(opcPackage.getPart(PackagingURIHelper
+					.createPartName(rel.getTargetURI())));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.XLSXPackage#close()
+		 */
+		void close() {
+			// opened read only, nothing to save
+			opcPackage.revert();
+		}
+
+		/**
+		 * Opens the first part with the content type.
+		 *
+		 * @param contentType
+		 *            the content type
+		 * @return the part content, null if there is none
+		 * @throws IOException
+		 *             Signals that an I/O exception has occurred.
+		 */
+		private InputStream getPartData(String contentType) throws IOException {
+			PackagePart part = getPart(contentType);
+			return null == part ? null : part.getInputStream();
+		}
+
+		/**
+		 * Gets the first part with the content type.
+		 *
+		 * @param contentType
+		 *            the content type
+		 * @return the part, null if there is none
+		 */
+		private PackagePart getPart(String contentType) {
+			List<PackagePart> parts = opcPackage
+					.getPartsByContentType(contentType);
+			return parts.isEmpty() ? null : parts.get(0);
+		}
+
+		/**
+		 * Gets the fingerprint of a part from its zip entry.
+		 *
+		 * @param part
+		 *            the part, may be null
+		 * @return the fingerprint, "" if there is no part, null if it is not
+		 *         read from a zip entry
+		 */
+		private static String getPartFingerprint(PackagePart part) {
+			if (null == part) {
+				return "";
+			}
+			if (!(part instanceof ZipPackagePart)) {
+				return null;
+			}
+			ZipEntry entry = ((ZipPackagePart) part).getZipArchive();
+			return fingerprint(part.getPartName().getName(), entry.getCrc(),
+					entry.getSize());
+		}
+	}
+
+	/**
+	 * Package read straight from a zip archive in a byte buffer, resolving
+	 * the workbook relationships itself.
+	 */
+	static class Buffer extends XLSXPackage {
+
+		private static String packageRels = "_rels/.rels";
+		private static String officeDocumentType = "/officeDocument";
+		private static String stylesType = "/styles";
+		private static String sharedStringsType = "/sharedStrings";
+
+		/** The archive. */
+		private final ZipBuffer zipBuffer;
+
+		/** The workbook part name. */
+		private final String workbookPart;
+
+		/** The workbook relationships. */
+		private final Relationships workbookRels;
+
+		/**
+		 * Instantiates a new buffer package.
+		 *
+		 * @param zipBuffer
+		 *            the archive
+		 * @throws IOException
+		 *             Signals that an I/O exception has occurred.
+		 * @throws OpenXML4JException
+		 *             the OpenXML4J exception
+		 */
+		Buffer(ZipBuffer zipBuffer) throws IOException, OpenXML4JException {
+			this.zipBuffer = zipBuffer;
+
+			Relationships rels = Relationships.read(this, "", packageRels);
+			workbookPart = rels.getTargetOfType(officeDocumentType);
+			if (null == workbookPart) {
+				throw new InvalidFormatException(
+						"No workbook found in the package");
+			}
+			int slash = workbookPart.lastIndexOf('/');
+			String workbookDir = workbookPart.substring(0, slash + 1);
+			workbookRels = Relationships.read(this, workbookDir, workbookDir
+					+ "_rels/" + workbookPart.substring(slash + 1) + ".rels");
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.XLSXPackage#getStylesData()
+		 */
+		InputStream getStylesData() throws IOException {
+			return getPartData(workbookRels.getTargetOfType(stylesType));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.XLSXPackage#getSharedStringsData()
+		 */
+		InputStream getSharedStringsData() throws IOException {
+			return getPartData(workbookRels.getTargetOfType(sharedStringsType));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.XLSXPackage#getWorkbookData()
+		 */
+		InputStream getWorkbookData() throws IOException {
+			return getPartData(workbookPart);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.XLSXPackage#getSheet(java.lang.String)
+		 */
+		InputStream getSheet(String relId) throws IOException,
+				OpenXML4JException {
+			InputStream sheet = getPartData(workbookRels.getTarget(relId));
+			if (null == sheet) {
+				throw new InvalidFormatException("No sheet found for "
+						+ relId);
+			}
+			return sheet;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.XLSXPackage#getStylesFingerprint()
+		 */
+		String getStylesFingerprint() {
+			return getPartFingerprint(workbookRels.getTargetOfType(stylesType));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.XLSXPackage#getSharedStringsFingerprint()
+		 */
+		String getSharedStringsFingerprint() {
+			return getPartFingerprint(workbookRels
+					.getTargetOfType(sharedStringsType));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.XLSXPackage#getWorkbookFingerprint()
+		 */
+		String getWorkbookFingerprint() {
+			return getPartFingerprint(workbookPart);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.XLSXPackage#getSheetFingerprint(java.lang.String)
+		 */
+		String getSheetFingerprint(String relId) {
+			return getPartFingerprint(workbookRels.getTarget(relId));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see excel.XLSXPackage#close()
+		 */
+		void close() {
+			// nothing is held open
+		}
+
+		/**
+		 * Opens a part.
+		 *
+		 * @param partName
+		 *            the part name, may be null
+		 * @return the part content, null if there is no such part
+		 * @throws IOException
+		 *             Signals that an I/O exception has occurred.
+		 */
+		InputStream getPartData(String partName) throws IOException {
+			if (null == partName) {
+				return null;
+			}
+			ZipBuffer.Entry entry = zipBuffer.getEntry(partName);
+			return null == entry ? null : zipBuffer.getInputStream(entry);
+		}
+
+		/**
+		 * Gets the fingerprint of a part from its zip entry.
+		 *
+		 * @param partName
+		 *            the part name, may be null
+		 * @return the fingerprint, "" if there is no such part
+		 */
+		private String getPartFingerprint(String partName) {
+			ZipBuffer.Entry entry = null == partName ? null : zipBuffer
+					.getEntry(partName);
+			if (null == entry) {
+				return "";
+			}
+			return fingerprint(partName, entry.getCrc(), entry.getSize());
+		}
+	}
+
+	/**
+	 * Collects the relationship ids of the sheets listed in workbook.xml, and
+	 * whether the workbook uses the 1904 date system.
+	 */
+	static class SheetIds extends DefaultHandler {
+
+		private static String workbookPr = "workbookPr";
+		private static String date1904Attribute = "date1904";
+		private static String sheet = "sheet";
+		private static String relationshipsNamespace = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+		private static String id = "id";
+
+		/** The sheet ids. */
+		private final List<String> ids = new ArrayList<String>();
+
+		/** Set when the workbook uses the 1904 date system. */
+		private boolean date1904;
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.xml.sax.helpers.DefaultHandler#startElement(java.lang.String,
+		 * java.lang.String, java.lang.String, org.xml.sax.Attributes)
+		 */
+		public void startElement(String uri, String localName, String name,
+				Attributes attributes) throws SAXException {
+			if (sheet.equals(localName)) {
+				String relId = attributes.getValue(relationshipsNamespace, id);
+				if (null != relId) {
+					ids.add(relId);
+				}
+			} else if (workbookPr.equals(localName)) {
+				String value = attributes.getValue(date1904Attribute);
+				date1904 = "true".equals(value) || "1".equals(value);
+			}
+		}
+	}
+
+	/**
+	 * The relationships of a part, with the targets resolved to part names.
+	 */
+	static class Relationships extends DefaultHandler {
+
+		private static String relationship = "Relationship";
+		private static String id = "Id";
+		private static String type = "Type";
+		private static String target = "Target";
+		private static String targetMode = "TargetMode";
+		private static String external = "External";
+
+		/** The directory the targets are relative to. */
+		private final String baseDir;
+
+		/** The targets by id. */
+		private final Map<String, String> targets = new HashMap<String, String>();
+
+		/** The types, in document order. */
+		private final List<String> types = new ArrayList<String>();
+
+		/** The targets, in document order. */
+		private final List<String> orderedTargets = new ArrayList<String>();
+
+		/**
+		 * Instantiates new relationships.
+		 *
+		 * @param baseDir
+		 *            the directory the targets are relative to
+		 */
+		private Relationships(String baseDir) {
+			this.baseDir = baseDir;
+		}
+
+		/**
+		 * Reads the relationships part.
+		 *
+		 * @param buffer
+		 *            the package
+		 * @param baseDir
+		 *            the directory the targets are relative to
+		 * @param relsPart
+		 *            the relationships part name
+		 * @return the relationships, empty if there is no such part
+		 * @throws IOException
+		 *             Signals that an I/O exception has occurred.
+		 * @throws InvalidFormatException
+		 *             the relationships part cannot be parsed
+		 */
+		static Relationships read(Buffer buffer, String baseDir,
+				String relsPart) throws IOException, InvalidFormatException {
+			Relationships rels = new Relationships(baseDir);
+			InputStream relsData = buffer.getPartData(relsPart);
+			if (null == relsData) {
+				return rels;
+			}
+			try {
+				XMLReader parser = ParserResources.acquireXMLReader();
+				try {
+					parser.setContentHandler(rels);
+					parser.parse(new InputSource(relsData));
+				} finally {
+					ParserResources.releaseXMLReader(parser);
+				}
+			} catch (SAXException ex) {
+				throw new InvalidFormatException("Cannot read " + relsPart
+						+ ": " + ex.getMessage());
+			} finally {
+				relsData.close();
+			}
+			return rels;
+		}
+
+		/**
+		 * Gets the target of a relationship.
+		 *
+		 * @param relId
+		 *            the relationship id
+		 * @return the part name, null if there is no such relationship
+		 */
+		String getTarget(String relId) {
+			return targets.get(relId);
+		}
+
+		/**
+		 * Gets the target of the first relationship of a type.
+		 *
+		 * @param typeSuffix
+		 *            the end of the relationship type
+		 * @return the part name, null if there is no such relationship
+		 */
+		String getTargetOfType(String typeSuffix) {
+			for (int i = 0; i < types.size(); i++) {
+				if (types.get(i).endsWith(typeSuffix)) {
+					return orderedTargets.get(i);
+				}
+			}
+			return null;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.xml.sax.helpers.DefaultHandler#startElement(java.lang.String,
+		 * java.lang.String, java.lang.String, org.xml.sax.Attributes)
+		 */
+		public void startElement(String uri, String localName, String name,
+				Attributes attributes) throws SAXException {
+			if (!relationship.equals(name)
+					|| external.equals(attributes.getValue(targetMode))) {
+				return;
+			}
+			String partName = resolve(attributes.getValue(target));
+			targets.put(attributes.getValue(id), partName);
+			types.add(attributes.getValue(type));
+			orderedTargets.add(partName);
+		}
+
+		/**
+		 * Resolves a target to a part name.
+		 *
+		 * @param relTarget
+		 *            the target, absolute or relative to the base directory
+		 * @return the part name
+		 */
+		private String resolve(String relTarget) {
+			String path = relTarget.startsWith("/") ? relTarget.substring(1)
+					: baseDir + relTarget;
+			List<String> segments = new ArrayList<String>();
+			for (String segment : path.split("/")) {
+				if ("..".equals(segment)) {
+					if (!segments.isEmpty()) {
+						segments.remove(segments.size() - 1);
+					}
+				} else if (segment.length() > 0 && !".".equals(segment)) {
+					segments.add(segment);
+				}
+			}
+			StringBuilder partName = new StringBuilder();
+			for (String segment : segments) {
+				if (partName.length() > 0) {
+					partName.append('/');
+				}
+				partName.append(segment);
+			}
+			return partName.toString();
+		}
+	}
+}
@@ -0,0 +1,305 @@
+package excel;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The Class ZipBuffer. Random access to the entries of a zip archive held in
+ * a byte buffer (heap or memory mapped). Only the central directory is read
+ * up front; an entry is inflated from the buffer while it is being read, so
+ * the archive is never copied nor fully inflated.
+ *
+ * @author Sourav
+ */
+class ZipBuffer {
+
+	/** The Constant END_SIGNATURE. */
+	private static final int END_SIGNATURE = 0x06054b50;
+
+	/** The Constant CENTRAL_SIGNATURE. */
+	private static final int CENTRAL_SIGNATURE = 0x02014b50;
+
+	/** The Constant LOCAL_SIGNATURE. */
+	static final int LOCAL_SIGNATURE = 0x04034b50;
+
+	/** The Constant END_SIZE. */
+	private static final int END_SIZE = 22;
+
+	/** The Constant STORED. */
+	private static final int STORED = 0;
+
+	/** The Constant DEFLATED. */
+	private static final int DEFLATED = 8;
+
+	/** The Constant UTF8. */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The buffer, little endian. */
+	private final ByteBuffer buffer;
+
+	/** The entries by name. */
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+	/**
+	 * Instantiates a new zip buffer over the remaining bytes of the buffer.
+	 *
+	 * @param source
+	 *            the buffer holding the archive
+	 * @throws IOException
+	 *             Signals that the buffer holds no readable zip archive.
+	 */
+	ZipBuffer(ByteBuffer source) throws IOException {
+		buffer = source.slice().order(ByteOrder.LITTLE_ENDIAN);
+		readCentralDirectory();
+	}
+
+	/**
+	 * Gets the entry.
+	 *
+	 * @param name
+	 *            the entry name
+	 * @return the entry, or null if there is no such entry
+	 */
+	Entry getEntry(String name) {
+		return entries.get(name);
+	}
+
+	/**
+	 * Gets the entries, in archive order.
+	 *
+	 * @return the entries
+	 */
+	Collection<Entry> getEntries() {
+		return Collections.unmodifiableCollection(entries.values());
+	}
+
+	/**
+	 * Opens the content of an entry.
+	 *
+	 * @param entry
+	 *            the entry
+	 * @return the input stream
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	InputStream getInputStream(Entry entry) throws IOException {
+		int local = entry.localHeaderOffset;
+		if (local + 30 > buffer.limit() || buffer.getInt(local) != LOCAL_SIGNATURE) {
+			throw new IOException("Corrupt zip entry " + entry.name);
+		}
+		int dataStart = local + 30 + unsignedShort(local + 26)
+				+ unsignedShort(local + 28);
+		if (dataStart + entry.compressedSize > buffer.limit()) {
+			throw new EOFException("Truncated zip entry " + entry.name);
+		}
+
+		ByteBuffer data = buffer.duplicate();
+		data.position(dataStart);
+		data.limit(dataStart + entry.compressedSize);
+		InputStream raw = new ByteBufferInputStream(data);
+
+		switch (entry.method) {
+		case STORED:
+			return raw;
+		case DEFLATED:
+			return new EntryInflaterInputStream(raw);
+		default:
+			throw new IOException("Unsupported compression method "
+					+ entry.method + " for zip entry " + entry.name);
+		}
+	}
+
+	/**
+	 * Reads the central directory.
+	 *
+	 * @throws IOException
+	 *             Signals that the buffer holds no readable zip archive.
+	 */
+	private void readCentralDirectory() throws IOException {
+		int end = -1;
+		int lowest = Math.max(0, buffer.limit() - END_SIZE - 0xFFFF);
+		for (int pos = buffer.limit() - END_SIZE; pos >= lowest; pos--) {
+			if (buffer.getInt(pos) == END_SIGNATURE) {
+				end = pos;
+				break;
+			}
+		}
+		if (end < 0) {
+			throw new IOException("Not a zip archive");
+		}
+
+		int count = unsignedShort(end + 10);
+		long offset = buffer.getInt(end + 16) & 0xFFFFFFFFL;
+		if (count == 0xFFFF || offset == 0xFFFFFFFFL) {
+			throw new IOException("ZIP64 archives are not supported");
+		}
+
+		int pos = (int) offset;
+		for (int i = 0; i < count; i++) {
+			if (pos + 46 > buffer.limit()
+					|| buffer.getInt(pos) != CENTRAL_SIGNATURE) {
+				throw new IOException("Corrupt zip central directory");
+			}
+			int nameLength = unsignedShort(pos + 28);
+			byte[] name = new byte[nameLength];
+			ByteBuffer nameBuffer = buffer.duplicate();
+			nameBuffer.position(pos + 46);
+			nameBuffer.get(name);
+
+			Entry entry = new Entry(new String(name, UTF8),
+					unsignedShort(pos + 10), buffer.getInt(pos + 16) & 0xFFFFFFFFL,
+					buffer.getInt(pos + 20), buffer.getInt(pos + 24) & 0xFFFFFFFFL,
+					buffer.getInt(pos + 42));
+			entries.put(entry.name, entry);
+
+			pos += 46 + nameLength + unsignedShort(pos + 30)
+					+ unsignedShort(pos + 32);
+		}
+	}
+
+	/**
+	 * Reads an unsigned short.
+	 *
+	 * @param pos
+	 *            the position in the buffer
+	 * @return the value
+	 */
+	private int unsignedShort(int pos) {
+		return buffer.getShort(pos) & 0xFFFF;
+	}
+
+	/**
+	 * The Class Entry.
+	 */
+	static final class Entry {
+
+		/** The name. */
+		private final String name;
+
+		/** The compression method. */
+		private final int method;
+
+		/** The crc. */
+		private final long crc;
+
+		/** The compressed size. */
+		private final int compressedSize;
+
+		/** The size. */
+		private final long size;
+
+		/** The local header offset. */
+		private final int localHeaderOffset;
+
+		/**
+		 * Instantiates a new entry.
+		 *
+		 * @param name
+		 *            the name
+		 * @param method
+		 *            the compression method
+		 * @param crc
+		 *            the crc
+		 * @param compressedSize
+		 *            the compressed size
+		 * @param size
+		 *            the size
+		 * @param localHeaderOffset
+		 *            the local header offset
+		 */
+		Entry(String name, int method, long crc, int compressedSize,
+				long size, int localHeaderOffset) {
+			this.name = name;
+			this.method = method;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+
+		/**
+		 * Gets the name.
+		 *
+		 * @return the name
+		 */
+		String getName() {
+			return name;
+		}
+
+		/**
+		 * Gets the crc.
+		 *
+		 * @return the crc
+		 */
+		long getCrc() {
+			return crc;
+		}
+
+		/**
+		 * Gets the uncompressed size.
+		 *
+		 * @return the size
+		 */
+		long getSize() {
+			return size;
+		}
+	}
+
+	/**
+	 * Inflates a deflated entry and releases its inflater when closed.
+	 */
+	private static class EntryInflaterInputStream extends InflaterInputStream {
+
+		/** Set once the dummy byte needed by raw inflating was given. */
+		private boolean eof;
+
+		/**
+		 * Instantiates a new entry inflater input stream.
+		 *
+		 * @param raw
+		 *            the deflated data
+		 */
+		EntryInflaterInputStream(InputStream raw) {
+			super(raw, new Inflater(true), 8192);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.zip.InflaterInputStream#fill()
+		 */
+		protected void fill() throws IOException {
+			if (eof) {
+				throw new EOFException("Unexpected end of zip entry");
+			}
+			len = in.read(buf, 0, buf.length);
+			if (len == -1) {
+				// the inflater may need one byte past the deflated data
+				buf[0] = 0;
+				len = 1;
+				eof = true;
+			}
+			inf.setInput(buf, 0, len);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.zip.InflaterInputStream#close()
+		 */
+		public void close() throws IOException {
+			super.close();
+			inf.end();
+		}
+	}
+}
@@ -0,0 +1,296 @@
+package excel;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class AsyncExcelReaderTest. Reads files with an
+ * {@link AsyncExcelReader} on an executor whose tasks the test runs one by
+ * one, and checks how many files are read at the same time, the bytes they
+ * count against the budget and the order the results are delivered in.
+ *
+ * @author Sourav
+ */
+public class AsyncExcelReaderTest extends TestCase {
+
+	/** The temp directory. */
+	private File directory;
+
+	/** The executor, running its tasks when the test asks. */
+	private ManualExecutor executor;
+
+	/** The size of every workbook. */
+	private long fileBytes;
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		directory = TestWorkbooks.newDirectory();
+		for (int i = 1; i <= 4; i++) {
+			TestWorkbooks.writeXLSX(new File(directory, "file" + i + ".xlsx"),
+					false, TestWorkbooks.numberedRows(10, "file"));
+		}
+		fileBytes = new File(directory, "file1.xlsx").length();
+		executor = new ManualExecutor();
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		TestWorkbooks.delete(directory);
+	}
+
+	/**
+	 * Test that a file only starts while the files being read stay within
+	 * the byte budget, and in the order they were asked for.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testInFlightBudget() throws Exception {
+		AsyncExcelReader reader = AsyncExcelReader.builder().executor(executor)
+				.maxConcurrency(4).maxInFlightBytes(fileBytes * 2).build();
+		List<CompletableFuture<Map<Integer, List<ExcelDTO>>>> futures = new ArrayList<CompletableFuture<Map<Integer, List<ExcelDTO>>>>();
+		for (int i = 1; i <= 4; i++) {
+			futures.add(reader.readAsync(path(i), 3, 1));
+		}
+		assertState(reader, 2, 2, fileBytes * 2);
+		assertEquals(2, executor.tasks.size());
+
+		executor.run(1);
+		assertTrue(futures.get(1).isDone());
+		assertFalse(futures.get(0).isDone());
+		assertState(reader, 2, 1, fileBytes * 2);
+
+		executor.runAll();
+		assertState(reader, 0, 0, 0);
+		Map<Integer, List<ExcelDTO>> expected = ExcelReader.builder().build()
+				.read(path(1).toFile(), 3, 1);
+		for (CompletableFuture<Map<Integer, List<ExcelDTO>>> future : futures) {
+			assertEquals(TestWorkbooks.toText(expected), TestWorkbooks
+					.toText(future.get()));
+		}
+		reader.close();
+	}
+
+	/**
+	 * Test that a file larger than the budget is read alone, and that the
+	 * number of files read at the same time is bounded.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testLargeFileReadAlone() throws Exception {
+		AsyncExcelReader reader = AsyncExcelReader.builder().executor(executor)
+				.maxConcurrency(4).maxInFlightBytes(fileBytes / 2).build();
+		for (int i = 1; i <= 3; i++) {
+			reader.readAsync(path(i), 3, 1);
+		}
+		assertState(reader, 1, 2, fileBytes / 2);
+		executor.run(0);
+		assertState(reader, 1, 1, fileBytes / 2);
+		executor.runAll();
+		reader.close();
+
+		executor = new ManualExecutor();
+		reader = AsyncExcelReader.builder().executor(executor)
+				.maxConcurrency(1).build();
+		for (int i = 1; i <= 3; i++) {
+			reader.readAsync(path(i), 3, 1);
+		}
+		assertState(reader, 1, 2, fileBytes);
+		executor.runAll();
+		assertState(reader, 0, 0, 0);
+		reader.close();
+	}
+
+	/**
+	 * Test that the results of a directory are delivered in the order of
+	 * the paths, holding back those finished early, which count against the
+	 * budget until delivered; and that a failing file only fails itself.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testInOrderDelivery() throws Exception {
+		Files.write(path(3), new byte[] { 'P', 'K', 1, 2, 3 });
+		AsyncExcelReader reader = AsyncExcelReader.builder().executor(executor)
+				.maxConcurrency(4).maxInFlightBytes(fileBytes * 4).build();
+		final List<AsyncExcelReader.FileResult> results = Collections
+				.synchronizedList(new ArrayList<AsyncExcelReader.FileResult>());
+		CompletableFuture<Void> done = reader.readDirectory(directory.toPath(),
+				"*.xlsx", 3, 1, true, new Consumer<AsyncExcelReader.FileResult>() {
+					public void accept(AsyncExcelReader.FileResult result) {
+						results.add(result);
+					}
+				});
+		assertEquals(4, executor.tasks.size());
+		long allBytes = reader.getInFlightBytes();
+
+		executor.run(3);
+		executor.run(1);
+		assertTrue(results.isEmpty());
+		assertEquals(allBytes, reader.getInFlightBytes());
+		assertEquals(2, reader.getRunningCount());
+
+		executor.run(0);
+		assertEquals(2, results.size());
+		assertEquals(allBytes - fileBytes * 2, reader.getInFlightBytes());
+		assertFalse(done.isDone());
+
+		executor.runAll();
+		done.get();
+		assertEquals(4, results.size());
+		for (int i = 0; i < 4; i++) {
+			assertEquals(i, results.get(i).getIndex());
+			assertEquals(path(i + 1), results.get(i).getPath());
+			assertEquals(2 != i, results.get(i).isSuccess());
+		}
+		assertNull(results.get(2).getRows());
+		assertNotNull(results.get(2).getFailure());
+		assertEquals(11, results.get(3).getRows().size());
+		assertEquals(0, reader.getInFlightBytes());
+		reader.close();
+	}
+
+	/**
+	 * Test that closing the reader fails the files waiting to be read.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testCloseFailsPendingReads() throws Exception {
+		AsyncExcelReader reader = AsyncExcelReader.builder().executor(executor)
+				.maxConcurrency(1).build();
+		CompletableFuture<Map<Integer, List<ExcelDTO>>> first = reader
+				.readAsync(path(1), 3, 1);
+		CompletableFuture<Map<Integer, List<ExcelDTO>>> second = reader
+				.readAsync(path(2), 3, 1);
+		reader.close();
+		try {
+			second.get();
+			fail("pending read not failed");
+		} catch (ExecutionException ex) {
+			assertTrue(ex.getCause() instanceof IllegalStateException);
+		}
+		executor.runAll();
+		assertEquals(11, first.get().size());
+		assertTrue(reader.readAsync(path(3), 3, 1).isCompletedExceptionally());
+	}
+
+	/**
+	 * Gets the path of a workbook.
+	 *
+	 * @param number
+	 *            the number of the workbook (Starts from 1)
+	 * @return the path
+	 */
+	private Path path(int number) {
+		return new File(directory, "file" + number + ".xlsx").toPath();
+	}
+
+	/**
+	 * Asserts the files being read and waiting, and their bytes.
+	 *
+	 * @param reader
+	 *            the reader
+	 * @param running
+	 *            the running count
+	 * @param pending
+	 *            the pending count
+	 * @param bytes
+	 *            the in-flight bytes
+	 */
+	private static void assertState(AsyncExcelReader reader, int running,
+			int pending, long bytes) {
+		assertEquals("running", running, reader.getRunningCount());
+		assertEquals("pending", pending, reader.getPendingCount());
+		assertEquals("bytes", bytes, reader.getInFlightBytes());
+	}
+
+	/**
+	 * An executor keeping its tasks until the test runs them, on the thread
+	 * of the test.
+	 */
+	private static final class ManualExecutor extends AbstractExecutorService {
+
+		/** The tasks in the order they came, null once run. */
+		private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+		/**
+		 * Runs a task.
+		 *
+		 * @param index
+		 *            the index of the task (Starts from 0)
+		 */
+		void run(int index) {
+			tasks.set(index, null).run();
+		}
+
+		/**
+		 * Runs the tasks, those they start included, until none is left.
+		 */
+		void runAll() {
+			for (int index = 0; index < tasks.size(); index++) {
+				if (null != tasks.get(index)) {
+					run(index);
+				}
+			}
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+		 */
+		public void execute(Runnable task) {
+			tasks.add(task);
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.ExecutorService#shutdown()
+		 */
+		public void shutdown() {
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.ExecutorService#shutdownNow()
+		 */
+		public List<Runnable> shutdownNow() {
+			return new ArrayList<Runnable>();
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.ExecutorService#isShutdown()
+		 */
+		public boolean isShutdown() {
+			return false;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.ExecutorService#isTerminated()
+		 */
+		public boolean isTerminated() {
+			return false;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.ExecutorService#awaitTermination(long, java.util.concurrent.TimeUnit)
+		 */
+		public boolean awaitTermination(long timeout, TimeUnit unit) {
+			return true;
+		}
+	}
+}
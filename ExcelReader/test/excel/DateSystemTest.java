@@ -0,0 +1,189 @@
+package excel;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class DateSystemTest. Reads the same dates from workbooks saved with
+ * the 1900 and the 1904 date systems, whose serial dates differ by 1462
+ * days, and checks they give the same rows in xls and xlsx, with every
+ * xlsx parser.
+ *
+ * @author Sourav
+ */
+public class DateSystemTest extends TestCase {
+
+	/** The serial date of 2009-07-06 in the 1900 date system. */
+	private static final int SERIAL_1900 = 40000;
+
+	/** The days between the 1900 and the 1904 date systems. */
+	private static final int DAYS_1900_TO_1904 = 1462;
+
+	/** The temp directory. */
+	private File directory;
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		directory = TestWorkbooks.newDirectory();
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		TestWorkbooks.delete(directory);
+	}
+
+	/**
+	 * Test the dates of xlsx workbooks.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testXLSX() throws Exception {
+		File date1900 = new File(directory, "1900.xlsx");
+		File date1904 = new File(directory, "1904.xlsx");
+		TestWorkbooks.writeXLSX(date1900, false, dates(0));
+		TestWorkbooks.writeXLSX(date1904, true, dates(DAYS_1900_TO_1904));
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			ExcelReader reader = ExcelReader.builder().build();
+			assertSameDates(reader, date1900, date1904);
+			assertSameDates(reader.toBuilder().byteTokenizer(true).build(),
+					date1900, date1904);
+			assertSameDates(reader.toBuilder().pipelineExecutor(executor)
+					.build(), date1900, date1904);
+			assertSameDates(reader.toBuilder().byteTokenizer(true)
+					.pipelineExecutor(executor).build(), date1900, date1904);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Test the dates of xls workbooks.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testXLS() throws Exception {
+		File date1900 = new File(directory, "1900.xls");
+		File date1904 = new File(directory, "1904.xls");
+		TestWorkbooks.writeXLS(date1900, false, dates(0));
+		TestWorkbooks.writeXLS(date1904, true, dates(DAYS_1900_TO_1904));
+
+		assertSameDates(ExcelReader.builder().build(), date1900, date1904);
+	}
+
+	/**
+	 * Test that the 1904 date system only shifts dates, not numbers without
+	 * a date format.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testNumbersAreNotShifted() throws Exception {
+		File date1904 = new File(directory, "1904.xlsx");
+		TestWorkbooks.writeXLSX(date1904, true, dates(DAYS_1900_TO_1904));
+
+		List<ExcelDTO> row = ExcelReader.builder().build().read(date1904, 3, 1)
+				.get(1);
+		assertEquals("1", row.get(0).getColumnValue());
+		assertEquals(Integer.toString(SERIAL_1900 - DAYS_1900_TO_1904), row
+				.get(2).getColumnValue());
+	}
+
+	/**
+	 * Asserts that the workbooks give the same rows and the same days.
+	 *
+	 * @param reader
+	 *            the reader
+	 * @param date1900
+	 *            the workbook of the 1900 date system
+	 * @param date1904
+	 *            the workbook of the 1904 date system
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static void assertSameDates(ExcelReader reader, File date1900,
+			File date1904) throws Exception {
+		assertEquals(TestWorkbooks.toText(reader.read(date1900, 2, 1)),
+				TestWorkbooks.toText(reader.read(date1904, 2, 1)));
+
+		List<String> raw1900 = readRaw(reader, date1900);
+		List<String> raw1904 = readRaw(reader, date1904);
+		assertEquals(raw1900, raw1904);
+		assertTrue(raw1904.get(1), raw1904.get(1).contains(
+				"| DATE " + LocalDate.of(2009, 7, 6) + " "));
+	}
+
+	/**
+	 * Reads the raw rows of the first sheet as text: the type, the day or
+	 * the number, the epoch millis and the text of every cell.
+	 *
+	 * @param reader
+	 *            the reader
+	 * @param workbook
+	 *            the workbook
+	 * @return the rows
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static List<String> readRaw(ExcelReader reader, File workbook)
+			throws Exception {
+		final List<String> rows = new ArrayList<String>();
+		reader.readRaw(workbook, 2, 1, new RawRowHandler() {
+			public void handleRow(RawRow row) {
+				StringBuilder text = new StringBuilder();
+				for (int column = 0; column < row.getColumnCount(); column++) {
+					if (column > 0) {
+						text.append(" | ");
+					}
+					RawCellType type = row.getType(column);
+					text.append(type).append(' ');
+					if (RawCellType.DATE == type) {
+						text.append(LocalDate.ofEpochDay(row.getEpochDay(column)))
+								.append(' ').append(row.getEpochMillis(column));
+					} else if (RawCellType.NUMBER == type) {
+						text.append((long) row.getNumber(column));
+					}
+					text.append(' ').append(row.format(column));
+				}
+				rows.add(text.toString());
+			}
+		});
+		return rows;
+	}
+
+	/**
+	 * Creates the rows of a sheet of dates: a number, a date and its serial
+	 * date without a format in every row, from 2009-07-06 on, with a time of
+	 * day, days around the start of the 1904 date system and the last date.
+	 *
+	 * @param shift
+	 *            the days to subtract from the serial dates of the 1900
+	 *            date system
+	 * @return the rows
+	 */
+	private static Object[][] dates(int shift) {
+		double[] serials = { SERIAL_1900, SERIAL_1900 + 0.75, 1462, 1500,
+				36526, 2958465 };
+		Object[][] rows = new Object[serials.length + 1][];
+		rows[0] = new Object[] { "Id", "Date", "Serial" };
+		for (int row = 0; row < serials.length; row++) {
+			rows[row + 1] = new Object[] { Integer.valueOf(row + 1),
+					TestWorkbooks.date(serials[row] - shift),
+					Double.valueOf(serials[row] - shift) };
+		}
+		return rows;
+	}
+}
@@ -0,0 +1,302 @@
+package excel;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class IncrementalCacheTest. Reads new versions of a workbook through
+ * an {@link IncrementalCache} and checks which sheets are taken from the
+ * last version, and that the rows are always those of a full read.
+ *
+ * @author Sourav
+ */
+public class IncrementalCacheTest extends TestCase {
+
+	/** The workbook key. */
+	private static final String KEY = "upload";
+
+	/** The temp directory. */
+	private File directory;
+
+	/** The cache. */
+	private IncrementalCache cache;
+
+	/** The reader with the cache. */
+	private ExcelReader reader;
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		directory = TestWorkbooks.newDirectory();
+		cache = new IncrementalCache();
+		reader = ExcelReader.builder().incrementalCache(cache).build();
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		TestWorkbooks.delete(directory);
+	}
+
+	/**
+	 * Test that an unchanged workbook reuses every sheet, whatever its file
+	 * is called.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testUnchangedWorkbookReusesAllSheets() throws Exception {
+		File first = write("v1.xlsx", "alpha", "beta", "gamma");
+		File second = write("v2.xlsx", "alpha", "beta", "gamma");
+
+		Map<Integer, Map<Integer, List<ExcelDTO>>> read = reader.readAll(KEY,
+				first, 3);
+		assertCounts(3, 0);
+		assertSame(read, reader.readAll(KEY, second, 3));
+		assertCounts(3, 3);
+	}
+
+	/**
+	 * Test that a changed sheet is parsed again and the others are reused
+	 * when the shared strings are unchanged.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testChangedSheetIsParsedAgain() throws Exception {
+		reader.readAll(KEY, write("v1.xlsx", "alpha", "beta", "gamma"), 3);
+		Object[][][] sheets = sheets("alpha", "beta", "gamma");
+		sheets[1][2][2] = Double.valueOf(99.5);
+		File changed = new File(directory, "v2.xlsx");
+		TestWorkbooks.writeXLSX(changed, false, sheets);
+
+		assertSame(changed, reader.readAll(KEY, changed, 3));
+		assertCounts(4, 2);
+	}
+
+	/**
+	 * Test that a sheet is reused when the shared strings changed but every
+	 * string it uses is still the same string at the same index.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testNewStringsAfterTheSheetStillReuse() throws Exception {
+		reader.readAll(KEY, write("v1.xlsx", "alpha", "beta", "gamma"), 3);
+		File changed = write("v2.xlsx", "alpha", "beta", "delta");
+
+		assertSame(changed, reader.readAll(KEY, changed, 3));
+		assertCounts(4, 2);
+	}
+
+	/**
+	 * Test that a sheet whose own entry is unchanged is parsed again when a
+	 * string it uses moved to another index.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testMovedStringsAreRejected() throws Exception {
+		reader.readAll(KEY, write("v1.xlsx", "alpha", "beta", "gamma"), 3);
+		// the text of the first sheet gets one more string, which shifts the
+		// indexes of the strings of the sheets after it
+		Object[][][] sheets = sheets("alpha", "beta", "gamma");
+		sheets[0][1][2] = "inserted";
+		File changed = new File(directory, "v2.xlsx");
+		TestWorkbooks.writeXLSX(changed, false, sheets);
+
+		assertSame(changed, reader.readAll(KEY, changed, 3));
+		assertCounts(6, 0);
+	}
+
+	/**
+	 * Test that every sheet is parsed again when lastCellNum changes.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testOtherLastCellNumIsRejected() throws Exception {
+		File workbook = write("v1.xlsx", "alpha", "beta", "gamma");
+		reader.readAll(KEY, workbook, 3);
+
+		Map<Integer, Map<Integer, List<ExcelDTO>>> narrow = reader.readAll(
+				KEY, workbook, 2);
+		assertCounts(6, 0);
+		assertEquals(toText(ExcelReader.builder().build().readAll(workbook, 2)),
+				toText(narrow));
+	}
+
+	/**
+	 * Test that every sheet is parsed again when the workbook moves to the
+	 * 1904 date system, which changes the dates of unchanged sheets.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testOtherDateSystemIsRejected() throws Exception {
+		reader.readAll(KEY, write("v1.xlsx", "alpha", "beta", "gamma"), 3);
+		File changed = new File(directory, "v2.xlsx");
+		TestWorkbooks.writeXLSX(changed, true, sheets("alpha", "beta",
+				"gamma"));
+
+		assertSame(changed, reader.readAll(KEY, changed, 3));
+		assertCounts(6, 0);
+	}
+
+	/**
+	 * Test that the rows of a read belong to it, so changing them does not
+	 * change the rows of the next version.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testReusedRowsAreCopies() throws Exception {
+		File workbook = write("v1.xlsx", "alpha", "beta", "gamma");
+		Map<Integer, Map<Integer, List<ExcelDTO>>> first = reader.readAll(
+				KEY, workbook, 3);
+		String expected = toText(first);
+		first.get(1).get(2).get(1).setColumnValue("changed");
+		first.get(2).remove(3);
+
+		assertEquals(expected, toText(reader.readAll(KEY, workbook, 3)));
+		assertCounts(3, 3);
+	}
+
+	/**
+	 * Test that forgetting a workbook parses every sheet of its next read.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testForget() throws Exception {
+		File workbook = write("v1.xlsx", "alpha", "beta", "gamma");
+		reader.readAll(KEY, workbook, 3);
+		assertEquals(1, cache.getWorkbookCount());
+		cache.forget(KEY);
+		assertEquals(0, cache.getWorkbookCount());
+
+		reader.readAll(KEY, workbook, 3);
+		assertCounts(6, 0);
+	}
+
+	/**
+	 * Test that the least recently read workbooks are forgotten beyond the
+	 * maximum number of workbooks.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testLeastRecentlyReadWorkbookIsForgotten() throws Exception {
+		cache = new IncrementalCache(2);
+		reader = reader.toBuilder().incrementalCache(cache).build();
+		File workbook = write("v1.xlsx", "alpha", "beta", "gamma");
+		reader.readAll("a", workbook, 3);
+		reader.readAll("b", workbook, 3);
+		reader.readAll("a", workbook, 3);
+		reader.readAll("c", workbook, 3);
+		assertEquals(2, cache.getWorkbookCount());
+
+		reader.readAll("a", workbook, 3);
+		reader.readAll("b", workbook, 3);
+		assertCounts(12, 6);
+	}
+
+	/**
+	 * Writes a workbook of three sheets.
+	 *
+	 * @param name
+	 *            the file name
+	 * @param texts
+	 *            the text of the rows of every sheet
+	 * @return the file
+	 * @throws Exception
+	 *             the exception
+	 */
+	private File write(String name, String... texts) throws Exception {
+		File file = new File(directory, name);
+		TestWorkbooks.writeXLSX(file, false, sheets(texts));
+		return file;
+	}
+
+	/**
+	 * Creates the rows of the sheets of a workbook.
+	 *
+	 * @param texts
+	 *            the text of the rows of every sheet
+	 * @return the rows of every sheet
+	 */
+	private static Object[][][] sheets(String... texts) {
+		Object[][][] sheets = new Object[texts.length][][];
+		for (int index = 0; index < texts.length; index++) {
+			sheets[index] = TestWorkbooks.numberedRows(5, texts[index]);
+			sheets[index][1][2] = TestWorkbooks.date(40000 + index);
+		}
+		return sheets;
+	}
+
+	/**
+	 * Asserts that the rows read incrementally are those of a full read of
+	 * the same workbook.
+	 *
+	 * @param workbook
+	 *            the workbook
+	 * @param read
+	 *            the rows read incrementally
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static void assertSame(File workbook,
+			Map<Integer, Map<Integer, List<ExcelDTO>>> read) throws Exception {
+		assertEquals(toText(ExcelReader.builder().build().readAll(workbook, 3)),
+				toText(read));
+	}
+
+	/**
+	 * Asserts that two reads have the same rows.
+	 *
+	 * @param expected
+	 *            the expected rows
+	 * @param read
+	 *            the rows read
+	 */
+	private static void assertSame(
+			Map<Integer, Map<Integer, List<ExcelDTO>>> expected,
+			Map<Integer, Map<Integer, List<ExcelDTO>>> read) {
+		assertEquals(toText(expected), toText(read));
+	}
+
+	/**
+	 * Asserts the sheets parsed and reused so far.
+	 *
+	 * @param parsed
+	 *            the parsed sheet count
+	 * @param reused
+	 *            the reused sheet count
+	 */
+	private void assertCounts(long parsed, long reused) {
+		assertEquals("parsed", parsed, cache.getParsedSheetCount());
+		assertEquals("reused", reused, cache.getReusedSheetCount());
+	}
+
+	/**
+	 * Gives the rows of all sheets as text.
+	 *
+	 * @param sheets
+	 *            the rows of every sheet
+	 * @return the text
+	 */
+	private static String toText(Map<Integer, Map<Integer, List<ExcelDTO>>> sheets) {
+		StringBuilder text = new StringBuilder();
+		for (Map.Entry<Integer, Map<Integer, List<ExcelDTO>>> sheet : sheets
+				.entrySet()) {
+			text.append("sheet ").append(sheet.getKey()).append('\n')
+					.append(TestWorkbooks.toText(sheet.getValue()));
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,141 @@
+package excel;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class PipelinedSheetReaderTest. Reads a sheet through the pipeline of
+ * a {@link PipelinedSheetReader}, to the end or stopping early, and checks
+ * the rows are those of a plain read and that an early stop ends the
+ * tokenizer before it converts the rest of the sheet.
+ *
+ * @author Sourav
+ */
+public class PipelinedSheetReaderTest extends TestCase {
+
+	/** The name of the tokenizer threads. */
+	private static final String THREAD_NAME = "xlsx-tokenizer";
+
+	/** The temp directory. */
+	private File directory;
+
+	/** The workbook, of one sheet larger than the queue of batches. */
+	private File workbook;
+
+	/** The executor converting the batches. */
+	private ThreadPoolExecutor executor;
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		directory = TestWorkbooks.newDirectory();
+		workbook = new File(directory, "rows.xlsx");
+		TestWorkbooks.writeXLSX(workbook, false, TestWorkbooks
+				.numberedRows(RowCursorTest.ROWS, "row"));
+		executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(2);
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		executor.shutdown();
+		TestWorkbooks.delete(directory);
+	}
+
+	/**
+	 * Test that the pipeline gives the rows of a plain read, with either
+	 * tokenizer.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testSameRows() throws Exception {
+		String expected = TestWorkbooks.toText(ExcelReader.builder().build()
+				.read(workbook, 3, 1));
+		ExcelReader reader = ExcelReader.builder().pipelineExecutor(executor)
+				.build();
+		assertEquals(expected, TestWorkbooks.toText(reader.read(workbook, 3, 1)));
+		assertEquals(expected, TestWorkbooks.toText(reader.toBuilder()
+				.byteTokenizer(true).build().read(workbook, 3, 1)));
+		assertEquals(0, tokenizerThreads());
+	}
+
+	/**
+	 * Test that an error of the row handler stops the pipeline: the error
+	 * is thrown as it is, the tokenizer ends and the batches beyond the
+	 * queue are never converted.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testHandlerErrorCancels() throws Exception {
+		ExcelReader reader = ExcelReader.builder().pipelineExecutor(executor)
+				.build();
+		reader.read(workbook, 3, 1);
+		long allBatches = executor.getTaskCount();
+
+		final IllegalStateException stop = new IllegalStateException("stop");
+		try {
+			reader.read(workbook, 3, 1, new RowHandler() {
+				public void handleRow(int rowNumber, List<ExcelDTO> row) {
+					if (10 == rowNumber) {
+						throw stop;
+					}
+				}
+			});
+			fail("error of the row handler not thrown");
+		} catch (IllegalStateException ex) {
+			assertSame(stop, ex);
+		}
+		assertEquals(0, tokenizerThreads());
+		long batches = executor.getTaskCount() - allBatches;
+		assertTrue(batches + " of " + allBatches + " batches",
+				batches < allBatches / 2);
+	}
+
+	/**
+	 * Test that a row limit stops the tokenizer once the last wanted row is
+	 * done.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testRowLimitStopsTokenizer() throws Exception {
+		ExcelReader reader = ExcelReader.builder().pipelineExecutor(executor)
+				.build();
+		reader.read(workbook, 3, 1);
+		long allBatches = executor.getTaskCount();
+
+		Map<Integer, List<ExcelDTO>> rows = reader.read(workbook, 3, 1,
+				ReadOptions.builder().rowLimit(10).build());
+		assertEquals(TestWorkbooks.toText(ExcelReader.builder().build().read(
+				workbook, 3, 1, ReadOptions.builder().rowLimit(10).build())),
+				TestWorkbooks.toText(rows));
+		assertEquals(0, tokenizerThreads());
+		long batches = executor.getTaskCount() - allBatches;
+		assertTrue(batches + " of " + allBatches + " batches",
+				batches < allBatches / 2);
+	}
+
+	/**
+	 * Counts the live tokenizer threads.
+	 *
+	 * @return the thread count
+	 */
+	private static int tokenizerThreads() {
+		int count = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (THREAD_NAME.equals(thread.getName()) && thread.isAlive()) {
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,144 @@
+package excel;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class RowCursorTest. Pulls the rows of a sheet from a
+ * {@link RowCursor}, to the end or stopping early, and checks they are the
+ * rows of a full read and that no parse thread is left behind.
+ *
+ * @author Sourav
+ */
+public class RowCursorTest extends TestCase {
+
+	/** More rows than the queue of a cursor holds. */
+	static final int ROWS = 60000;
+
+	/** The name of the parse threads of the cursors. */
+	private static final String THREAD_NAME = "excel-cursor-";
+
+	/** The temp directory. */
+	private File directory;
+
+	/** The workbook, of one large sheet and one small sheet. */
+	private File workbook;
+
+	/** The reader. */
+	private ExcelReader reader;
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		directory = TestWorkbooks.newDirectory();
+		workbook = new File(directory, "rows.xlsx");
+		TestWorkbooks.writeXLSX(workbook, false, TestWorkbooks
+				.numberedRows(ROWS, "row"), TestWorkbooks.numberedRows(3,
+				"small"));
+		reader = ExcelReader.builder().build();
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		TestWorkbooks.delete(directory);
+	}
+
+	/**
+	 * Test that a cursor taken to the end gives the rows of a full read, the
+	 * header row first, and closes itself.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testAllRows() throws Exception {
+		RowCursor cursor = reader.openCursor(workbook, 3, 1);
+		Map<Integer, List<ExcelDTO>> rows = new LinkedHashMap<Integer, List<ExcelDTO>>();
+		while (cursor.hasNext()) {
+			ExcelRow row = cursor.next();
+			assertEquals(1, row.getSheetNumber());
+			assertEquals(rows.isEmpty(), row.isHeader());
+			rows.put(row.getRowNumber(), row.getColumns());
+		}
+		assertEquals(TestWorkbooks.toText(reader.read(workbook, 3, 1)),
+				TestWorkbooks.toText(rows));
+		assertFalse(cursor.hasNext());
+		assertEquals(0, parseThreads());
+		try {
+			cursor.next();
+			fail("next after the last row");
+		} catch (NoSuchElementException ex) {
+			// expected
+		}
+		cursor.close();
+	}
+
+	/**
+	 * Test that closing a cursor after a few rows stops the parse, which
+	 * waits for room in the queue until then, and ends its thread.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testCloseStopsParse() throws Exception {
+		RowCursor cursor = reader.openCursor(workbook, 3, 1);
+		List<String> taken = new ArrayList<String>();
+		for (int i = 0; i < 5; i++) {
+			taken.add(TestWorkbooks.toText(cursor.next().getColumns()));
+		}
+		assertEquals(1, parseThreads());
+
+		cursor.close();
+		assertEquals(0, parseThreads());
+		assertFalse(cursor.hasNext());
+		cursor.close();
+
+		Map<Integer, List<ExcelDTO>> rows = reader.read(workbook, 3, 1);
+		for (int i = 0; i < taken.size(); i++) {
+			assertEquals(TestWorkbooks.toText(rows.get(i)), taken.get(i));
+		}
+	}
+
+	/**
+	 * Test that the error of the parse, a sheet number out of range, is
+	 * thrown by hasNext as it is.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testParseError() throws Exception {
+		RowCursor cursor = reader.openCursor(workbook, 3, 9);
+		try {
+			cursor.hasNext();
+			fail("no error for a missing sheet");
+		} catch (IllegalArgumentException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().contains("rId9"));
+		} finally {
+			cursor.close();
+		}
+		assertEquals(0, parseThreads());
+	}
+
+	/**
+	 * Counts the live parse threads of cursors.
+	 *
+	 * @return the thread count
+	 */
+	static int parseThreads() {
+		int count = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().startsWith(THREAD_NAME) && thread.isAlive()) {
+				count++;
+			}
+		}
+		return count;
+	}
+}
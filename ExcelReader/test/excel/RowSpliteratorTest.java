@@ -0,0 +1,153 @@
+package excel;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class RowSpliteratorTest. Streams the rows of sheets, sequentially and
+ * in parallel, to the end or stopping early, and checks they are the rows of
+ * full reads and that closing the stream ends every parse.
+ *
+ * @author Sourav
+ */
+public class RowSpliteratorTest extends TestCase {
+
+	/** The temp directory. */
+	private File directory;
+
+	/** The workbook, of one large sheet and one small sheet. */
+	private File workbook;
+
+	/** The reader. */
+	private ExcelReader reader;
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		directory = TestWorkbooks.newDirectory();
+		workbook = new File(directory, "rows.xlsx");
+		TestWorkbooks.writeXLSX(workbook, false, TestWorkbooks
+				.numberedRows(RowCursorTest.ROWS, "row"), TestWorkbooks
+				.numberedRows(3, "small"));
+		reader = ExcelReader.builder().build();
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		TestWorkbooks.delete(directory);
+	}
+
+	/**
+	 * Test that a sequential stream gives the rows of every sheet, sheet
+	 * after sheet, each with its header row first.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testSequentialStream() throws Exception {
+		final Map<Integer, Map<Integer, List<ExcelDTO>>> sheets = new LinkedHashMap<Integer, Map<Integer, List<ExcelDTO>>>();
+		Stream<ExcelRow> rows = reader.stream(workbook, 3, new TreeSet<Integer>(
+				Arrays.asList(2, 1)));
+		try {
+			rows.forEach(new Consumer<ExcelRow>() {
+				public void accept(ExcelRow row) {
+					Map<Integer, List<ExcelDTO>> sheet = sheets.get(row
+							.getSheetNumber());
+					assertEquals(null == sheet, row.isHeader());
+					if (null == sheet) {
+						sheet = new LinkedHashMap<Integer, List<ExcelDTO>>();
+						sheets.put(row.getSheetNumber(), sheet);
+					}
+					sheet.put(row.getRowNumber(), row.getColumns());
+				}
+			});
+		} finally {
+			rows.close();
+		}
+		assertEquals(Arrays.asList(1, 2), Arrays.asList(sheets.keySet()
+				.toArray()));
+		assertEquals(TestWorkbooks.toText(reader.read(workbook, 3, 1)),
+				TestWorkbooks.toText(sheets.get(1)));
+		assertEquals(TestWorkbooks.toText(reader.read(workbook, 3, 2)),
+				TestWorkbooks.toText(sheets.get(2)));
+		assertEquals(0, RowCursorTest.parseThreads());
+	}
+
+	/**
+	 * Test that closing a stream stopped early, by a limit or a short
+	 * circuit, ends the parse of the sheet it was in.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testEarlyStop() throws Exception {
+		Stream<ExcelRow> rows = reader.stream(workbook, 3, 1);
+		try {
+			List<ExcelRow> first = rows.limit(10).collect(
+					Collectors.<ExcelRow> toList());
+			assertEquals(10, first.size());
+			assertEquals(9, first.get(9).getRowNumber());
+			assertEquals(1, RowCursorTest.parseThreads());
+		} finally {
+			rows.close();
+		}
+		assertEquals(0, RowCursorTest.parseThreads());
+
+		rows = reader.stream(workbook, 3, new TreeSet<Integer>(Arrays.asList(
+				1, 2)));
+		try {
+			assertTrue(rows.anyMatch(new Predicate<ExcelRow>() {
+				public boolean test(ExcelRow row) {
+					return 100 == row.getRowNumber();
+				}
+			}));
+		} finally {
+			rows.close();
+		}
+		assertEquals(0, RowCursorTest.parseThreads());
+	}
+
+	/**
+	 * Test that a parallel stream, split by sheet and by chunks of rows,
+	 * gives every row once.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testParallelStream() throws Exception {
+		Stream<ExcelRow> rows = reader.stream(workbook, 3, new TreeSet<Integer>(
+				Arrays.asList(1, 2)));
+		Map<Integer, Long> counts;
+		try {
+			counts = rows.parallel().filter(new Predicate<ExcelRow>() {
+				public boolean test(ExcelRow row) {
+					return !row.isHeader();
+				}
+			}).collect(Collectors.groupingBy(
+					new Function<ExcelRow, Integer>() {
+						public Integer apply(ExcelRow row) {
+							return row.getSheetNumber();
+						}
+					}, Collectors.counting()));
+		} finally {
+			rows.close();
+		}
+		assertEquals(Long.valueOf(RowCursorTest.ROWS), counts.get(1));
+		assertEquals(Long.valueOf(3), counts.get(2));
+		assertEquals(0, RowCursorTest.parseThreads());
+	}
+}
@@ -0,0 +1,252 @@
+package excel;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class SpillingRowMapTest. Adds rows to a {@link SpillingRowMap} with
+ * small heap budgets and checks they read back the same from its temp file,
+ * by row number and in order, and that the temp file goes with the map.
+ *
+ * @author Sourav
+ */
+public class SpillingRowMapTest extends TestCase {
+
+	/** The temp directory, of the temp files of the maps. */
+	private File directory;
+
+	/** The map under test, closed after the test. */
+	private SpillingRowMap map;
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		directory = TestWorkbooks.newDirectory();
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		if (null != map) {
+			map.close();
+		}
+		TestWorkbooks.delete(directory);
+	}
+
+	/**
+	 * Test that rows spilled to the temp file read back the same, whatever
+	 * their names and values, by row number and in order.
+	 */
+	public void testRoundTrip() {
+		Map<Integer, List<ExcelDTO>> expected = rows(40);
+		map = new SpillingRowMap(0, directory, 3);
+		add(map, expected);
+
+		assertTrue(map.getFileBytes() > 0);
+		assertEquals(1, directory.list().length);
+		assertEquals(expected.size(), map.size());
+		assertEquals(TestWorkbooks.toText(expected), TestWorkbooks.toText(map));
+		for (Map.Entry<Integer, List<ExcelDTO>> entry : expected.entrySet()) {
+			assertEquals(TestWorkbooks.toText(entry.getValue()), TestWorkbooks
+					.toText(map.get(entry.getKey())));
+		}
+		// backwards, so every block is read back again
+		List<Integer> rowNumbers = new ArrayList<Integer>(expected.keySet());
+		for (int i = rowNumbers.size() - 1; i >= 0; i--) {
+			assertEquals(TestWorkbooks.toText(expected.get(rowNumbers.get(i))),
+					TestWorkbooks.toText(map.get(rowNumbers.get(i))));
+		}
+		assertEquals(TestWorkbooks.toText(expected), TestWorkbooks.toText(map));
+	}
+
+	/**
+	 * Test that rows missing between, before and after the rows added are
+	 * not found.
+	 */
+	public void testMissingRows() {
+		Map<Integer, List<ExcelDTO>> expected = rows(40);
+		map = new SpillingRowMap(0, directory, 3);
+		add(map, expected);
+
+		for (int rowNumber = -1; rowNumber < 200; rowNumber++) {
+			assertEquals(expected.containsKey(rowNumber), map
+					.containsKey(rowNumber));
+		}
+		assertNull(map.get("1"));
+		assertNull(map.get(null));
+	}
+
+	/**
+	 * Test that rows within the budget stay on the heap, without a temp
+	 * file.
+	 */
+	public void testNoSpillWithinBudget() {
+		Map<Integer, List<ExcelDTO>> expected = rows(40);
+		map = new SpillingRowMap(Long.MAX_VALUE, directory, 3);
+		add(map, expected);
+
+		assertEquals(0, map.getFileBytes());
+		assertEquals(0, directory.list().length);
+		assertEquals(TestWorkbooks.toText(expected), TestWorkbooks.toText(map));
+	}
+
+	/**
+	 * Test that the least recently used blocks leave the heap first, and
+	 * that every block is written to the temp file once.
+	 */
+	public void testEviction() {
+		Map<Integer, List<ExcelDTO>> expected = new LinkedHashMap<Integer, List<ExcelDTO>>();
+		for (int rowNumber = 0; rowNumber < 8; rowNumber++) {
+			expected.put(rowNumber, Arrays.asList(cell("Name", "value "
+					+ rowNumber)));
+		}
+		long blockBytes = ParseCache.estimateRowSize(expected.get(0)) * 2;
+		// room for two blocks of two rows
+		map = new SpillingRowMap(blockBytes * 2, directory, 2);
+		add(map, expected);
+		long written = map.getFileBytes();
+		assertTrue(written > 0);
+
+		// the rows on the heap are the ones given, the blocks of rows 4 to 7
+		assertSame(expected.get(5), map.get(5));
+		List<ExcelDTO> last = map.get(7);
+		assertSame(expected.get(7), last);
+		// reading the first block back evicts the block of rows 4 and 5,
+		// used less recently than the one of rows 6 and 7
+		assertNotSame(expected.get(0), map.get(0));
+		assertSame(last, map.get(7));
+		assertNotSame(expected.get(5), map.get(5));
+
+		assertEquals(TestWorkbooks.toText(expected), TestWorkbooks.toText(map));
+		assertEquals(TestWorkbooks.toText(expected), TestWorkbooks.toText(map));
+		// the four blocks, of the same size, were written once each
+		assertEquals(written * 2, map.getFileBytes());
+	}
+
+	/**
+	 * Test that closing the map deletes its temp file and that a closed map
+	 * cannot be read.
+	 */
+	public void testClose() {
+		map = new SpillingRowMap(0, directory, 3);
+		add(map, rows(10));
+		assertEquals(1, directory.list().length);
+
+		map.close();
+		assertEquals(0, directory.list().length);
+		try {
+			map.get(1);
+			fail("get after close");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+		map.close();
+	}
+
+	/**
+	 * Test that rows must be added in ascending order.
+	 */
+	public void testRowsOutOfOrder() {
+		map = new SpillingRowMap(0, directory, 3);
+		map.add(5, Arrays.asList(cell("Name", "five")));
+		try {
+			map.add(5, Arrays.asList(cell("Name", "again")));
+			fail("row added twice");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	/**
+	 * Test that a sheet read with a row store of no heap budget gives the
+	 * rows of a plain read, and deletes its temp file on close.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void testReadWithRowStore() throws Exception {
+		File workbook = new File(directory, "rows.xlsx");
+		TestWorkbooks.writeXLSX(workbook, false, TestWorkbooks.numberedRows(
+				5000, "row"));
+		File spill = new File(directory, "spill");
+		RowStore store = RowStore.builder().maxHeapBytes(0).blockRows(100)
+				.directory(spill).build();
+
+		ExcelReader reader = ExcelReader.builder().build();
+		map = reader.read(workbook, 3, 1, store);
+		assertTrue(map.getFileBytes() > 0);
+		assertEquals(1, spill.list().length);
+		assertEquals(TestWorkbooks.toText(reader.read(workbook, 3, 1)),
+				TestWorkbooks.toText(map));
+		map.close();
+		assertEquals(0, spill.list().length);
+	}
+
+	/**
+	 * Adds rows to a map and ends its last block.
+	 *
+	 * @param map
+	 *            the map
+	 * @param rows
+	 *            the rows, in ascending order
+	 */
+	private static void add(SpillingRowMap map, Map<Integer, List<ExcelDTO>> rows) {
+		for (Map.Entry<Integer, List<ExcelDTO>> entry : rows.entrySet()) {
+			map.add(entry.getKey(), entry.getValue());
+		}
+		map.finish();
+	}
+
+	/**
+	 * Creates rows with gaps between their numbers and cells of every kind:
+	 * null and empty names and values, text beyond the ASCII range and text
+	 * longer than one byte of length.
+	 *
+	 * @param count
+	 *            the number of rows
+	 * @return the rows, by row number
+	 */
+	private static Map<Integer, List<ExcelDTO>> rows(int count) {
+		StringBuilder longText = new StringBuilder();
+		while (longText.length() < 20000) {
+			longText.append("long text ");
+		}
+		Map<Integer, List<ExcelDTO>> rows = new LinkedHashMap<Integer, List<ExcelDTO>>();
+		for (int i = 0; i < count; i++) {
+			List<ExcelDTO> row = new ArrayList<ExcelDTO>();
+			row.add(cell("Id", Integer.toString(i)));
+			row.add(cell(null, 0 == i % 2 ? null : ""));
+			row.add(cell("", "Z\u00fcrich \u65e5\u672c \ud83d\ude00 " + i));
+			row.add(cell("Note", 0 == i % 7 ? longText.toString() : "short"));
+			if (0 == i % 3) {
+				row.add(cell("Extra " + i, "only in some rows"));
+			}
+			rows.put(i * 3 + (i % 2), row);
+		}
+		return rows;
+	}
+
+	/**
+	 * Creates a cell.
+	 *
+	 * @param name
+	 *            the column name
+	 * @param value
+	 *            the column value
+	 * @return the cell
+	 */
+	private static ExcelDTO cell(String name, String value) {
+		ExcelDTO cell = new ExcelDTO();
+		cell.setColumnName(name);
+		cell.setColumnValue(value);
+		return cell;
+	}
+}
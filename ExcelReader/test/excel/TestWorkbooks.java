@@ -0,0 +1,415 @@
+package excel;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.poi.hssf.model.InternalWorkbook;
+import org.apache.poi.hssf.record.DateWindow1904Record;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFCellStyle;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+
+/**
+ * The Class TestWorkbooks. Writes the small workbooks the tests read. A
+ * sheet is given as its rows, the header row first, and a cell as a
+ * {@link String}, a {@link Number}, a {@link DateCell} or null for no cell.
+ * xlsx workbooks are written part by part, with the same bytes for the same
+ * content, so an unchanged sheet keeps the fingerprint of its zip entry;
+ * their sheet numbers are 1 to the number of sheets.
+ *
+ * @author Sourav
+ */
+final class TestWorkbooks {
+
+	/** The style of date cells. */
+	private static final int DATE_STYLE = 1;
+
+	/** The time of the zip entries, fixed so that equal parts are equal. */
+	private static final long ENTRY_TIME = 946684800000L;
+
+	/**
+	 * Instantiates a new test workbooks.
+	 */
+	private TestWorkbooks() {
+	}
+
+	/**
+	 * The Class DateCell. A date cell: an Excel serial date with a date
+	 * format.
+	 */
+	static final class DateCell {
+
+		/** The serial date. */
+		final double serial;
+
+		/**
+		 * Instantiates a new date cell.
+		 *
+		 * @param serial
+		 *            the serial date
+		 */
+		DateCell(double serial) {
+			this.serial = serial;
+		}
+	}
+
+	/**
+	 * Creates a date cell.
+	 *
+	 * @param serial
+	 *            the serial date, in the date system of the workbook
+	 * @return the date cell
+	 */
+	static DateCell date(double serial) {
+		return new DateCell(serial);
+	}
+
+	/**
+	 * Creates an empty temp directory.
+	 *
+	 * @return the directory
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	static File newDirectory() throws IOException {
+		return Files.createTempDirectory("excel-test").toFile();
+	}
+
+	/**
+	 * Deletes a directory with everything in it.
+	 *
+	 * @param file
+	 *            the directory or file
+	 */
+	static void delete(File file) {
+		File[] children = file.listFiles();
+		if (null != children) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Writes an xlsx workbook.
+	 *
+	 * @param file
+	 *            the file
+	 * @param date1904
+	 *            whether the workbook uses the 1904 date system
+	 * @param sheets
+	 *            the rows of every sheet
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	static void writeXLSX(File file, boolean date1904, Object[][]... sheets)
+			throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			ZipOutputStream zip = new ZipOutputStream(out);
+			Writer writer = new OutputStreamWriter(zip, "UTF-8");
+			Map<String, Integer> sharedStrings = new LinkedHashMap<String, Integer>();
+			StringBuilder sheetList = new StringBuilder();
+			StringBuilder sheetRels = new StringBuilder();
+			StringBuilder sheetTypes = new StringBuilder();
+			for (int index = 0; index < sheets.length; index++) {
+				int sheetNumber = index + 1;
+				StringBuilder xml = new StringBuilder(
+						"<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>");
+				for (int row = 0; row < sheets[index].length; row++) {
+					xml.append("<row r=\"").append(row + 1).append("\">");
+					Object[] cells = sheets[index][row];
+					for (int column = 0; column < cells.length; column++) {
+						appendCell(xml, reference(column, row), cells[column],
+								sharedStrings);
+					}
+					xml.append("</row>");
+				}
+				xml.append("</sheetData></worksheet>");
+				writePart(zip, writer, "xl/worksheets/sheet" + sheetNumber
+						+ ".xml", xml.toString());
+				sheetList.append("<sheet name=\"Sheet").append(sheetNumber)
+						.append("\" sheetId=\"").append(sheetNumber)
+						.append("\" r:id=\"rId").append(sheetNumber)
+						.append("\"/>");
+				sheetRels.append("<Relationship Id=\"rId").append(sheetNumber)
+						.append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\" Target=\"worksheets/sheet")
+						.append(sheetNumber).append(".xml\"/>");
+				sheetTypes.append("<Override PartName=\"/xl/worksheets/sheet")
+						.append(sheetNumber)
+						.append(".xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+			}
+
+			StringBuilder sst = new StringBuilder(
+					"<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" uniqueCount=\""
+							+ sharedStrings.size() + "\">");
+			for (String value : sharedStrings.keySet()) {
+				sst.append("<si><t>").append(escape(value)).append("</t></si>");
+			}
+			sst.append("</sst>");
+			writePart(zip, writer, "xl/sharedStrings.xml", sst.toString());
+			writePart(zip, writer, "xl/styles.xml",
+					"<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+							+ "<fonts count=\"1\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>"
+							+ "<fills count=\"1\"><fill><patternFill patternType=\"none\"/></fill></fills>"
+							+ "<borders count=\"1\"><border/></borders>"
+							+ "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>"
+							+ "<cellXfs count=\"2\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>"
+							+ "<xf numFmtId=\"14\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/></cellXfs>"
+							+ "</styleSheet>");
+			writePart(zip, writer, "xl/workbook.xml",
+					"<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\""
+							+ " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">"
+							+ (date1904 ? "<workbookPr date1904=\"1\"/>" : "")
+							+ "<sheets>" + sheetList + "</sheets></workbook>");
+			int rel = sheets.length;
+			writePart(zip, writer, "xl/_rels/workbook.xml.rels",
+					"<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+							+ sheetRels
+							+ "<Relationship Id=\"rId" + (rel + 1) + "\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles\" Target=\"styles.xml\"/>"
+							+ "<Relationship Id=\"rId" + (rel + 2) + "\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/sharedStrings\" Target=\"sharedStrings.xml\"/>"
+							+ "</Relationships>");
+			writePart(zip, writer, "_rels/.rels",
+					"<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+							+ "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"xl/workbook.xml\"/>"
+							+ "</Relationships>");
+			writePart(zip, writer, "[Content_Types].xml",
+					"<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+							+ "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+							+ "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+							+ "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+							+ sheetTypes
+							+ "<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>"
+							+ "<Override PartName=\"/xl/sharedStrings.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sharedStrings+xml\"/>"
+							+ "</Types>");
+			zip.finish();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes an xls workbook.
+	 *
+	 * @param file
+	 *            the file
+	 * @param date1904
+	 *            whether the workbook uses the 1904 date system
+	 * @param sheets
+	 *            the rows of every sheet
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	static void writeXLS(File file, boolean date1904, Object[][]... sheets)
+			throws IOException {
+		InternalWorkbook internal = InternalWorkbook.createWorkbook();
+		for (Record record : internal.getRecords()) {
+			if (record instanceof DateWindow1904Record) {
+				((DateWindow1904Record) record).setWindowing((short) (date1904 ? 1
+						: 0));
+			}
+		}
+		HSSFWorkbook workbook = HSSFWorkbook.create(internal);
+		HSSFCellStyle dateStyle = workbook.createCellStyle();
+		dateStyle.setDataFormat((short) 14);
+		for (int index = 0; index < sheets.length; index++) {
+			HSSFSheet sheet = workbook.createSheet("Sheet" + (index + 1));
+			for (int row = 0; row < sheets[index].length; row++) {
+				HSSFRow excelRow = sheet.createRow(row);
+				Object[] cells = sheets[index][row];
+				for (int column = 0; column < cells.length; column++) {
+					Object value = cells[column];
+					if (null == value) {
+						continue;
+					}
+					HSSFCell cell = excelRow.createCell(column);
+					if (value instanceof DateCell) {
+						cell.setCellValue(((DateCell) value).serial);
+						cell.setCellStyle(dateStyle);
+					} else if (value instanceof Number) {
+						cell.setCellValue(((Number) value).doubleValue());
+					} else {
+						cell.setCellValue(value.toString());
+					}
+				}
+			}
+		}
+		OutputStream out = new FileOutputStream(file);
+		try {
+			workbook.write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Creates the rows of a sheet of numbered rows: a header row and the
+	 * given number of rows, each with its number, a text and a decimal.
+	 *
+	 * @param rows
+	 *            the number of rows after the header row
+	 * @param text
+	 *            the start of the text of every row
+	 * @return the rows
+	 */
+	static Object[][] numberedRows(int rows, String text) {
+		Object[][] sheet = new Object[rows + 1][];
+		sheet[0] = new Object[] { "Id", "Name", "Amount" };
+		for (int row = 1; row <= rows; row++) {
+			sheet[row] = new Object[] { Integer.valueOf(row), text + " " + row,
+					Double.valueOf(row / 4.0) };
+		}
+		return sheet;
+	}
+
+	/**
+	 * Gives the rows of a sheet as text, one line per row, to compare them.
+	 *
+	 * @param rows
+	 *            the rows, by row number
+	 * @return the text
+	 */
+	static String toText(Map<Integer, List<ExcelDTO>> rows) {
+		StringBuilder text = new StringBuilder();
+		for (Map.Entry<Integer, List<ExcelDTO>> entry : rows.entrySet()) {
+			text.append(entry.getKey()).append(' ')
+					.append(toText(entry.getValue())).append('\n');
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Gives a row as text.
+	 *
+	 * @param row
+	 *            the row
+	 * @return the text
+	 */
+	static String toText(List<ExcelDTO> row) {
+		StringBuilder text = new StringBuilder("[");
+		for (ExcelDTO cell : row) {
+			if (text.length() > 1) {
+				text.append(", ");
+			}
+			text.append(cell.getColumnName()).append('=')
+					.append(cell.getColumnValue());
+		}
+		return text.append(']').toString();
+	}
+
+	/**
+	 * Appends an xlsx cell.
+	 *
+	 * @param xml
+	 *            the sheet xml
+	 * @param reference
+	 *            the cell reference
+	 * @param value
+	 *            the value, null for no cell
+	 * @param sharedStrings
+	 *            the shared strings, by index
+	 */
+	private static void appendCell(StringBuilder xml, String reference,
+			Object value, Map<String, Integer> sharedStrings) {
+		if (null == value) {
+			return;
+		}
+		xml.append("<c r=\"").append(reference).append('"');
+		if (value instanceof DateCell) {
+			xml.append(" s=\"").append(DATE_STYLE).append("\"><v>")
+					.append(numberText(((DateCell) value).serial));
+		} else if (value instanceof Number) {
+			xml.append("><v>").append(
+					numberText(((Number) value).doubleValue()));
+		} else {
+			Integer index = sharedStrings.get(value.toString());
+			if (null == index) {
+				index = sharedStrings.size();
+				sharedStrings.put(value.toString(), index);
+			}
+			xml.append(" t=\"s\"><v>").append(index);
+		}
+		xml.append("</v></c>");
+	}
+
+	/**
+	 * Gives a number as the text of an xlsx value.
+	 *
+	 * @param value
+	 *            the value
+	 * @return the text
+	 */
+	private static String numberText(double value) {
+		return value == Math.rint(value) ? Long.toString((long) value)
+				: Double.toString(value);
+	}
+
+	/**
+	 * Gives the reference of a cell, e.g. B3.
+	 *
+	 * @param column
+	 *            the column (Starts from 0)
+	 * @param row
+	 *            the row (Starts from 0)
+	 * @return the reference
+	 */
+	private static String reference(int column, int row) {
+		String name = "";
+		for (int rest = column + 1; rest > 0; rest = (rest - 1) / 26) {
+			name = (char) ('A' + (rest - 1) % 26) + name;
+		}
+		return name + (row + 1);
+	}
+
+	/**
+	 * Escapes text for xml.
+	 *
+	 * @param value
+	 *            the text
+	 * @return the escaped text
+	 */
+	private static String escape(String value) {
+		return value.replace("&", "&amp;").replace("<", "&lt;")
+				.replace(">", "&gt;");
+	}
+
+	/**
+	 * Writes a part of an xlsx workbook.
+	 *
+	 * @param zip
+	 *            the zip
+	 * @param writer
+	 *            the writer of the zip
+	 * @param name
+	 *            the part name
+	 * @param xml
+	 *            the part, without the xml declaration
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static void writePart(ZipOutputStream zip, Writer writer,
+			String name, String xml) throws IOException {
+		ZipEntry entry = new ZipEntry(name);
+		entry.setTime(ENTRY_TIME);
+		zip.putNextEntry(entry);
+		writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+		writer.write(xml);
+		writer.flush();
+		zip.closeEntry();
+	}
+}
@@ -0,0 +1,150 @@
+package excel.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import excel.ExcelDTO;
+import excel.ExcelParser;
+import excel.RowHandler;
+
+/**
+ * The Class ExcelParserBenchmark. Measures {@link ExcelParser} reading the
+ * first sheet of generated workbooks, for every format, shape and size of the
+ * parameters: throughput and the percentiles of the time of a read, and with
+ * -prof gc the bytes allocated by a read (gc.alloc.rate.norm). The rows
+ * counter gives the number of rows read by each read, to turn either into
+ * figures per row.
+ * <p>
+ * The workbooks are written by {@link WorkbookGenerator} before the first
+ * read, into the directory of the excel.benchmark.fixtures system property
+ * (target/fixtures by default), and kept there for the next runs.
+ *
+ * @author Sourav
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class ExcelParserBenchmark {
+
+	/** The format of the workbook, xls or xlsx. */
+	@Param({ "xls", "xlsx" })
+	public String format;
+
+	/** The shape of the workbook, see {@link WorkbookGenerator}. */
+	@Param({ "narrow-numeric-dense", "narrow-text-dense", "wide-mixed-dense",
+			"wide-mixed-sparse" })
+	public String shape;
+
+	/**
+	 * The number of rows below the header, at most 65,535 for xls. Larger
+	 * workbooks, up to 1,000,000 rows, are run with -p rows=1000000.
+	 */
+	@Param({ "1000", "100000" })
+	public int rows;
+
+	/** The workbook. */
+	private File workbook;
+
+	/** The number of columns of the workbook. */
+	private int columns;
+
+	/**
+	 * Writes the workbook unless it exists already, and checks that it reads.
+	 *
+	 * @throws Exception
+	 *             if the workbook cannot be written or read
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		File directory = new File(System.getProperty(
+				"excel.benchmark.fixtures", "target/fixtures"));
+		workbook = WorkbookGenerator.fixture(directory, format, shape, rows);
+		columns = new WorkbookGenerator(shape, rows).getColumns();
+
+		// ExcelParser.read logs and swallows errors, so a broken workbook
+		// would be measured as a fast empty read
+		if (ExcelParser.read(workbook, columns, 1).isEmpty()) {
+			throw new IOException("No rows read from " + workbook);
+		}
+	}
+
+	/**
+	 * Reads the sheet into a map.
+	 *
+	 * @param counter
+	 *            the rows counter
+	 * @return the map
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Benchmark
+	public Map<Integer, List<ExcelDTO>> read(RowCounter counter)
+			throws Exception {
+		Map<Integer, List<ExcelDTO>> map = ExcelParser.read(workbook, columns,
+				1);
+		counter.rows += map.size();
+		return map;
+	}
+
+	/**
+	 * Reads the sheet row by row, without keeping the rows.
+	 *
+	 * @param counter
+	 *            the rows counter
+	 * @param blackhole
+	 *            the blackhole consuming the rows
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Benchmark
+	public void readRows(final RowCounter counter, final Blackhole blackhole)
+			throws Exception {
+		ExcelParser.read(workbook, columns, 1, new RowHandler() {
+			public void handleRow(int rowNumber, List<ExcelDTO> row) {
+				counter.rows++;
+				blackhole.consume(row);
+			}
+		});
+	}
+
+	/**
+	 * The Class RowCounter. Counts the rows read, reported by JMH next to the
+	 * primary result of throughput benchmarks.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class RowCounter {
+
+		/** The rows read in the iteration. */
+		public long rows;
+
+		/**
+		 * Resets the counter before every iteration.
+		 */
+		@Setup(Level.Iteration)
+		public void reset() {
+			rows = 0;
+		}
+	}
+}
@@ -0,0 +1,547 @@
+package excel.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFCellStyle;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+
+/**
+ * The Class WorkbookGenerator. Writes deterministic workbooks to benchmark
+ * the parser with: the same format, shape and number of rows always give the
+ * same cells, so results of different runs and machines can be compared.
+ * <p>
+ * A shape is written as width-content-density, e.g. narrow-numeric-dense:
+ * <ul>
+ * <li>width: narrow (6 columns) or wide (40 columns);</li>
+ * <li>content: numeric (numbers and dates), text (shared strings) or mixed
+ * (text, numbers, dates and booleans);</li>
+ * <li>density: dense (every cell has a value) or sparse (one cell in five
+ * has a value).</li>
+ * </ul>
+ * The first row is the header row. xlsx files are written part by part
+ * without POI, so large sheets need no memory; xls files are written with
+ * POI's HSSF and hold at most 65,535 rows below the header, the limit of the
+ * format.
+ *
+ * @author Sourav
+ */
+public final class WorkbookGenerator {
+
+	/** The maximum number of rows below the header of an xls sheet. */
+	public static final int MAX_XLS_ROWS = 65535;
+
+	/** The time of the entries of generated xlsx files. */
+	private static final long ENTRY_TIME = 946684800000L;
+
+	/** The number of distinct texts of text cells. */
+	private static final int TEXT_VARIETY = 20000;
+
+	/** The style of date cells, the index of the m/d/yy cell format. */
+	private static final int DATE_STYLE = 1;
+
+	/** The style of decimal cells, the index of the #,##0.00 cell format. */
+	private static final int DECIMAL_STYLE = 2;
+
+	/** The kinds of cells of the columns. */
+	private enum ColumnKind {
+		TEXT, NUMBER, DECIMAL, DATE, BOOLEAN
+	}
+
+	/** The number of columns. */
+	private final int columns;
+
+	/** The kind of cells of every column. */
+	private final ColumnKind[] columnKinds;
+
+	/** The percentage of cells with a value. */
+	private final int density;
+
+	/** The number of rows below the header. */
+	private final int rows;
+
+	/** The seed of the values. */
+	private final long seed;
+
+	/**
+	 * Instantiates a new workbook generator.
+	 *
+	 * @param shape
+	 *            the shape, width-content-density
+	 * @param rows
+	 *            the number of rows below the header
+	 */
+	public WorkbookGenerator(String shape, int rows) {
+		String[] parts = shape.toLowerCase(Locale.ROOT).split("-");
+		if (parts.length != 3 || rows < 0) {
+			throw new IllegalArgumentException("Invalid shape (" + shape
+					+ ") or rows (" + rows + ")");
+		}
+		this.columns = width(parts[0]);
+		this.columnKinds = new ColumnKind[columns];
+		for (int column = 0; column < columns; column++) {
+			columnKinds[column] = columnKind(parts[1], column);
+		}
+		this.density = density(parts[2]);
+		this.rows = rows;
+		this.seed = shape.toLowerCase(Locale.ROOT).hashCode() * 31L + rows;
+	}
+
+	/**
+	 * Gets the number of columns.
+	 *
+	 * @return the columns
+	 */
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Writes the workbook, with a single sheet.
+	 *
+	 * @param file
+	 *            the file, an xls file unless its name ends with .xlsx
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public void write(File file) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file),
+				1 << 16);
+		try {
+			if (file.getName().toLowerCase(Locale.ROOT).endsWith(".xlsx")) {
+				writeXLSX(out);
+			} else {
+				writeXLS(out);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Gets the workbook of a format, shape and size in a directory, writing
+	 * it if it does not exist yet.
+	 *
+	 * @param directory
+	 *            the directory of the workbooks
+	 * @param format
+	 *            xls or xlsx
+	 * @param shape
+	 *            the shape, width-content-density
+	 * @param rows
+	 *            the number of rows below the header
+	 * @return the workbook file
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static File fixture(File directory, String format, String shape,
+			int rows) throws IOException {
+		File file = new File(directory, shape + "-" + rows + "."
+				+ format.toLowerCase(Locale.ROOT));
+		if (!file.isFile()) {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Cannot create directory " + directory);
+			}
+			File partial = new File(directory, "partial-" + file.getName());
+			new WorkbookGenerator(shape, rows).write(partial);
+			if (!partial.renameTo(file)) {
+				throw new IOException("Cannot rename " + partial + " to "
+						+ file);
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Writes a workbook from the command line.
+	 *
+	 * @param args
+	 *            the file, the shape and the number of rows below the header
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3) {
+			System.err.println("Usage: WorkbookGenerator <file.xls|file.xlsx>"
+					+ " <width-content-density> <rows>");
+			System.exit(2);
+		}
+		new WorkbookGenerator(args[1], Integer.parseInt(args[2]))
+				.write(new File(args[0]));
+	}
+
+	/**
+	 * Writes the cells of the sheet.
+	 *
+	 * @param sheet
+	 *            the sheet writer
+	 * @param maxRows
+	 *            the maximum number of rows below the header
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void writeCells(SheetWriter sheet, int maxRows) throws IOException {
+		sheet.startRow(0);
+		for (int column = 0; column < columns; column++) {
+			sheet.text(column, columnKinds[column].name().charAt(0)
+					+ columnKinds[column].name().substring(1)
+							.toLowerCase(Locale.ROOT) + (column + 1));
+		}
+		sheet.endRow();
+
+		Random random = new Random(seed);
+		int count = Math.min(rows, maxRows);
+		for (int row = 1; row <= count; row++) {
+			sheet.startRow(row);
+			for (int column = 0; column < columns; column++) {
+				if (random.nextInt(100) >= density) {
+					continue;
+				}
+				switch (columnKinds[column]) {
+				case TEXT:
+					sheet.text(column, "text " + random.nextInt(TEXT_VARIETY));
+					break;
+				case NUMBER:
+					sheet.number(column, random.nextInt(1000000), -1);
+					break;
+				case DECIMAL:
+					sheet.number(column, random.nextInt(10000000) / 100.0,
+							DECIMAL_STYLE);
+					break;
+				case DATE:
+					// 2000-01-01 and the 20 years after
+					sheet.number(column, 36526 + random.nextInt(7305),
+							DATE_STYLE);
+					break;
+				default:
+					sheet.bool(column, random.nextBoolean());
+					break;
+				}
+			}
+			sheet.endRow();
+		}
+	}
+
+	/**
+	 * Writes an xls workbook with POI.
+	 *
+	 * @param out
+	 *            the output
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void writeXLS(OutputStream out) throws IOException {
+		final HSSFWorkbook workbook = new HSSFWorkbook();
+		final HSSFSheet sheet = workbook.createSheet("Data");
+		final HSSFCellStyle[] styles = new HSSFCellStyle[3];
+		styles[DATE_STYLE] = workbook.createCellStyle();
+		styles[DATE_STYLE].setDataFormat((short) 14);
+		styles[DECIMAL_STYLE] = workbook.createCellStyle();
+		styles[DECIMAL_STYLE].setDataFormat((short) 4);
+
+		writeCells(new SheetWriter() {
+			private HSSFRow row;
+
+			void startRow(int rowNumber) {
+				row = sheet.createRow(rowNumber);
+			}
+
+			void text(int column, String value) {
+				row.createCell(column).setCellValue(value);
+			}
+
+			void number(int column, double value, int style) {
+				HSSFCell cell = row.createCell(column);
+				cell.setCellValue(value);
+				if (style > 0) {
+					cell.setCellStyle(styles[style]);
+				}
+			}
+
+			void bool(int column, boolean value) {
+				row.createCell(column).setCellValue(value);
+			}
+
+			void endRow() {
+				row = null;
+			}
+		}, MAX_XLS_ROWS);
+		workbook.write(out);
+	}
+
+	/**
+	 * Writes an xlsx workbook part by part: the sheet is streamed, the shared
+	 * strings collected while it is written follow it.
+	 *
+	 * @param out
+	 *            the output
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void writeXLSX(OutputStream out) throws IOException {
+		ZipOutputStream zip = new ZipOutputStream(out);
+		final Writer writer = new OutputStreamWriter(zip, "UTF-8");
+		final Map<String, Integer> sharedStrings = new LinkedHashMap<String, Integer>();
+
+		putEntry(zip, "xl/worksheets/sheet1.xml");
+		writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+				+ "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>");
+		writeCells(new SheetWriter() {
+			private int rowNumber;
+			private int cellCount;
+
+			void startRow(int rowNumber) throws IOException {
+				this.rowNumber = rowNumber + 1;
+				writer.write("<row r=\"" + this.rowNumber + "\">");
+			}
+
+			void text(int column, String value) throws IOException {
+				Integer index = sharedStrings.get(value);
+				if (null == index) {
+					index = sharedStrings.size();
+					sharedStrings.put(value, index);
+				}
+				cellCount++;
+				writer.write("<c r=\"" + reference(column) + "\" t=\"s\"><v>"
+						+ index + "</v></c>");
+			}
+
+			void number(int column, double value, int style) throws IOException {
+				cellCount++;
+				writer.write("<c r=\"" + reference(column) + "\""
+						+ (style > 0 ? " s=\"" + style + "\"" : "") + "><v>"
+						+ numberText(value) + "</v></c>");
+			}
+
+			void bool(int column, boolean value) throws IOException {
+				cellCount++;
+				writer.write("<c r=\"" + reference(column) + "\" t=\"b\"><v>"
+						+ (value ? 1 : 0) + "</v></c>");
+			}
+
+			void endRow() throws IOException {
+				writer.write("</row>");
+			}
+
+			private String reference(int column) {
+				return columnName(column) + rowNumber;
+			}
+		}, Integer.MAX_VALUE);
+		writer.write("</sheetData></worksheet>");
+		writer.flush();
+
+		putEntry(zip, "xl/sharedStrings.xml");
+		writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+				+ "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" uniqueCount=\""
+				+ sharedStrings.size() + "\">");
+		for (String value : sharedStrings.keySet()) {
+			writer.write("<si><t>" + escape(value) + "</t></si>");
+		}
+		writer.write("</sst>");
+		writer.flush();
+
+		writePart(zip, writer, "xl/styles.xml",
+				"<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+						+ "<fonts count=\"1\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>"
+						+ "<fills count=\"1\"><fill><patternFill patternType=\"none\"/></fill></fills>"
+						+ "<borders count=\"1\"><border/></borders>"
+						+ "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>"
+						+ "<cellXfs count=\"3\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>"
+						+ "<xf numFmtId=\"14\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/>"
+						+ "<xf numFmtId=\"4\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/></cellXfs>"
+						+ "</styleSheet>");
+		writePart(zip, writer, "xl/workbook.xml",
+				"<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\""
+						+ " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">"
+						+ "<sheets><sheet name=\"Data\" sheetId=\"1\" r:id=\"rId1\"/></sheets></workbook>");
+		writePart(zip, writer, "xl/_rels/workbook.xml.rels",
+				"<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+						+ "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\" Target=\"worksheets/sheet1.xml\"/>"
+						+ "<Relationship Id=\"rId2\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles\" Target=\"styles.xml\"/>"
+						+ "<Relationship Id=\"rId3\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/sharedStrings\" Target=\"sharedStrings.xml\"/>"
+						+ "</Relationships>");
+		writePart(zip, writer, "_rels/.rels",
+				"<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+						+ "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"xl/workbook.xml\"/>"
+						+ "</Relationships>");
+		writePart(zip, writer, "[Content_Types].xml",
+				"<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+						+ "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+						+ "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+						+ "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+						+ "<Override PartName=\"/xl/worksheets/sheet1.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>"
+						+ "<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>"
+						+ "<Override PartName=\"/xl/sharedStrings.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sharedStrings+xml\"/>"
+						+ "</Types>");
+		zip.finish();
+	}
+
+	/**
+	 * Writes a small xml part.
+	 *
+	 * @param zip
+	 *            the zip output
+	 * @param writer
+	 *            the writer on the zip output
+	 * @param name
+	 *            the name of the part
+	 * @param xml
+	 *            the xml, without declaration
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static void writePart(ZipOutputStream zip, Writer writer,
+			String name, String xml) throws IOException {
+		putEntry(zip, name);
+		writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+		writer.write(xml);
+		writer.flush();
+	}
+
+	/**
+	 * Starts a zip entry with a fixed time, so the same workbook gives the
+	 * same bytes.
+	 *
+	 * @param zip
+	 *            the zip output
+	 * @param name
+	 *            the name of the entry
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static void putEntry(ZipOutputStream zip, String name)
+			throws IOException {
+		ZipEntry entry = new ZipEntry(name);
+		entry.setTime(ENTRY_TIME);
+		zip.putNextEntry(entry);
+	}
+
+	/**
+	 * Gets the name of a column, e.g. A, Z, AA.
+	 *
+	 * @param column
+	 *            the column index (Starts from 0)
+	 * @return the column name
+	 */
+	private static String columnName(int column) {
+		StringBuilder name = new StringBuilder();
+		for (int n = column + 1; n > 0; n = (n - 1) / 26) {
+			name.insert(0, (char) ('A' + (n - 1) % 26));
+		}
+		return name.toString();
+	}
+
+	/**
+	 * Writes a number as Excel does, without a fraction for whole numbers.
+	 *
+	 * @param value
+	 *            the value
+	 * @return the text
+	 */
+	private static String numberText(double value) {
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long) value);
+		}
+		return Double.toString(value);
+	}
+
+	/**
+	 * Escapes text for xml.
+	 *
+	 * @param value
+	 *            the text
+	 * @return the escaped text
+	 */
+	private static String escape(String value) {
+		return value.replace("&", "&amp;").replace("<", "&lt;")
+				.replace(">", "&gt;");
+	}
+
+	/**
+	 * Gets the number of columns of a width.
+	 *
+	 * @param width
+	 *            narrow or wide
+	 * @return the number of columns
+	 */
+	private static int width(String width) {
+		if ("narrow".equals(width)) {
+			return 6;
+		} else if ("wide".equals(width)) {
+			return 40;
+		}
+		throw new IllegalArgumentException("Unknown width (" + width
+				+ "), expected narrow or wide");
+	}
+
+	/**
+	 * Gets the kind of cells of a column.
+	 *
+	 * @param content
+	 *            numeric, text or mixed
+	 * @param column
+	 *            the column index
+	 * @return the kind of cells
+	 */
+	private static ColumnKind columnKind(String content, int column) {
+		if ("numeric".equals(content)) {
+			ColumnKind[] kinds = { ColumnKind.NUMBER, ColumnKind.DECIMAL,
+					ColumnKind.DATE };
+			return kinds[column % kinds.length];
+		} else if ("text".equals(content)) {
+			return ColumnKind.TEXT;
+		} else if ("mixed".equals(content)) {
+			return ColumnKind.values()[column % ColumnKind.values().length];
+		}
+		throw new IllegalArgumentException("Unknown content (" + content
+				+ "), expected numeric, text or mixed");
+	}
+
+	/**
+	 * Gets the percentage of cells with a value of a density.
+	 *
+	 * @param density
+	 *            dense or sparse
+	 * @return the percentage
+	 */
+	private static int density(String density) {
+		if ("dense".equals(density)) {
+			return 100;
+		} else if ("sparse".equals(density)) {
+			return 20;
+		}
+		throw new IllegalArgumentException("Unknown density (" + density
+				+ "), expected dense or sparse");
+	}
+
+	/**
+	 * Receives the cells of the generated sheet, row by row.
+	 */
+	private abstract static class SheetWriter {
+
+		abstract void startRow(int rowNumber) throws IOException;
+
+		abstract void text(int column, String value) throws IOException;
+
+		abstract void number(int column, double value, int style)
+				throws IOException;
+
+		abstract void bool(int column, boolean value) throws IOException;
+
+		abstract void endRow() throws IOException;
+	}
+}